@@ -0,0 +1,76 @@
+package com.ratelimiter.accounting.api;
+
+import com.ratelimiter.accounting.application.AuditQueryService;
+import com.ratelimiter.common.web.dto.ApiResponse;
+import com.ratelimiter.common.web.dto.accounting.AuditPageResponse;
+import com.ratelimiter.common.web.dto.accounting.AuditRecordResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@AllArgsConstructor
+@RestController
+@RequestMapping("/api/v1/audit")
+@ConditionalOnProperty(name = "app.accounting.sink", havingValue = "mysql", matchIfMissing = true)
+public class AuditController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final AuditQueryService auditQueryService;
+
+    /**
+     * 键集分页查询审计记录，按 (timestamp, id) 升序
+     *
+     * @param from 起始时间戳（毫秒，含）
+     * @param to 结束时间戳（毫秒，不含）
+     * @param cursor 上一页返回的 nextCursor，首页不传
+     */
+    @GetMapping
+    public ApiResponse<AuditPageResponse> query(@RequestParam String tenantId,
+                                                @RequestParam(required = false) String resourceKey,
+                                                @RequestParam(required = false) Boolean allowed,
+                                                @RequestParam long from,
+                                                @RequestParam long to,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(defaultValue = "50") int size) {
+        return ApiResponse.ok(auditQueryService.query(tenantId, resourceKey, allowed, from, to, cursor, size));
+    }
+
+    /**
+     * 按 requestId 查询审计详情
+     */
+    @GetMapping("/{requestId}")
+    public ApiResponse<AuditRecordResponse> getByRequestId(@PathVariable String requestId) {
+        return ApiResponse.ok(auditQueryService.getByRequestId(requestId));
+    }
+
+    /**
+     * 流式导出（NDJSON，每行一条记录），参数同分页查询
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam String tenantId,
+                                                        @RequestParam(required = false) String resourceKey,
+                                                        @RequestParam(required = false) Boolean allowed,
+                                                        @RequestParam long from,
+                                                        @RequestParam long to) {
+        AuditQueryService.ExportPermit permit = auditQueryService.acquireExportPermit(tenantId, from, to);
+        StreamingResponseBody body = out -> {
+            try (permit) {
+                auditQueryService.export(tenantId, resourceKey, allowed, from, to, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"audit-" + tenantId + "-" + from + "-" + to + ".ndjson\"")
+                .body(body);
+    }
+}
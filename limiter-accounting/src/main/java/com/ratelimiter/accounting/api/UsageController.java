@@ -0,0 +1,48 @@
+package com.ratelimiter.accounting.api;
+
+import com.ratelimiter.accounting.application.UsageQueryService;
+import com.ratelimiter.common.web.dto.ApiResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageBucketResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageSummaryResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@AllArgsConstructor
+@RestController
+@RequestMapping("/api/v1/usage")
+public class UsageController {
+
+    private final UsageQueryService usageQueryService;
+
+    /**
+     * 按桶查询用量（看板）
+     *
+     * @param granularity minute/hour/day
+     * @param from 起始时间戳（毫秒，含）
+     * @param to 结束时间戳（毫秒，不含）
+     */
+    @GetMapping
+    public ApiResponse<List<UsageBucketResponse>> listBuckets(@RequestParam String tenantId,
+                                                              @RequestParam(required = false) String resourceKey,
+                                                              @RequestParam(defaultValue = "minute") String granularity,
+                                                              @RequestParam long from,
+                                                              @RequestParam long to) {
+        return ApiResponse.ok(usageQueryService.listBuckets(tenantId, resourceKey, granularity, from, to));
+    }
+
+    /**
+     * 区间内按资源汇总（计费）
+     */
+    @GetMapping("/summary")
+    public ApiResponse<UsageSummaryResponse> summarize(@RequestParam String tenantId,
+                                                       @RequestParam(required = false) String resourceKey,
+                                                       @RequestParam long from,
+                                                       @RequestParam long to) {
+        return ApiResponse.ok(usageQueryService.summarize(tenantId, resourceKey, from, to));
+    }
+}
@@ -0,0 +1,29 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.common.web.constant.ErrorCode;
+import com.ratelimiter.common.web.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 审计查询的键集游标：上一页最后一行的 (timestamp, id)，对外编码为不透明字符串
+ */
+record AuditCursor(long timestamp, long id) {
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((timestamp + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static AuditCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new AuditCursor(Long.parseLong(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.dedupe.RotatingBloomFilter;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审计写入前的 requestId 去重
+ *
+ * 用分代布隆过滤器记住最近落库的 requestId（窗口按 Kafka 保留时间配置）：
+ * - 过滤器判定“一定未见过”的记录（绝大多数）直接写入，不做任何存在性查询
+ * - 判定“可能见过”的记录批量回查数据库，确认已存在的不再写入，误判的照常写入
+ *
+ * 过滤器只是优化：重启后为空、轮转时可能漏记，兜底仍是存储端的幂等写入（{@link AuditSink#write}）
+ */
+@Slf4j
+@Component
+public class AuditDeduplicator {
+
+    private final AuditSink auditSink;
+    private final RotatingBloomFilter filter;
+
+    private final Counter checkedCounter;
+    private final Counter lookupsSavedCounter;
+    private final Counter probableDuplicateCounter;
+    private final Counter falsePositiveCounter;
+    private final Counter duplicateSkippedCounter;
+
+    public AuditDeduplicator(AuditSink auditSink,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.accounting.dedupe.enabled:true}") boolean enabled,
+                             @Value("${app.accounting.dedupe.window-hours:24}") long windowHours,
+                             @Value("${app.accounting.dedupe.generations:6}") int generations,
+                             @Value("${app.accounting.dedupe.expected-events-per-second:200}") long expectedPerSecond,
+                             @Value("${app.accounting.dedupe.false-positive-rate:0.001}") double falsePositiveRate,
+                             @Value("${app.accounting.dedupe.max-memory-mb:64}") long maxMemoryMb) {
+        this.auditSink = auditSink;
+
+        if (enabled) {
+            long generationMillis = TimeUnit.HOURS.toMillis(windowHours) / generations;
+            long expectedPerGeneration = expectedPerSecond * TimeUnit.MILLISECONDS.toSeconds(generationMillis);
+            long maxBitsPerGeneration = maxMemoryMb * 1024 * 1024 * 8 / generations;
+            this.filter = RotatingBloomFilter.create(generations, expectedPerGeneration, falsePositiveRate,
+                    maxBitsPerGeneration, generationMillis, System.currentTimeMillis());
+            log.info("Audit dedupe filter: window={}h, generations={}, bitsPerGeneration={}, hashes={}, memory={}KB",
+                    windowHours, generations, filter.bitsPerGeneration(), filter.hashFunctions(),
+                    filter.memoryBytes() / 1024);
+        } else {
+            this.filter = null;
+        }
+
+        this.checkedCounter = meterRegistry.counter("audit_dedupe_checked_total");
+        this.lookupsSavedCounter = meterRegistry.counter("audit_dedupe_lookups_saved_total");
+        this.probableDuplicateCounter = meterRegistry.counter("audit_dedupe_probable_duplicates_total");
+        this.falsePositiveCounter = meterRegistry.counter("audit_dedupe_false_positives_total");
+        this.duplicateSkippedCounter = meterRegistry.counter("audit_dedupe_duplicates_skipped_total");
+        // 观测到的误判率：新 requestId 中被判为“可能见过”的比例
+        meterRegistry.gauge("audit_dedupe_false_positive_rate", this, AuditDeduplicator::observedFalsePositiveRate);
+        meterRegistry.gauge("audit_dedupe_filter_bytes", this,
+                deduplicator -> deduplicator.filter == null ? 0 : deduplicator.filter.memoryBytes());
+    }
+
+    /**
+     * 去掉确认已落库的记录
+     *
+     * @return 需要写入的记录（顺序不变）
+     */
+    public List<QuotaAuditEntity> removeDuplicates(List<QuotaAuditEntity> records) {
+        if (filter == null || records.isEmpty()) {
+            return records;
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> probable = new ArrayList<>();
+        for (QuotaAuditEntity record : records) {
+            if (filter.mightContain(record.getRequestId(), now)) {
+                probable.add(record.getRequestId());
+            }
+        }
+        checkedCounter.increment(records.size());
+        lookupsSavedCounter.increment(records.size() - probable.size());
+        if (probable.isEmpty()) {
+            return records;
+        }
+
+        probableDuplicateCounter.increment(probable.size());
+        Set<String> existing = auditSink.findExistingRequestIds(probable);
+        falsePositiveCounter.increment(probable.size() - existing.size());
+        if (existing.isEmpty()) {
+            return records;
+        }
+
+        List<QuotaAuditEntity> fresh = new ArrayList<>(records.size() - existing.size());
+        for (QuotaAuditEntity record : records) {
+            if (!existing.contains(record.getRequestId())) {
+                fresh.add(record);
+            }
+        }
+        duplicateSkippedCounter.increment(records.size() - fresh.size());
+        return fresh;
+    }
+
+    /**
+     * 记录已落库的 requestId（写入成功后调用）
+     */
+    public void remember(List<QuotaAuditEntity> records) {
+        if (filter == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (QuotaAuditEntity record : records) {
+            filter.put(record.getRequestId(), now);
+        }
+    }
+
+    private double observedFalsePositiveRate() {
+        double falsePositives = falsePositiveCounter.count();
+        double fresh = lookupsSavedCounter.count() + falsePositives;
+        return fresh == 0 ? 0 : falsePositives / fresh;
+    }
+}
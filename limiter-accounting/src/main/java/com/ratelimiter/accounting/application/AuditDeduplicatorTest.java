@@ -0,0 +1,98 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuditDeduplicatorTest {
+
+    private final AuditSink auditSink = mock(AuditSink.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AuditDeduplicator deduplicator(boolean enabled) {
+        return new AuditDeduplicator(auditSink, meterRegistry, enabled, 24, 6, 10, 0.001, 4);
+    }
+
+    private static List<QuotaAuditEntity> records(String prefix, int count) {
+        List<QuotaAuditEntity> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(prefix + "-" + i);
+            records.add(entity);
+        }
+        return records;
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter(name).count();
+    }
+
+    // 未见过的 requestId 不查库
+    @Test
+    void shouldSkipLookupForNewRequestIds() {
+        AuditDeduplicator deduplicator = deduplicator(true);
+        List<QuotaAuditEntity> records = records("new", 1_000);
+
+        assertThat(deduplicator.removeDuplicates(records)).isSameAs(records);
+
+        verify(auditSink, never()).findExistingRequestIds(any());
+        assertThat(count("audit_dedupe_lookups_saved_total")).isEqualTo(1_000);
+    }
+
+    // 重投的记录回查确认后丢弃，只写入新记录
+    @Test
+    void shouldDropConfirmedDuplicates() {
+        AuditDeduplicator deduplicator = deduplicator(true);
+        List<QuotaAuditEntity> written = records("a", 100);
+        deduplicator.remember(written);
+        when(auditSink.findExistingRequestIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return Set.copyOf(ids);
+        });
+
+        List<QuotaAuditEntity> redelivered = new ArrayList<>(written);
+        redelivered.addAll(records("b", 50));
+        List<QuotaAuditEntity> fresh = deduplicator.removeDuplicates(redelivered);
+
+        assertThat(fresh).extracting(QuotaAuditEntity::getRequestId).allMatch(id -> id.startsWith("b-"));
+        assertThat(fresh).hasSize(50);
+        assertThat(count("audit_dedupe_duplicates_skipped_total")).isEqualTo(100);
+    }
+
+    // 过滤器误判（库里不存在）的记录照常写入
+    @Test
+    void shouldKeepFalsePositives() {
+        AuditDeduplicator deduplicator = deduplicator(true);
+        List<QuotaAuditEntity> records = records("lost", 20);
+        deduplicator.remember(records);
+        // 模拟写入后未落库（例如事务回滚）：过滤器命中但数据库没有
+        when(auditSink.findExistingRequestIds(anyCollection())).thenReturn(Set.of());
+
+        assertThat(deduplicator.removeDuplicates(records)).hasSize(20);
+        assertThat(count("audit_dedupe_false_positives_total")).isEqualTo(20);
+    }
+
+    // 关闭时原样返回
+    @Test
+    void shouldPassThroughWhenDisabled() {
+        AuditDeduplicator deduplicator = deduplicator(false);
+        List<QuotaAuditEntity> records = records("a", 10);
+        deduplicator.remember(records);
+
+        assertThat(deduplicator.removeDuplicates(records)).isSameAs(records);
+        verify(auditSink, never()).findExistingRequestIds(any());
+    }
+}
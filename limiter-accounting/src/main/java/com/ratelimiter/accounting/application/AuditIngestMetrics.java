@@ -0,0 +1,126 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 审计摄取链路的指标（Kafka 拉取 → 写入缓冲 → 数据库 → 位移提交）
+ *
+ * 消费滞后由 Kafka 客户端指标给出（kafka_consumer_fetch_manager_records_lag，见 KafkaConsumerConfig），
+ * 这里补充客户端看不到的部分：已拉取未落库的在途记录、语句级写入耗时、事件从产生到位移提交的端到端时延。
+ * 去重命中率与重试 / 死信数量见 audit_dedupe_* 与 audit_events_forwarded_total
+ */
+@Component
+public class AuditIngestMetrics {
+
+    /**
+     * 语句行数分档（上界），按档位打 rows 标签：同一耗时直方图里混合 1 行和 1000 行的语句没有意义
+     */
+    private static final int[] STATEMENT_ROW_BOUNDS = {1, 10, 100, 500, 1000, 5000};
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary pollRecords;
+    private final Timer eventAge;
+    private final Counter flushRetries;
+    private final Timer[] insertTimers;
+    private final Map<TopicPartition, Gauge> inFlightGauges = new ConcurrentHashMap<>();
+
+    public AuditIngestMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.pollRecords = DistributionSummary.builder("audit_ingest_poll_records")
+                .description("Records returned by one poll of quota-events")
+                .serviceLevelObjectives(1, 10, 50, 100, 250, 500, 1000)
+                .register(meterRegistry);
+        this.eventAge = Timer.builder("audit_event_age")
+                .description("Time from QuotaConsumedEvent.timestamp until its offset is committed")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry);
+        this.flushRetries = Counter.builder("audit_flush_retries_total")
+                .description("Audit flushes retried after a storage failure")
+                .register(meterRegistry);
+
+        this.insertTimers = new Timer[STATEMENT_ROW_BOUNDS.length + 1];
+        for (int i = 0; i <= STATEMENT_ROW_BOUNDS.length; i++) {
+            String rows = i < STATEMENT_ROW_BOUNDS.length
+                    ? "le_" + STATEMENT_ROW_BOUNDS[i]
+                    : "gt_" + STATEMENT_ROW_BOUNDS[STATEMENT_ROW_BOUNDS.length - 1];
+            insertTimers[i] = Timer.builder("audit_insert")
+                    .description("Latency of one multi-row INSERT into quota_audit")
+                    .tag("rows", rows)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry);
+        }
+    }
+
+    public void recordPoll(int records) {
+        pollRecords.record(records);
+    }
+
+    /**
+     * 计时一条写入语句
+     */
+    public <T> T timeInsert(int rows, Supplier<T> statement) {
+        return insertTimers[rowBucket(rows)].record(statement);
+    }
+
+    static int rowBucket(int rows) {
+        for (int i = 0; i < STATEMENT_ROW_BOUNDS.length; i++) {
+            if (rows <= STATEMENT_ROW_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return STATEMENT_ROW_BOUNDS.length;
+    }
+
+    /**
+     * 记录位移即将提交的一批事件的端到端时延（缺少时间戳的跳过，时钟偏差导致的负值按 0 计）
+     */
+    public void recordCommitted(List<QuotaAuditEntity> records, long nowMillis) {
+        for (QuotaAuditEntity record : records) {
+            Long timestamp = record.getTimestamp();
+            if (timestamp != null) {
+                eventAge.record(Math.max(0, nowMillis - timestamp), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public void flushRetried() {
+        flushRetries.increment();
+    }
+
+    /**
+     * 分区 lane 打开时注册在途记录数（已拉取、未落库）；分区回收后注销，避免残留已不属于本实例的分区
+     */
+    public void trackInFlight(TopicPartition partition, Supplier<Number> inFlightRecords) {
+        inFlightGauges.computeIfAbsent(partition, tp -> Gauge.builder("audit_buffer_in_flight_records", inFlightRecords)
+                .description("Audit records received but not yet durable, per partition")
+                .tag("topic", tp.topic())
+                .tag("partition", String.valueOf(tp.partition()))
+                .strongReference(true)
+                .register(meterRegistry));
+    }
+
+    public void untrackInFlight(TopicPartition partition) {
+        Gauge gauge = inFlightGauges.remove(partition);
+        if (gauge != null) {
+            meterRegistry.remove(gauge);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.ratelimiter.accounting.application;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.AuditShardRouter;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.constant.ErrorCode;
+import com.ratelimiter.common.web.dto.accounting.AuditPageResponse;
+import com.ratelimiter.common.web.dto.accounting.AuditRecordResponse;
+import com.ratelimiter.common.web.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 审计记录查询（quota_audit，sink=mysql 时启用）
+ *
+ * 不用 OFFSET 分页：大租户翻到后面的页时 OFFSET 要先扫过前面所有行。
+ * 改为按 (timestamp, id) 的键集游标，每页从 idx_tenant_timestamp 上的游标位置开始读 size 行；
+ * 全量导出走服务端游标逐行写出 NDJSON，内存占用与行数无关。
+ * 分表时按租户的查询只访问租户所在的分表，按 requestId 的查询逐表查找
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.accounting.sink", havingValue = "mysql", matchIfMissing = true)
+public class AuditQueryService {
+
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+
+    private final QuotaAuditMapper auditMapper;
+    private final AuditShardRouter shardRouter;
+    private final ObjectWriter recordWriter;
+    private final int maxPageSize;
+    private final Semaphore exportPermits;
+
+    public AuditQueryService(QuotaAuditMapper auditMapper,
+                             AuditShardRouter shardRouter,
+                             ObjectMapper objectMapper,
+                             @Value("${app.accounting.audit-query.max-page-size:1000}") int maxPageSize,
+                             @Value("${app.accounting.audit-query.max-concurrent-exports:2}") int maxConcurrentExports) {
+        this.auditMapper = auditMapper;
+        this.shardRouter = shardRouter;
+        this.recordWriter = objectMapper.writerFor(AuditRecordResponse.class);
+        this.maxPageSize = maxPageSize;
+        this.exportPermits = new Semaphore(maxConcurrentExports);
+    }
+
+    /**
+     * 导出占用的并发名额（每个导出在整个传输期间占用一个数据库连接），传输结束后关闭
+     */
+    public interface ExportPermit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 查询一页审计记录
+     *
+     * @param cursor 上一页返回的 nextCursor，首页为 null
+     */
+    public AuditPageResponse query(String tenantId, String resourceKey, Boolean allowed,
+                                   long from, long to, String cursor, int size) {
+        validateRange(tenantId, from, to);
+        if (size <= 0 || size > maxPageSize) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "size must be between 1 and " + maxPageSize,
+                    Map.of("size", size));
+        }
+        AuditCursor after = cursor == null || cursor.isEmpty() ? null : AuditCursor.decode(cursor);
+
+        // 多取一行判断是否还有下一页
+        List<QuotaAuditEntity> rows = shardRouter.on(shardRouter.tableOf(tenantId), () -> auditMapper.selectAfter(
+                tenantId, resourceKey, allowed, from, to,
+                after != null ? after.timestamp() : null, after != null ? after.id() : null, size + 1));
+        boolean hasMore = rows.size() > size;
+        if (hasMore) {
+            rows = rows.subList(0, size);
+        }
+
+        List<AuditRecordResponse> content = new ArrayList<>(rows.size());
+        rows.forEach(row -> content.add(toResponse(row)));
+        String nextCursor = null;
+        if (hasMore) {
+            QuotaAuditEntity last = rows.get(rows.size() - 1);
+            nextCursor = new AuditCursor(last.getTimestamp(), last.getId()).encode();
+        }
+        return new AuditPageResponse(content, content.size(), nextCursor);
+    }
+
+    /**
+     * 按 requestId 查询审计记录
+     * 写入时按 requestId 认领，同一 requestId 只有一行；认领记录清理后复用 requestId 的重试可能留下多行，返回最早的一条
+     */
+    public AuditRecordResponse getByRequestId(String requestId) {
+        for (String table : shardRouter.tables()) {
+            List<QuotaAuditEntity> rows = shardRouter.on(table, () -> auditMapper.selectList(
+                    new LambdaQueryWrapper<QuotaAuditEntity>()
+                            .eq(QuotaAuditEntity::getRequestId, requestId)
+                            .orderByAsc(QuotaAuditEntity::getTimestamp)
+                            .last("LIMIT 1")));
+            if (!rows.isEmpty()) {
+                return toResponse(rows.get(0));
+            }
+        }
+        throw new BusinessException(ErrorCode.AUDIT_RECORD_NOT_FOUND,
+                "Audit record not found: " + requestId, Map.of("requestId", requestId));
+    }
+
+    /**
+     * 在开始传输（响应状态提交）前校验参数并占用导出名额，名额用尽时拒绝（而不是排队占住 HTTP 线程）
+     */
+    public ExportPermit acquireExportPermit(String tenantId, long from, long to) {
+        validateRange(tenantId, from, to);
+        if (!exportPermits.tryAcquire()) {
+            throw new BusinessException(ErrorCode.AUDIT_EXPORT_BUSY);
+        }
+        return exportPermits::release;
+    }
+
+    /**
+     * 按 (timestamp, id) 升序把范围内的记录逐行写成 NDJSON（每行一个 JSON 对象）
+     *
+     * @return 写出的行数
+     */
+    public long export(String tenantId, String resourceKey, Boolean allowed, long from, long to,
+                       OutputStream out) throws IOException {
+        validateRange(tenantId, from, to);
+        BufferedOutputStream buffered = new BufferedOutputStream(out, EXPORT_BUFFER_BYTES);
+        long[] exported = new long[1];
+        long started = System.currentTimeMillis();
+        try {
+            shardRouter.on(shardRouter.tableOf(tenantId), () -> {
+                auditMapper.streamRange(tenantId, resourceKey, allowed, from, to, context -> {
+                    try {
+                        buffered.write(recordWriter.writeValueAsBytes(toResponse(context.getResultObject())));
+                        buffered.write(NEWLINE);
+                        exported[0]++;
+                    } catch (IOException e) {
+                        // 客户端断开：抛出以中止查询、释放游标
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // MyBatis 把 handler 抛出的异常包装成 PersistenceException / MyBatisSystemException
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException ioException) {
+                    throw ioException.getCause();
+                }
+            }
+            throw e;
+        }
+        buffered.flush();
+        log.info("Exported {} audit records for tenant {} in [{}, {}) in {} ms",
+                exported[0], tenantId, from, to, System.currentTimeMillis() - started);
+        return exported[0];
+    }
+
+    private static AuditRecordResponse toResponse(QuotaAuditEntity entity) {
+        return new AuditRecordResponse(entity.getRequestId(), entity.getTenantId(), entity.getResourceKey(),
+                entity.getTokens(), entity.getAllowed(), entity.getRemaining(), entity.getReason(),
+                entity.getPolicyVersion(), entity.getClientIp(), entity.getUserAgent(), entity.getLatencyMs(),
+                entity.getTimestamp());
+    }
+
+    private static void validateRange(String tenantId, long from, long to) {
+        if (tenantId == null || tenantId.isBlank()) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "tenantId is required");
+        }
+        if (from >= to) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "from must be earlier than to",
+                    Map.of("from", from, "to", to));
+        }
+    }
+}
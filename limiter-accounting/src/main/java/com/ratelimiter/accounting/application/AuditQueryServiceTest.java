@@ -0,0 +1,145 @@
+package com.ratelimiter.accounting.application;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditRequestMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.constant.ErrorCode;
+import com.ratelimiter.common.web.dto.accounting.AuditPageResponse;
+import com.ratelimiter.common.web.dto.accounting.AuditRecordResponse;
+import com.ratelimiter.common.web.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 审计查询（H2 MySQL 兼容模式）：键集分页逐页遍历不重不漏（含同一时间戳跨页），NDJSON 导出行数与范围一致
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class AuditQueryServiceTest {
+
+    private static final long BASE = 1_700_000_000_000L;
+    private static final int RECORDS = 1_000;
+
+    @Autowired
+    private AuditService auditService;
+
+    @Autowired
+    private QuotaAuditRequestMapper requestMapper;
+
+    @Autowired
+    private AuditQueryService auditQueryService;
+
+    @BeforeEach
+    void setUp() {
+        auditService.remove(new QueryWrapper<>());
+        requestMapper.delete(new QueryWrapper<>());
+
+        // 每 10 条共用一个时间戳，页边界会落在同一时间戳中间；每 4 条一条拒绝，另有一个租户的干扰数据
+        List<QuotaAuditEntity> records = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(record("req-" + i, "tenant_001", i % 4 != 0, BASE + (i / 10) * 1_000L));
+            records.add(record("other-" + i, "tenant_002", true, BASE + (i / 10) * 1_000L));
+        }
+        auditService.insertIgnore(records, 500);
+    }
+
+    private static QuotaAuditEntity record(String requestId, String tenantId, boolean allowed, long timestamp) {
+        QuotaAuditEntity entity = new QuotaAuditEntity();
+        entity.setRequestId(requestId);
+        entity.setTenantId(tenantId);
+        entity.setResourceKey("/api/v1/orders");
+        entity.setTokens(1L);
+        entity.setAllowed(allowed);
+        entity.setTimestamp(timestamp);
+        return entity;
+    }
+
+    private List<String> readAllPages(Boolean allowed, long from, long to, int size) {
+        List<String> requestIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            AuditPageResponse page = auditQueryService.query("tenant_001", null, allowed, from, to, cursor, size);
+            assertThat(page.getContent().size()).isLessThanOrEqualTo(size);
+            page.getContent().forEach(record -> requestIds.add(record.getRequestId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return requestIds;
+    }
+
+    @Test
+    void shouldPageThroughRangeWithoutGapsOrDuplicates() {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            expected.add("req-" + i);
+        }
+
+        assertThat(readAllPages(null, BASE, BASE + RECORDS * 100L, 7)).isEqualTo(expected);
+        assertThat(readAllPages(null, BASE, BASE + RECORDS * 100L, 1_000)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldApplyFiltersAndHalfOpenRange() {
+        // [BASE + 10s, BASE + 20s)：第 100..199 条
+        List<String> allowed = readAllPages(true, BASE + 10_000L, BASE + 20_000L, 13);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 100; i < 200; i++) {
+            if (i % 4 != 0) {
+                expected.add("req-" + i);
+            }
+        }
+        assertThat(allowed).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldRejectMalformedCursor() {
+        assertThatThrownBy(() -> auditQueryService.query("tenant_001", null, null, BASE, BASE + 1, "not-a-cursor", 10))
+                .isInstanceOf(BusinessException.class)
+                .extracting(e -> ((BusinessException) e).getErrorCode())
+                .isEqualTo(ErrorCode.INVALID_ARGUMENT);
+    }
+
+    @Test
+    void shouldFindRecordByRequestId() {
+        AuditRecordResponse record = auditQueryService.getByRequestId("req-42");
+        assertThat(record.getTenantId()).isEqualTo("tenant_001");
+        assertThat(record.getTimestamp()).isEqualTo(BASE + 4_000L);
+
+        // 复用 requestId 的重试带新的 timestamp：requestId 已被认领，不写入第二行
+        assertThat(auditService.insertIgnore(List.of(record("req-42", "tenant_001", true, BASE + 9_000L)), 500)).isZero();
+        assertThat(auditService.lambdaQuery().eq(QuotaAuditEntity::getRequestId, "req-42").count()).isEqualTo(1);
+        assertThat(auditQueryService.getByRequestId("req-42").getTimestamp()).isEqualTo(BASE + 4_000L);
+
+        assertThatThrownBy(() -> auditQueryService.getByRequestId("missing"))
+                .isInstanceOf(BusinessException.class)
+                .extracting(e -> ((BusinessException) e).getErrorCode())
+                .isEqualTo(ErrorCode.AUDIT_RECORD_NOT_FOUND);
+    }
+
+    @Test
+    void shouldExportRangeAsNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported;
+        try (AuditQueryService.ExportPermit permit =
+                     auditQueryService.acquireExportPermit("tenant_001", BASE, BASE + RECORDS * 100L)) {
+            exported = auditQueryService.export("tenant_001", null, false, BASE, BASE + RECORDS * 100L, out);
+        }
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(exported).isEqualTo(RECORDS / 4);
+        assertThat(lines).hasSize(RECORDS / 4);
+        assertThat(lines[0]).startsWith("{\"requestId\":\"req-0\",").contains("\"allowed\":false");
+        assertThat(lines[lines.length - 1]).contains("\"requestId\":\"req-996\"");
+    }
+}
@@ -2,22 +2,301 @@ package com.ratelimiter.accounting.application;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditRequestMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.AuditShardRouter;
 import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework. stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class AuditService extends ServiceImpl<QuotaAuditMapper, QuotaAuditEntity> {
 
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+    // 影响行数少于提交行数、回查确有缺失时的最多写入次数
+    private static final int SHORTFALL_ATTEMPTS = 3;
+
+    private final AuditShardRouter shardRouter;
+    private final QuotaAuditRequestMapper requestMapper;
+    private final AuditIngestMetrics metrics;
+    // 分表写入线程池，不分表时为 null
+    private final ExecutorService shardWriterPool;
+
+    public AuditService(AuditShardRouter shardRouter,
+                        QuotaAuditRequestMapper requestMapper,
+                        AuditIngestMetrics metrics,
+                        @Value("${app.accounting.shard.writer-threads:8}") int shardWriterThreads) {
+        this.shardRouter = shardRouter;
+        this.requestMapper = requestMapper;
+        this.metrics = metrics;
+        if (shardRouter.isSharded()) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.shardWriterPool = Executors.newFixedThreadPool(
+                    Math.min(shardWriterThreads, shardRouter.tables().size()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "audit-shard-writer-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        } else {
+            this.shardWriterPool = null;
+        }
+    }
+
     /**
-     * 批量插入审计记录
-     * MyBatis-Plus 的 saveBatch 已优化为批量插入
+     * 幂等批量写入审计记录（多行 INSERT IGNORE，按 request_id 去重）
+     * 不做预查询：先在 quota_audit_request 中认领 requestId，再写入认领到的记录，
+     * 没有冲突时每 chunkSize 行只多一次往返
+     * 分表时按租户拆到各分表，各分表并行写入
      *
      * @param records 审计记录列表
-     * @param batchSize 每批大小（如 1000）
+     * @param chunkSize 每条 INSERT 语句的最大行数（12 列 × chunkSize 不能超过 65535 个占位符）
+     * @return 实际插入的行数
+     */
+    public int insertIgnore(List<QuotaAuditEntity> records, int chunkSize) {
+        if (!shardRouter.isSharded()) {
+            return insertChunks(records, chunkSize);
+        }
+        Map<String, List<QuotaAuditEntity>> recordsByTable = new LinkedHashMap<>();
+        for (QuotaAuditEntity record : records) {
+            recordsByTable.computeIfAbsent(shardRouter.tableOf(record.getTenantId()), table -> new ArrayList<>())
+                    .add(record);
+        }
+        return insertIgnore(recordsByTable, chunkSize);
+    }
+
+    /**
+     * 把已按物理表分好的记录并行写入各表（只涉及一张表时在调用线程内写入）
+     *
+     * 任一分表失败时等其余分表写完再抛出：有基础设施故障时抛基础设施故障（调用方整批重试），
+     * 否则抛记录级失败（调用方二分隔离）；已写入的分表由认领表与 uk_request_id 去重，重试不会重复
+     */
+    int insertIgnore(Map<String, List<QuotaAuditEntity>> recordsByTable, int chunkSize) {
+        if (recordsByTable.size() == 1) {
+            Map.Entry<String, List<QuotaAuditEntity>> only = recordsByTable.entrySet().iterator().next();
+            return shardRouter.on(only.getKey(), () -> insertChunks(only.getValue(), chunkSize));
+        }
+
+        List<Future<Integer>> futures = new ArrayList<>(recordsByTable.size());
+        recordsByTable.forEach((table, tableRecords) -> futures.add(shardWriterPool.submit(
+                () -> shardRouter.on(table, () -> insertChunks(tableRecords, chunkSize)))));
+
+        int inserted = 0;
+        RuntimeException failure = null;
+        for (Future<Integer> future : futures) {
+            try {
+                inserted += future.get();
+            } catch (ExecutionException e) {
+                failure = preferInfrastructureFailure(failure, e.getCause());
+            } catch (InterruptedException e) {
+                futures.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new TransientDataAccessResourceException("Interrupted while writing audit shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return inserted;
+    }
+
+    private int insertChunks(List<QuotaAuditEntity> records, int chunkSize) {
+        int inserted = 0;
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<QuotaAuditEntity> chunk = claim(records.subList(from, Math.min(from + chunkSize, records.size())));
+            if (!chunk.isEmpty()) {
+                inserted += insertVerified(chunk);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * 写入一块记录并核对影响行数：少于提交行数时按 (request_id, timestamp) 回查，缺失的记录重新写入
+     *
+     * 影响行数不足通常是重投的记录被 uk_request_id 忽略；但部分数据库（如 H2）并发写同一张表时，
+     * 会把写写冲突也当作“忽略”，行实际没有写入。重写 SHORTFALL_ATTEMPTS 次后仍缺失时抛基础设施故障，
+     * 调用方整批退避重试，位移不会越过未落库的记录
      */
-    public boolean batchInsert(List<QuotaAuditEntity> records, int batchSize) {
-        return this.saveBatch(records, batchSize);
+    private int insertVerified(List<QuotaAuditEntity> chunk) {
+        int inserted = 0;
+        List<QuotaAuditEntity> pending = chunk;
+        for (int attempt = 1; ; attempt++) {
+            List<QuotaAuditEntity> batch = pending;
+            int affected = metrics.timeInsert(batch.size(), () -> baseMapper.insertIgnoreBatch(batch));
+            inserted += affected;
+            if (affected == batch.size()) {
+                return inserted;
+            }
+            pending = missing(batch);
+            if (pending.isEmpty()) {
+                return inserted;
+            }
+            if (attempt == SHORTFALL_ATTEMPTS) {
+                throw new TransientDataAccessResourceException(pending.size() + " audit rows still missing after "
+                        + attempt + " inserts, first requestId=" + pending.get(0).getRequestId());
+            }
+        }
+    }
+
+    /**
+     * @return records 中在当前表里没有 (request_id, timestamp) 相同的行的记录
+     */
+    private List<QuotaAuditEntity> missing(List<QuotaAuditEntity> records) {
+        Set<String> written = new HashSet<>();
+        lambdaQuery()
+                .select(QuotaAuditEntity::getRequestId, QuotaAuditEntity::getTimestamp)
+                .in(QuotaAuditEntity::getRequestId, records.stream().map(QuotaAuditEntity::getRequestId).toList())
+                .list()
+                .forEach(entity -> written.add(entity.getRequestId() + '@' + entity.getTimestamp()));
+        List<QuotaAuditEntity> missing = new ArrayList<>();
+        for (QuotaAuditEntity record : records) {
+            if (!written.contains(record.getRequestId() + '@' + record.getTimestamp())) {
+                missing.add(record);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 在 quota_audit_request 中认领 requestId，返回应写入 quota_audit 的记录（批内重复只保留第一条）
+     *
+     * quota_audit 按 timestamp 分区，uk_request_id 只能是 (request_id, timestamp)，挡不住复用 requestId、
+     * 带新 timestamp 的客户端重试；认领表不分区，以 request_id 为主键并保存首次写入的 timestamp。
+     * 全部认领成功时直接返回；有冲突时回查认领行：timestamp 相同的是同一事件重投或写入失败后的重试，
+     * 照常写入（已落库的由 uk_request_id 忽略），不同的是同一 requestId 的另一次决策，跳过；
+     * 回查不到认领行的（影响行数不足但实际未写入，见 {@link #insertVerified}）重新认领
+     */
+    private List<QuotaAuditEntity> claim(List<QuotaAuditEntity> chunk) {
+        Map<String, QuotaAuditEntity> firstByRequestId = new LinkedHashMap<>();
+        for (QuotaAuditEntity record : chunk) {
+            if (record.getRequestId() == null || record.getTimestamp() == null) {
+                // 缺少认领键的记录无法去重，按记录级失败隔离（MySQL 的 INSERT IGNORE 会把 NULL 静默写成默认值）
+                throw new DataIntegrityViolationException(
+                        "Columns request_id and timestamp cannot be null, requestId=" + record.getRequestId());
+            }
+            firstByRequestId.putIfAbsent(record.getRequestId(), record);
+        }
+
+        List<QuotaAuditEntity> owned = new ArrayList<>(firstByRequestId.size());
+        List<QuotaAuditEntity> pending = new ArrayList<>(firstByRequestId.values());
+        for (int attempt = 1; ; attempt++) {
+            if (requestMapper.insertIgnoreBatch(pending) == pending.size()) {
+                owned.addAll(pending);
+                return owned;
+            }
+
+            Map<String, Long> claimed = new HashMap<>();
+            requestMapper.selectByRequestIds(pending.stream().map(QuotaAuditEntity::getRequestId).toList())
+                    .forEach(request -> claimed.put(request.getRequestId(), request.getTimestamp()));
+            List<QuotaAuditEntity> unclaimed = new ArrayList<>();
+            for (QuotaAuditEntity record : pending) {
+                Long claimedTimestamp = claimed.get(record.getRequestId());
+                if (claimedTimestamp == null) {
+                    unclaimed.add(record);
+                } else if (claimedTimestamp.equals(record.getTimestamp())) {
+                    owned.add(record);
+                }
+            }
+            if (unclaimed.isEmpty()) {
+                return owned;
+            }
+            if (attempt == SHORTFALL_ATTEMPTS) {
+                throw new TransientDataAccessResourceException(unclaimed.size() + " audit request claims still "
+                        + "missing after " + attempt + " inserts, first requestId=" + unclaimed.get(0).getRequestId());
+            }
+            pending = unclaimed;
+        }
+    }
+
+    /**
+     * 分批删除 timestamp 早于 before 的 requestId 认领记录
+     *
+     * @return 删除的行数
+     */
+    public long purgeRequestClaims(long before, int chunkSize) {
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = requestMapper.deleteExpired(before, chunkSize);
+            purged += deleted;
+        } while (deleted == chunkSize);
+        return purged;
+    }
+
+    private static RuntimeException preferInfrastructureFailure(RuntimeException current, Throwable next) {
+        if (next instanceof Error error) {
+            throw error;
+        }
+        RuntimeException failure = next instanceof RuntimeException runtime ? runtime : new IllegalStateException(next);
+        if (current == null) {
+            return failure;
+        }
+        if (isRecordLevelFailure(current) && !isRecordLevelFailure(failure)) {
+            failure.addSuppressed(current);
+            return failure;
+        }
+        current.addSuppressed(failure);
+        return current;
+    }
+
+    /**
+     * 查询已存在的 requestId（只用于回查布隆过滤器判定为“可能重复”的少量记录）
+     * 分表时 requestId 不携带租户，逐表回查
+     */
+    public Set<String> findExistingRequestIds(Collection<String> requestIds) {
+        Set<String> existing = new HashSet<>();
+        List<String> ids = new ArrayList<>(requestIds);
+        for (String table : shardRouter.tables()) {
+            shardRouter.on(table, () -> {
+                for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+                    List<String> chunk = ids.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, ids.size()));
+                    lambdaQuery()
+                            .select(QuotaAuditEntity::getRequestId)
+                            .in(QuotaAuditEntity::getRequestId, chunk)
+                            .list()
+                            .forEach(entity -> existing.add(entity.getRequestId()));
+                }
+                return null;
+            });
+            ids.removeAll(existing);
+            if (ids.isEmpty()) {
+                break;
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 判断写入失败是否由数据本身引起（约束 / 截断 / 类型错误等，重试同样的数据必然再失败）
+     *
+     * 这类失败按记录隔离后转入重试 topic；其他数据库异常（连接、超时、锁等待）视为基础设施故障，原地退避重试
+     */
+    public static boolean isRecordLevelFailure(Throwable e) {
+        return e instanceof DataIntegrityViolationException || !(e instanceof DataAccessException);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (shardWriterPool != null) {
+            shardWriterPool.shutdownNow();
+        }
     }
-}
\ No newline at end of file
+}
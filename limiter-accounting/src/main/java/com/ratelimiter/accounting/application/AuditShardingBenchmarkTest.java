@@ -0,0 +1,145 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.AuditShardRouter;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.dto.accounting.AuditPageResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 审计按租户分表（H2 MySQL 兼容模式，8 张分表）
+ *
+ * 验证写入、去重回查、按租户查询都透明地路由到租户所在的分表，
+ * 并输出 10 万条记录在 1 / 2 / 4 / 8 张分表上并行写入的吞吐（H2 只反映趋势，绝对值以 MySQL 实测为准）
+ */
+@SpringBootTest(properties = "app.accounting.shard.count=" + AuditShardingBenchmarkTest.SHARDS)
+@ActiveProfiles("test")
+public class AuditShardingBenchmarkTest {
+
+    static final int SHARDS = 8;
+    private static final int TENANTS = 64;
+    private static final long BASE = 1_700_000_000_000L;
+
+    @Autowired
+    private AuditService auditService;
+
+    @Autowired
+    private AuditQueryService auditQueryService;
+
+    @Autowired
+    private AuditShardRouter shardRouter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // 与 schema-h2.sql 中的 quota_audit 相同；H2 的约束 / 索引名全库唯一，按表加后缀
+        for (int shard = 0; shard < SHARDS; shard++) {
+            String table = String.format("quota_audit_%02d", shard);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, request_id VARCHAR(64) NOT NULL, " +
+                    "tenant_id VARCHAR(64) NOT NULL, resource_key VARCHAR(128) NOT NULL, tokens BIGINT NOT NULL, " +
+                    "allowed BOOLEAN NOT NULL, remaining BIGINT, reason VARCHAR(128), policy_version VARCHAR(32), " +
+                    "client_ip VARCHAR(64), user_agent VARCHAR(256), latency_ms INT, `timestamp` BIGINT NOT NULL, " +
+                    "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "CONSTRAINT uk_request_id_" + shard + " UNIQUE (request_id, `timestamp`))");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_tenant_timestamp_" + shard +
+                    " ON " + table + " (tenant_id, `timestamp`)");
+            jdbcTemplate.execute("TRUNCATE TABLE " + table);
+        }
+        jdbcTemplate.execute("TRUNCATE TABLE quota_audit_request");
+    }
+
+    private static List<QuotaAuditEntity> records(String prefix, int count) {
+        List<QuotaAuditEntity> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(prefix + "-" + i);
+            entity.setTenantId(String.format("tenant_%03d", i % TENANTS));
+            entity.setResourceKey("/api/v1/orders");
+            entity.setTokens(1L);
+            entity.setAllowed(i % 10 != 0);
+            entity.setReason(i % 10 != 0 ? null : "quota_exceeded");
+            entity.setPolicyVersion("v1");
+            entity.setTimestamp(BASE + i);
+            records.add(entity);
+        }
+        return records;
+    }
+
+    private long rows(String table, String tenantId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE tenant_id = ?",
+                Long.class, tenantId);
+    }
+
+    @Test
+    void shouldRouteWritesLookupsAndQueriesByTenant() {
+        List<QuotaAuditEntity> records = records("route", 6_400);
+        assertThat(auditService.insertIgnore(records, 500)).isEqualTo(6_400);
+        // 重投：各分表的 uk_request_id 照常去重
+        assertThat(auditService.insertIgnore(records, 500)).isZero();
+
+        // 每个租户的记录只在它所在的分表中；64 个租户应分布到全部 8 张表
+        long usedTables = shardRouter.tables().stream()
+                .filter(table -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class) > 0)
+                .count();
+        assertThat(usedTables).isEqualTo(SHARDS);
+        for (int tenant = 0; tenant < TENANTS; tenant++) {
+            String tenantId = String.format("tenant_%03d", tenant);
+            String home = shardRouter.tableOf(tenantId);
+            for (String table : shardRouter.tables()) {
+                assertThat(rows(table, tenantId)).isEqualTo(table.equals(home) ? 100L : 0L);
+            }
+        }
+
+        AuditPageResponse page = auditQueryService.query("tenant_007", null, null, BASE, BASE + 6_400, null, 1_000);
+        assertThat(page.getContent()).hasSize(100);
+        assertThat(page.getContent()).allMatch(record -> record.getTenantId().equals("tenant_007"));
+        assertThat(auditQueryService.getByRequestId("route-6399").getTenantId()).isEqualTo("tenant_063");
+
+        assertThat(auditService.findExistingRequestIds(List.of("route-0", "route-4242", "route-63", "missing")))
+                .containsExactlyInAnyOrder("route-0", "route-4242", "route-63");
+    }
+
+    /**
+     * 同样的 10 万条记录按 n 张分表分组后写入（n = 1 时在调用线程写一张表，与不分表相同）
+     */
+    private long insert(List<QuotaAuditEntity> records, int shardCount) {
+        Map<String, List<QuotaAuditEntity>> recordsByTable = new LinkedHashMap<>();
+        for (QuotaAuditEntity record : records) {
+            int shard = AuditShardRouter.shardOf(record.getTenantId(), shardCount);
+            recordsByTable.computeIfAbsent(String.format("quota_audit_%02d", shard), table -> new ArrayList<>())
+                    .add(record);
+        }
+        long start = System.nanoTime();
+        assertThat(auditService.insertIgnore(recordsByTable, 1_000)).isEqualTo(records.size());
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    void benchmarkInsertThroughputByShardCount() {
+        List<QuotaAuditEntity> records = records("bench", 100_000);
+        // 预热：JIT 与 MyBatis 语句缓存
+        insert(records("warmup", 10_000), SHARDS);
+
+        for (int shardCount : new int[]{1, 2, 4, 8}) {
+            setUp();
+            long elapsed = insert(records, shardCount);
+            System.out.printf("shards=%d insert %d rows: %d ms, %.0f rows/s%n", shardCount, records.size(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), records.size() * 1e9 / Math.max(elapsed, 1));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 审计记录的存储后端
+ *
+ * 由 app.accounting.sink 选择：mysql（默认，quota_audit 行存 + INSERT IGNORE）/ clickhouse（列存 MergeTree）。
+ * 异常约定与 Spring DAO 一致：数据本身无法写入抛 DataIntegrityViolationException（调用方按记录隔离），
+ * 后端不可用抛其他 DataAccessException（调用方原地退避重试），见 {@link AuditService#isRecordLevelFailure}
+ */
+public interface AuditSink {
+
+    /**
+     * 幂等写入：同一 requestId 重复写入不会产生重复的审计记录（包括复用 requestId、带新 timestamp 的客户端重试）
+     *
+     * @return 新写入的行数（后端无法区分时返回提交的行数）
+     */
+    int write(List<QuotaAuditEntity> records);
+
+    /**
+     * @return 给定 requestId 中已写入的部分（用于布隆过滤器的“可能重复”回查）
+     */
+    Set<String> findExistingRequestIds(Collection<String> requestIds);
+}
@@ -0,0 +1,485 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按分区流水线化的审计写入缓冲
+ *
+ * 每个分区一条 lane：监听线程把 poll 按分区拆开追加到各自的 lane 后立即返回继续拉取；
+ * lane 攒满 maxBatchRecords 或最早一条等待超过 flushIntervalMillis 时切出写入任务。
+ * 同一 lane 的任务严格串行（分区内有序），不同 lane 在写入线程池上并行，
+ * 线程数随分配到的分区数伸缩（上限 maxWriterThreads）。
+ *
+ * 至少一次语义：任务落库后 lane 的 durable 位移推进到任务内最后一个完整 poll 的下一个位移，
+ * 监听线程通过 {@link #drainCommittable} 取出并按分区提交（位移只会在对应行持久化后提交）。
+ * 存储故障时任务按指数退避重试（写入幂等）；记录级失败（坏数据）按记录隔离，
+ * 出错的记录转交 {@link RejectedAuditRecordHandler}（重试 / 死信 topic），不阻塞分区。
+ * lane 在途记录超过 maxLaneRecords 时报告过载，由监听方暂停该分区，降到一半以下后恢复。
+ * 位移被取出提交时记录其中事件的端到端时延（{@link AuditIngestMetrics}）。
+ */
+@Slf4j
+@Component
+public class AuditWriteBuffer {
+
+    private final AuditSink auditSink;
+    private final AuditDeduplicator deduplicator;
+    private final RejectedAuditRecordHandler rejectedRecordHandler;
+    private final AuditIngestMetrics metrics;
+    private final int maxBatchRecords;
+    private final long flushIntervalMillis;
+    private final int maxLaneRecords;
+    private final int maxWriterThreads;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final ThreadPoolExecutor writerPool;
+    private final ScheduledExecutorService flushTimer;
+
+    private final Map<TopicPartition, Lane> lanes = new ConcurrentHashMap<>();
+
+    // 停止接收新记录
+    private volatile boolean stopped;
+    // 停止重试（关闭超时）
+    private volatile boolean closing;
+
+    public AuditWriteBuffer(AuditSink auditSink,
+                            AuditDeduplicator deduplicator,
+                            RejectedAuditRecordHandler rejectedRecordHandler,
+                            AuditIngestMetrics metrics,
+                            @Value("${app.accounting.buffer.max-batch-records:5000}") int maxBatchRecords,
+                            @Value("${app.accounting.buffer.flush-interval-ms:200}") long flushIntervalMillis,
+                            @Value("${app.accounting.buffer.max-lane-records:20000}") int maxLaneRecords,
+                            @Value("${app.accounting.buffer.max-writer-threads:8}") int maxWriterThreads,
+                            @Value("${app.accounting.buffer.retry-backoff-ms:500}") long initialBackoffMillis,
+                            @Value("${app.accounting.buffer.retry-max-backoff-ms:10000}") long maxBackoffMillis) {
+        this.auditSink = auditSink;
+        this.deduplicator = deduplicator;
+        this.rejectedRecordHandler = rejectedRecordHandler;
+        this.metrics = metrics;
+        this.maxBatchRecords = maxBatchRecords;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxLaneRecords = maxLaneRecords;
+        this.maxWriterThreads = maxWriterThreads;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+
+        // 每条 lane 在线程池中最多一个任务，队列长度不会超过分区数
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.writerPool = new ThreadPoolExecutor(
+                1, 1,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "audit-writer-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-flush-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(10, flushIntervalMillis / 2);
+        flushTimer.scheduleWithFixedDelay(this::flushDueLanes, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 追加一个分区在本次 poll 中的记录
+     *
+     * @param partition 分区
+     * @param records 审计记录（按位移顺序）
+     * @param nextOffset 本批最后一条记录的位移 + 1，落库后即可提交
+     * @return lane 是否过载（调用方应暂停该分区）
+     */
+    public boolean submit(TopicPartition partition, List<QuotaAuditEntity> records, long nextOffset) {
+        if (stopped) {
+            throw new IllegalStateException("Audit write buffer is closed");
+        }
+        Lane lane = lanes.computeIfAbsent(partition, this::openLane);
+        List<FlushJob> ready = new ArrayList<>();
+        boolean overloaded;
+        synchronized (lane) {
+            if (lane.pending.isEmpty()) {
+                lane.pendingSince = System.currentTimeMillis();
+            }
+            lane.pending.addAll(records);
+            lane.pendingMarks.addLast(new OffsetMark(lane.pending.size(), nextOffset));
+            lane.inFlightRecords += records.size();
+
+            while (lane.pending.size() >= maxBatchRecords) {
+                ready.add(cutLocked(lane, maxBatchRecords));
+            }
+            overloaded = lane.inFlightRecords > maxLaneRecords;
+            if (overloaded) {
+                lane.paused = true;
+            }
+        }
+        ready.forEach(job -> enqueue(lane, job));
+        return overloaded;
+    }
+
+    /**
+     * 取出给定分区中已落库但尚未提交的位移（调用方负责提交）
+     *
+     * @param assignment 调用方消费者当前分配到的分区（只能提交自己拥有的分区）
+     */
+    public Map<TopicPartition, OffsetAndMetadata> drainCommittable(Collection<TopicPartition> assignment) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        List<List<QuotaAuditEntity>> committed = new ArrayList<>();
+        for (TopicPartition partition : assignment) {
+            Lane lane = lanes.get(partition);
+            if (lane == null) {
+                continue;
+            }
+            synchronized (lane) {
+                drainLocked(lane, offsets, committed);
+            }
+        }
+        recordCommitted(committed);
+        return offsets;
+    }
+
+    private static void drainLocked(Lane lane, Map<TopicPartition, OffsetAndMetadata> offsets,
+                                    List<List<QuotaAuditEntity>> committed) {
+        if (lane.durableOffset > lane.committedOffset) {
+            offsets.put(lane.partition, new OffsetAndMetadata(lane.durableOffset));
+            lane.committedOffset = lane.durableOffset;
+            committed.addAll(lane.committable);
+            lane.committable.clear();
+        }
+    }
+
+    private void recordCommitted(List<List<QuotaAuditEntity>> committed) {
+        long now = System.currentTimeMillis();
+        committed.forEach(records -> metrics.recordCommitted(records, now));
+    }
+
+    /**
+     * 取出之前过载、现已降到低水位以下的分区（调用方负责恢复拉取）
+     */
+    public Set<TopicPartition> drainResumable() {
+        Set<TopicPartition> resumable = new HashSet<>();
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                if (lane.paused && lane.inFlightRecords <= maxLaneRecords / 2) {
+                    lane.paused = false;
+                    resumable.add(lane.partition);
+                }
+            }
+        }
+        return resumable;
+    }
+
+    /**
+     * 分区被回收（再均衡）：立即写出缓冲中的记录，最多等待 timeoutMillis 落库，
+     * 返回这些分区可提交的位移并移除 lane；未落库的记录由新的分区所有者重新消费
+     */
+    public Map<TopicPartition, OffsetAndMetadata> revoke(Collection<TopicPartition> partitions, long timeoutMillis)
+            throws InterruptedException {
+        List<Lane> revoked = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            Lane lane = lanes.get(partition);
+            if (lane != null) {
+                flushNow(lane);
+                revoked.add(lane);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        List<List<QuotaAuditEntity>> committed = new ArrayList<>();
+        for (Lane lane : revoked) {
+            synchronized (lane) {
+                while (lane.inFlightRecords > 0) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        log.warn("Partition {} revoked with {} audit records not yet durable",
+                                lane.partition, lane.inFlightRecords);
+                        break;
+                    }
+                    lane.wait(remaining);
+                }
+                drainLocked(lane, offsets, committed);
+                lane.revoked = true;
+            }
+            lanes.remove(lane.partition, lane);
+            metrics.untrackInFlight(lane.partition);
+        }
+        recordCommitted(committed);
+        resizeWriterPool(lanes.size());
+        return offsets;
+    }
+
+    /**
+     * 分区丢失（已无法提交）：直接丢弃 lane，进行中的写入完成后不再推进位移
+     */
+    public void discard(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            Lane lane = lanes.remove(partition);
+            if (lane != null) {
+                synchronized (lane) {
+                    lane.revoked = true;
+                    lane.pending = new ArrayList<>();
+                    lane.pendingMarks.clear();
+                    lane.queued.clear();
+                    lane.durable.clear();
+                    lane.committable.clear();
+                }
+                metrics.untrackInFlight(partition);
+            }
+        }
+        resizeWriterPool(lanes.size());
+    }
+
+    private Lane openLane(TopicPartition partition) {
+        // computeIfAbsent 返回后才计入 lanes，这里按 +1 伸缩
+        resizeWriterPool(lanes.size() + 1);
+        Lane lane = new Lane(partition);
+        metrics.trackInFlight(partition, () -> lane.inFlightRecords);
+        return lane;
+    }
+
+    private void flushDueLanes() {
+        long now = System.currentTimeMillis();
+        for (Lane lane : lanes.values()) {
+            boolean due;
+            synchronized (lane) {
+                due = !lane.pending.isEmpty() && now - lane.pendingSince >= flushIntervalMillis;
+            }
+            if (due) {
+                flushNow(lane);
+            }
+        }
+    }
+
+    private void flushNow(Lane lane) {
+        FlushJob job = null;
+        synchronized (lane) {
+            if (!lane.pending.isEmpty()) {
+                job = cutLocked(lane, lane.pending.size());
+            }
+        }
+        if (job != null) {
+            enqueue(lane, job);
+        }
+    }
+
+    /**
+     * 从 lane 缓冲头部切出 count 条记录；任务的提交位移取最后一条记录已包含在内的 poll
+     */
+    private FlushJob cutLocked(Lane lane, int count) {
+        List<QuotaAuditEntity> records;
+        if (count == lane.pending.size()) {
+            records = lane.pending;
+            lane.pending = new ArrayList<>();
+        } else {
+            records = new ArrayList<>(lane.pending.subList(0, count));
+            lane.pending = new ArrayList<>(lane.pending.subList(count, lane.pending.size()));
+        }
+
+        long nextOffset = -1;
+        Deque<OffsetMark> remaining = new ArrayDeque<>();
+        for (OffsetMark mark : lane.pendingMarks) {
+            if (mark.end() <= count) {
+                nextOffset = mark.nextOffset();
+            } else {
+                remaining.addLast(new OffsetMark(mark.end() - count, mark.nextOffset()));
+            }
+        }
+        lane.pendingMarks = remaining;
+        lane.pendingSince = System.currentTimeMillis();
+        return new FlushJob(records, nextOffset);
+    }
+
+    /**
+     * 任务进入 lane 队列；lane 空闲时立即交给线程池，否则等前一个任务完成（分区内串行）
+     */
+    private void enqueue(Lane lane, FlushJob job) {
+        synchronized (lane) {
+            if (lane.writing) {
+                lane.queued.addLast(job);
+                return;
+            }
+            lane.writing = true;
+        }
+        writerPool.execute(() -> write(lane, job));
+    }
+
+    private void write(Lane lane, FlushJob job) {
+        long backoffMillis = initialBackoffMillis;
+        while (true) {
+            try {
+                // 布隆过滤器先去掉确认已落库的记录，剩余的由存储端的幂等写入兜底
+                List<QuotaAuditEntity> fresh = deduplicator.removeDuplicates(job.records());
+                int inserted = fresh.isEmpty() ? 0 : insertIsolating(lane, fresh);
+                deduplicator.remember(fresh);
+                log.debug("Flushed {} audit records to {} (skipped {} duplicates)",
+                        inserted, lane.partition, job.records().size() - inserted);
+                break;
+            } catch (Exception e) {
+                if (closing || lane.revoked) {
+                    // 关闭或分区已转移时放弃：本 lane 不再提交位移，分区的新持有者（或重启后）从已提交位移重新消费
+                    log.error("Giving up audit flush of {} records for {}", job.records().size(), lane.partition, e);
+                    return;
+                }
+                log.warn("Audit flush of {} records for {} failed, retrying in {} ms",
+                        job.records().size(), lane.partition, backoffMillis, e);
+                metrics.flushRetried();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+        complete(lane, job);
+    }
+
+    /**
+     * 写入一组记录；记录级失败时二分定位出错的记录，转交 rejectedRecordHandler（重试 topic），
+     * 其余记录照常写入，避免一条坏数据卡住整个分区
+     *
+     * 基础设施故障直接抛出，由 write 整批退避重试（已写入的部分由存储端幂等去重）
+     */
+    private int insertIsolating(Lane lane, List<QuotaAuditEntity> records) {
+        try {
+            return auditSink.write(records);
+        } catch (RuntimeException e) {
+            if (!AuditService.isRecordLevelFailure(e)) {
+                throw e;
+            }
+            if (records.size() == 1) {
+                log.warn("Rejecting audit record {} from {}: {}",
+                        records.get(0).getRequestId(), lane.partition, e.getMessage());
+                rejectedRecordHandler.reject(lane.partition, records.get(0), e);
+                return 0;
+            }
+            int middle = records.size() / 2;
+            return insertIsolating(lane, records.subList(0, middle))
+                    + insertIsolating(lane, records.subList(middle, records.size()));
+        }
+    }
+
+    private void complete(Lane lane, FlushJob job) {
+        FlushJob next;
+        synchronized (lane) {
+            lane.inFlightRecords -= job.records().size();
+            lane.durable.add(job.records());
+            if (job.nextOffset() >= 0) {
+                lane.durableOffset = job.nextOffset();
+                // 到 durableOffset 为止的记录都可随位移提交
+                lane.committable.addAll(lane.durable);
+                lane.durable.clear();
+            }
+            next = lane.queued.pollFirst();
+            if (next == null) {
+                lane.writing = false;
+            }
+            lane.notifyAll();
+        }
+        if (next != null) {
+            writerPool.execute(() -> write(lane, next));
+        }
+    }
+
+    private synchronized void resizeWriterPool(int laneCount) {
+        int size = Math.max(1, Math.min(laneCount, maxWriterThreads));
+        if (size > writerPool.getMaximumPoolSize()) {
+            writerPool.setMaximumPoolSize(size);
+            writerPool.setCorePoolSize(size);
+        } else if (size < writerPool.getCorePoolSize()) {
+            writerPool.setCorePoolSize(size);
+            writerPool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * 在途（已接收但尚未落库）的记录数
+     */
+    public int inFlightRecords() {
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                total += lane.inFlightRecords;
+            }
+        }
+        return total;
+    }
+
+    public int writerThreads() {
+        return writerPool.getCorePoolSize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        flushTimer.shutdownNow();
+        lanes.values().forEach(this::flushNow);
+
+        // 同一 lane 的后续任务在前一个任务完成时才提交，等所有 lane 写完再关闭线程池
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        try {
+            while (inFlightRecords() > 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closing = true;
+        writerPool.shutdownNow();
+        log.info("Audit write buffer closed, {} records not durable", inFlightRecords());
+    }
+
+    private static final class Lane {
+        private final TopicPartition partition;
+        private final Deque<FlushJob> queued = new ArrayDeque<>();
+        private List<QuotaAuditEntity> pending = new ArrayList<>();
+        // 每个 poll 在 pending 中的结束位置与其提交位移
+        private Deque<OffsetMark> pendingMarks = new ArrayDeque<>();
+        private long pendingSince;
+        // 已落库、所在 poll 尚未完整落库的记录 / 已可随位移提交的记录（提交时统计端到端时延）
+        private final List<List<QuotaAuditEntity>> durable = new ArrayList<>();
+        private final List<List<QuotaAuditEntity>> committable = new ArrayList<>();
+        private volatile int inFlightRecords;
+        private boolean writing;
+        private boolean paused;
+        private volatile boolean revoked;
+        private long durableOffset = -1;
+        private long committedOffset = -1;
+
+        private Lane(TopicPartition partition) {
+            this.partition = partition;
+        }
+    }
+
+    private record OffsetMark(int end, long nextOffset) {
+    }
+
+    private record FlushJob(List<QuotaAuditEntity> records, long nextOffset) {
+    }
+}
@@ -0,0 +1,219 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuditWriteBufferTest {
+
+    private static final TopicPartition P0 = new TopicPartition("quota-events", 0);
+    private static final TopicPartition P1 = new TopicPartition("quota-events", 1);
+
+    private final AuditSink auditSink = mock(AuditSink.class);
+    // 去重过滤在 AuditDeduplicatorTest 中单独验证，这里关闭
+    private final AuditDeduplicator deduplicator =
+            new AuditDeduplicator(auditSink, new SimpleMeterRegistry(), false, 24, 6, 200, 0.001, 64);
+    private final List<String> rejected = new CopyOnWriteArrayList<>();
+    private final RejectedAuditRecordHandler rejectedHandler =
+            (source, record, cause) -> rejected.add(record.getRequestId());
+    private final AuditIngestMetrics metrics = new AuditIngestMetrics(new SimpleMeterRegistry());
+    private AuditWriteBuffer buffer;
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.shutdown();
+        }
+    }
+
+    private static List<QuotaAuditEntity> records(String prefix, int count) {
+        List<QuotaAuditEntity> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(prefix + "-" + i);
+            records.add(entity);
+        }
+        return records;
+    }
+
+    private void insertSucceeds() {
+        when(auditSink.write(anyList())).thenAnswer(invocation ->
+                ((List<?>) invocation.getArgument(0)).size());
+    }
+
+    private Map<TopicPartition, Long> awaitCommittable(Set<TopicPartition> assignment, int partitions)
+            throws InterruptedException {
+        Map<TopicPartition, Long> committed = new HashMap<>();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (committed.size() < partitions && System.currentTimeMillis() < deadline) {
+            buffer.drainCommittable(assignment).forEach((tp, offset) -> committed.put(tp, offset.offset()));
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return committed;
+    }
+
+    // 一个分区的写入阻塞时，其他分区照常落库并提交位移
+    @Test
+    void shouldWritePartitionsIndependently() throws InterruptedException {
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        when(auditSink.write(anyList())).thenAnswer(invocation -> {
+            List<QuotaAuditEntity> records = invocation.getArgument(0);
+            if (records.get(0).getRequestId().startsWith("slow")) {
+                releaseSlow.await(5, TimeUnit.SECONDS);
+            }
+            return records.size();
+        });
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 10, 60_000, 1_000, 4, 10, 100);
+
+        buffer.submit(P0, records("slow", 10), 110);
+        buffer.submit(P1, records("fast", 10), 210);
+
+        assertThat(awaitCommittable(Set.of(P0, P1), 1)).containsOnlyKeys(P1).containsEntry(P1, 210L);
+        assertThat(buffer.writerThreads()).isEqualTo(2);
+
+        releaseSlow.countDown();
+        assertThat(awaitCommittable(Set.of(P0, P1), 1)).containsEntry(P0, 110L);
+    }
+
+    // 同一分区的任务串行写入，位移按 poll 推进
+    @Test
+    void shouldKeepOrderWithinPartition() throws InterruptedException {
+        List<String> written = new ArrayList<>();
+        when(auditSink.write(anyList())).thenAnswer(invocation -> {
+            List<QuotaAuditEntity> records = invocation.getArgument(0);
+            synchronized (written) {
+                records.forEach(record -> written.add(record.getRequestId()));
+            }
+            TimeUnit.MILLISECONDS.sleep(5);
+            return records.size();
+        });
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 4, 60_000, 1_000, 4, 10, 100);
+
+        buffer.submit(P0, records("a", 6), 6);
+        buffer.submit(P0, records("b", 6), 12);
+
+        // 12 条切成 3 个任务：第二个任务包含 a 的最后一条，第三个包含 b 的最后一条
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (buffer.inFlightRecords() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(buffer.drainCommittable(Set.of(P0)).get(P0).offset()).isEqualTo(12L);
+        assertThat(written).containsExactly("a-0", "a-1", "a-2", "a-3", "a-4", "a-5",
+                "b-0", "b-1", "b-2", "b-3", "b-4", "b-5");
+    }
+
+    // 只提交调用方拥有的分区
+    @Test
+    void shouldOnlyDrainAssignedPartitions() throws InterruptedException {
+        insertSucceeds();
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 5, 50, 1_000, 2, 10, 100);
+
+        buffer.submit(P0, records("a", 3), 3);
+        buffer.submit(P1, records("b", 3), 3);
+
+        Map<TopicPartition, Long> committed = awaitCommittable(Set.of(P1), 1);
+        TimeUnit.MILLISECONDS.sleep(100);
+        buffer.drainCommittable(Set.of(P1)).forEach((tp, offset) -> committed.put(tp, offset.offset()));
+        assertThat(committed).containsOnlyKeys(P1);
+    }
+
+    // 写入失败时重试，落库前不提交位移
+    @Test
+    void shouldRetryFailedFlushBeforeCommitting() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        when(auditSink.write(anyList())).thenAnswer(invocation -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new DataAccessResourceFailureException("database unavailable");
+            }
+            return ((List<?>) invocation.getArgument(0)).size();
+        });
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 5, 60_000, 1_000, 1, 20, 100);
+
+        buffer.submit(P0, records("retry", 5), 5);
+        assertThat(buffer.drainCommittable(Set.of(P0))).isEmpty();
+
+        assertThat(awaitCommittable(Set.of(P0), 1)).containsEntry(P0, 5L);
+        assertThat(attempts).hasValue(3);
+        assertThat(rejected).isEmpty();
+    }
+
+    // 记录级失败只隔离出错的记录，其余照常写入并提交位移
+    @Test
+    void shouldIsolatePoisonRecords() throws InterruptedException {
+        List<String> written = new CopyOnWriteArrayList<>();
+        when(auditSink.write(anyList())).thenAnswer(invocation -> {
+            List<QuotaAuditEntity> records = invocation.getArgument(0);
+            if (records.stream().anyMatch(record -> record.getRequestId().equals("a-3"))) {
+                throw new DataIntegrityViolationException("Data too long for column 'resource_key'");
+            }
+            records.forEach(record -> written.add(record.getRequestId()));
+            return records.size();
+        });
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 10, 60_000, 1_000, 1, 10, 100);
+
+        buffer.submit(P0, records("a", 10), 10);
+
+        assertThat(awaitCommittable(Set.of(P0), 1)).containsEntry(P0, 10L);
+        assertThat(rejected).containsExactly("a-3");
+        assertThat(written).hasSize(9).doesNotContain("a-3");
+    }
+
+    // 超过单分区在途上限时报告过载，写完后可恢复
+    @Test
+    void shouldReportOverloadAndResume() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        when(auditSink.write(anyList())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return ((List<?>) invocation.getArgument(0)).size();
+        });
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 10, 60_000, 25, 1, 10, 100);
+
+        assertThat(buffer.submit(P0, records("a", 20), 20)).isFalse();
+        assertThat(buffer.submit(P0, records("b", 20), 40)).isTrue();
+        assertThat(buffer.drainResumable()).isEmpty();
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        Set<TopicPartition> resumable = Set.of();
+        while (resumable.isEmpty() && System.currentTimeMillis() < deadline) {
+            resumable = buffer.drainResumable();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(resumable).containsExactly(P0);
+    }
+
+    // 回收分区时写完缓冲并返回可提交位移
+    @Test
+    void shouldFlushAndReturnOffsetsOnRevoke() throws InterruptedException {
+        insertSucceeds();
+        buffer = new AuditWriteBuffer(auditSink, deduplicator, rejectedHandler, metrics, 1_000, 60_000, 10_000, 2, 10, 100);
+
+        buffer.submit(P0, records("a", 7), 107);
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = buffer.revoke(Set.of(P0), 2_000);
+
+        assertThat(offsets).containsOnlyKeys(P0);
+        assertThat(offsets.get(P0).offset()).isEqualTo(107L);
+        assertThat(buffer.inFlightRecords()).isZero();
+    }
+}
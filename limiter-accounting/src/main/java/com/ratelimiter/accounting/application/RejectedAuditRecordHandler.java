@@ -0,0 +1,15 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 接收无法写入的审计记录（记录级失败，见 {@link AuditService#isRecordLevelFailure}）
+ *
+ * 实现需在返回前把记录可靠地转交出去（例如发送到重试 topic 并等待确认），
+ * 返回后该记录所在的位移即可提交；抛出异常时调用方按基础设施故障处理，稍后重试整批
+ */
+public interface RejectedAuditRecordHandler {
+
+    void reject(TopicPartition source, QuotaAuditEntity record, Exception cause);
+}
@@ -0,0 +1,28 @@
+package com.ratelimiter.accounting.application;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditRollupMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditRollupEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class RollupAuditService extends ServiceImpl<QuotaAuditRollupMapper, QuotaAuditRollupEntity> {
+
+    /**
+     * 幂等批量写入汇总记录（INSERT IGNORE，按 rollup_id 去重）
+     *
+     * @param rollups 汇总记录列表
+     * @param chunkSize 每条 INSERT 语句的最大行数
+     * @return 实际插入的行数
+     */
+    public int insertIgnore(List<QuotaAuditRollupEntity> rollups, int chunkSize) {
+        int inserted = 0;
+        for (int from = 0; from < rollups.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, rollups.size());
+            inserted += baseMapper.insertIgnoreBatch(rollups.subList(from, to));
+        }
+        return inserted;
+    }
+}
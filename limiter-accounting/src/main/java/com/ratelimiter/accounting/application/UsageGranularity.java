@@ -0,0 +1,59 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.common.web.constant.ErrorCode;
+import com.ratelimiter.common.web.exception.BusinessException;
+
+import java.util.Locale;
+
+/**
+ * 用量汇总的时间桶粒度，桶按 UTC（epoch 毫秒整除）对齐
+ */
+public enum UsageGranularity {
+
+    MINUTE(60_000L),
+    HOUR(3_600_000L),
+    DAY(86_400_000L);
+
+    private final long millis;
+
+    UsageGranularity(long millis) {
+        this.millis = millis;
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * 所在桶的起点
+     */
+    public long floor(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+
+    /**
+     * 不早于 timestamp 的第一个桶起点
+     */
+    public long ceil(long timestamp) {
+        return -Math.floorDiv(-timestamp, millis) * millis;
+    }
+
+    /**
+     * 更细一级的粒度，MINUTE 返回 null
+     */
+    public UsageGranularity finer() {
+        return this == MINUTE ? null : values()[ordinal() - 1];
+    }
+
+    /**
+     * 解析查询参数（不区分大小写）
+     */
+    public static UsageGranularity of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT,
+                    "Unknown granularity: " + value + " (expected minute/hour/day)");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.ratelimiter.accounting.application;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 一条 Kafka 记录带来的用量增量（单条决策或 Data Plane 的允许决策汇总）
+ */
+@Getter
+@Builder
+public class UsageIncrement {
+
+    private final TopicPartition partition;
+
+    private final long offset;
+
+    private final String rollupId;        // 汇总事件 ID（逐条事件为 null），跨位移去重
+
+    private final String tenantId;
+
+    private final String resourceKey;
+
+    private final long timestamp;         // 决策时间 / 汇总窗口起点（毫秒），决定落入的桶
+
+    private final long allowedCount;
+
+    private final long deniedCount;
+
+    private final long tokensRequested;
+
+    private final long tokensConsumed;
+}
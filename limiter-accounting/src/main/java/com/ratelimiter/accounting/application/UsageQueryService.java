@@ -0,0 +1,119 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageEntity;
+import com.ratelimiter.common.web.constant.ErrorCode;
+import com.ratelimiter.common.web.dto.accounting.ResourceUsageResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageBucketResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageSummaryResponse;
+import com.ratelimiter.common.web.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 用量查询：只读 quota_usage 的桶，代价与桶数成正比，与区间内的请求数无关
+ */
+@Service
+public class UsageQueryService {
+
+    private final QuotaUsageMapper usageMapper;
+    private final long maxQueryBuckets;
+
+    public UsageQueryService(QuotaUsageMapper usageMapper,
+                             @Value("${app.accounting.usage.max-query-buckets:10000}") long maxQueryBuckets) {
+        this.usageMapper = usageMapper;
+        this.maxQueryBuckets = maxQueryBuckets;
+    }
+
+    /**
+     * 按桶列出用量（看板曲线），区间按粒度向外取整
+     *
+     * @param resourceKey 为 null 时返回租户全部资源
+     */
+    public List<UsageBucketResponse> listBuckets(String tenantId, String resourceKey, String granularity,
+                                                 long from, long to) {
+        UsageGranularity bucketGranularity = UsageGranularity.of(granularity);
+        long start = bucketGranularity.floor(from);
+        long end = bucketGranularity.ceil(to);
+        validateRange(tenantId, start, end);
+        long buckets = (end - start) / bucketGranularity.millis();
+        if (buckets > maxQueryBuckets) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT,
+                    "Too many " + bucketGranularity + " buckets in range, use a coarser granularity",
+                    Map.of("buckets", buckets, "maxBuckets", maxQueryBuckets));
+        }
+
+        List<UsageBucketResponse> result = new ArrayList<>();
+        for (QuotaUsageEntity row : usageMapper.selectBuckets(
+                tenantId, resourceKey, bucketGranularity.name(), start, end)) {
+            result.add(new UsageBucketResponse(row.getResourceKey(), row.getGranularity(), row.getBucketStart(),
+                    row.getAllowedCount(), row.getDeniedCount(), row.getTokensRequested(), row.getTokensConsumed()));
+        }
+        return result;
+    }
+
+    /**
+     * 区间内按资源汇总（计费 / 报表），区间按分钟向外取整
+     *
+     * 区间拆成 整天 + 两端的整小时 + 两端剩余的分钟，每段读对应粒度的桶，最多 5 次查询。
+     * 两端落在分钟桶保留期之外时该部分读不到，长期区间应按小时对齐
+     */
+    public UsageSummaryResponse summarize(String tenantId, String resourceKey, long from, long to) {
+        long start = UsageGranularity.MINUTE.floor(from);
+        long end = UsageGranularity.MINUTE.ceil(to);
+        validateRange(tenantId, start, end);
+
+        Map<String, ResourceUsageResponse> totals = new TreeMap<>();
+        cover(tenantId, resourceKey, UsageGranularity.DAY, start, end, totals);
+        return new UsageSummaryResponse(tenantId, start, end, new ArrayList<>(totals.values()));
+    }
+
+    private void cover(String tenantId, String resourceKey, UsageGranularity granularity, long from, long to,
+                       Map<String, ResourceUsageResponse> totals) {
+        if (from >= to) {
+            return;
+        }
+        UsageGranularity finer = granularity.finer();
+        long alignedFrom = granularity.ceil(from);
+        long alignedTo = granularity.floor(to);
+        if (finer != null && alignedFrom >= alignedTo) {
+            // 区间内没有完整的桶，整段交给更细的粒度
+            cover(tenantId, resourceKey, finer, from, to, totals);
+            return;
+        }
+        if (finer == null) {
+            alignedFrom = from;
+            alignedTo = to;
+        }
+
+        for (QuotaUsageEntity row : usageMapper.sumByResource(
+                tenantId, resourceKey, granularity.name(), alignedFrom, alignedTo)) {
+            ResourceUsageResponse total = totals.computeIfAbsent(row.getResourceKey(),
+                    key -> new ResourceUsageResponse(key, 0L, 0L, 0L, 0L));
+            total.setAllowedCount(total.getAllowedCount() + row.getAllowedCount());
+            total.setDeniedCount(total.getDeniedCount() + row.getDeniedCount());
+            total.setTokensRequested(total.getTokensRequested() + row.getTokensRequested());
+            total.setTokensConsumed(total.getTokensConsumed() + row.getTokensConsumed());
+        }
+
+        if (finer != null) {
+            cover(tenantId, resourceKey, finer, from, alignedFrom, totals);
+            cover(tenantId, resourceKey, finer, alignedTo, to, totals);
+        }
+    }
+
+    private static void validateRange(String tenantId, long from, long to) {
+        if (tenantId == null || tenantId.isBlank()) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "tenantId is required");
+        }
+        if (from >= to) {
+            throw new BusinessException(ErrorCode.INVALID_ARGUMENT, "from must be earlier than to",
+                    Map.of("from", from, "to", to));
+        }
+    }
+}
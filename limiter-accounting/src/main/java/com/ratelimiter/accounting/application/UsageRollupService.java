@@ -0,0 +1,320 @@
+package com.ratelimiter.accounting.application;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageAppliedRollupMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageOffsetMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageAppliedRollupEntity;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageEntity;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageOffsetEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 增量维护用量汇总（quota_usage）
+ *
+ * 每批 Kafka 记录先在内存中按 租户×资源×桶 合并，再对 MINUTE / HOUR / DAY 三种粒度批量 upsert 累加；
+ * 行数只取决于批内出现的桶数，与事件数无关。
+ *
+ * 幂等：累加不是幂等操作，所以每个分区已累加到的位移（quota_usage_offset）与 upsert 在同一事务中推进，
+ * 位移低于水位的记录（重投、再均衡后重复消费）直接跳过。事务回滚时两者一起回滚，重新消费后结果不变。
+ * 生产端重复（溢出日志回放、生产者重试）落在不同位移上，位移水位挡不住：
+ * 汇总事件另按 rollupId 记入 quota_usage_applied_rollup（同一事务），已记录的不再累加；
+ * 逐条事件若也逐条记账，用量表就失去了合并写入的意义，仍只靠位移水位，生产端重复会多计
+ * （审计侧按 requestId 去重）
+ */
+@Slf4j
+@Service
+public class UsageRollupService {
+
+    private static final int PURGE_CHUNK_SIZE = 5_000;
+
+    // 与 uk_tenant_bucket 列顺序一致：并发事务按同一顺序锁行
+    private static final Comparator<QuotaUsageEntity> KEY_ORDER = Comparator
+            .comparing(QuotaUsageEntity::getTenantId)
+            .thenComparing(QuotaUsageEntity::getGranularity)
+            .thenComparing(QuotaUsageEntity::getBucketStart)
+            .thenComparing(QuotaUsageEntity::getResourceKey);
+
+    private final QuotaUsageMapper usageMapper;
+    private final QuotaUsageOffsetMapper offsetMapper;
+    private final QuotaUsageAppliedRollupMapper appliedRollupMapper;
+    private final int upsertChunkSize;
+    private final Map<UsageGranularity, Integer> retentionDays = new EnumMap<>(UsageGranularity.class);
+    private final int rollupIdRetentionDays;
+    private final long purgeIntervalMillis;
+
+    private final Counter appliedCounter;
+    private final Counter replayedCounter;
+    private final Counter duplicateRollupCounter;
+    private final Counter upsertedRowsCounter;
+    private final Counter purgedRowsCounter;
+
+    private ScheduledExecutorService retentionExecutor;
+
+    public UsageRollupService(QuotaUsageMapper usageMapper,
+                              QuotaUsageOffsetMapper offsetMapper,
+                              QuotaUsageAppliedRollupMapper appliedRollupMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.accounting.usage.upsert-chunk-size:500}") int upsertChunkSize,
+                              @Value("${app.accounting.usage.minute-retention-days:7}") int minuteRetentionDays,
+                              @Value("${app.accounting.usage.hour-retention-days:90}") int hourRetentionDays,
+                              @Value("${app.accounting.usage.day-retention-days:0}") int dayRetentionDays,
+                              @Value("${app.accounting.usage.rollup-id-retention-days:7}") int rollupIdRetentionDays,
+                              @Value("${app.accounting.usage.purge-interval-ms:3600000}") long purgeIntervalMillis) {
+        this.usageMapper = usageMapper;
+        this.offsetMapper = offsetMapper;
+        this.appliedRollupMapper = appliedRollupMapper;
+        this.upsertChunkSize = upsertChunkSize;
+        this.retentionDays.put(UsageGranularity.MINUTE, minuteRetentionDays);
+        this.retentionDays.put(UsageGranularity.HOUR, hourRetentionDays);
+        this.retentionDays.put(UsageGranularity.DAY, dayRetentionDays);
+        this.rollupIdRetentionDays = rollupIdRetentionDays;
+        this.purgeIntervalMillis = purgeIntervalMillis;
+
+        this.appliedCounter = meterRegistry.counter("usage_rollup_increments_applied_total");
+        this.replayedCounter = meterRegistry.counter("usage_rollup_increments_replayed_total");
+        this.duplicateRollupCounter = meterRegistry.counter("usage_rollup_duplicate_rollups_total");
+        this.upsertedRowsCounter = meterRegistry.counter("usage_rollup_rows_upserted_total");
+        this.purgedRowsCounter = meterRegistry.counter("usage_rollup_rows_purged_total");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (purgeIntervalMillis > 0) {
+            retentionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "usage-rollup-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            retentionExecutor.scheduleWithFixedDelay(this::purgeQuietly,
+                    purgeIntervalMillis, purgeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (retentionExecutor != null) {
+            retentionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 累加一批增量并推进分区位移（同一事务）
+     *
+     * @param increments 本批可计入用量的记录
+     * @param nextOffsets 本批每个分区的下一条位移（含无法计入用量而跳过的记录）
+     * @return 实际累加的增量数（低于位移水位的、rollupId 已累加过的不计入）
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int apply(List<UsageIncrement> increments, Map<TopicPartition, Long> nextOffsets) {
+        if (nextOffsets.isEmpty()) {
+            return 0;
+        }
+        Map<TopicPartition, Long> watermarks = lockWatermarks(nextOffsets.keySet());
+
+        List<UsageIncrement> fresh = new ArrayList<>(increments.size());
+        for (UsageIncrement increment : increments) {
+            if (increment.getOffset() >= watermarks.getOrDefault(increment.getPartition(), 0L)) {
+                fresh.add(increment);
+            }
+        }
+        int duplicateRollups = removeAppliedRollups(fresh);
+
+        Map<BucketKey, QuotaUsageEntity> deltas = new HashMap<>();
+        int applied = 0;
+        for (UsageIncrement increment : fresh) {
+            applied++;
+            for (UsageGranularity granularity : UsageGranularity.values()) {
+                accumulate(deltas, increment, granularity);
+            }
+        }
+
+        List<QuotaUsageEntity> rows = new ArrayList<>(deltas.values());
+        rows.sort(KEY_ORDER);
+        for (int from = 0; from < rows.size(); from += upsertChunkSize) {
+            usageMapper.upsertBatch(rows.subList(from, Math.min(from + upsertChunkSize, rows.size())));
+        }
+
+        nextOffsets.forEach((partition, nextOffset) ->
+                offsetMapper.advance(partition.topic(), partition.partition(), nextOffset));
+
+        appliedCounter.increment(applied);
+        replayedCounter.increment(increments.size() - applied - duplicateRollups);
+        duplicateRollupCounter.increment(duplicateRollups);
+        upsertedRowsCounter.increment(rows.size());
+        return applied;
+    }
+
+    /**
+     * 去掉 rollupId 已累加过的汇总增量（含批内重复），并记录本批新累加的 rollupId
+     *
+     * @return 去掉的汇总增量数
+     */
+    private int removeAppliedRollups(List<UsageIncrement> increments) {
+        Set<String> rollupIds = new HashSet<>();
+        for (UsageIncrement increment : increments) {
+            if (increment.getRollupId() != null) {
+                rollupIds.add(increment.getRollupId());
+            }
+        }
+        if (rollupIds.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> seen = new HashSet<>(appliedRollupMapper.selectExisting(rollupIds));
+        List<QuotaUsageAppliedRollupEntity> newlyApplied = new ArrayList<>();
+        int before = increments.size();
+        increments.removeIf(increment -> {
+            if (increment.getRollupId() == null) {
+                return false;
+            }
+            if (!seen.add(increment.getRollupId())) {
+                return true;
+            }
+            newlyApplied.add(new QuotaUsageAppliedRollupEntity(increment.getRollupId(), increment.getTimestamp()));
+            return false;
+        });
+        for (int from = 0; from < newlyApplied.size(); from += upsertChunkSize) {
+            appliedRollupMapper.insertBatch(
+                    newlyApplied.subList(from, Math.min(from + upsertChunkSize, newlyApplied.size())));
+        }
+        return before - increments.size();
+    }
+
+    /**
+     * 读取已累加到的位移，分区分配后从这里继续消费
+     *
+     * @return 有记录的分区 → 下一条位移
+     */
+    public Map<TopicPartition, Long> loadOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        groupByTopic(partitions).forEach((topic, partitionIds) -> {
+            for (QuotaUsageOffsetEntity offset : offsetMapper.selectOffsets(topic, partitionIds)) {
+                offsets.put(new TopicPartition(topic, offset.getPartitionId()), offset.getNextOffset());
+            }
+        });
+        return offsets;
+    }
+
+    /**
+     * 分批删除超过保留期的分钟 / 小时 / 天桶（保留天数 <= 0 的粒度不删除）
+     *
+     * @return 删除的行数
+     */
+    long purgeExpired(long now) {
+        long total = 0;
+        for (UsageGranularity granularity : UsageGranularity.values()) {
+            int days = retentionDays.get(granularity);
+            if (days <= 0) {
+                continue;
+            }
+            long before = granularity.floor(now - days * UsageGranularity.DAY.millis());
+            long purged = 0;
+            int deleted;
+            do {
+                deleted = usageMapper.deleteExpired(granularity.name(), before, PURGE_CHUNK_SIZE);
+                purged += deleted;
+            } while (deleted == PURGE_CHUNK_SIZE);
+            if (purged > 0) {
+                log.info("Purged {} {} usage buckets before {}", purged, granularity, before);
+            }
+            total += purged;
+        }
+        if (rollupIdRetentionDays > 0) {
+            long before = now - rollupIdRetentionDays * UsageGranularity.DAY.millis();
+            int deleted;
+            do {
+                deleted = appliedRollupMapper.deleteExpired(before, PURGE_CHUNK_SIZE);
+            } while (deleted == PURGE_CHUNK_SIZE);
+        }
+        purgedRowsCounter.increment(total);
+        return total;
+    }
+
+    private void purgeQuietly() {
+        try {
+            purgeExpired(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("Failed to purge expired usage buckets", e);
+        }
+    }
+
+    /**
+     * 锁定本批分区的位移行（不存在的先以 0 建行），返回各分区的水位
+     */
+    private Map<TopicPartition, Long> lockWatermarks(Set<TopicPartition> partitions) {
+        Map<TopicPartition, Long> watermarks = new HashMap<>();
+        groupByTopic(partitions).forEach((topic, partitionIds) -> {
+            List<QuotaUsageOffsetEntity> locked = offsetMapper.selectForUpdate(topic, partitionIds);
+            if (locked.size() < partitionIds.size()) {
+                // 首次出现的分区：先建行再锁；不对已有行 INSERT IGNORE，避免共享锁升级排他锁时互相死锁
+                Set<Integer> missing = new TreeSet<>(partitionIds);
+                locked.forEach(offset -> missing.remove(offset.getPartitionId()));
+                List<QuotaUsageOffsetEntity> rows = new ArrayList<>(missing.size());
+                missing.forEach(partitionId -> rows.add(new QuotaUsageOffsetEntity(topic, partitionId, 0L)));
+                offsetMapper.insertIgnoreBatch(rows);
+                locked = new ArrayList<>(locked);
+                locked.addAll(offsetMapper.selectForUpdate(topic, missing));
+            }
+            for (QuotaUsageOffsetEntity offset : locked) {
+                watermarks.put(new TopicPartition(topic, offset.getPartitionId()), offset.getNextOffset());
+            }
+        });
+        return watermarks;
+    }
+
+    private static Map<String, Set<Integer>> groupByTopic(Collection<TopicPartition> partitions) {
+        Map<String, Set<Integer>> byTopic = new TreeMap<>();
+        for (TopicPartition partition : partitions) {
+            byTopic.computeIfAbsent(partition.topic(), topic -> new TreeSet<>()).add(partition.partition());
+        }
+        return byTopic;
+    }
+
+    private static void accumulate(Map<BucketKey, QuotaUsageEntity> deltas, UsageIncrement increment,
+                                   UsageGranularity granularity) {
+        BucketKey key = new BucketKey(increment.getTenantId(), increment.getResourceKey(), granularity,
+                granularity.floor(increment.getTimestamp()));
+        QuotaUsageEntity delta = deltas.computeIfAbsent(key, k -> {
+            QuotaUsageEntity entity = new QuotaUsageEntity();
+            entity.setTenantId(k.tenantId());
+            entity.setResourceKey(k.resourceKey());
+            entity.setGranularity(k.granularity().name());
+            entity.setBucketStart(k.bucketStart());
+            entity.setAllowedCount(0L);
+            entity.setDeniedCount(0L);
+            entity.setTokensRequested(0L);
+            entity.setTokensConsumed(0L);
+            return entity;
+        });
+        delta.setAllowedCount(delta.getAllowedCount() + increment.getAllowedCount());
+        delta.setDeniedCount(delta.getDeniedCount() + increment.getDeniedCount());
+        delta.setTokensRequested(delta.getTokensRequested() + increment.getTokensRequested());
+        delta.setTokensConsumed(delta.getTokensConsumed() + increment.getTokensConsumed());
+    }
+
+    private record BucketKey(String tenantId, String resourceKey, UsageGranularity granularity, long bucketStart) {
+    }
+}
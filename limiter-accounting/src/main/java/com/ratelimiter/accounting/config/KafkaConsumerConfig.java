@@ -1,6 +1,13 @@
 package com.ratelimiter.accounting.config;
 
+import com.ratelimiter.accounting.application.AuditWriteBuffer;
+import com.ratelimiter.accounting.infrastructure.messaging.kafka.QuotaEventRebalanceListener;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventDeserializer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org. springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -9,29 +16,97 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.DelegatingByTopicDeserializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer. JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @EnableKafka
 @Configuration
 public class KafkaConsumerConfig {
 
+    private static final String TRUSTED_EVENT_PACKAGES = "com.ratelimiter.common.web.domain.event";
+
+    private final MeterRegistry meterRegistry;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${app.kafka.topic.quota-events:quota-events}")
+    private String quotaEventsTopic;
+
+    // 测试环境关闭，避免监听容器连接 Kafka
+    @Value("${app.kafka.listener.auto-startup:true}")
+    private boolean listenerAutoStartup;
+
+    // quota-events 拉取线程数（超过分区数的部分空闲）；写入并行度由 AuditWriteBuffer 按分区数伸缩
+    @Value("${app.kafka.listener.quota-events.concurrency:2}")
+    private int quotaEventsConcurrency;
+
+    @Value("${app.kafka.listener.quota-events.idle-event-interval-ms:1000}")
+    private long quotaEventsIdleEventIntervalMillis;
+
+    @Value("${app.kafka.listener.quota-events.revoke-timeout-ms:10000}")
+    private long quotaEventsRevokeTimeoutMillis;
+
+    public KafkaConsumerConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 每个消费者注册 Kafka 客户端指标，其中 kafka_consumer_fetch_manager_records_lag{topic, partition}
+     * 即按分区的消费滞后（日志末端 − 拉取位置）
+     */
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "accounting-service");
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.ratelimiter.common.web.domain.event");
         props.put(ConsumerConfig. ENABLE_AUTO_COMMIT_CONFIG, false);  // 手动确认
-        return new DefaultKafkaConsumerFactory<>(props);
+        // 与 spring.kafka.consumer.auto-offset-reset 一致：组内无已提交位点时从头消费，分配前已写入的事件不会被跳过
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, Object> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), valueDeserializer());
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
+    }
+
+    /**
+     * quota-events 为二进制编码（QuotaEventCodec），切换前写入的 JSON 消息仍按类型头解析；
+     * 其他 topic（汇总事件）保持 JSON
+     *
+     * quota-events 及其重试 topic 套一层 ErrorHandlingDeserializer：解析失败的记录以 null 交付给监听方
+     * （异常与原始字节在记录头中），由监听方转入死信 topic，而不是在 poll 时反复失败卡住分区
+     */
+    private Deserializer<Object> valueDeserializer() {
+        Map<Pattern, Deserializer<?>> delegates = new HashMap<>();
+        delegates.put(Pattern.compile(Pattern.quote(quotaEventsTopic) + "(-retry-\\d+)?"),
+                new ErrorHandlingDeserializer<>(new QuotaEventDeserializer(jsonDeserializer(QuotaConsumedEvent.class))));
+        return new DelegatingByTopicDeserializer(delegates, jsonDeserializer(Object.class));
+    }
+
+    private <T> JsonDeserializer<T> jsonDeserializer(Class<T> defaultType) {
+        JsonDeserializer<T> deserializer = new JsonDeserializer<>(defaultType);
+        deserializer.addTrustedPackages(TRUSTED_EVENT_PACKAGES);
+        return deserializer;
+    }
+
+    /**
+     * 死信回放用：按原始字节读取，原样重新投递
+     */
+    @Bean
+    public ConsumerFactory<String, byte[]> quotaEventDlqConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
     }
 
     @Bean
@@ -39,6 +114,7 @@ public class KafkaConsumerConfig {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setAutoStartup(listenerAutoStartup);
 
         // 手动确认模式
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
@@ -51,9 +127,45 @@ public class KafkaConsumerConfig {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setAutoStartup(listenerAutoStartup);
         factory.setBatchListener(true);  // 启用批量监听
         factory.setConcurrency(2);  // 2个并发消费者
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * quota-events 专用：监听方按分区提交已落库的位移，容器本身不提交（MANUAL 且不调用 ack）
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> quotaEventListenerContainerFactory(
+            AuditWriteBuffer auditWriteBuffer) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setAutoStartup(listenerAutoStartup);
+        factory.setBatchListener(true);
+        factory.setConcurrency(quotaEventsConcurrency);
+
+        ContainerProperties containerProperties = factory.getContainerProperties();
+        containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+        containerProperties.setIdleEventInterval(quotaEventsIdleEventIntervalMillis);
+        containerProperties.setConsumerRebalanceListener(
+                new QuotaEventRebalanceListener(auditWriteBuffer, quotaEventsRevokeTimeoutMillis));
+        return factory;
+    }
+
+    /**
+     * quota-events 重试 topic 专用：监听方自行 commitSync，未到期的分区由监听方暂停
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> quotaEventRetryListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setAutoStartup(listenerAutoStartup);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ratelimiter.accounting.config;
+
+import com.ratelimiter.accounting.infrastructure.messaging.kafka.QuotaEventRetryTopics;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重试 / 死信 topic 的生产者与 topic 声明
+ * 载荷在 QuotaEventRetryPublisher 中已编码为字节，这里只做透传
+ */
+@Configuration
+public class KafkaProducerConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    // 与 quota-events 保持一致，转发保留 key（tenantId）的分区语义
+    @Value("${app.kafka.topic.quota-events-partitions:3}")
+    private int quotaEventsPartitions;
+
+    @Bean
+    public KafkaTemplate<String, byte[]> quotaEventRetryKafkaTemplate() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        // 转发成功后才提交原记录位移，必须等待所有副本确认
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props,
+                new StringSerializer(), new ByteArraySerializer()));
+    }
+
+    /**
+     * 自动创建各级重试 topic 与死信 topic
+     */
+    @Bean
+    public KafkaAdmin.NewTopics quotaEventRetryTopicDeclarations(QuotaEventRetryTopics retryTopics) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (String topic : retryTopics.retryTopics()) {
+            topics.add(TopicBuilder.name(topic).partitions(quotaEventsPartitions).replicas(1).build());
+        }
+        topics.add(TopicBuilder.name(retryTopics.deadLetterTopic()).partitions(quotaEventsPartitions).replicas(1).build());
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+}
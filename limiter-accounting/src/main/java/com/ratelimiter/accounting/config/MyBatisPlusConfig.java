@@ -2,7 +2,9 @@ package com.ratelimiter.accounting.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.AuditShardRouter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,10 +16,14 @@ public class MyBatisPlusConfig {
 
     /**
      * 分页插件（后续做分页查询时需要）
+     * 审计分表时加上动态表名插件（须在分页插件之前），不分表时不解析 SQL
      */
     @Bean
-    public MybatisPlusInterceptor mybatisPlusInterceptor() {
+    public MybatisPlusInterceptor mybatisPlusInterceptor(AuditShardRouter auditShardRouter) {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        if (auditShardRouter.isSharded()) {
+            interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(auditShardRouter));
+        }
         // 添加分页插件
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         // 可以添加其他插件，如乐观锁、防全表更新等
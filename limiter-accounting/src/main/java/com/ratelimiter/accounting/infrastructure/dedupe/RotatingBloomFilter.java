@@ -0,0 +1,173 @@
+package com.ratelimiter.accounting.infrastructure.dedupe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按时间分代轮转的布隆过滤器
+ *
+ * 共 generations 代，每代覆盖 generationMillis；写入只进当前代，查询检查所有代，
+ * 到期时丢弃最老的一代并开一个新代，整体只记住最近 generations × generationMillis 内的元素。
+ *
+ * 位数组用 AtomicLongArray，写入与查询无锁；轮转时替换整个代数组，
+ * 与轮转并发的写入可能落在被丢弃的代上，调用方需能容忍漏记（漏记只会让重复变成“可能新”）
+ */
+public final class RotatingBloomFilter {
+
+    private final int generationCount;
+    private final int bitsPerGeneration;
+    private final int hashFunctions;
+    private final long generationMillis;
+
+    // [0] 为当前代
+    private volatile Generation[] generations;
+    private volatile long nextRotationMillis;
+
+    public RotatingBloomFilter(int generationCount, int bitsPerGeneration, int hashFunctions,
+                               long generationMillis, long nowMillis) {
+        if (generationCount < 1 || bitsPerGeneration < 64 || hashFunctions < 1 || generationMillis < 1) {
+            throw new IllegalArgumentException("Invalid bloom filter parameters");
+        }
+        this.generationCount = generationCount;
+        this.bitsPerGeneration = bitsPerGeneration;
+        this.hashFunctions = hashFunctions;
+        this.generationMillis = generationMillis;
+
+        Generation[] initial = new Generation[generationCount];
+        for (int i = 0; i < generationCount; i++) {
+            initial[i] = new Generation(bitsPerGeneration);
+        }
+        this.generations = initial;
+        this.nextRotationMillis = nowMillis + generationMillis;
+    }
+
+    /**
+     * 按期望元素数与目标误判率计算参数
+     *
+     * @param expectedPerGeneration 每代预计写入的元素数
+     * @param falsePositiveRate 整个过滤器（所有代一起查询）的目标误判率
+     * @param maxBitsPerGeneration 每代位数上限（内存上限），超出时误判率会高于目标
+     */
+    public static RotatingBloomFilter create(int generationCount, long expectedPerGeneration, double falsePositiveRate,
+                                             long maxBitsPerGeneration, long generationMillis, long nowMillis) {
+        long n = Math.max(1, expectedPerGeneration);
+        // 查询命中任意一代即判为存在，每代分到 1/generationCount 的误判预算
+        double perGeneration = falsePositiveRate / generationCount;
+        long bits = (long) Math.ceil(-n * Math.log(perGeneration) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(64, Math.min(bits, Math.min(maxBitsPerGeneration, Integer.MAX_VALUE - 63)));
+        int hashes = (int) Math.max(1, Math.round((double) bits / n * Math.log(2)));
+        return new RotatingBloomFilter(generationCount, (int) bits, Math.min(hashes, 16), generationMillis, nowMillis);
+    }
+
+    public void put(String value, long nowMillis) {
+        rotateIfDue(nowMillis);
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        Generation current = generations[0];
+        for (int i = 0; i < hashFunctions; i++) {
+            current.set(index(hash1 + i * hash2));
+        }
+    }
+
+    /**
+     * @return false 表示一定未写入过（在记忆窗口内）；true 表示可能写入过
+     */
+    public boolean mightContain(String value, long nowMillis) {
+        rotateIfDue(nowMillis);
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (Generation generation : generations) {
+            if (containsAll(generation, hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsAll(Generation generation, long hash1, long hash2) {
+        for (int i = 0; i < hashFunctions; i++) {
+            if (!generation.get(index(hash1 + i * hash2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(long combined) {
+        return (int) Long.remainderUnsigned(combined, bitsPerGeneration);
+    }
+
+    private void rotateIfDue(long nowMillis) {
+        if (nowMillis < nextRotationMillis) {
+            return;
+        }
+        synchronized (this) {
+            while (nowMillis >= nextRotationMillis) {
+                Generation[] rotated = new Generation[generationCount];
+                rotated[0] = new Generation(bitsPerGeneration);
+                System.arraycopy(generations, 0, rotated, 1, generationCount - 1);
+                generations = rotated;
+                nextRotationMillis += generationMillis;
+                // 长时间无调用时不逐代空转：全部过期后直接对齐到当前时间
+                if (nowMillis - nextRotationMillis >= generationMillis * generationCount) {
+                    nextRotationMillis = nowMillis + generationMillis;
+                    for (int i = 1; i < generationCount; i++) {
+                        rotated[i] = new Generation(bitsPerGeneration);
+                    }
+                }
+            }
+        }
+    }
+
+    public int generationCount() {
+        return generationCount;
+    }
+
+    public int bitsPerGeneration() {
+        return bitsPerGeneration;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    public long memoryBytes() {
+        return (long) generationCount * ((bitsPerGeneration + 63) / 64) * Long.BYTES;
+    }
+
+    // 按 UTF-16 字符的 64 位 FNV-1a 变体 + murmur3 fmix64 收尾（不分配内存）
+    private static long hash(String value, long seed) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= value.length();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+
+        private Generation(int bits) {
+            this.words = new AtomicLongArray((bits + 63) / 64);
+        }
+
+        private void set(int bit) {
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+            long current = words.get(word);
+            if ((current & mask) == 0) {
+                words.accumulateAndGet(word, mask, (a, b) -> a | b);
+            }
+        }
+
+        private boolean get(int bit) {
+            return (words.get(bit >>> 6) & (1L << (bit & 63))) != 0;
+        }
+    }
+}
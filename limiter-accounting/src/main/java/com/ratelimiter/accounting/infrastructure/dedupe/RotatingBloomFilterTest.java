@@ -0,0 +1,55 @@
+package com.ratelimiter.accounting.infrastructure.dedupe;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RotatingBloomFilterTest {
+
+    private static final long GENERATION_MILLIS = 1_000;
+
+    // 写入过的元素一定命中，未写入的误判率不超过目标
+    @Test
+    void shouldStayWithinTargetFalsePositiveRate() {
+        RotatingBloomFilter filter = RotatingBloomFilter.create(4, 50_000, 0.001, Long.MAX_VALUE, GENERATION_MILLIS, 0);
+        for (int i = 0; i < 50_000; i++) {
+            filter.put("seen-" + i, 0);
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(filter.mightContain("seen-" + i, 0)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 200_000; i++) {
+            if (filter.mightContain("unseen-" + i, 0)) {
+                falsePositives++;
+            }
+        }
+        // 只写满一代，实际误判率远低于 0.001，这里留出余量
+        assertThat(falsePositives).isLessThan(200);
+    }
+
+    // 超出 generations × generationMillis 的元素被遗忘
+    @Test
+    void shouldForgetEntriesOlderThanWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(3, 1 << 16, 4, GENERATION_MILLIS, 0);
+        filter.put("old", 0);
+        filter.put("recent", 2_500);
+
+        assertThat(filter.mightContain("old", 2_999)).isTrue();
+        assertThat(filter.mightContain("old", 3_000)).isFalse();
+        assertThat(filter.mightContain("recent", 3_000)).isTrue();
+        // 长时间空闲后全部过期
+        assertThat(filter.mightContain("recent", 60_000)).isFalse();
+    }
+
+    // 内存上限优先于误判率目标
+    @Test
+    void shouldCapBitsAtMemoryLimit() {
+        RotatingBloomFilter filter = RotatingBloomFilter.create(6, 10_000_000, 0.001, 1 << 20, GENERATION_MILLIS, 0);
+
+        assertThat(filter.bitsPerGeneration()).isEqualTo(1 << 20);
+        assertThat(filter.memoryBytes()).isEqualTo(6L * (1 << 20) / 8);
+        assertThat(filter.hashFunctions()).isBetween(1, 16);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+
+/**
+ * 配额事件与审计实体的互相转换
+ * 反向转换用于把写入失败的实体送回重试 topic，只保留审计表中存在的字段
+ */
+final class QuotaAuditConverter {
+
+    private QuotaAuditConverter() {
+    }
+
+    static QuotaAuditEntity toEntity(QuotaConsumedEvent event) {
+        QuotaAuditEntity entity = new QuotaAuditEntity();
+
+        entity.setRequestId(event.getRequestId());
+        entity.setTenantId(event.getTenantId());
+        entity.setResourceKey(event.getResourceKey());
+        entity.setTokens(event.getTokensRequested());
+        entity.setAllowed(event.getAllowed());
+        entity.setRemaining(event.getRemainingTokens());
+        entity.setReason(event.getReason());
+        entity.setPolicyVersion(event.getPolicyVersion());
+        entity.setLatencyMs(event.getProcessTimeMs() != null ? event.getProcessTimeMs().intValue() : null);
+        entity.setTimestamp(event.getTimestamp());
+
+        // 辅助字段
+        entity.setEventId(event.getEventId());
+        entity.setTraceId(event.getTraceId());
+
+        return entity;
+    }
+
+    static QuotaConsumedEvent toEvent(QuotaAuditEntity entity) {
+        return QuotaConsumedEvent.builder()
+                .eventId(entity.getEventId())
+                .requestId(entity.getRequestId())
+                .tenantId(entity.getTenantId())
+                .resourceKey(entity.getResourceKey())
+                .tokensRequested(entity.getTokens())
+                .allowed(entity.getAllowed())
+                .reason(entity.getReason())
+                .policyVersion(entity.getPolicyVersion())
+                .remainingTokens(entity.getRemaining())
+                .timestamp(entity.getTimestamp())
+                .traceId(entity.getTraceId())
+                .processTimeMs(entity.getLatencyMs() != null ? entity.getLatencyMs().longValue() : null)
+                .build();
+    }
+}
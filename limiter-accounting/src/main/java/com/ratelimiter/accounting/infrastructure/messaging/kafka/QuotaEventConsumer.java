@@ -1,36 +1,54 @@
 package com.ratelimiter.accounting.infrastructure.messaging.kafka;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.ratelimiter.accounting. application.AuditService;
+import com.ratelimiter.accounting.application.AuditIngestMetrics;
+import com.ratelimiter.accounting.application.AuditWriteBuffer;
 import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
 import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventCodec;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.log.LogAccessor;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework. kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging. handler.annotation.Header;
-import org.springframework.messaging.handler. annotation.Payload;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Component
 public class QuotaEventConsumer {
 
-    private final AuditService auditService;
-    private final ObjectMapper objectMapper;
+    static final String LISTENER_ID = "quota-audit-ingest";
 
-    // 批量处理缓存
-    private final List<QuotaConsumedEvent> eventBuffer = new ArrayList<>();
-    private final int BATCH_SIZE = 100;  // 批量大小
-    private long lastFlushTime = System.currentTimeMillis();
-    private final long FLUSH_INTERVAL_MS = 5000;  // 5秒强制刷新
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(QuotaEventConsumer.class);
 
-    public QuotaEventConsumer(AuditService auditService, ObjectMapper objectMapper) {
-        this.auditService = auditService;
+    private final AuditWriteBuffer auditWriteBuffer;
+    private final QuotaEventRetryPublisher retryPublisher;
+    private final ObjectMapper objectMapper;
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final AuditIngestMetrics metrics;
+
+    public QuotaEventConsumer(AuditWriteBuffer auditWriteBuffer, QuotaEventRetryPublisher retryPublisher,
+                              ObjectMapper objectMapper, @Lazy KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                              AuditIngestMetrics metrics) {
+        this.auditWriteBuffer = auditWriteBuffer;
+        this.retryPublisher = retryPublisher;
         this.objectMapper = objectMapper;
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.metrics = metrics;
     }
 
 /*
@@ -80,7 +98,7 @@ public class QuotaEventConsumer {
                 } else {
                     log.error("Database error saving audit record: eventId={}, requestId={}",
                             event.getEventId(), event.getRequestId(), dbException);
-                    // 不确认消息，会重试
+                    // 注意：MANUAL 确认下不确认并不会重投，后续消息确认时位移会越过本条
                 }
             }
 
@@ -96,143 +114,116 @@ public class QuotaEventConsumer {
      *
      * 优势：
      * 1. 批量接收消息，减少 Kafka 网络开销
-     * 2. 批量查询去重，减少数据库查询次数
-     * 3. 批量插入，大幅提升数据库写入性能
-     * 4. 统一异常处理消息确认
+     * 2. 不做去重预查询，重复（重投 / 批内重复）由 requestId 认领表与 uk_request_id + INSERT IGNORE 处理
+     * 3. poll 按分区拆开交给 AuditWriteBuffer，各分区独立攒批、并行落库，分区内保持顺序
+     * 4. 位移按分区在对应记录落库后提交（commitAsync），保持至少一次语义
+     * 5. 坏记录按记录隔离：无法解析的直接进死信 topic，写入失败的进分级重试 topic，分区照常推进
      */
     @KafkaListener(
-            topics = "${app. kafka.topic.quota-events:quota-events}",
+            id = LISTENER_ID,
+            topics = "${app.kafka.topic.quota-events:quota-events}",
             groupId = "accounting-service",
-            containerFactory = "batchKafkaListenerContainerFactory"
+            containerFactory = "quotaEventListenerContainerFactory"
     )
-    public void consumeQuotaEventsBatch(List<QuotaConsumedEvent> events,
-                                        @Header(KafkaHeaders. RECEIVED_PARTITION) List<Integer> partitions,
-                                        @Header(KafkaHeaders.OFFSET) List<Long> offsets,
-                                        Acknowledgment ack) {
-        try {
-            log.info("=== Received batch of {} quota events from partitions: {} ===",
-                    events.size(), partitions);
-
-            if (events.isEmpty()) {
-                ack.acknowledge();
-                return;
-            }
+    public void consumeQuotaEventsBatch(List<ConsumerRecord<String, QuotaConsumedEvent>> records,
+                                        Consumer<?, ?> consumer) {
+        log.debug("Received batch of {} quota events", records.size());
+        metrics.recordPoll(records.size());
+
+        Map<TopicPartition, List<ConsumerRecord<String, QuotaConsumedEvent>>> byPartition = new LinkedHashMap<>();
+        for (ConsumerRecord<String, QuotaConsumedEvent> record : records) {
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+                    tp -> new ArrayList<>()).add(record);
+        }
 
-            // 1. 提取所有 requestId 用于批量去重查询
-            List<String> requestIds = events.stream()
-                    . map(QuotaConsumedEvent:: getRequestId)
-                    .distinct()
-                    .toList();
-
-            log.debug("Checking {} unique requestIds for duplicates", requestIds. size());
-
-            // 2. 批量查询已存在的 requestId
-            List<String> existingRequestIds = auditService. lambdaQuery()
-                    .select(QuotaAuditEntity::getRequestId)
-                    .in(QuotaAuditEntity::getRequestId, requestIds)
-                    .list()
-                    .stream()
-                    .map(QuotaAuditEntity::getRequestId)
-                    .toList();
-
-            log.debug("Found {} existing records", existingRequestIds. size());
-
-            // 3. 过滤出需要插入的事件
-            List<QuotaAuditEntity> auditEntities = events.stream()
-                    .filter(event -> !existingRequestIds.contains(event. getRequestId()))
-                    .map(this::convertToAuditEntity)
-                    .toList();
-
-            // 4. 批量插入
-            if (!auditEntities. isEmpty()) {
-                try {
-                    boolean saved = auditService.saveBatch(auditEntities, 1000); // 每批1000条
-                    if (saved) {
-                        log.info("Successfully batch saved {} audit records (filtered {} duplicates)",
-                                auditEntities.size(), events.size() - auditEntities.size());
-                    } else {
-                        log.error("Failed to batch save {} audit records", auditEntities.size());
-                        return; // 不确认消息，会重试
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, QuotaConsumedEvent>>> entry : byPartition.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            List<ConsumerRecord<String, QuotaConsumedEvent>> partitionRecords = entry.getValue();
+            try {
+                List<QuotaAuditEntity> auditEntities = new ArrayList<>(partitionRecords.size());
+                for (ConsumerRecord<String, QuotaConsumedEvent> record : partitionRecords) {
+                    QuotaAuditEntity entity = toAuditEntity(record);
+                    if (entity != null) {
+                        auditEntities.add(entity);
                     }
-                } catch (Exception dbException) {
-                    log.error("Database error during batch save", dbException);
+                }
 
-                    // 如果批量插入失败，可能是部分重复，尝试逐条插入
-                    handleBatchInsertFailure(auditEntities);
+                long nextOffset = partitionRecords.get(partitionRecords.size() - 1).offset() + 1;
+                if (auditWriteBuffer.submit(partition, auditEntities, nextOffset)) {
+                    // 该分区写入积压，暂停拉取直到 lane 降到低水位
+                    pause(partition);
                 }
-            } else {
-                log.info("All {} events in batch already processed, skipping insert", events.size());
+            } catch (Exception e) {
+                log.error("Error processing quota events for {}, count: {}", partition, partitionRecords.size(), e);
+                // 只有坏记录转发失败（Kafka 不可用）才会到这里：回退到本批起点，下次 poll 重新消费；
+                // 之后的批次不会越过它提交位移
+                consumer.seek(partition, partitionRecords.get(0).offset());
             }
-
-            // 5. 确认所有消息处理完成
-            ack. acknowledge();
-
-            log.debug("Batch processing completed for {} events", events. size());
-
-        } catch (Exception e) {
-            log.error("Error processing quota events batch, count: {}", events.size(), e);
-            // 不确认消息，Kafka 会重试
         }
+
+        commitAndResume(consumer);
     }
 
     /**
-     * 处理批量插入失败的情况（可能是部分重复）
+     * 无新消息时容器按 idle-event-interval 发布空闲事件（在消费者线程上），
+     * 用于提交空闲期间落库的位移、恢复已暂停的分区
      */
-    private void handleBatchInsertFailure(List<QuotaAuditEntity> entities) {
-        log.warn("Batch insert failed, trying individual insert for {} records", entities.size());
-
-        int successCount = 0;
-        int duplicateCount = 0;
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        commitAndResume(event.getConsumer());
+    }
 
-        for (QuotaAuditEntity entity : entities) {
-            try {
-                boolean saved = auditService. save(entity);
-                if (saved) {
-                    successCount++;
-                } else {
-                    log.warn("Failed to save individual record: requestId={}", entity.getRequestId());
-                }
-            } catch (Exception e) {
-                if (e. getCause() instanceof java.sql.SQLIntegrityConstraintViolationException &&
-                        e. getMessage().contains("Duplicate entry")) {
-                    duplicateCount++;
-                    log.debug("Duplicate record:  requestId={}", entity.getRequestId());
-                } else {
-                    log.error("Error saving individual record: requestId={}", entity.getRequestId(), e);
-                    throw e; // 重新抛出非重复键异常
+    private void commitAndResume(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = auditWriteBuffer.drainCommittable(consumer.assignment());
+        if (!offsets.isEmpty()) {
+            // 提交失败不回滚：之后更大的位移会覆盖；若没有后续提交，重启后重复消费由 INSERT IGNORE 去重
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Failed to commit audit offsets {}", committed, exception);
                 }
+            });
+        }
+        for (TopicPartition partition : auditWriteBuffer.drainResumable()) {
+            MessageListenerContainer container = listenerContainer();
+            if (container != null) {
+                container.resumePartition(partition);
+                log.info("Resumed quota event partition {}", partition);
             }
         }
+    }
+
+    private void pause(TopicPartition partition) {
+        MessageListenerContainer container = listenerContainer();
+        if (container != null && !container.isPartitionPauseRequested(partition)) {
+            container.pausePartition(partition);
+            log.info("Paused quota event partition {} until audit writes catch up", partition);
+        }
+    }
 
-        log.info("Individual insert completed: {} success, {} duplicates", successCount, duplicateCount);
+    private MessageListenerContainer listenerContainer() {
+        return listenerEndpointRegistry.getListenerContainer(LISTENER_ID);
     }
 
     /**
-     * 转换事件为审计实体
+     * 转换为审计实体；无法写入的记录转发到死信 topic 并返回 null
      */
-    private QuotaAuditEntity convertToAuditEntity(QuotaConsumedEvent event) {
-        QuotaAuditEntity entity = new QuotaAuditEntity();
-
-        entity.setRequestId(event.getRequestId());
-        entity.setTenantId(event.getTenantId());
-        entity.setResourceKey(event.getResourceKey());
-        entity.setTokens(event.getTokensRequested());
-        entity.setAllowed(event.getAllowed());
-        entity.setRemaining(event.getRemainingTokens());
-        entity.setReason(event.getReason());
-        entity.setPolicyVersion(event.getPolicyVersion());
-        entity.setLatencyMs(event.getProcessTimeMs() != null ? event.getProcessTimeMs().intValue() : null);
-        entity.setTimestamp(event.getTimestamp());
-
-/*        // 把 traceId 放到 client_ip 字段（或者你可以修改数据库添加 trace_id 字段）
-        entity.setClientIp(event.getTraceId());
-        // 把 processPath 放到 user_agent 字段
-        entity.setUserAgent(event.getProcessPath());*/
-
-        // 辅助字段
-        entity.setEventId(event.getEventId());
-        entity.setTraceId(event.getTraceId());
-
-        return entity;
+    private QuotaAuditEntity toAuditEntity(ConsumerRecord<String, QuotaConsumedEvent> record) {
+        QuotaConsumedEvent event = record.value();
+        if (event == null) {
+            // ErrorHandlingDeserializer 把解析失败的记录交付为 null，原始字节在异常头里
+            DeserializationException failure = SerializationUtils.getExceptionFromHeader(
+                    record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+            if (failure != null) {
+                retryPublisher.deadLetter(record, failure.getData(), failure);
+            }
+            return null;
+        }
+        if (event.getRequestId() == null || event.getTenantId() == null) {
+            // 缺少幂等键 / 租户的事件重试也不会变好
+            retryPublisher.deadLetter(record, QuotaEventCodec.encode(event),
+                    new IllegalArgumentException("Quota event without requestId or tenantId"));
+            return null;
+        }
+        return QuotaAuditConverter.toEntity(event);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ratelimiter.accounting.application.AuditService;
+import com.ratelimiter.accounting.application.AuditWriteBuffer;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditRequestMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 审计写入吞吐基准（H2 MySQL 兼容模式）
+ *
+ * 走完整的 consumeQuotaEventsBatch 路径：按分区拆分 + 分区 lane 并行写入 + 分块 INSERT IGNORE，
+ * 计时到全部落库为止，输出 1 万 / 10 万条每批的写入速率，验证位移提交到每个分区的末尾，
+ * 并验证重投整批不会产生新行
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class QuotaEventConsumerBenchmarkTest {
+
+    private static final String TOPIC = "quota-events";
+    private static final int PARTITIONS = 3;
+
+    @Autowired
+    private QuotaEventConsumer consumer;
+
+    @Autowired
+    private AuditService auditService;
+
+    @Autowired
+    private QuotaAuditRequestMapper requestMapper;
+
+    @Autowired
+    private AuditWriteBuffer auditWriteBuffer;
+
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, Object> kafkaConsumer = mock(Consumer.class);
+
+    @SuppressWarnings("unchecked")
+    private final ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> committed =
+            ArgumentCaptor.forClass(Map.class);
+
+    // 写入缓冲是单例，lane 的位移在同一 Spring 上下文的各个测试之间延续
+    private static final long[] NEXT_OFFSETS = new long[PARTITIONS];
+
+    @BeforeEach
+    void setUp() {
+        auditService.remove(new QueryWrapper<>());
+        requestMapper.delete(new QueryWrapper<>());
+        Set<TopicPartition> assignment = new HashSet<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assignment.add(new TopicPartition(TOPIC, partition));
+        }
+        when(kafkaConsumer.assignment()).thenReturn(assignment);
+    }
+
+    private static List<QuotaConsumedEvent> events(String prefix, int count) {
+        List<QuotaConsumedEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(QuotaConsumedEvent.create(prefix + "-" + i, "tenant-" + (i % 16), "/api/orders",
+                    1L, i % 10 != 0, i % 10 != 0 ? null : "quota_exceeded", "v1", 100L, "trace-" + i));
+        }
+        return events;
+    }
+
+    /**
+     * 把事件按 requestId 分到各分区（重复事件落在同一分区），作为一次 poll 投递给监听方法，等待全部落库
+     *
+     * @return 从投递到全部落库的耗时（纳秒）
+     */
+    private long consume(List<QuotaConsumedEvent> events) throws InterruptedException {
+        List<ConsumerRecord<String, QuotaConsumedEvent>> records = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            int partition = Math.floorMod(events.get(i).getRequestId().hashCode(), PARTITIONS);
+            records.add(new ConsumerRecord<>(TOPIC, partition, NEXT_OFFSETS[partition]++,
+                    events.get(i).getTenantId(), events.get(i)));
+        }
+
+        long start = System.nanoTime();
+        consumer.consumeQuotaEventsBatch(records, kafkaConsumer);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        while (auditWriteBuffer.inFlightRecords() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(auditWriteBuffer.inFlightRecords()).isZero();
+
+        // 下一次 poll（空）提交已落库的位移：每个分区都提交到末尾
+        consumer.consumeQuotaEventsBatch(List.of(), kafkaConsumer);
+        verify(kafkaConsumer, atLeastOnce()).commitAsync(committed.capture(), any());
+        Map<TopicPartition, OffsetAndMetadata> last = committed.getValue();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertThat(last.get(new TopicPartition(TOPIC, partition)).offset()).isEqualTo(NEXT_OFFSETS[partition]);
+        }
+        return elapsed;
+    }
+
+    private void benchmark(int batchSize) throws InterruptedException {
+        List<QuotaConsumedEvent> batch = events("bench-" + batchSize, batchSize);
+        // 预热：JIT 与 MyBatis 语句缓存
+        consume(events("warmup-" + batchSize, Math.min(batchSize, 5_000)));
+        long before = auditService.count();
+
+        long elapsed = consume(batch);
+        assertThat(auditService.count() - before).isEqualTo(batchSize);
+
+        // Kafka 重投整批：全部被 uk_request_id 忽略，位移照常推进
+        long redeliveryElapsed = consume(batch);
+        assertThat(auditService.count() - before).isEqualTo(batchSize);
+
+        System.out.printf("batch=%d insert: %d ms, %.0f rows/s | redelivery: %d ms, %.0f rows/s%n",
+                batchSize, TimeUnit.NANOSECONDS.toMillis(elapsed), rowsPerSecond(batchSize, elapsed),
+                TimeUnit.NANOSECONDS.toMillis(redeliveryElapsed), rowsPerSecond(batchSize, redeliveryElapsed));
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows * 1e9 / Math.max(nanos, 1);
+    }
+
+    @Test
+    void benchmark10kEventsPerBatch() throws InterruptedException {
+        benchmark(10_000);
+    }
+
+    @Test
+    void benchmark100kEventsPerBatch() throws InterruptedException {
+        benchmark(100_000);
+    }
+
+    // 批内重复的 requestId 只写入一次
+    @Test
+    void shouldIgnoreDuplicatesWithinBatch() throws InterruptedException {
+        List<QuotaConsumedEvent> batch = new ArrayList<>(events("dup", 100));
+        batch.addAll(events("dup", 50));
+
+        consume(batch);
+
+        assertThat(auditService.count()).isEqualTo(100);
+    }
+}
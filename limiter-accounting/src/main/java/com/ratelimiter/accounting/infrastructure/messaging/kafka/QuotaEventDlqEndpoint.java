@@ -0,0 +1,45 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/ratelimiterDlq
+ * GET 返回各死信分区待回放的记录数，POST {"maxRecords": n} 回放最多 n 条（默认 1000）
+ */
+@Component
+@Endpoint(id = "ratelimiterDlq")
+public class QuotaEventDlqEndpoint {
+
+    private static final int DEFAULT_MAX_RECORDS = 1000;
+
+    private final QuotaEventDlqReplayer replayer;
+
+    public QuotaEventDlqEndpoint(QuotaEventDlqReplayer replayer) {
+        this.replayer = replayer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> pending() {
+        Map<Integer, Long> pending = replayer.pending();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pending", pending.values().stream().mapToLong(Long::longValue).sum());
+        result.put("partitions", pending);
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> replay(@Nullable Integer maxRecords) {
+        int replayed = replayer.replay(maxRecords != null ? maxRecords : DEFAULT_MAX_RECORDS);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("replayed", replayed);
+        result.putAll(pending());
+        return result;
+    }
+}
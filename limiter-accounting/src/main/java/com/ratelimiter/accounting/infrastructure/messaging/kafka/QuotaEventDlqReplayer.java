@@ -0,0 +1,167 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 死信 topic 回放工具：修复问题（数据 / 代码 / 表结构）后，把死信记录原样重新投递到 quota-events
+ *
+ * 使用独立的消费组 accounting-dlq-replay 记录回放进度，每次最多回放 maxRecords 条，
+ * 重新投递得到 broker 确认后才提交进度；回放后的记录走正常的写入 / 重试流程，仍失败会再次进入死信。
+ * 每次回放只处理开始时各分区 end offset 之前的记录，回放期间重新进入死信的记录留给下一次回放
+ */
+@Slf4j
+@Component
+public class QuotaEventDlqReplayer {
+
+    public static final String REPLAY_GROUP_ID = "accounting-dlq-replay";
+    public static final String REPLAYED_FROM_HEADER = "ratelimiter-replayed-from";
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<String, byte[]> dlqConsumerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final QuotaEventRetryTopics retryTopics;
+    private final long sendTimeoutMillis;
+
+    public QuotaEventDlqReplayer(@Qualifier("quotaEventDlqConsumerFactory") ConsumerFactory<String, byte[]> dlqConsumerFactory,
+                                 @Qualifier("quotaEventRetryKafkaTemplate") KafkaTemplate<String, byte[]> kafkaTemplate,
+                                 QuotaEventRetryTopics retryTopics,
+                                 @Value("${app.kafka.retry.send-timeout-ms:10000}") long sendTimeoutMillis) {
+        this.dlqConsumerFactory = dlqConsumerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryTopics = retryTopics;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+    }
+
+    /**
+     * @return 每个死信分区尚未回放的记录数
+     */
+    public Map<Integer, Long> pending() {
+        try (Consumer<String, byte[]> consumer = dlqConsumerFactory.createConsumer(REPLAY_GROUP_ID, "-inspect")) {
+            List<TopicPartition> partitions = partitions(consumer);
+            Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(Set.copyOf(partitions));
+            Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+            Map<Integer, Long> pending = new LinkedHashMap<>();
+            consumer.endOffsets(partitions).forEach((partition, end) -> {
+                OffsetAndMetadata position = committed.get(partition);
+                long start = position != null ? position.offset() : beginning.getOrDefault(partition, 0L);
+                pending.put(partition.partition(), Math.max(0, end - start));
+            });
+            return pending;
+        }
+    }
+
+    /**
+     * 回放最多 maxRecords 条死信记录
+     *
+     * @return 实际回放的条数
+     */
+    public synchronized int replay(int maxRecords) {
+        int replayed = 0;
+        try (Consumer<String, byte[]> consumer = dlqConsumerFactory.createConsumer(REPLAY_GROUP_ID, "-replay")) {
+            List<TopicPartition> partitions = partitions(consumer);
+            consumer.assign(partitions);
+            // 以开始时的 end offset 为界：否则回放后再次失败的记录会重新进入死信，在本轮内被反复回放
+            Map<TopicPartition, Long> endOffsets = new HashMap<>(consumer.endOffsets(partitions));
+            while (replayed < maxRecords && !reachedEnd(consumer, endOffsets)) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    break;
+                }
+
+                List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    if (replayed == maxRecords) {
+                        break;
+                    }
+                    if (record.offset() >= endOffsets.get(new TopicPartition(record.topic(), record.partition()))) {
+                        continue;
+                    }
+                    sends.add(kafkaTemplate.send(new ProducerRecord<>(retryTopics.mainTopic(), null,
+                            record.key(), record.value(), replayHeaders(record))));
+                    offsets.put(new TopicPartition(record.topic(), record.partition()),
+                            new OffsetAndMetadata(record.offset() + 1));
+                    replayed++;
+                }
+
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                        .get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+                consumer.commitSync(offsets);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying dead letters", e);
+        } catch (Exception e) {
+            // 已提交的部分不会重复回放；未确认的部分下次重放（重复投递由 INSERT IGNORE 去重）
+            throw new IllegalStateException("Dead letter replay failed after " + replayed + " records", e);
+        }
+        log.info("Replayed {} dead-lettered quota events to {}", replayed, retryTopics.mainTopic());
+        return replayed;
+    }
+
+    /**
+     * 已到达边界的分区暂停拉取；全部到达时返回 true
+     */
+    private static boolean reachedEnd(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> endOffsets) {
+        List<TopicPartition> reached = new ArrayList<>();
+        endOffsets.forEach((partition, end) -> {
+            if (consumer.position(partition) >= end) {
+                reached.add(partition);
+            }
+        });
+        consumer.pause(reached);
+        return reached.size() == endOffsets.size();
+    }
+
+    private List<TopicPartition> partitions(Consumer<String, byte[]> consumer) {
+        List<PartitionInfo> infos = consumer.partitionsFor(retryTopics.deadLetterTopic());
+        List<TopicPartition> partitions = new ArrayList<>();
+        if (infos != null) {
+            infos.forEach(info -> partitions.add(new TopicPartition(info.topic(), info.partition())));
+        }
+        return partitions;
+    }
+
+    /**
+     * 保留失败诊断头（来源位置、异常），去掉失败次数使回放后的记录重新走完整的重试分级
+     */
+    private static Headers replayHeaders(ConsumerRecord<String, byte[]> record) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!QuotaEventRetryPublisher.FAILED_ATTEMPTS_HEADER.equals(header.key())) {
+                headers.add(header);
+            }
+        }
+        headers.add(REPLAYED_FROM_HEADER, (record.topic() + "-" + record.partition() + "@" + record.offset())
+                .getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+}
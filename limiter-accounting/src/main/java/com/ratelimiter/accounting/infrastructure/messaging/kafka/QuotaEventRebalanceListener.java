@@ -0,0 +1,51 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.application.AuditWriteBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * quota-events 再均衡处理
+ *
+ * 分区被回收前先把对应 lane 写完（有超时）并同步提交已落库的位移，
+ * 新的所有者从这里继续，未落库的部分重新消费（INSERT IGNORE 去重）
+ */
+@Slf4j
+public class QuotaEventRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private final AuditWriteBuffer auditWriteBuffer;
+    private final long revokeTimeoutMillis;
+
+    public QuotaEventRebalanceListener(AuditWriteBuffer auditWriteBuffer, long revokeTimeoutMillis) {
+        this.auditWriteBuffer = auditWriteBuffer;
+        this.revokeTimeoutMillis = revokeTimeoutMillis;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> offsets = auditWriteBuffer.revoke(partitions, revokeTimeoutMillis);
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+                log.info("Committed audit offsets for revoked partitions: {}", offsets);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            auditWriteBuffer.discard(partitions);
+        } catch (Exception e) {
+            log.warn("Failed to commit audit offsets for revoked partitions {}", partitions, e);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        log.warn("Quota event partitions lost, dropping buffered audit records: {}", partitions);
+        auditWriteBuffer.discard(partitions);
+    }
+}
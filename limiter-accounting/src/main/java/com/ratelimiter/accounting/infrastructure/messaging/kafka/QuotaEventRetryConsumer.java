@@ -0,0 +1,157 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.application.AuditService;
+import com.ratelimiter.accounting.application.AuditSink;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费分级重试 topic（非阻塞重试）
+ *
+ * 每级 topic 只包含同一延迟的记录，分区内按发送时间有序：
+ * 遇到未到期的记录时把分区回退到该记录并暂停到到期时刻，其他分区 / 主 topic 不受影响。
+ * 到期的记录逐条写入（记录级隔离），记录级失败转发到下一级，最后一级之后进入死信 topic；
+ * 数据库故障时同样回退并暂停该分区，退避后重试
+ */
+@Slf4j
+@Component
+public class QuotaEventRetryConsumer {
+
+    static final String LISTENER_ID = "quota-audit-retry";
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(QuotaEventRetryConsumer.class);
+
+    private final AuditSink auditSink;
+    private final QuotaEventRetryPublisher retryPublisher;
+    private final QuotaEventRetryTopics retryTopics;
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final long failureBackoffMillis;
+
+    private final ScheduledExecutorService resumeTimer;
+
+    public QuotaEventRetryConsumer(AuditSink auditSink,
+                                   QuotaEventRetryPublisher retryPublisher,
+                                   QuotaEventRetryTopics retryTopics,
+                                   @Lazy KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                   @Value("${app.kafka.retry.failure-backoff-ms:5000}") long failureBackoffMillis) {
+        this.auditSink = auditSink;
+        this.retryPublisher = retryPublisher;
+        this.retryTopics = retryTopics;
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.failureBackoffMillis = failureBackoffMillis;
+        this.resumeTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-retry-resume");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = "#{@quotaEventRetryTopics.retryTopics()}",
+            groupId = "accounting-service",
+            containerFactory = "quotaEventRetryListenerContainerFactory"
+    )
+    public void consumeRetries(List<ConsumerRecord<String, QuotaConsumedEvent>> records, Consumer<?, ?> consumer) {
+        Map<TopicPartition, List<ConsumerRecord<String, QuotaConsumedEvent>>> byPartition = new LinkedHashMap<>();
+        for (ConsumerRecord<String, QuotaConsumedEvent> record : records) {
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+                    tp -> new ArrayList<>()).add(record);
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, QuotaConsumedEvent>>> entry : byPartition.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            long delayMillis = retryTopics.delayOf(partition.topic());
+            for (ConsumerRecord<String, QuotaConsumedEvent> record : entry.getValue()) {
+                long waitMillis = record.timestamp() + delayMillis - System.currentTimeMillis();
+                if (waitMillis > 0) {
+                    backOff(consumer, partition, record.offset(), waitMillis);
+                    break;
+                }
+                try {
+                    retry(record);
+                } catch (Exception e) {
+                    log.warn("Retry of quota event at {}@{} failed, backing off {} ms",
+                            partition, record.offset(), failureBackoffMillis, e);
+                    backOff(consumer, partition, record.offset(), failureBackoffMillis);
+                    break;
+                }
+                offsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+            }
+        }
+
+        if (!offsets.isEmpty()) {
+            // 重试量小，同步提交，避免重启后重复转发
+            consumer.commitSync(offsets);
+        }
+    }
+
+    /**
+     * 重新写入一条记录；记录级失败时转发到下一级，基础设施故障时抛出
+     */
+    private void retry(ConsumerRecord<String, QuotaConsumedEvent> record) {
+        int failedAttempts = retryTopics.attemptOf(record.topic());
+        QuotaConsumedEvent event = record.value();
+        if (event == null) {
+            DeserializationException failure = SerializationUtils.getExceptionFromHeader(
+                    record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+            if (failure != null) {
+                retryPublisher.deadLetter(record, failure.getData(), failure);
+            }
+            return;
+        }
+
+        try {
+            int inserted = auditSink.write(List.of(QuotaAuditConverter.toEntity(event)));
+            log.info("Retried quota event requestId={} from {} (attempt {}, inserted {})",
+                    event.getRequestId(), record.topic(), failedAttempts + 1, inserted);
+        } catch (RuntimeException e) {
+            if (!AuditService.isRecordLevelFailure(e)) {
+                throw e;
+            }
+            retryPublisher.forward(record, event, failedAttempts + 1, e);
+        }
+    }
+
+    /**
+     * 回退到 offset 并暂停分区 delayMillis，期间本消费者的其他分区照常拉取
+     */
+    private void backOff(Consumer<?, ?> consumer, TopicPartition partition, long offset, long delayMillis) {
+        consumer.seek(partition, offset);
+        MessageListenerContainer container = listenerEndpointRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+        container.pausePartition(partition);
+        resumeTimer.schedule(() -> container.resumePartition(partition), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resumeTimer.shutdownNow();
+    }
+}
@@ -0,0 +1,206 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ratelimiter.accounting.application.AuditService;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaAuditRequestMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventCodec;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * 重试 / 死信链路（嵌入式 Kafka + H2）
+ *
+ * 注入写入失败：坏记录经两级重试后进入死信 topic，偶发失败的记录在第一级重试成功，
+ * 无法解析的记录直接进入死信；主 topic 的其余记录全部落库、位移提交到末尾。
+ * 修复后回放死信，记录重新落库
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.listener.auto-startup=true",
+        "app.kafka.topic.quota-events-retry-delays-ms=200,500",
+        "app.kafka.retry.failure-backoff-ms=200",
+        "app.kafka.listener.quota-events.idle-event-interval-ms=100",
+        "app.accounting.buffer.flush-interval-ms=50"
+})
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, topics = {
+        "quota-events", "quota-events-retry-200", "quota-events-retry-500", "quota-events-dlt"})
+@DirtiesContext
+public class QuotaEventRetryIntegrationTest {
+
+    private static final String TOPIC = "quota-events";
+    private static final int GOOD_EVENTS = 50;
+
+    @SpyBean
+    private AuditService auditService;
+
+    @Autowired
+    private QuotaAuditRequestMapper requestMapper;
+
+    @Autowired
+    @Qualifier("quotaEventRetryKafkaTemplate")
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Autowired
+    private QuotaEventDlqReplayer replayer;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    // 任何路径写入都失败的 requestId
+    private final Set<String> poisoned = ConcurrentHashMap.newKeySet();
+    // 只在主 topic 的写入线程（audit-writer-*）上失败、重试时成功的 requestId
+    private final Set<String> failingOnMainPath = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        auditService.remove(new QueryWrapper<>());
+        requestMapper.delete(new QueryWrapper<>());
+        doAnswer(invocation -> {
+            List<QuotaAuditEntity> records = invocation.getArgument(0);
+            boolean mainPath = Thread.currentThread().getName().startsWith("audit-writer");
+            for (QuotaAuditEntity record : records) {
+                if (poisoned.contains(record.getRequestId())
+                        || (mainPath && failingOnMainPath.contains(record.getRequestId()))) {
+                    throw new DataIntegrityViolationException("Injected failure for " + record.getRequestId());
+                }
+            }
+            return invocation.callRealMethod();
+        }).when(auditService).insertIgnore(anyList(), anyInt());
+    }
+
+    private void send(QuotaConsumedEvent event) throws Exception {
+        kafkaTemplate.send(TOPIC, event.getTenantId(), QuotaEventCodec.encode(event)).get(10, TimeUnit.SECONDS);
+    }
+
+    private static QuotaConsumedEvent event(String requestId) {
+        return QuotaConsumedEvent.create(requestId, "tenant-" + Math.floorMod(requestId.hashCode(), 8),
+                "/api/orders", 1L, true, null, "v1", 100L, "trace-" + requestId);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private long pendingDeadLetters() {
+        return replayer.pending().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private boolean hasRow(String requestId) {
+        return auditService.lambdaQuery().eq(QuotaAuditEntity::getRequestId, requestId).count() > 0;
+    }
+
+    private Consumer<String, byte[]> consumer(String groupId) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(groupId, "false", broker);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer())
+                .createConsumer();
+    }
+
+    @Test
+    void shouldRouteFailuresThroughRetryTopicsWithoutStallingPartitions() throws Exception {
+        poisoned.add("poison-1");
+        failingOnMainPath.add("flaky-1");
+
+        for (int i = 0; i < GOOD_EVENTS / 2; i++) {
+            send(event("good-" + i));
+        }
+        send(event("poison-1"));
+        send(event("flaky-1"));
+        kafkaTemplate.send(TOPIC, "tenant-0", new byte[]{1, 2, 3}).get(10, TimeUnit.SECONDS);
+        for (int i = GOOD_EVENTS / 2; i < GOOD_EVENTS; i++) {
+            send(event("good-" + i));
+        }
+
+        // 正常记录与第一级重试成功的记录落库，坏记录与无法解析的记录进入死信
+        await(() -> auditService.count() == GOOD_EVENTS + 1 && pendingDeadLetters() == 2);
+        assertThat(hasRow("flaky-1")).isTrue();
+        assertThat(hasRow("poison-1")).isFalse();
+
+        // 主 topic 没有被坏记录卡住：每个分区的位移都提交到末尾
+        try (Consumer<String, byte[]> inspector = consumer("accounting-service-inspector")) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (int partition = 0; partition < 3; partition++) {
+                partitions.add(new TopicPartition(TOPIC, partition));
+            }
+            Map<TopicPartition, Long> endOffsets = inspector.endOffsets(partitions);
+            await(() -> {
+                Map<TopicPartition, OffsetAndMetadata> committed = committedOffsets(partitions);
+                return partitions.stream().allMatch(tp -> committed.get(tp) != null
+                        && committed.get(tp).offset() == endOffsets.get(tp));
+            });
+        }
+
+        // 死信保留来源与失败信息：主 topic + 两级重试共失败 3 次
+        try (Consumer<String, byte[]> dlt = consumer("dlt-inspector")) {
+            dlt.subscribe(Set.of("quota-events-dlt"));
+            List<ConsumerRecord<String, byte[]>> deadLetters = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (deadLetters.size() < 2 && System.currentTimeMillis() < deadline) {
+                dlt.poll(Duration.ofMillis(200)).forEach(deadLetters::add);
+            }
+            ConsumerRecord<String, byte[]> poison = deadLetters.stream()
+                    .filter(record -> QuotaEventCodec.isEncoded(record.value()))
+                    .findFirst().orElseThrow();
+            assertThat(QuotaEventCodec.decode(poison.value()).getRequestId()).isEqualTo("poison-1");
+            assertThat(ByteBuffer.wrap(poison.headers()
+                    .lastHeader(QuotaEventRetryPublisher.FAILED_ATTEMPTS_HEADER).value()).getInt()).isEqualTo(3);
+            assertThat(new String(poison.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN).value(),
+                    StandardCharsets.UTF_8)).isEqualTo(DataIntegrityViolationException.class.getName());
+            assertThat(new String(poison.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC).value(),
+                    StandardCharsets.UTF_8)).isEqualTo(TOPIC);
+        }
+
+        // 修复后回放：坏记录落库，无法解析的记录再次进入死信
+        poisoned.clear();
+        assertThat(replayer.replay(10)).isEqualTo(2);
+        await(() -> hasRow("poison-1") && pendingDeadLetters() == 1);
+        assertThat(auditService.count()).isEqualTo(GOOD_EVENTS + 2);
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committedOffsets(List<TopicPartition> partitions) {
+        try (Consumer<String, byte[]> group = consumer("accounting-service")) {
+            return group.committed(Set.copyOf(partitions));
+        }
+    }
+}
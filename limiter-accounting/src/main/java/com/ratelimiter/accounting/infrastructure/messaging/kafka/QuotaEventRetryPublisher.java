@@ -0,0 +1,145 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.application.RejectedAuditRecordHandler;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 把处理失败的配额事件转发到下一级重试 topic / 死信 topic
+ *
+ * 载荷统一为 QuotaEventCodec 二进制（与 quota-events 相同），反序列化失败的记录原样转发原始字节。
+ * 头部沿用 spring-kafka 的 DLT 约定（kafka_dlt-original-topic 等），首次失败的来源在后续转发中保持不变，
+ * 另加 {@link #FAILED_ATTEMPTS_HEADER} 记录已失败次数。
+ *
+ * 发送是同步的（等待 broker 确认）：返回后调用方才能提交原记录的位移
+ */
+@Slf4j
+@Component
+public class QuotaEventRetryPublisher implements RejectedAuditRecordHandler {
+
+    public static final String FAILED_ATTEMPTS_HEADER = "ratelimiter-failed-attempts";
+
+    private static final int MAX_EXCEPTION_MESSAGE_LENGTH = 1024;
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final QuotaEventRetryTopics retryTopics;
+    private final MeterRegistry meterRegistry;
+    private final long sendTimeoutMillis;
+
+    public QuotaEventRetryPublisher(@Qualifier("quotaEventRetryKafkaTemplate") KafkaTemplate<String, byte[]> kafkaTemplate,
+                                    QuotaEventRetryTopics retryTopics,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.kafka.retry.send-timeout-ms:10000}") long sendTimeoutMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryTopics = retryTopics;
+        this.meterRegistry = meterRegistry;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+    }
+
+    /**
+     * 写入缓冲中隔离出的坏记录：主 topic 上的第一次失败
+     */
+    @Override
+    public void reject(TopicPartition source, QuotaAuditEntity record, Exception cause) {
+        Headers headers = new RecordHeaders();
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, source.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(source.partition()).array());
+        send(1, record.getTenantId(), QuotaEventCodec.encode(QuotaAuditConverter.toEvent(record)), headers, cause);
+    }
+
+    /**
+     * 消费到的记录处理失败，转发到下一级
+     *
+     * @param failedAttempts 包括本次在内的失败次数
+     */
+    public void forward(ConsumerRecord<String, ?> record, QuotaConsumedEvent event, int failedAttempts, Exception cause) {
+        send(failedAttempts, record.key(), QuotaEventCodec.encode(event), sourceHeaders(record), cause);
+    }
+
+    /**
+     * 无法解析的记录不会因重试变好，直接进入死信 topic，保留原始字节
+     */
+    public void deadLetter(ConsumerRecord<String, ?> record, byte[] payload, Exception cause) {
+        send(Integer.MAX_VALUE, record.key(), payload, sourceHeaders(record), cause);
+    }
+
+    private void send(int failedAttempts, String key, byte[] payload, Headers headers, Exception cause) {
+        String topic = retryTopics.nextTopic(failedAttempts);
+        headers.remove(FAILED_ATTEMPTS_HEADER);
+        headers.add(FAILED_ATTEMPTS_HEADER, ByteBuffer.allocate(Integer.BYTES)
+                .putInt(Math.min(failedAttempts, retryTopics.retryTopics().length + 1)).array());
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_FQCN);
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, cause.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, truncate(String.valueOf(cause.getMessage()))
+                .getBytes(StandardCharsets.UTF_8));
+
+        try {
+            kafkaTemplate.send(new ProducerRecord<>(topic, null, key, payload, headers))
+                    .get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while forwarding quota event to " + topic, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to forward quota event to " + topic, e);
+        }
+
+        meterRegistry.counter("audit_events_forwarded_total", "topic", topic).increment();
+        log.info("Forwarded quota event key={} to {} after {} failed attempt(s): {}",
+                key, topic, failedAttempts == Integer.MAX_VALUE ? "unrecoverable" : failedAttempts,
+                cause.getClass().getSimpleName());
+    }
+
+    /**
+     * 保留首次失败的来源；来源头不存在（主 topic 上的记录）时用当前记录的位置
+     */
+    private static Headers sourceHeaders(ConsumerRecord<String, ?> record) {
+        Headers headers = new RecordHeaders();
+        Header originalTopic = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        if (originalTopic != null) {
+            headers.add(originalTopic);
+            copy(record.headers(), headers, KafkaHeaders.DLT_ORIGINAL_PARTITION);
+            copy(record.headers(), headers, KafkaHeaders.DLT_ORIGINAL_OFFSET);
+        } else {
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION,
+                    ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET,
+                    ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+        }
+        return headers;
+    }
+
+    private static void copy(Headers from, Headers to, String name) {
+        Header header = from.lastHeader(name);
+        if (header != null) {
+            to.add(header);
+        }
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_EXCEPTION_MESSAGE_LENGTH
+                ? message
+                : message.substring(0, MAX_EXCEPTION_MESSAGE_LENGTH);
+    }
+}
@@ -0,0 +1,77 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * quota-events 的分级重试 / 死信 topic
+ *
+ * 第 n 次失败的记录发送到第 n 级重试 topic（{quota-events}-retry-{延迟毫秒}），
+ * 在原始发送时间 + 该级延迟之后才被重新写入；所有级别都失败后进入 {quota-events}-dlt。
+ * 命名与 spring-kafka 的 @RetryableTopic 默认后缀一致
+ */
+@Component
+public class QuotaEventRetryTopics {
+
+    private final String mainTopic;
+    private final long[] delaysMillis;
+    private final String[] retryTopics;
+
+    public QuotaEventRetryTopics(@Value("${app.kafka.topic.quota-events:quota-events}") String mainTopic,
+                                 @Value("${app.kafka.topic.quota-events-retry-delays-ms:10000,60000,600000}")
+                                 long[] delaysMillis) {
+        this.mainTopic = mainTopic;
+        this.delaysMillis = delaysMillis.clone();
+        this.retryTopics = Arrays.stream(delaysMillis)
+                .mapToObj(delay -> mainTopic + "-retry-" + delay)
+                .toArray(String[]::new);
+    }
+
+    public String mainTopic() {
+        return mainTopic;
+    }
+
+    public String[] retryTopics() {
+        return retryTopics.clone();
+    }
+
+    public String deadLetterTopic() {
+        return mainTopic + "-dlt";
+    }
+
+    /**
+     * @param failedAttempts 已失败的次数（主 topic 上的失败为 1）
+     * @return 下一跳 topic：对应级别的重试 topic，超过级数时为死信 topic
+     */
+    public String nextTopic(int failedAttempts) {
+        return failedAttempts >= 1 && failedAttempts <= retryTopics.length
+                ? retryTopics[failedAttempts - 1]
+                : deadLetterTopic();
+    }
+
+    /**
+     * @return 重试 topic 的延迟，非重试 topic 返回 -1
+     */
+    public long delayOf(String topic) {
+        for (int i = 0; i < retryTopics.length; i++) {
+            if (retryTopics[i].equals(topic)) {
+                return delaysMillis[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 重试 topic 对应的失败次数（第几级），非重试 topic 返回 0
+     */
+    public int attemptOf(String topic) {
+        for (int i = 0; i < retryTopics.length; i++) {
+            if (retryTopics[i].equals(topic)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
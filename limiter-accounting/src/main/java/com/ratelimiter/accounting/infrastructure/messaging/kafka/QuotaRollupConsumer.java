@@ -0,0 +1,101 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.application.RollupAuditService;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditRollupEntity;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消费 Data Plane 输出的允许决策汇总（quota-rollups）
+ * 计费总量 = quota_audit 中逐条记录的 tokens + quota_audit_rollup 中的 tokens_consumed
+ *
+ * 监听容器为 MANUAL 确认：不确认并不会让 Kafka 重投，下一批确认时位移会越过失败的批次。
+ * 写入失败时回退到本批各分区的起点并退避，重新消费；INSERT IGNORE（uk_rollup_id）保证重投不重复计费
+ */
+@Slf4j
+@Component
+public class QuotaRollupConsumer {
+
+    private static final int INSERT_CHUNK_SIZE = 500;
+
+    private final RollupAuditService rollupAuditService;
+    private final long failureBackoffMillis;
+
+    public QuotaRollupConsumer(RollupAuditService rollupAuditService,
+                               @Value("${app.accounting.rollup.failure-backoff-ms:1000}") long failureBackoffMillis) {
+        this.rollupAuditService = rollupAuditService;
+        this.failureBackoffMillis = failureBackoffMillis;
+    }
+
+    @KafkaListener(
+            topics = "${app.kafka.topic.quota-rollups:quota-rollups}",
+            groupId = "accounting-service",
+            containerFactory = "batchKafkaListenerContainerFactory"
+    )
+    public void consumeRollups(List<ConsumerRecord<String, Object>> records, Acknowledgment ack,
+                               Consumer<?, ?> consumer) {
+        if (records.isEmpty()) {
+            ack.acknowledge();
+            return;
+        }
+
+        List<QuotaAuditRollupEntity> entities = new ArrayList<>(records.size());
+        Map<TopicPartition, Long> firstOffsets = new LinkedHashMap<>();
+        for (ConsumerRecord<String, Object> record : records) {
+            firstOffsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+            if (record.value() instanceof QuotaRollupEvent rollup) {
+                entities.add(convertToEntity(rollup));
+            }
+        }
+
+        try {
+            int inserted = rollupAuditService.insertIgnore(entities, INSERT_CHUNK_SIZE);
+            log.info("Saved {} quota rollups (skipped {} duplicates)", inserted, entities.size() - inserted);
+
+            ack.acknowledge();
+        } catch (Exception e) {
+            log.error("Error processing quota rollups batch, count: {}", records.size(), e);
+            // MANUAL 确认下不确认不会重投：回退到本批起点，退避后重新消费
+            firstOffsets.forEach(consumer::seek);
+            backoff();
+        }
+    }
+
+    private QuotaAuditRollupEntity convertToEntity(QuotaRollupEvent rollup) {
+        QuotaAuditRollupEntity entity = new QuotaAuditRollupEntity();
+        entity.setRollupId(rollup.getRollupId());
+        entity.setNodeId(rollup.getNodeId());
+        entity.setTenantId(rollup.getTenantId());
+        entity.setResourceKey(rollup.getResourceKey());
+        entity.setPolicyVersion(rollup.getPolicyVersion());
+        entity.setProcessPath(rollup.getProcessPath());
+        entity.setWindowStart(rollup.getWindowStart());
+        entity.setWindowMs(rollup.getWindowMs());
+        entity.setRequestCount(rollup.getRequestCount());
+        entity.setTokensRequested(rollup.getTokensRequested());
+        entity.setTokensConsumed(rollup.getTokensConsumed());
+        entity.setFirstTimestamp(rollup.getFirstTimestamp());
+        entity.setLastTimestamp(rollup.getLastTimestamp());
+        return entity;
+    }
+
+    private void backoff() {
+        try {
+            Thread.sleep(failureBackoffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
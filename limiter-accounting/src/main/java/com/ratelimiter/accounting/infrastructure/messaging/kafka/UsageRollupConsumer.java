@@ -0,0 +1,141 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.ratelimiter.accounting.application.UsageIncrement;
+import com.ratelimiter.accounting.application.UsageRollupService;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用量汇总的增量维护：独立消费组读取 quota-events（逐条决策）与 quota-rollups（Data Plane 折叠的允许决策），
+ * 与审计写入互不阻塞
+ *
+ * 计费口径与审计一致：逐条事件中 allowed 的 tokensRequested + 汇总事件的 tokensConsumed
+ *
+ * 位移以数据库（quota_usage_offset）为准：分区分配后从库里的位移继续，Kafka 位移只用于观测消费延迟
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.accounting.usage.enabled", havingValue = "true", matchIfMissing = true)
+public class UsageRollupConsumer implements ConsumerSeekAware {
+
+    static final String GROUP_ID = "accounting-usage";
+
+    private final UsageRollupService usageRollupService;
+    private final long failureBackoffMillis;
+
+    public UsageRollupConsumer(UsageRollupService usageRollupService,
+                               @Value("${app.accounting.usage.failure-backoff-ms:1000}") long failureBackoffMillis) {
+        this.usageRollupService = usageRollupService;
+        this.failureBackoffMillis = failureBackoffMillis;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        try {
+            Map<TopicPartition, Long> offsets = usageRollupService.loadOffsets(assignments.keySet());
+            offsets.forEach((partition, offset) -> callback.seek(partition.topic(), partition.partition(), offset));
+            log.info("Usage rollup resumed {} partitions from stored offsets", offsets.size());
+        } catch (Exception e) {
+            // 从 Kafka 已提交位移继续：可能重复拉取已累加的记录，由事务内的位移水位跳过
+            log.warn("Failed to load usage rollup offsets, falling back to committed offsets", e);
+        }
+    }
+
+    @KafkaListener(
+            topics = {"${app.kafka.topic.quota-events:quota-events}", "${app.kafka.topic.quota-rollups:quota-rollups}"},
+            groupId = GROUP_ID,
+            containerFactory = "batchKafkaListenerContainerFactory",
+            properties = "auto.offset.reset=earliest"
+    )
+    public void consume(List<ConsumerRecord<String, Object>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+        List<UsageIncrement> increments = new ArrayList<>(records.size());
+        Map<TopicPartition, Long> firstOffsets = new LinkedHashMap<>();
+        Map<TopicPartition, Long> nextOffsets = new LinkedHashMap<>();
+        for (ConsumerRecord<String, Object> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            firstOffsets.putIfAbsent(partition, record.offset());
+            nextOffsets.put(partition, record.offset() + 1);
+            UsageIncrement increment = toIncrement(partition, record);
+            if (increment != null) {
+                increments.add(increment);
+            }
+        }
+
+        try {
+            int applied = usageRollupService.apply(increments, nextOffsets);
+            log.debug("Applied {} usage increments ({} records)", applied, records.size());
+            ack.acknowledge();
+        } catch (Exception e) {
+            log.error("Error applying usage increments, count: {}", records.size(), e);
+            // 事务已回滚：回退到本批起点，退避后重新消费
+            firstOffsets.forEach(consumer::seek);
+            backoff();
+        }
+    }
+
+    /**
+     * 转换为用量增量；无法计入的记录（解析失败、缺少租户 / 资源 / 时间）返回 null，
+     * 它们在审计链路中进入死信，这里只推进位移
+     */
+    static UsageIncrement toIncrement(TopicPartition partition, ConsumerRecord<String, Object> record) {
+        Object value = record.value();
+        if (value instanceof QuotaConsumedEvent event) {
+            if (event.getTenantId() == null || event.getResourceKey() == null || event.getTimestamp() == null) {
+                return null;
+            }
+            boolean allowed = Boolean.TRUE.equals(event.getAllowed());
+            long tokens = event.getTokensRequested() != null ? event.getTokensRequested() : 0L;
+            return UsageIncrement.builder()
+                    .partition(partition)
+                    .offset(record.offset())
+                    .tenantId(event.getTenantId())
+                    .resourceKey(event.getResourceKey())
+                    .timestamp(event.getTimestamp())
+                    .allowedCount(allowed ? 1 : 0)
+                    .deniedCount(allowed ? 0 : 1)
+                    .tokensRequested(tokens)
+                    .tokensConsumed(allowed ? tokens : 0)
+                    .build();
+        }
+        if (value instanceof QuotaRollupEvent rollup) {
+            if (rollup.getTenantId() == null || rollup.getResourceKey() == null || rollup.getWindowStart() == null) {
+                return null;
+            }
+            return UsageIncrement.builder()
+                    .partition(partition)
+                    .offset(record.offset())
+                    .rollupId(rollup.getRollupId())
+                    .tenantId(rollup.getTenantId())
+                    .resourceKey(rollup.getResourceKey())
+                    .timestamp(rollup.getWindowStart())
+                    .allowedCount(rollup.getRequestCount() != null ? rollup.getRequestCount() : 0L)
+                    .tokensRequested(rollup.getTokensRequested() != null ? rollup.getTokensRequested() : 0L)
+                    .tokensConsumed(rollup.getTokensConsumed() != null ? rollup.getTokensConsumed() : 0L)
+                    .build();
+        }
+        return null;
+    }
+
+    private void backoff() {
+        try {
+            Thread.sleep(failureBackoffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.ratelimiter.accounting.infrastructure.messaging.kafka;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ratelimiter.accounting.application.UsageGranularity;
+import com.ratelimiter.accounting.application.UsageQueryService;
+import com.ratelimiter.accounting.application.UsageRollupService;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageAppliedRollupMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mapper.QuotaUsageOffsetMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.dto.accounting.ResourceUsageResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageBucketResponse;
+import com.ratelimiter.common.web.dto.accounting.UsageSummaryResponse;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 用量汇总增量维护（H2 MySQL 兼容模式）
+ *
+ * 走完整的 consume 路径：事件转换 → 批内合并 → 三种粒度 upsert → 位移水位，
+ * 验证重投和生产端重复的汇总事件不会重复累加、汇总查询跨天拆分后与逐条求和一致
+ */
+@SpringBootTest(properties = "app.accounting.usage.purge-interval-ms=0")
+@ActiveProfiles("test")
+public class UsageRollupConsumerTest {
+
+    private static final String EVENTS_TOPIC = "quota-events";
+    private static final String ROLLUPS_TOPIC = "quota-rollups";
+
+    // 2025-10-09 23:58:00 UTC，批次跨越午夜
+    private static final long BASE = 1_760_054_280_000L;
+
+    @Autowired
+    private UsageRollupConsumer consumer;
+
+    @Autowired
+    private UsageRollupService usageRollupService;
+
+    @Autowired
+    private UsageQueryService usageQueryService;
+
+    @Autowired
+    private QuotaUsageMapper usageMapper;
+
+    @Autowired
+    private QuotaUsageOffsetMapper offsetMapper;
+
+    @Autowired
+    private QuotaUsageAppliedRollupMapper appliedRollupMapper;
+
+    private final Acknowledgment ack = mock(Acknowledgment.class);
+
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, Object> kafkaConsumer = mock(Consumer.class);
+
+    @BeforeEach
+    void setUp() {
+        usageMapper.delete(new QueryWrapper<>());
+        offsetMapper.delete(new QueryWrapper<>());
+        appliedRollupMapper.delete(new QueryWrapper<>());
+    }
+
+    private static ConsumerRecord<String, Object> event(int partition, long offset, String resourceKey,
+                                                        boolean allowed, long tokens, long timestamp) {
+        QuotaConsumedEvent event = QuotaConsumedEvent.builder()
+                .requestId("req-" + partition + "-" + offset)
+                .tenantId("tenant_001")
+                .resourceKey(resourceKey)
+                .tokensRequested(tokens)
+                .allowed(allowed)
+                .timestamp(timestamp)
+                .build();
+        return new ConsumerRecord<>(EVENTS_TOPIC, partition, offset, "tenant_001", event);
+    }
+
+    private static ConsumerRecord<String, Object> rollup(long offset, String resourceKey, long requests,
+                                                         long windowStart) {
+        return rollup(offset, "rollup-" + offset, resourceKey, requests, windowStart);
+    }
+
+    private static ConsumerRecord<String, Object> rollup(long offset, String rollupId, String resourceKey,
+                                                         long requests, long windowStart) {
+        QuotaRollupEvent rollup = QuotaRollupEvent.builder()
+                .rollupId(rollupId)
+                .tenantId("tenant_001")
+                .resourceKey(resourceKey)
+                .windowStart(windowStart)
+                .windowMs(1000)
+                .requestCount(requests)
+                .tokensRequested(requests)
+                .tokensConsumed(requests)
+                .build();
+        return new ConsumerRecord<>(ROLLUPS_TOPIC, 0, offset, "tenant_001", rollup);
+    }
+
+    /**
+     * 每分钟：/orders 2 条允许（各 3 token）+ 1 条拒绝（5 token），/payments 汇总 10 次允许；共 5 分钟
+     */
+    private static List<ConsumerRecord<String, Object>> batch() {
+        List<ConsumerRecord<String, Object>> records = new ArrayList<>();
+        long offset = 0;
+        for (int minute = 0; minute < 5; minute++) {
+            long timestamp = BASE + minute * 60_000L + 1_000L;
+            records.add(event(0, offset, "/api/v1/orders", true, 3, timestamp));
+            records.add(event(1, offset, "/api/v1/orders", true, 3, timestamp + 10));
+            records.add(event(0, offset + 1, "/api/v1/orders", false, 5, timestamp + 20));
+            records.add(rollup(minute, "/api/v1/payments", 10, timestamp));
+            offset += 2;
+        }
+        return records;
+    }
+
+    private UsageSummaryResponse summarizeAll() {
+        return usageQueryService.summarize("tenant_001", null, BASE - 86_400_000L, BASE + 86_400_000L);
+    }
+
+    private static ResourceUsageResponse usage(UsageSummaryResponse summary, String resourceKey) {
+        return summary.getResources().stream()
+                .filter(resource -> resource.getResourceKey().equals(resourceKey))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    // 重投同一批（再均衡 / 提交失败）不重复累加
+    @Test
+    void shouldApplyReplayedBatchOnce() {
+        List<ConsumerRecord<String, Object>> records = batch();
+        consumer.consume(records, ack, kafkaConsumer);
+        consumer.consume(records, ack, kafkaConsumer);
+        consumer.consume(records.subList(8, records.size()), ack, kafkaConsumer);
+
+        UsageSummaryResponse summary = summarizeAll();
+        assertThat(usage(summary, "/api/v1/orders"))
+                .isEqualTo(new ResourceUsageResponse("/api/v1/orders", 10L, 5L, 55L, 30L));
+        assertThat(usage(summary, "/api/v1/payments"))
+                .isEqualTo(new ResourceUsageResponse("/api/v1/payments", 50L, 0L, 50L, 50L));
+        verify(ack, times(3)).acknowledge();
+    }
+
+    // 溢出日志回放 / 生产者重试：同一 rollupId 出现在新的位移上（含批内重复），只累加一次
+    @Test
+    void shouldApplyDuplicatedRollupOnce() {
+        consumer.consume(batch(), ack, kafkaConsumer);
+        consumer.consume(List.of(
+                rollup(5, "rollup-0", "/api/v1/payments", 10, BASE + 1_000L),
+                rollup(6, "rollup-new", "/api/v1/payments", 7, BASE + 1_000L),
+                rollup(7, "rollup-new", "/api/v1/payments", 7, BASE + 1_000L)), ack, kafkaConsumer);
+
+        assertThat(usage(summarizeAll(), "/api/v1/payments"))
+                .isEqualTo(new ResourceUsageResponse("/api/v1/payments", 57L, 0L, 57L, 57L));
+        // 位移照常推进
+        assertThat(usageRollupService.loadOffsets(Set.of(new TopicPartition(ROLLUPS_TOPIC, 0))))
+                .containsEntry(new TopicPartition(ROLLUPS_TOPIC, 0), 8L);
+    }
+
+    // 三种粒度的桶总量一致，且按 UTC 午夜切分
+    @Test
+    void shouldMaintainMinuteHourAndDayBuckets() {
+        consumer.consume(batch(), ack, kafkaConsumer);
+
+        long from = BASE - 86_400_000L;
+        long to = BASE + 86_400_000L;
+        List<UsageBucketResponse> minutes = usageQueryService.listBuckets("tenant_001", "/api/v1/orders", "minute", from, to);
+        List<UsageBucketResponse> hours = usageQueryService.listBuckets("tenant_001", "/api/v1/orders", "hour", from, to);
+        List<UsageBucketResponse> days = usageQueryService.listBuckets("tenant_001", "/api/v1/orders", "day", from, to);
+
+        assertThat(minutes).hasSize(5);
+        assertThat(hours).hasSize(2);
+        assertThat(days).hasSize(2);
+        assertThat(days.get(1).getBucketStart()).isEqualTo(UsageGranularity.DAY.ceil(BASE));
+        for (List<UsageBucketResponse> buckets : List.of(minutes, hours, days)) {
+            assertThat(buckets.stream().mapToLong(UsageBucketResponse::getAllowedCount).sum()).isEqualTo(10L);
+            assertThat(buckets.stream().mapToLong(UsageBucketResponse::getTokensConsumed).sum()).isEqualTo(30L);
+        }
+
+        // 只覆盖午夜后的 3 分钟：分钟桶补齐不完整的小时
+        UsageSummaryResponse afterMidnight = usageQueryService.summarize("tenant_001", "/api/v1/orders",
+                UsageGranularity.DAY.ceil(BASE), BASE + 86_400_000L);
+        assertThat(afterMidnight.getResources()).containsExactly(
+                new ResourceUsageResponse("/api/v1/orders", 6L, 3L, 33L, 18L));
+    }
+
+    // 重新分配分区后从库里的位移继续
+    @Test
+    void shouldStoreNextOffsetsPerPartition() {
+        consumer.consume(batch(), ack, kafkaConsumer);
+
+        Map<TopicPartition, Long> offsets = usageRollupService.loadOffsets(Set.of(
+                new TopicPartition(EVENTS_TOPIC, 0),
+                new TopicPartition(EVENTS_TOPIC, 1),
+                new TopicPartition(ROLLUPS_TOPIC, 0),
+                new TopicPartition(ROLLUPS_TOPIC, 1)));
+
+        assertThat(offsets).isEqualTo(Map.of(
+                new TopicPartition(EVENTS_TOPIC, 0), 10L,
+                new TopicPartition(EVENTS_TOPIC, 1), 9L,
+                new TopicPartition(ROLLUPS_TOPIC, 0), 5L));
+    }
+}
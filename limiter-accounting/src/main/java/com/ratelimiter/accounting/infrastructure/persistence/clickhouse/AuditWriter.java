@@ -1,4 +1,265 @@
 package com.ratelimiter.accounting.infrastructure.persistence.clickhouse;
 
-public class AuditWriter {
+import com.ratelimiter.accounting.application.AuditSink;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ClickHouse 审计写入（app.accounting.sink=clickhouse）
+ *
+ * 每次 write 把整批记录编码为 RowBinary，作为一个 HTTP INSERT 发送（不分块：ClickHouse 偏好大批量写入，
+ * 批大小由 AuditWriteBuffer 的 max-batch-records 控制）。表结构见 classpath:clickhouse/quota_audit.sql。
+ *
+ * 错误按 Spring DAO 约定转换：数据无法解析 / 类型不符等错误码抛 DataIntegrityViolationException（按记录隔离），
+ * 连接失败、超时与其余服务端错误抛 DataAccessResourceFailureException（原地退避重试）
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.accounting.sink", havingValue = "clickhouse")
+public class AuditWriter implements AuditSink {
+
+    static final String COLUMNS =
+            "request_id, tenant_id, resource_key, tokens, allowed, remaining, reason, policy_version, latency_ms, timestamp";
+
+    private static final String SCHEMA_LOCATION = "clickhouse/quota_audit.sql";
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+    // 每行编码后的大致字节数，用于预分配缓冲
+    private static final int ESTIMATED_ROW_BYTES = 160;
+
+    // 由数据本身引起的错误码：CANNOT_PARSE_TEXT, CANNOT_PARSE_INPUT_ASSERTION_FAILED, CANNOT_READ_ALL_DATA,
+    // CANNOT_PARSE_DATE, CANNOT_PARSE_DATETIME, TYPE_MISMATCH, ARGUMENT_OUT_OF_BOUND, CANNOT_CONVERT_TYPE,
+    // CANNOT_PARSE_NUMBER, INCORRECT_DATA, TOO_LARGE_STRING_SIZE, CANNOT_INSERT_NULL_IN_ORDINARY_COLUMN
+    private static final Set<Integer> DATA_ERROR_CODES = Set.of(6, 27, 33, 38, 41, 53, 69, 70, 72, 117, 131, 349);
+
+    private static final Pattern WRITTEN_ROWS = Pattern.compile("\"written_rows\":\"(\\d+)\"");
+    private static final Pattern ERROR_CODE = Pattern.compile("^Code: (\\d+)");
+
+    private final HttpClient httpClient;
+    private final String url;
+    private final String database;
+    private final String username;
+    private final String password;
+    private final Duration requestTimeout;
+    private final boolean compress;
+    private final boolean createTable;
+
+    public AuditWriter(@Value("${app.accounting.clickhouse.url:http://localhost:8123}") String url,
+                       @Value("${app.accounting.clickhouse.database:rate_limiter}") String database,
+                       @Value("${app.accounting.clickhouse.username:default}") String username,
+                       @Value("${app.accounting.clickhouse.password:}") String password,
+                       @Value("${app.accounting.clickhouse.connect-timeout-ms:2000}") long connectTimeoutMillis,
+                       @Value("${app.accounting.clickhouse.request-timeout-ms:30000}") long requestTimeoutMillis,
+                       @Value("${app.accounting.clickhouse.compress:false}") boolean compress,
+                       @Value("${app.accounting.clickhouse.create-table:true}") boolean createTable) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.database = database;
+        this.username = username;
+        this.password = password;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.compress = compress;
+        this.createTable = createTable;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (createTable) {
+            createSchema();
+        }
+        log.info("ClickHouse audit sink: url={}, database={}, compress={}", url, database, compress);
+    }
+
+    /**
+     * 执行建表脚本（CREATE ... IF NOT EXISTS，可重复执行）
+     */
+    void createSchema() {
+        String script;
+        try (InputStream input = new ClassPathResource(SCHEMA_LOCATION).getInputStream()) {
+            script = StreamUtils.copyToString(input, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + SCHEMA_LOCATION, e);
+        }
+
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        for (String statement : withoutComments.toString().replace("${database}", database).split(";")) {
+            if (!statement.isBlank()) {
+                execute(null, statement.trim().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Override
+    public int write(List<QuotaAuditEntity> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        RowBinaryOutput output = new RowBinaryOutput(records.size() * ESTIMATED_ROW_BYTES);
+        for (QuotaAuditEntity record : records) {
+            encode(record, output);
+        }
+
+        String summary = execute("INSERT INTO " + database + ".quota_audit (" + COLUMNS + ") FORMAT RowBinary",
+                output.toByteArray()).headers().firstValue("X-ClickHouse-Summary").orElse("");
+        Matcher matcher = WRITTEN_ROWS.matcher(summary);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : records.size();
+    }
+
+    @Override
+    public Set<String> findExistingRequestIds(Collection<String> requestIds) {
+        Set<String> existing = new HashSet<>();
+        List<String> ids = new ArrayList<>(requestIds);
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+            StringBuilder query = new StringBuilder("SELECT DISTINCT request_id FROM ")
+                    .append(database).append(".quota_audit WHERE request_id IN (");
+            for (int i = from; i < Math.min(from + LOOKUP_CHUNK_SIZE, ids.size()); i++) {
+                if (i > from) {
+                    query.append(',');
+                }
+                appendQuoted(query, ids.get(i));
+            }
+            query.append(") FORMAT TabSeparatedRaw");
+
+            String body = new String(execute(null, query.toString().getBytes(StandardCharsets.UTF_8)).body(),
+                    StandardCharsets.UTF_8);
+            for (String line : body.split("\n")) {
+                if (!line.isEmpty()) {
+                    existing.add(line);
+                }
+            }
+        }
+        return existing;
+    }
+
+    private static void encode(QuotaAuditEntity record, RowBinaryOutput output) {
+        output.writeString(required(record.getRequestId(), "request_id", record));
+        output.writeString(required(record.getTenantId(), "tenant_id", record));
+        output.writeString(required(record.getResourceKey(), "resource_key", record));
+        output.writeInt64(required(record.getTokens(), "tokens", record));
+        output.writeBool(required(record.getAllowed(), "allowed", record));
+        output.writeNullableInt64(record.getRemaining());
+        output.writeNullableString(record.getReason());
+        output.writeNullableString(record.getPolicyVersion());
+        output.writeNullableInt32(record.getLatencyMs());
+        output.writeInt64(required(record.getTimestamp(), "timestamp", record));
+    }
+
+    private static <T> T required(T value, String column, QuotaAuditEntity record) {
+        if (value == null) {
+            throw new DataIntegrityViolationException(
+                    "Column " + column + " cannot be null, requestId=" + record.getRequestId());
+        }
+        return value;
+    }
+
+    // ClickHouse 字符串字面量：反斜杠与单引号转义
+    private static void appendQuoted(StringBuilder query, String value) {
+        query.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '\'') {
+                query.append('\\');
+            }
+            query.append(c);
+        }
+        query.append('\'');
+    }
+
+    /**
+     * 发送一个 HTTP 请求
+     *
+     * @param query 放在 URL 参数中的语句（INSERT 时请求体为数据）；为 null 时请求体即语句
+     */
+    private HttpResponse<byte[]> execute(String query, byte[] body) {
+        StringBuilder uri = new StringBuilder(url).append("/?database=").append(urlEncode(database));
+        if (query != null) {
+            uri.append("&query=").append(urlEncode(query));
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri.toString()))
+                .timeout(requestTimeout)
+                .header("Authorization", "Basic " + Base64.getEncoder()
+                        .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        if (compress) {
+            request.header("Content-Encoding", "gzip");
+            body = gzip(body);
+        }
+
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request.POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("ClickHouse request to " + url + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Interrupted while calling ClickHouse", e);
+        }
+
+        if (response.statusCode() != 200) {
+            String message = new String(response.body(), StandardCharsets.UTF_8).trim();
+            int code = response.headers().firstValue("X-ClickHouse-Exception-Code")
+                    .map(Integer::parseInt)
+                    .orElseGet(() -> errorCode(message));
+            if (DATA_ERROR_CODES.contains(code)) {
+                throw new DataIntegrityViolationException("ClickHouse rejected data: " + message);
+            }
+            throw new DataAccessResourceFailureException(
+                    "ClickHouse returned HTTP " + response.statusCode() + ": " + message);
+        }
+        return response;
+    }
+
+    private static int errorCode(String message) {
+        Matcher matcher = ERROR_CODE.matcher(message);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private static String urlEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to compress ClickHouse request", e);
+        }
+        return compressed.toByteArray();
+    }
 }
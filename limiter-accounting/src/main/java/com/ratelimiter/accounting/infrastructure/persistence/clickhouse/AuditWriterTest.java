@@ -0,0 +1,146 @@
+package com.ratelimiter.accounting.infrastructure.persistence.clickhouse;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditWriterTest {
+
+    private FakeClickHouseServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeClickHouseServer();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private AuditWriter writer(boolean compress) {
+        return new AuditWriter(server.url(), "rate_limiter", "default", "", 1_000, 10_000, compress, false);
+    }
+
+    private static List<QuotaAuditEntity> records(String prefix, int count) {
+        List<QuotaAuditEntity> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(prefix + "-" + i);
+            entity.setTenantId("tenant-" + (i % 16));
+            entity.setResourceKey("/api/orders");
+            entity.setTokens(1L);
+            entity.setAllowed(i % 10 != 0);
+            entity.setRemaining(i % 10 != 0 ? 100L - i % 100 : null);
+            entity.setReason(i % 10 != 0 ? null : "quota_exceeded");
+            entity.setPolicyVersion("v1");
+            entity.setLatencyMs(i % 3 == 0 ? null : i % 50);
+            entity.setTimestamp(1_700_000_000_000L + i);
+            records.add(entity);
+        }
+        return records;
+    }
+
+    // 建表脚本按语句执行，排序键以 (tenant_id, timestamp) 开头
+    @Test
+    void shouldCreateSchema() {
+        writer(false).createSchema();
+
+        assertThat(server.statements).hasSize(2);
+        assertThat(server.statements.get(0)).isEqualTo("CREATE DATABASE IF NOT EXISTS rate_limiter");
+        assertThat(server.statements.get(1))
+                .startsWith("CREATE TABLE IF NOT EXISTS rate_limiter.quota_audit")
+                .contains("ENGINE = ReplacingMergeTree")
+                .contains("ORDER BY (tenant_id, timestamp, request_id)");
+    }
+
+    // RowBinary 编码（含 Nullable 与多字节字符）可被完整解码
+    @Test
+    void shouldWriteRowBinary() {
+        List<QuotaAuditEntity> records = records("rb", 100);
+        records.get(1).setResourceKey("/api/订单/" + "x".repeat(300));
+
+        for (boolean compress : new boolean[]{false, true}) {
+            server.rows.clear();
+            assertThat(writer(compress).write(records)).isEqualTo(100);
+
+            assertThat(server.rows).hasSize(100);
+            for (QuotaAuditEntity record : records) {
+                assertThat(server.rows.get(record.getRequestId()))
+                        .usingRecursiveComparison()
+                        .ignoringFields("eventId", "traceId", "clientIp", "userAgent", "createdAt", "id")
+                        .isEqualTo(record);
+            }
+        }
+        assertThat(server.statements.get(0))
+                .isEqualTo("INSERT INTO rate_limiter.quota_audit (" + AuditWriter.COLUMNS + ") FORMAT RowBinary");
+    }
+
+    // 数据错误按记录隔离，服务端 / 网络故障原地重试
+    @Test
+    void shouldTranslateErrors() {
+        AuditWriter writer = writer(false);
+        List<QuotaAuditEntity> records = records("err", 3);
+
+        server.failWith(27);
+        assertThatThrownBy(() -> writer.write(records)).isInstanceOf(DataIntegrityViolationException.class);
+        server.failWith(252);
+        assertThatThrownBy(() -> writer.write(records)).isInstanceOf(DataAccessResourceFailureException.class);
+
+        server.failWith(0);
+        records.get(1).setTenantId(null);
+        assertThatThrownBy(() -> writer.write(records))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("tenant_id");
+
+        server.close();
+        assertThatThrownBy(() -> writer.write(records("down", 1)))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+    }
+
+    @Test
+    void shouldFindExistingRequestIds() {
+        AuditWriter writer = writer(false);
+        List<QuotaAuditEntity> records = records("seen", 10);
+        records.get(0).setRequestId("it's\\quoted");
+        writer.write(records);
+
+        assertThat(writer.findExistingRequestIds(List.of("it's\\quoted", "seen-5", "unseen-1")))
+                .isEqualTo(Set.of("it's\\quoted", "seen-5"));
+    }
+
+    // 吞吐基准：50 万行，每批 5 万行（编码 + HTTP 往返 + 替身解码）
+    @Test
+    void benchmarkBatchedInserts() {
+        AuditWriter writer = writer(false);
+        int batchSize = 50_000;
+        int batches = 10;
+        List<List<QuotaAuditEntity>> data = new ArrayList<>();
+        for (int batch = 0; batch < batches; batch++) {
+            data.add(records("bench-" + batch, batchSize));
+        }
+        writer.write(records("warmup", batchSize));
+
+        long start = System.nanoTime();
+        for (List<QuotaAuditEntity> batch : data) {
+            writer.write(batch);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(server.rows).hasSize(batchSize * (batches + 1));
+        System.out.printf("clickhouse rowbinary: %d rows in %d ms, %.0f rows/s%n", batchSize * batches,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), batchSize * batches * 1e9 / elapsed);
+    }
+}
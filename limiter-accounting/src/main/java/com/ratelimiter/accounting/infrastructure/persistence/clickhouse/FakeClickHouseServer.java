@@ -0,0 +1,162 @@
+package com.ratelimiter.accounting.infrastructure.persistence.clickhouse;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 测试用的 ClickHouse HTTP 接口替身（JDK HttpServer）
+ *
+ * - INSERT ... FORMAT RowBinary：按 AuditWriter.COLUMNS 解码，按 request_id 保存（模拟 ReplacingMergeTree 合并后的结果）
+ * - SELECT ... WHERE request_id IN (...)：返回已保存的 request_id（TabSeparated）
+ * - 其他语句（DDL）：记录后返回成功
+ * - failWith(code) 之后的请求按 ClickHouse 的错误格式返回 HTTP 500
+ */
+final class FakeClickHouseServer implements AutoCloseable {
+
+    private static final Pattern QUOTED = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    final List<String> statements = new CopyOnWriteArrayList<>();
+    final Map<String, QuotaAuditEntity> rows = new ConcurrentHashMap<>();
+    private volatile int failureCode;
+
+    FakeClickHouseServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } catch (RuntimeException e) {
+                // 替身自身的解码错误也按 ClickHouse 的格式返回，避免连接被直接关闭
+                respond(exchange, 500, "Code: 1001. DB::Exception: " + e);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void failWith(int code) {
+        this.failureCode = code;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream input = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(exchange.getRequestBody())
+                : exchange.getRequestBody()) {
+            body = input.readAllBytes();
+        }
+        String query = queryParameter(exchange.getRequestURI().getRawQuery());
+        String statement = query != null ? query : new String(body, StandardCharsets.UTF_8);
+        statements.add(statement);
+
+        if (failureCode != 0) {
+            exchange.getResponseHeaders().add("X-ClickHouse-Exception-Code", String.valueOf(failureCode));
+            respond(exchange, 500, "Code: " + failureCode + ". DB::Exception: injected failure");
+            return;
+        }
+
+        if (statement.startsWith("INSERT")) {
+            int written = decode(ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN));
+            exchange.getResponseHeaders().add("X-ClickHouse-Summary",
+                    "{\"read_rows\":\"" + written + "\",\"written_rows\":\"" + written + "\"}");
+            respond(exchange, 200, "");
+        } else if (statement.startsWith("SELECT")) {
+            StringBuilder result = new StringBuilder();
+            Matcher matcher = QUOTED.matcher(statement.substring(statement.indexOf(" IN (")));
+            while (matcher.find()) {
+                String requestId = matcher.group(1).replaceAll("\\\\(.)", "$1");
+                if (rows.containsKey(requestId)) {
+                    result.append(requestId).append('\n');
+                }
+            }
+            respond(exchange, 200, result.toString());
+        } else {
+            respond(exchange, 200, "");
+        }
+    }
+
+    private int decode(ByteBuffer data) {
+        int count = 0;
+        while (data.hasRemaining()) {
+            QuotaAuditEntity row = new QuotaAuditEntity();
+            row.setRequestId(readString(data));
+            row.setTenantId(readString(data));
+            row.setResourceKey(readString(data));
+            row.setTokens(data.getLong());
+            row.setAllowed(data.get() == 1);
+            row.setRemaining(data.get() == 0 ? data.getLong() : null);
+            row.setReason(data.get() == 0 ? readString(data) : null);
+            row.setPolicyVersion(data.get() == 0 ? readString(data) : null);
+            row.setLatencyMs(data.get() == 0 ? data.getInt() : null);
+            row.setTimestamp(data.getLong());
+            rows.put(row.getRequestId(), row);
+            count++;
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer data) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String queryParameter(String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith("query=")) {
+                return URLDecoder.decode(parameter.substring("query=".length()), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
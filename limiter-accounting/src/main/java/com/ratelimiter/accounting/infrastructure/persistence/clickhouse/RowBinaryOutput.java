@@ -0,0 +1,95 @@
+package com.ratelimiter.accounting.infrastructure.persistence.clickhouse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ClickHouse RowBinary 编码（小端定长整数，String 为 varint 长度 + UTF-8，Nullable 先写 1 字节 null 标记）
+ * 直接写入可扩容的字节数组，一个批次一次性作为 HTTP 请求体发送
+ */
+final class RowBinaryOutput {
+
+    private byte[] buffer;
+    private int size;
+
+    RowBinaryOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarUInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    void writeNullableString(String value) {
+        if (writeNullFlag(value)) {
+            writeString(value);
+        }
+    }
+
+    void writeInt64(long value) {
+        ensureCapacity(Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer[size++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    void writeNullableInt64(Long value) {
+        if (writeNullFlag(value)) {
+            writeInt64(value);
+        }
+    }
+
+    void writeInt32(int value) {
+        ensureCapacity(Integer.BYTES);
+        for (int i = 0; i < Integer.BYTES; i++) {
+            buffer[size++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    void writeNullableInt32(Integer value) {
+        if (writeNullFlag(value)) {
+            writeInt32(value);
+        }
+    }
+
+    void writeBool(boolean value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) (value ? 1 : 0);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 值非 null（需要继续写出值）
+     */
+    private boolean writeNullFlag(Object value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) (value == null ? 1 : 0);
+        return value != null;
+    }
+
+    private void writeVarUInt(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -2,9 +2,89 @@ package com.ratelimiter.accounting.infrastructure.persistence.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
 
 @Mapper
 public interface QuotaAuditMapper extends BaseMapper<QuotaAuditEntity> {
-    // BaseMapper 提供基础方法
+
+    /**
+     * 导出时每次从服务端游标取回的行数（MySQL 需在连接串开启 useCursorFetch=true）
+     */
+    int EXPORT_FETCH_SIZE = 1000;
+
+    String AUDIT_COLUMNS = "id, request_id, tenant_id, resource_key, tokens, allowed, remaining, reason, " +
+            "policy_version, client_ip, user_agent, latency_ms, `timestamp` ";
+
+    // 租户 + 时间范围走 idx_tenant_timestamp；InnoDB 二级索引隐含主键，(timestamp, id) 排序不需要 filesort
+    String RANGE_CONDITION = "WHERE tenant_id = #{tenantId} " +
+            "AND `timestamp` &gt;= #{from} AND `timestamp` &lt; #{to} " +
+            "<if test='resourceKey != null'>AND resource_key = #{resourceKey} </if>" +
+            "<if test='allowed != null'>AND allowed = #{allowed} </if>";
+
+    /**
+     * 多行 INSERT 写入审计记录，(request_id, timestamp) 重复（Kafka 重投）的行由 uk_request_id 忽略；
+     * 同一 requestId 的其他决策已在写入前由 quota_audit_request 认领时去掉
+     * created_at 由表默认值填充
+     *
+     * @return 实际插入的行数
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO quota_audit " +
+            "(request_id, tenant_id, resource_key, tokens, allowed, remaining, reason, policy_version, " +
+            "client_ip, user_agent, latency_ms, `timestamp`) VALUES " +
+            "<foreach collection='list' item='r' separator=','>" +
+            "(#{r.requestId}, #{r.tenantId}, #{r.resourceKey}, #{r.tokens}, #{r.allowed}, #{r.remaining}, " +
+            "#{r.reason}, #{r.policyVersion}, #{r.clientIp}, #{r.userAgent}, #{r.latencyMs}, #{r.timestamp})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<QuotaAuditEntity> records);
+
+    /**
+     * 键集分页：按 (timestamp, id) 升序取游标之后的 limit 行
+     * 游标条件写成 timestamp >= ? AND (timestamp > ? OR id > ?)，前半部分给出索引范围起点，
+     * 任意页的代价都只与 limit 有关
+     */
+    @Select("<script>" +
+            "SELECT " + AUDIT_COLUMNS + "FROM quota_audit " + RANGE_CONDITION +
+            "<if test='afterTimestamp != null'>" +
+            "AND `timestamp` &gt;= #{afterTimestamp} " +
+            "AND (`timestamp` &gt; #{afterTimestamp} OR id &gt; #{afterId}) " +
+            "</if>" +
+            "ORDER BY `timestamp`, id LIMIT #{limit}" +
+            "</script>")
+    List<QuotaAuditEntity> selectAfter(@Param("tenantId") String tenantId,
+                                       @Param("resourceKey") String resourceKey,
+                                       @Param("allowed") Boolean allowed,
+                                       @Param("from") long from,
+                                       @Param("to") long to,
+                                       @Param("afterTimestamp") Long afterTimestamp,
+                                       @Param("afterId") Long afterId,
+                                       @Param("limit") int limit);
+
+    /**
+     * 流式读取整个范围：服务端游标按 fetchSize 分批返回，逐行交给 handler，结果不在内存中累积
+     *
+     * void + ResultHandler 的方法无法从返回值推断结果类型，需用 @ResultType 显式声明
+     */
+    @Select("<script>" +
+            "SELECT " + AUDIT_COLUMNS + "FROM quota_audit " + RANGE_CONDITION +
+            "ORDER BY `timestamp`, id" +
+            "</script>")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = EXPORT_FETCH_SIZE)
+    @ResultType(QuotaAuditEntity.class)
+    void streamRange(@Param("tenantId") String tenantId,
+                     @Param("resourceKey") String resourceKey,
+                     @Param("allowed") Boolean allowed,
+                     @Param("from") long from,
+                     @Param("to") long to,
+                     ResultHandler<QuotaAuditEntity> handler);
 }
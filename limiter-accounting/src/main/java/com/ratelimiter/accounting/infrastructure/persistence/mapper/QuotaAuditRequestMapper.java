@@ -0,0 +1,45 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditRequestEntity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface QuotaAuditRequestMapper extends BaseMapper<QuotaAuditRequestEntity> {
+
+    /**
+     * 认领审计记录的 requestId，已被认领的由主键忽略
+     *
+     * @return 新认领的行数
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO quota_audit_request (request_id, `timestamp`) VALUES " +
+            "<foreach collection='list' item='r' separator=','>" +
+            "(#{r.requestId}, #{r.timestamp})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<QuotaAuditEntity> records);
+
+    @Select("<script>" +
+            "SELECT request_id, `timestamp` FROM quota_audit_request WHERE request_id IN " +
+            "<foreach collection='requestIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<QuotaAuditRequestEntity> selectByRequestIds(@Param("requestIds") Collection<String> requestIds);
+
+    /**
+     * 分批删除过期记录
+     *
+     * @return 删除的行数
+     */
+    @Delete("DELETE FROM quota_audit_request WHERE `timestamp` < #{before} LIMIT #{limit}")
+    int deleteExpired(@Param("before") long before,
+                      @Param("limit") int limit);
+}
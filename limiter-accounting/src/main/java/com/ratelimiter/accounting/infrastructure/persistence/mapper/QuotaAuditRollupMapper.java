@@ -0,0 +1,30 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditRollupEntity;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface QuotaAuditRollupMapper extends BaseMapper<QuotaAuditRollupEntity> {
+
+    /**
+     * 批量写入汇总记录，rollup_id 重复（Kafka 重投）的行被忽略
+     *
+     * @return 实际插入的行数
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO quota_audit_rollup " +
+            "(rollup_id, node_id, tenant_id, resource_key, policy_version, process_path, window_start, window_ms, " +
+            "request_count, tokens_requested, tokens_consumed, first_timestamp, last_timestamp) VALUES " +
+            "<foreach collection='list' item='r' separator=','>" +
+            "(#{r.rollupId}, #{r.nodeId}, #{r.tenantId}, #{r.resourceKey}, #{r.policyVersion}, #{r.processPath}, " +
+            "#{r.windowStart}, #{r.windowMs}, #{r.requestCount}, #{r.tokensRequested}, #{r.tokensConsumed}, " +
+            "#{r.firstTimestamp}, #{r.lastTimestamp})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<QuotaAuditRollupEntity> rollups);
+}
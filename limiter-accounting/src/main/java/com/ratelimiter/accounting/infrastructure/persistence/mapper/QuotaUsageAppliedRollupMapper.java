@@ -0,0 +1,42 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageAppliedRollupEntity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface QuotaUsageAppliedRollupMapper extends BaseMapper<QuotaUsageAppliedRollupEntity> {
+
+    @Select("<script>" +
+            "SELECT rollup_id FROM quota_usage_applied_rollup WHERE rollup_id IN " +
+            "<foreach collection='rollupIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<String> selectExisting(@Param("rollupIds") Collection<String> rollupIds);
+
+    /**
+     * 记录已累加的汇总 ID；与用量 upsert 同一事务，主键冲突（并发累加同一汇总）时整批回滚重试
+     */
+    @Insert("<script>" +
+            "INSERT INTO quota_usage_applied_rollup (rollup_id, window_start) VALUES " +
+            "<foreach collection='list' item='r' separator=','>" +
+            "(#{r.rollupId}, #{r.windowStart})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<QuotaUsageAppliedRollupEntity> rollups);
+
+    /**
+     * 分批删除过期记录
+     *
+     * @return 删除的行数
+     */
+    @Delete("DELETE FROM quota_usage_applied_rollup WHERE window_start < #{before} LIMIT #{limit}")
+    int deleteExpired(@Param("before") long before,
+                      @Param("limit") int limit);
+}
@@ -0,0 +1,84 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageEntity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface QuotaUsageMapper extends BaseMapper<QuotaUsageEntity> {
+
+    /**
+     * 批量累加用量增量：桶不存在时插入，存在时各计数加上增量
+     * 调用方按唯一键排序传入，并发事务按相同顺序加锁，避免死锁
+     *
+     * @return MySQL 语义的影响行数（插入计 1，更新计 2）
+     */
+    @Insert("<script>" +
+            "INSERT INTO quota_usage " +
+            "(tenant_id, resource_key, granularity, bucket_start, " +
+            "allowed_count, denied_count, tokens_requested, tokens_consumed) VALUES " +
+            "<foreach collection='list' item='u' separator=','>" +
+            "(#{u.tenantId}, #{u.resourceKey}, #{u.granularity}, #{u.bucketStart}, " +
+            "#{u.allowedCount}, #{u.deniedCount}, #{u.tokensRequested}, #{u.tokensConsumed})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE " +
+            "allowed_count = allowed_count + VALUES(allowed_count), " +
+            "denied_count = denied_count + VALUES(denied_count), " +
+            "tokens_requested = tokens_requested + VALUES(tokens_requested), " +
+            "tokens_consumed = tokens_consumed + VALUES(tokens_consumed), " +
+            "updated_at = CURRENT_TIMESTAMP" +
+            "</script>")
+    int upsertBatch(@Param("list") List<QuotaUsageEntity> deltas);
+
+    /**
+     * 按桶列出租户用量（走 uk_tenant_bucket 范围扫描）
+     */
+    @Select("<script>" +
+            "SELECT tenant_id, resource_key, granularity, bucket_start, " +
+            "allowed_count, denied_count, tokens_requested, tokens_consumed, updated_at " +
+            "FROM quota_usage " +
+            "WHERE tenant_id = #{tenantId} AND granularity = #{granularity} " +
+            "AND bucket_start &gt;= #{from} AND bucket_start &lt; #{to} " +
+            "<if test='resourceKey != null'>AND resource_key = #{resourceKey} </if>" +
+            "ORDER BY bucket_start, resource_key" +
+            "</script>")
+    List<QuotaUsageEntity> selectBuckets(@Param("tenantId") String tenantId,
+                                         @Param("resourceKey") String resourceKey,
+                                         @Param("granularity") String granularity,
+                                         @Param("from") long from,
+                                         @Param("to") long to);
+
+    /**
+     * 按资源汇总某一粒度在 [from, to) 内的桶
+     */
+    @Select("<script>" +
+            "SELECT resource_key, SUM(allowed_count) AS allowed_count, SUM(denied_count) AS denied_count, " +
+            "SUM(tokens_requested) AS tokens_requested, SUM(tokens_consumed) AS tokens_consumed " +
+            "FROM quota_usage " +
+            "WHERE tenant_id = #{tenantId} AND granularity = #{granularity} " +
+            "AND bucket_start &gt;= #{from} AND bucket_start &lt; #{to} " +
+            "<if test='resourceKey != null'>AND resource_key = #{resourceKey} </if>" +
+            "GROUP BY resource_key" +
+            "</script>")
+    List<QuotaUsageEntity> sumByResource(@Param("tenantId") String tenantId,
+                                         @Param("resourceKey") String resourceKey,
+                                         @Param("granularity") String granularity,
+                                         @Param("from") long from,
+                                         @Param("to") long to);
+
+    /**
+     * 分批删除过期桶，避免单个大事务长时间持锁
+     *
+     * @return 删除的行数
+     */
+    @Delete("DELETE FROM quota_usage WHERE granularity = #{granularity} AND bucket_start < #{before} LIMIT #{limit}")
+    int deleteExpired(@Param("granularity") String granularity,
+                      @Param("before") long before,
+                      @Param("limit") int limit);
+}
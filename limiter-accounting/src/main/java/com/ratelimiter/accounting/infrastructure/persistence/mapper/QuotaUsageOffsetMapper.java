@@ -0,0 +1,56 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaUsageOffsetEntity;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface QuotaUsageOffsetMapper extends BaseMapper<QuotaUsageOffsetEntity> {
+
+    /**
+     * 为首次出现的分区建立位移行（已存在的忽略），保证随后的 SELECT ... FOR UPDATE 有行可锁
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO quota_usage_offset (topic, partition_id, next_offset) VALUES " +
+            "<foreach collection='list' item='o' separator=','>" +
+            "(#{o.topic}, #{o.partitionId}, #{o.nextOffset})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<QuotaUsageOffsetEntity> offsets);
+
+    /**
+     * 锁定分区位移行直到事务结束：同一分区的并发消费者（再均衡期间）串行累加
+     */
+    @Select("<script>" +
+            "SELECT topic, partition_id, next_offset FROM quota_usage_offset " +
+            "WHERE topic = #{topic} AND partition_id IN " +
+            "<foreach collection='partitions' item='p' open='(' separator=',' close=')'>#{p}</foreach> " +
+            "ORDER BY partition_id FOR UPDATE" +
+            "</script>")
+    List<QuotaUsageOffsetEntity> selectForUpdate(@Param("topic") String topic,
+                                                 @Param("partitions") Collection<Integer> partitions);
+
+    @Select("<script>" +
+            "SELECT topic, partition_id, next_offset FROM quota_usage_offset " +
+            "WHERE topic = #{topic} AND partition_id IN " +
+            "<foreach collection='partitions' item='p' open='(' separator=',' close=')'>#{p}</foreach>" +
+            "</script>")
+    List<QuotaUsageOffsetEntity> selectOffsets(@Param("topic") String topic,
+                                               @Param("partitions") Collection<Integer> partitions);
+
+    /**
+     * 位移只前进不后退
+     */
+    @Update("UPDATE quota_usage_offset SET next_offset = #{nextOffset}, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE topic = #{topic} AND partition_id = #{partitionId} AND next_offset < #{nextOffset}")
+    int advance(@Param("topic") String topic,
+                @Param("partitionId") int partitionId,
+                @Param("nextOffset") long nextOffset);
+}
@@ -0,0 +1,366 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ratelimiter.common.web.dto.accounting.AuditRecordResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * quota_audit 时间分区的生命周期管理（表须按 timestamp RANGE 分区，见 scripts/init_db.sql）
+ *
+ * 定期执行：
+ * 1. 预建分区：保证当前周期之后 precreate-periods 个周期的分区已存在。
+ *    新分区从末尾的 MAXVALUE 分区（p_max）中拆出，p_max 正常情况下为空，拆分只改元数据
+ * 2. 归档过期分区：上界早于保留期的分区先流式导出为 gzip NDJSON（字段同审计导出接口），
+ *    核对行数后 DROP PARTITION —— 删除是元数据操作，不产生 DELETE 的 undo / binlog 和碎片
+ *
+ * 每个分区有独立的 B+ 树，写入只落在最新的分区上，索引深度与写入吞吐不随总数据量增长。
+ * 按租户分表（{@link AuditShardRouter}）时对每张分表分别维护，归档文件名带表名。
+ * 多实例部署时用 GET_LOCK 保证同一时刻只有一个实例执行 DDL
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.accounting.partition.enabled", havingValue = "true")
+public class AuditPartitionManager {
+
+    private static final String LOCK_NAME = "rate_limiter.quota_audit_partitions";
+    private static final int FETCH_SIZE = 1000;
+    private static final int ARCHIVE_ATTEMPTS = 3;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String AUDIT_COLUMNS = "request_id, tenant_id, resource_key, tokens, allowed, remaining, " +
+            "reason, policy_version, client_ip, user_agent, latency_ms, `timestamp`";
+
+    private final DataSource dataSource;
+    private final AuditShardRouter shardRouter;
+    private final ObjectWriter recordWriter;
+    private final PartitionGranularity granularity;
+    private final int precreatePeriods;
+    private final int retentionDays;
+    private final boolean archiveEnabled;
+    private final Path archiveDir;
+    private final long checkIntervalMillis;
+
+    private final Counter createdCounter;
+    private final Counter droppedCounter;
+    private final Counter archivedRowsCounter;
+
+    private volatile int partitionCount;
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * 分区元数据；upperBound 为 null 表示 MAXVALUE
+     */
+    record PartitionInfo(String name, Long upperBound) {
+    }
+
+    public AuditPartitionManager(DataSource dataSource,
+                                 AuditShardRouter shardRouter,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.accounting.partition.granularity:DAY}") String granularity,
+                                 @Value("${app.accounting.partition.precreate-periods:7}") int precreatePeriods,
+                                 @Value("${app.accounting.partition.retention-days:90}") int retentionDays,
+                                 @Value("${app.accounting.partition.archive:true}") boolean archiveEnabled,
+                                 @Value("${app.accounting.partition.archive-dir:data/audit-archive}") String archiveDir,
+                                 @Value("${app.accounting.partition.check-interval-ms:3600000}") long checkIntervalMillis) {
+        this.dataSource = dataSource;
+        this.shardRouter = shardRouter;
+        this.recordWriter = objectMapper.writerFor(AuditRecordResponse.class);
+        this.granularity = PartitionGranularity.valueOf(granularity.toUpperCase());
+        this.precreatePeriods = precreatePeriods;
+        this.retentionDays = retentionDays;
+        this.archiveEnabled = archiveEnabled;
+        this.archiveDir = Paths.get(archiveDir);
+        this.checkIntervalMillis = checkIntervalMillis;
+
+        this.createdCounter = meterRegistry.counter("audit_partitions_created_total");
+        this.droppedCounter = meterRegistry.counter("audit_partitions_dropped_total");
+        this.archivedRowsCounter = meterRegistry.counter("audit_partition_archived_rows_total");
+        meterRegistry.gauge("audit_partition_count", this, manager -> manager.partitionCount);
+    }
+
+    @PostConstruct
+    public void init() {
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-partition-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 启动后立即检查一次，保证当天分区存在
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintainQuietly,
+                0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Audit partition manager: granularity={}, precreate={}, retentionDays={}, archive={}",
+                granularity, precreatePeriods, retentionDays, archiveEnabled ? archiveDir.toAbsolutePath() : "off");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("Audit partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * 对每张物理表预建分区并归档、删除过期分区
+     */
+    void maintain(long now) throws SQLException, IOException {
+        // DDL、GET_LOCK 与流式读取都在同一个连接上
+        try (Connection connection = dataSource.getConnection()) {
+            if (!acquireLock(connection)) {
+                log.debug("Another instance is maintaining audit partitions");
+                return;
+            }
+            try {
+                int total = 0;
+                for (String table : shardRouter.tables()) {
+                    total += maintain(connection, table, now);
+                }
+                partitionCount = total;
+            } finally {
+                releaseLock(connection);
+            }
+        }
+    }
+
+    /**
+     * @return 维护后该表的分区数
+     */
+    private int maintain(Connection connection, String table, long now) throws SQLException, IOException {
+        List<PartitionInfo> partitions = loadPartitions(connection, table);
+        if (partitions.isEmpty()) {
+            log.warn("{} is not partitioned, skipping partition maintenance (see scripts/init_db.sql)", table);
+            return 0;
+        }
+
+        List<PartitionInfo> additions = plan(partitions, now);
+        if (!additions.isEmpty()) {
+            execute(connection, addPartitionsSql(table, partitions, additions));
+            createdCounter.increment(additions.size());
+            log.info("Created {} partitions: {}", table, additions);
+        }
+
+        for (PartitionInfo partition : expired(partitions, now)) {
+            if (archiveEnabled) {
+                archive(connection, table, partition);
+            }
+            execute(connection, "ALTER TABLE " + quote(table) + " DROP PARTITION " + quote(partition.name()));
+            droppedCounter.increment();
+            log.info("Dropped {} partition {} (upper bound {})", table, partition.name(), partition.upperBound());
+        }
+
+        return loadPartitions(connection, table).size();
+    }
+
+    /**
+     * 需要新建的分区：从已有的最大上界（没有时从当前周期）起，直到覆盖当前周期之后 precreate-periods 个周期
+     */
+    List<PartitionInfo> plan(List<PartitionInfo> existing, long now) {
+        long target = granularity.periodStart(now);
+        for (int i = 0; i <= precreatePeriods; i++) {
+            target = granularity.nextPeriod(target);
+        }
+
+        // 已有分区时从最大上界接着建（停机多天后也不留空洞，空洞里的数据会落进 p_max）；
+        // 只有 p_max 时从当前周期开始，已有的历史数据随 REORGANIZE 落进第一个分区，到期后一并归档
+        long start = existing.stream()
+                .map(PartitionInfo::upperBound)
+                .filter(upperBound -> upperBound != null)
+                .mapToLong(Long::longValue)
+                .max()
+                .orElse(granularity.periodStart(now));
+
+        List<PartitionInfo> additions = new ArrayList<>();
+        for (long periodStart = start; periodStart < target; periodStart = granularity.nextPeriod(periodStart)) {
+            additions.add(new PartitionInfo(granularity.partitionName(periodStart), granularity.nextPeriod(periodStart)));
+        }
+        return additions;
+    }
+
+    /**
+     * 上界不晚于保留期起点的分区（整个分区的数据都已过期），MAXVALUE 分区永不删除
+     */
+    List<PartitionInfo> expired(List<PartitionInfo> existing, long now) {
+        List<PartitionInfo> expired = new ArrayList<>();
+        if (retentionDays <= 0) {
+            return expired;
+        }
+        long cutoff = now - retentionDays * DAY_MILLIS;
+        for (PartitionInfo partition : existing) {
+            if (partition.upperBound() != null && partition.upperBound() <= cutoff) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    static String addPartitionsSql(String table, List<PartitionInfo> existing, List<PartitionInfo> additions) {
+        StringJoiner definitions = new StringJoiner(", ", "(", ")");
+        for (PartitionInfo partition : additions) {
+            definitions.add("PARTITION " + quote(partition.name()) + " VALUES LESS THAN (" + partition.upperBound() + ")");
+        }
+        PartitionInfo last = existing.get(existing.size() - 1);
+        if (last.upperBound() != null) {
+            // 没有 MAXVALUE 分区时只能在末尾追加
+            return "ALTER TABLE " + quote(table) + " ADD PARTITION " + definitions;
+        }
+        definitions.add("PARTITION " + quote(last.name()) + " VALUES LESS THAN MAXVALUE");
+        return "ALTER TABLE " + quote(table) + " REORGANIZE PARTITION " + quote(last.name()) + " INTO " + definitions;
+    }
+
+    /**
+     * 导出分区到 archive-dir/{table}-{partition}.ndjson.gz，导出后核对分区行数；
+     * 期间有迟到的旧时间戳记录写入时重新导出，避免 DROP 丢数据
+     */
+    private void archive(Connection connection, String table, PartitionInfo partition) throws SQLException, IOException {
+        Files.createDirectories(archiveDir);
+        Path target = archiveDir.resolve(table + "-" + partition.name() + ".ndjson.gz");
+        for (int attempt = 1; attempt <= ARCHIVE_ATTEMPTS; attempt++) {
+            long started = System.currentTimeMillis();
+            long archived;
+            try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = statement.executeQuery(
+                        "SELECT " + AUDIT_COLUMNS + " FROM " + quote(table) + " PARTITION (" + quote(partition.name()) + ")")) {
+                    archived = writeArchive(rows, target);
+                }
+            }
+
+            long current = countRows(connection, table, partition);
+            if (current == archived) {
+                archivedRowsCounter.increment(archived);
+                log.info("Archived {} rows of {} partition {} to {} in {} ms", archived, table, partition.name(),
+                        target, System.currentTimeMillis() - started);
+                return;
+            }
+            log.warn("{} partition {} changed during archival ({} archived, {} now), retrying",
+                    table, partition.name(), archived, current);
+        }
+        throw new IllegalStateException("Partition " + table + "." + partition.name() + " keeps changing, not dropping it");
+    }
+
+    /**
+     * 逐行写出 gzip NDJSON：先写临时文件并 fsync，再原子替换目标文件
+     *
+     * @return 写出的行数
+     */
+    long writeArchive(ResultSet rows, Path target) throws SQLException, IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count = 0;
+        try (OutputStream out = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            while (rows.next()) {
+                out.write(recordWriter.writeValueAsBytes(new AuditRecordResponse(
+                        rows.getString("request_id"),
+                        rows.getString("tenant_id"),
+                        rows.getString("resource_key"),
+                        rows.getObject("tokens", Long.class),
+                        rows.getObject("allowed", Boolean.class),
+                        rows.getObject("remaining", Long.class),
+                        rows.getString("reason"),
+                        rows.getString("policy_version"),
+                        rows.getString("client_ip"),
+                        rows.getString("user_agent"),
+                        rows.getObject("latency_ms", Integer.class),
+                        rows.getObject("timestamp", Long.class))));
+                out.write('\n');
+                count++;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    private List<PartitionInfo> loadPartitions(Connection connection, String table) throws SQLException {
+        List<PartitionInfo> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                        "ORDER BY PARTITION_ORDINAL_POSITION")) {
+            statement.setString(1, table);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    String description = rows.getString(2);
+                    partitions.add(new PartitionInfo(rows.getString(1),
+                            "MAXVALUE".equalsIgnoreCase(description) ? null : Long.parseLong(description)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private long countRows(Connection connection, String table, PartitionInfo partition) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(
+                     "SELECT COUNT(*) FROM " + quote(table) + " PARTITION (" + quote(partition.name()) + ")")) {
+            rows.next();
+            return rows.getLong(1);
+        }
+    }
+
+    private static boolean acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() && rows.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.execute();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
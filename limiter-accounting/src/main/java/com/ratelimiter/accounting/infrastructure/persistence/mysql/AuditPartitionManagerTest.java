@@ -0,0 +1,140 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 分区规划（预建 / 到期）、DDL 拼接与归档文件格式；DDL 本身依赖 MySQL 分区表，不在 H2 中执行
+ */
+public class AuditPartitionManagerTest {
+
+    // 2025-10-09 12:00:00 UTC
+    private static final long NOW = 1_760_011_200_000L;
+    private static final long OCT_09 = 1_759_968_000_000L;
+    private static final long DAY = 86_400_000L;
+
+    private static AuditPartitionManager manager(String granularity, int precreate, int retentionDays, Path archiveDir) {
+        return new AuditPartitionManager(null, new AuditShardRouter(1), new ObjectMapper(), new SimpleMeterRegistry(),
+                granularity, precreate, retentionDays, true, archiveDir.toString(), 3_600_000L);
+    }
+
+    private static AuditPartitionManager.PartitionInfo partition(String name, Long upperBound) {
+        return new AuditPartitionManager.PartitionInfo(name, upperBound);
+    }
+
+    @Test
+    void shouldSplitFirstPartitionsOutOfCatchAll(@TempDir Path dir) {
+        List<AuditPartitionManager.PartitionInfo> additions =
+                manager("DAY", 2, 90, dir).plan(List.of(partition("p_max", null)), NOW);
+
+        assertThat(additions).containsExactly(
+                partition("p20251009", OCT_09 + DAY),
+                partition("p20251010", OCT_09 + 2 * DAY),
+                partition("p20251011", OCT_09 + 3 * DAY));
+        assertThat(AuditPartitionManager.addPartitionsSql("quota_audit", List.of(partition("p_max", null)), additions))
+                .isEqualTo("ALTER TABLE `quota_audit` REORGANIZE PARTITION `p_max` INTO (" +
+                        "PARTITION `p20251009` VALUES LESS THAN (" + (OCT_09 + DAY) + "), " +
+                        "PARTITION `p20251010` VALUES LESS THAN (" + (OCT_09 + 2 * DAY) + "), " +
+                        "PARTITION `p20251011` VALUES LESS THAN (" + (OCT_09 + 3 * DAY) + "), " +
+                        "PARTITION `p_max` VALUES LESS THAN MAXVALUE)");
+    }
+
+    @Test
+    void shouldContinueFromHighestBoundWithoutGaps(@TempDir Path dir) {
+        AuditPartitionManager dayManager = manager("DAY", 2, 90, dir);
+        List<AuditPartitionManager.PartitionInfo> existing = List.of(
+                partition("p20251001", OCT_09 - 7 * DAY),
+                partition("p20251002", OCT_09 - 6 * DAY),
+                partition("p_max", null));
+
+        // 停机多天：从 10-03 一直补到 10-11
+        List<AuditPartitionManager.PartitionInfo> additions = dayManager.plan(existing, NOW);
+        assertThat(additions).hasSize(9);
+        assertThat(additions.get(0)).isEqualTo(partition("p20251003", OCT_09 - 5 * DAY));
+        assertThat(additions.get(8)).isEqualTo(partition("p20251011", OCT_09 + 3 * DAY));
+
+        // 已经建够时不再变更
+        assertThat(dayManager.plan(List.of(partition("p20251011", OCT_09 + 3 * DAY), partition("p_max", null)), NOW))
+                .isEmpty();
+
+        // 没有 MAXVALUE 分区时只能追加
+        assertThat(AuditPartitionManager.addPartitionsSql("quota_audit_03", existing.subList(0, 2), additions.subList(0, 1)))
+                .isEqualTo("ALTER TABLE `quota_audit_03` ADD PARTITION (" +
+                        "PARTITION `p20251003` VALUES LESS THAN (" + (OCT_09 - 5 * DAY) + "))");
+    }
+
+    @Test
+    void shouldAlignMonthlyPartitionsToUtcMonthStart(@TempDir Path dir) {
+        List<AuditPartitionManager.PartitionInfo> additions =
+                manager("MONTH", 1, 90, dir).plan(List.of(partition("p_max", null)), NOW);
+
+        // 2025-11-01 / 2025-12-01 00:00 UTC
+        assertThat(additions).containsExactly(
+                partition("p202510", 1_761_955_200_000L),
+                partition("p202511", 1_764_547_200_000L));
+    }
+
+    @Test
+    void shouldExpireOnlyPartitionsEntirelyOutsideRetention(@TempDir Path dir) {
+        List<AuditPartitionManager.PartitionInfo> existing = List.of(
+                partition("p20251001", OCT_09 - 7 * DAY),
+                partition("p20251002", OCT_09 - 6 * DAY),
+                partition("p20251003", OCT_09 - 5 * DAY),
+                partition("p_max", null));
+
+        // 保留期起点 10-03 12:00：10-02 分区（上界 10-03 00:00）到期，10-03 分区还有未过期的数据
+        assertThat(manager("DAY", 7, 6, dir).expired(existing, NOW)).containsExactly(
+                partition("p20251001", OCT_09 - 7 * DAY),
+                partition("p20251002", OCT_09 - 6 * DAY));
+        assertThat(manager("DAY", 7, 0, dir).expired(existing, NOW)).isEmpty();
+    }
+
+    @Test
+    void shouldWriteArchiveAsGzipNdjson(@TempDir Path dir) throws Exception {
+        AuditPartitionManager manager = manager("DAY", 7, 90, dir);
+        Path target = dir.resolve("quota_audit-p20251009.ndjson.gz");
+
+        long written;
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:archive;MODE=MySQL", "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE quota_audit (request_id VARCHAR(64), tenant_id VARCHAR(64), " +
+                    "resource_key VARCHAR(128), tokens BIGINT, allowed BOOLEAN, remaining BIGINT, reason VARCHAR(128), " +
+                    "policy_version VARCHAR(32), client_ip VARCHAR(64), user_agent VARCHAR(256), latency_ms INT, " +
+                    "`timestamp` BIGINT)");
+            statement.execute("INSERT INTO quota_audit VALUES " +
+                    "('req-1', 'tenant_001', '/api/v1/orders', 1, TRUE, 99, NULL, 'v1', NULL, NULL, 3, " + NOW + "), " +
+                    "('req-2', 'tenant_001', '/api/v1/orders', 5, FALSE, NULL, 'quota_exceeded', 'v1', NULL, NULL, NULL, " + (NOW + 1) + ")");
+            try (ResultSet rows = statement.executeQuery("SELECT * FROM quota_audit ORDER BY `timestamp`")) {
+                written = manager.writeArchive(rows, target);
+            }
+        }
+
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(target)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().toList();
+        }
+        assertThat(written).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).startsWith("{\"requestId\":\"req-1\",").contains("\"latencyMs\":3");
+        assertThat(lines.get(1)).contains("\"reason\":\"quota_exceeded\"").contains("\"latencyMs\":null");
+        // 临时文件已原子替换为目标文件
+        assertThat(dir.resolve("quota_audit-p20251009.ndjson.gz.tmp")).doesNotExist();
+    }
+}
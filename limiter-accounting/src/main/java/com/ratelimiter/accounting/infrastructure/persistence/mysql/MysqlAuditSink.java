@@ -0,0 +1,90 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.ratelimiter.accounting.application.AuditService;
+import com.ratelimiter.accounting.application.AuditSink;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MySQL quota_audit：分块多行 INSERT IGNORE
+ *
+ * 同一 requestId 只写入第一次决策：先在 quota_audit_request 中认领 requestId（见 {@link AuditService#insertIgnore}），
+ * 同一事件的重投由 uk_request_id (request_id, timestamp) 忽略。认领记录按 timestamp 定期清理
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.accounting.sink", havingValue = "mysql", matchIfMissing = true)
+public class MysqlAuditSink implements AuditSink {
+
+    private static final int PURGE_CHUNK_SIZE = 5_000;
+
+    private final AuditService auditService;
+    private final int insertChunkSize;
+    private final int requestClaimRetentionDays;
+    private final long purgeIntervalMillis;
+
+    private ScheduledExecutorService retentionExecutor;
+
+    public MysqlAuditSink(AuditService auditService,
+                          @Value("${app.accounting.insert-chunk-size:1000}") int insertChunkSize,
+                          @Value("${app.accounting.request-claim.retention-days:7}") int requestClaimRetentionDays,
+                          @Value("${app.accounting.request-claim.purge-interval-ms:3600000}") long purgeIntervalMillis) {
+        this.auditService = auditService;
+        this.insertChunkSize = insertChunkSize;
+        this.requestClaimRetentionDays = requestClaimRetentionDays;
+        this.purgeIntervalMillis = purgeIntervalMillis;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (requestClaimRetentionDays > 0 && purgeIntervalMillis > 0) {
+            retentionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "audit-request-claim-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            retentionExecutor.scheduleWithFixedDelay(this::purgeQuietly,
+                    purgeIntervalMillis, purgeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (retentionExecutor != null) {
+            retentionExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public int write(List<QuotaAuditEntity> records) {
+        return auditService.insertIgnore(records, insertChunkSize);
+    }
+
+    @Override
+    public Set<String> findExistingRequestIds(Collection<String> requestIds) {
+        return auditService.findExistingRequestIds(requestIds);
+    }
+
+    private void purgeQuietly() {
+        try {
+            long before = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(requestClaimRetentionDays);
+            long purged = auditService.purgeRequestClaims(before, PURGE_CHUNK_SIZE);
+            if (purged > 0) {
+                log.info("Purged {} audit request claims before {}", purged, before);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to purge expired audit request claims", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * quota_audit 按 timestamp（毫秒）RANGE 分区的周期，边界按 UTC 对齐
+ * 分区名 p + 周期起始日期（pyyyyMMdd / pyyyyMM），VALUES LESS THAN 下一周期起点
+ */
+enum PartitionGranularity {
+
+    DAY(DateTimeFormatter.ofPattern("'p'yyyyMMdd")),
+    MONTH(DateTimeFormatter.ofPattern("'p'yyyyMM"));
+
+    private final DateTimeFormatter nameFormat;
+
+    PartitionGranularity(DateTimeFormatter nameFormat) {
+        this.nameFormat = nameFormat;
+    }
+
+    long periodStart(long timestamp) {
+        LocalDate date = Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC).toLocalDate();
+        return toMillis(this == DAY ? date : date.withDayOfMonth(1));
+    }
+
+    long nextPeriod(long periodStart) {
+        LocalDate date = toDate(periodStart);
+        return toMillis(this == DAY ? date.plusDays(1) : date.plusMonths(1));
+    }
+
+    String partitionName(long periodStart) {
+        return nameFormat.format(toDate(periodStart));
+    }
+
+    private static LocalDate toDate(long millis) {
+        return Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static long toMillis(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
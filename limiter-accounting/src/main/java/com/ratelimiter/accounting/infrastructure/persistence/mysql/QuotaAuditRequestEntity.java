@@ -0,0 +1,24 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("quota_audit_request")
+public class QuotaAuditRequestEntity {
+
+    @TableField("request_id")
+    private String requestId;
+
+    private Long timestamp;           // 首次写入的事件时间戳（毫秒），同一事件重投时不变
+
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,56 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("quota_audit_rollup")
+public class QuotaAuditRollupEntity {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    @TableField("rollup_id")
+    private String rollupId;          // 汇总事件 ID（幂等）
+
+    @TableField("node_id")
+    private String nodeId;
+
+    @TableField("tenant_id")
+    private String tenantId;
+
+    @TableField("resource_key")
+    private String resourceKey;
+
+    @TableField("policy_version")
+    private String policyVersion;
+
+    @TableField("process_path")
+    private String processPath;
+
+    @TableField("window_start")
+    private Long windowStart;         // 窗口起始时间戳（毫秒）
+
+    @TableField("window_ms")
+    private Integer windowMs;
+
+    @TableField("request_count")
+    private Long requestCount;
+
+    @TableField("tokens_requested")
+    private Long tokensRequested;
+
+    @TableField("tokens_consumed")
+    private Long tokensConsumed;
+
+    @TableField("first_timestamp")
+    private Long firstTimestamp;
+
+    @TableField("last_timestamp")
+    private Long lastTimestamp;
+
+    @TableField(value = "created_at", fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,30 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("quota_usage_applied_rollup")
+public class QuotaUsageAppliedRollupEntity {
+
+    @TableField("rollup_id")
+    private String rollupId;
+
+    @TableField("window_start")
+    private Long windowStart;         // 汇总窗口起点（毫秒），按它清理过期记录
+
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+
+    public QuotaUsageAppliedRollupEntity(String rollupId, Long windowStart) {
+        this.rollupId = rollupId;
+        this.windowStart = windowStart;
+    }
+}
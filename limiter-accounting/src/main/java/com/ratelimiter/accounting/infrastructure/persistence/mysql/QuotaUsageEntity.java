@@ -0,0 +1,41 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("quota_usage")
+public class QuotaUsageEntity {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    @TableField("tenant_id")
+    private String tenantId;
+
+    @TableField("resource_key")
+    private String resourceKey;
+
+    @TableField("granularity")
+    private String granularity;       // MINUTE/HOUR/DAY
+
+    @TableField("bucket_start")
+    private Long bucketStart;         // 桶起始时间戳（毫秒，UTC 对齐）
+
+    @TableField("allowed_count")
+    private Long allowedCount;
+
+    @TableField("denied_count")
+    private Long deniedCount;
+
+    @TableField("tokens_requested")
+    private Long tokensRequested;
+
+    @TableField("tokens_consumed")
+    private Long tokensConsumed;      // 计费口径：允许请求消耗的 token
+
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+}
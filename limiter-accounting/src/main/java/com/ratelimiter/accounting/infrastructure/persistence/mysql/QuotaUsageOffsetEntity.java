@@ -0,0 +1,34 @@
+package com.ratelimiter.accounting.infrastructure.persistence.mysql;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("quota_usage_offset")
+public class QuotaUsageOffsetEntity {
+
+    @TableField("topic")
+    private String topic;
+
+    @TableField("partition_id")
+    private Integer partitionId;
+
+    @TableField("next_offset")
+    private Long nextOffset;          // 下一条待累加的位移
+
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+
+    public QuotaUsageOffsetEntity(String topic, Integer partitionId, Long nextOffset) {
+        this.topic = topic;
+        this.partitionId = partitionId;
+        this.nextOffset = nextOffset;
+    }
+}
@@ -0,0 +1,36 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 租户在某个资源上的用量汇总
+ */
+@Data
+@NoArgsConstructor
+public class ResourceUsage {
+
+    private String resourceKey;
+
+    private long requestCount;
+
+    private long allowedCount;
+
+    private long rejectedCount;
+
+    private long tokensRequested;     // 全部请求申请的令牌数
+
+    private long tokensConsumed;      // 放行请求消耗的令牌数
+
+    public ResourceUsage(String resourceKey) {
+        this.resourceKey = resourceKey;
+    }
+
+    void add(long requests, long allowedRequests, long requested, long consumed) {
+        requestCount += requests;
+        allowedCount += allowedRequests;
+        rejectedCount += requests - allowedRequests;
+        tokensRequested += requested;
+        tokensConsumed += consumed;
+    }
+}
@@ -0,0 +1,547 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 只读的列存段文件，整个文件内存映射，查询直接在映射上按列解码
+ *
+ * 文件格式（小端）：
+ * <pre>
+ * header   magic, version, rowCount, blockRows (int) | minTimestamp, maxTimestamp, createdMillis, fileLength (long)
+ *          | 各区块的起始偏移 (long × SECTION_COUNT)
+ * SOURCES          本段取代的段文件名（合并产生的段）
+ * *_DICT           租户 / 资源 / 拒绝原因 / 策略版本字典：count + 按自然序排列的字符串
+ * TENANT_INDEX     每个租户一项：[startRow, endRow) 与 min / max timestamp（行按租户 → 时间排序，租户列本身不落盘）
+ * RESOURCE / REASON / POLICY     字典编码（0 = null），1 / 2 / 4 字节定长，可随机访问
+ * TIMESTAMP / TOKENS / REMAINING / LATENCY   [null 位图] + 块首值 + 块偏移 + 块内 zigzag 差值变长编码
+ * ALLOWED          位图
+ * REQUEST_ID       按块 deflate 的字符串，块偏移 + 解压后长度
+ * REQUEST_ID_INDEX requestId 64 位哈希（升序）+ 对应行号，用于存在性回查
+ * </pre>
+ *
+ * 段不可变，映射上只做绝对位置读取，可被多个线程并发查询
+ */
+final class Segment {
+
+    static final int MAGIC = 0x47534C52;
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1024;
+    static final int REQUEST_ID_COMPRESSION_LEVEL = 6;
+    static final String FILE_SUFFIX = ".seg";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    static final int SOURCES = 0;
+    static final int TENANT_DICT = 1;
+    static final int RESOURCE_DICT = 2;
+    static final int REASON_DICT = 3;
+    static final int POLICY_DICT = 4;
+    static final int TENANT_INDEX = 5;
+    static final int RESOURCE = 6;
+    static final int REASON = 7;
+    static final int POLICY = 8;
+    static final int TIMESTAMP = 9;
+    static final int TOKENS = 10;
+    static final int REMAINING = 11;
+    static final int LATENCY = 12;
+    static final int ALLOWED = 13;
+    static final int REQUEST_ID = 14;
+    static final int REQUEST_ID_INDEX = 15;
+    static final int SECTION_COUNT = 16;
+
+    private static final int SECTIONS_AT = 48;
+
+    private final Path path;
+    private final ByteBuffer data;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final long createdMillis;
+    private final List<String> sources;
+
+    private final String[] tenants;
+    private final Map<String, Integer> tenantIndex;
+    private final int[] tenantStart;
+    private final int[] tenantEnd;
+    private final long[] tenantMinTimestamp;
+    private final long[] tenantMaxTimestamp;
+
+    private final String[] resources;
+    private final String[] reasons;
+    private final String[] policies;
+    private final CodeColumn resourceColumn;
+    private final CodeColumn reasonColumn;
+    private final CodeColumn policyColumn;
+    private final LongColumn timestampColumn;
+    private final LongColumn tokensColumn;
+    private final LongColumn remainingColumn;
+    private final LongColumn latencyColumn;
+    private final int allowedAt;
+    private final RequestIdColumn requestIdColumn;
+    private final int requestIdHashesAt;
+    private final int requestIdRowsAt;
+
+    private Segment(Path path, ByteBuffer data) throws IOException {
+        this.path = path;
+        this.data = data;
+        if (data.capacity() < SECTIONS_AT + SECTION_COUNT * 8 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        if (data.getInt(4) != VERSION || data.getInt(12) != BLOCK_ROWS) {
+            throw new IOException("Unsupported segment version " + data.getInt(4) + ": " + path);
+        }
+        if (data.getLong(40) != data.capacity()) {
+            throw new IOException("Truncated segment, expected " + data.getLong(40) + " bytes: " + path);
+        }
+        this.rowCount = data.getInt(8);
+        this.minTimestamp = data.getLong(16);
+        this.maxTimestamp = data.getLong(24);
+        this.createdMillis = data.getLong(32);
+
+        int[] position = {section(SOURCES)};
+        int sourceCount = data.getInt(position[0]);
+        position[0] += 4;
+        this.sources = new ArrayList<>(sourceCount);
+        for (int i = 0; i < sourceCount; i++) {
+            sources.add(readString(position));
+        }
+
+        this.tenants = readDictionary(section(TENANT_DICT));
+        this.resources = readDictionary(section(RESOURCE_DICT));
+        this.reasons = readDictionary(section(REASON_DICT));
+        this.policies = readDictionary(section(POLICY_DICT));
+
+        this.tenantIndex = new HashMap<>(tenants.length * 2);
+        this.tenantStart = new int[tenants.length];
+        this.tenantEnd = new int[tenants.length];
+        this.tenantMinTimestamp = new long[tenants.length];
+        this.tenantMaxTimestamp = new long[tenants.length];
+        int indexAt = section(TENANT_INDEX);
+        for (int i = 0; i < tenants.length; i++) {
+            int entry = indexAt + i * 24;
+            tenantIndex.put(tenants[i], i);
+            tenantStart[i] = data.getInt(entry);
+            tenantEnd[i] = data.getInt(entry + 4);
+            tenantMinTimestamp[i] = data.getLong(entry + 8);
+            tenantMaxTimestamp[i] = data.getLong(entry + 16);
+        }
+
+        this.resourceColumn = new CodeColumn(section(RESOURCE));
+        this.reasonColumn = new CodeColumn(section(REASON));
+        this.policyColumn = new CodeColumn(section(POLICY));
+        this.timestampColumn = new LongColumn(section(TIMESTAMP));
+        this.tokensColumn = new LongColumn(section(TOKENS));
+        this.remainingColumn = new LongColumn(section(REMAINING));
+        this.latencyColumn = new LongColumn(section(LATENCY));
+        this.allowedAt = section(ALLOWED);
+        this.requestIdColumn = new RequestIdColumn(section(REQUEST_ID));
+        this.requestIdHashesAt = section(REQUEST_ID_INDEX);
+        this.requestIdRowsAt = requestIdHashesAt + rowCount * 8;
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than 2GB: " + path);
+            }
+            // 映射在通道关闭后仍然有效
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(path, data);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    String name() {
+        return path.getFileName().toString();
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    long minTimestamp() {
+        return minTimestamp;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    long createdMillis() {
+        return createdMillis;
+    }
+
+    long sizeBytes() {
+        return data.capacity();
+    }
+
+    List<String> sources() {
+        return sources;
+    }
+
+    /**
+     * @return 租户在 [fromMillis, toMillis) 内的行范围 {start, end}，没有时返回 null
+     */
+    private int[] tenantRange(String tenantId, long fromMillis, long toMillis) {
+        Integer tenant = tenantIndex.get(tenantId);
+        if (tenant == null || tenantMaxTimestamp[tenant] < fromMillis || tenantMinTimestamp[tenant] >= toMillis) {
+            return null;
+        }
+        int start = timestampColumn.lowerBound(tenantStart[tenant], tenantEnd[tenant], fromMillis);
+        int end = timestampColumn.lowerBound(start, tenantEnd[tenant], toMillis);
+        return start < end ? new int[]{start, end} : null;
+    }
+
+    /**
+     * 按时间顺序读取租户在 [fromMillis, toMillis) 内的前 limit 条记录
+     */
+    void scan(String tenantId, long fromMillis, long toMillis, int limit, List<QuotaAuditEntity> out) {
+        int[] range = tenantRange(tenantId, fromMillis, toMillis);
+        if (range != null) {
+            readRows(tenantIndex.get(tenantId), range[0], range[0] + Math.min(limit, range[1] - range[0]), out);
+        }
+    }
+
+    /**
+     * 按资源累加租户在 [fromMillis, toMillis) 内的请求数与令牌数，只解码资源、放行位图与令牌三列
+     */
+    void aggregate(String tenantId, long fromMillis, long toMillis, Map<String, ResourceUsage> usage) {
+        int[] range = tenantRange(tenantId, fromMillis, toMillis);
+        if (range == null) {
+            return;
+        }
+        int codes = resources.length + 1;
+        long[] requests = new long[codes];
+        long[] allowedRequests = new long[codes];
+        long[] tokensRequested = new long[codes];
+        long[] tokensConsumed = new long[codes];
+        LongColumn.Cursor tokens = tokensColumn.cursor(range[0]);
+        for (int row = range[0]; row < range[1]; row++) {
+            int code = resourceColumn.get(row);
+            long rowTokens = tokens.next();
+            requests[code]++;
+            tokensRequested[code] += rowTokens;
+            if (allowed(row)) {
+                allowedRequests[code]++;
+                tokensConsumed[code] += rowTokens;
+            }
+        }
+        for (int code = 1; code < codes; code++) {
+            if (requests[code] > 0) {
+                usage.computeIfAbsent(resources[code - 1], ResourceUsage::new)
+                        .add(requests[code], allowedRequests[code], tokensRequested[code], tokensConsumed[code]);
+            }
+        }
+    }
+
+    /**
+     * 把 requestIds 中存在于本段的加入 found（哈希命中后按原值校验）
+     */
+    void findExisting(Collection<String> requestIds, Set<String> found) {
+        Map<Integer, String[]> blocks = new HashMap<>();
+        for (String requestId : requestIds) {
+            long hash = requestIdHash(requestId);
+            int low = 0;
+            int high = rowCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (data.getLong(requestIdHashesAt + middle * 8) < hash) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int i = low; i < rowCount && data.getLong(requestIdHashesAt + i * 8) == hash; i++) {
+                int row = data.getInt(requestIdRowsAt + i * 4);
+                String[] block = blocks.computeIfAbsent(row / BLOCK_ROWS, requestIdColumn::block);
+                if (block[row % BLOCK_ROWS].equals(requestId)) {
+                    found.add(requestId);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 解码全部行（合并用），行序同段内顺序
+     */
+    void readAll(List<QuotaAuditEntity> out) {
+        for (int tenant = 0; tenant < tenants.length; tenant++) {
+            readRows(tenant, tenantStart[tenant], tenantEnd[tenant], out);
+        }
+    }
+
+    private void readRows(int tenant, int start, int end, List<QuotaAuditEntity> out) {
+        if (start >= end) {
+            return;
+        }
+        LongColumn.Cursor timestamps = timestampColumn.cursor(start);
+        LongColumn.Cursor tokens = tokensColumn.cursor(start);
+        LongColumn.Cursor remaining = remainingColumn.cursor(start);
+        LongColumn.Cursor latency = latencyColumn.cursor(start);
+        String[] requestIds = null;
+        for (int row = start; row < end; row++) {
+            if (requestIds == null || row % BLOCK_ROWS == 0) {
+                requestIds = requestIdColumn.block(row / BLOCK_ROWS);
+            }
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(requestIds[row % BLOCK_ROWS]);
+            entity.setTenantId(tenants[tenant]);
+            entity.setResourceKey(decode(resources, resourceColumn.get(row)));
+            entity.setTimestamp(timestamps.next());
+            entity.setTokens(tokens.next());
+            entity.setAllowed(allowed(row));
+            long remainingValue = remaining.next();
+            entity.setRemaining(remainingColumn.isNull(row) ? null : remainingValue);
+            entity.setReason(decode(reasons, reasonColumn.get(row)));
+            entity.setPolicyVersion(decode(policies, policyColumn.get(row)));
+            long latencyValue = latency.next();
+            entity.setLatencyMs(latencyColumn.isNull(row) ? null : (int) latencyValue);
+            out.add(entity);
+        }
+    }
+
+    private boolean allowed(int row) {
+        return (data.getLong(allowedAt + (row >>> 6) * 8) & (1L << row)) != 0;
+    }
+
+    private static String decode(String[] dictionary, int code) {
+        return code == 0 ? null : dictionary[code - 1];
+    }
+
+    private int section(int section) {
+        return (int) data.getLong(SECTIONS_AT + section * 8);
+    }
+
+    private String[] readDictionary(int at) {
+        int[] position = {at + 4};
+        String[] values = new String[data.getInt(at)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(position);
+        }
+        return values;
+    }
+
+    private String readString(int[] position) {
+        int length = (int) readVarLong(data, position);
+        byte[] bytes = new byte[length];
+        data.get(position[0], bytes);
+        position[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarLong(ByteBuffer buffer, int[] position) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position[0]++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * requestId 的 64 位哈希（按 UTF-16 字符的 FNV-1a + murmur3 fmix64 收尾）
+     */
+    static long requestIdHash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= value.length();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final class CodeColumn {
+
+        private final int width;
+        private final int start;
+
+        private CodeColumn(int at) {
+            this.width = data.get(at);
+            this.start = at + 1;
+        }
+
+        int get(int row) {
+            return switch (width) {
+                case 1 -> Byte.toUnsignedInt(data.get(start + row));
+                case 2 -> Short.toUnsignedInt(data.getShort(start + row * 2));
+                default -> data.getInt(start + row * 4);
+            };
+        }
+    }
+
+    private final class LongColumn {
+
+        // 无 null 时为 -1
+        private final int nullsAt;
+        private final int blockCount;
+        private final int firstValuesAt;
+        private final int offsetsAt;
+        private final int dataStart;
+
+        private LongColumn(int at) {
+            boolean hasNulls = data.get(at) == 1;
+            int position = at + 1;
+            this.nullsAt = hasNulls ? position : -1;
+            if (hasNulls) {
+                position += (rowCount + 63) / 64 * 8;
+            }
+            this.blockCount = data.getInt(position);
+            this.firstValuesAt = position + 4;
+            this.offsetsAt = firstValuesAt + blockCount * 8;
+            this.dataStart = offsetsAt + blockCount * 4;
+        }
+
+        boolean isNull(int row) {
+            return nullsAt >= 0 && (data.getLong(nullsAt + (row >>> 6) * 8) & (1L << row)) != 0;
+        }
+
+        /**
+         * 从 row 开始顺序解码（先从所在块的块首解码到 row）
+         */
+        Cursor cursor(int row) {
+            Cursor cursor = new Cursor(row - row % BLOCK_ROWS);
+            while (cursor.row < row) {
+                cursor.next();
+            }
+            return cursor;
+        }
+
+        /**
+         * 在值非递减的行范围 [from, to) 内找第一个 >= value 的行，没有时返回 to
+         *
+         * 先按块首值二分定位到块，再在块内顺序解码，最多解码一个块
+         */
+        int lowerBound(int from, int to, long value) {
+            if (from >= to) {
+                return to;
+            }
+            int low = (from + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            int high = Math.min(blockCount - 1, (to - 1) / BLOCK_ROWS);
+            int candidate = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (data.getLong(firstValuesAt + middle * 8) < value) {
+                    candidate = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            int row = candidate < 0 ? from : Math.max(from, candidate * BLOCK_ROWS);
+            Cursor cursor = cursor(row);
+            while (row < to && cursor.next() < value) {
+                row++;
+            }
+            return row;
+        }
+
+        final class Cursor {
+
+            private int row;
+            private int position;
+            private long value;
+
+            private Cursor(int row) {
+                this.row = row;
+            }
+
+            long next() {
+                if (row % BLOCK_ROWS == 0) {
+                    int block = row / BLOCK_ROWS;
+                    value = data.getLong(firstValuesAt + block * 8);
+                    position = dataStart + data.getInt(offsetsAt + block * 4);
+                } else {
+                    long zigzag = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = data.get(position++);
+                        zigzag |= (long) (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    value += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+                row++;
+                return value;
+            }
+        }
+    }
+
+    private final class RequestIdColumn {
+
+        private final int offsetsAt;
+        private final int rawLengthsAt;
+        private final int dataStart;
+
+        private RequestIdColumn(int at) {
+            int blocks = data.getInt(at);
+            this.offsetsAt = at + 4;
+            this.rawLengthsAt = offsetsAt + (blocks + 1) * 4;
+            this.dataStart = rawLengthsAt + blocks * 4;
+        }
+
+        String[] block(int block) {
+            int from = dataStart + data.getInt(offsetsAt + block * 4);
+            int to = dataStart + data.getInt(offsetsAt + (block + 1) * 4);
+            byte[] raw = new byte[data.getInt(rawLengthsAt + block * 4)];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data.slice(from, to - from));
+                int inflated = 0;
+                while (inflated < raw.length && !inflater.finished()) {
+                    int count = inflater.inflate(raw, inflated, raw.length - inflated);
+                    if (count == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != raw.length) {
+                    throw new IllegalStateException("Corrupted request id block " + block + " in " + path);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupted request id block " + block + " in " + path, e);
+            } finally {
+                inflater.end();
+            }
+
+            int rows = Math.min(BLOCK_ROWS, rowCount - block * BLOCK_ROWS);
+            String[] values = new String[rows];
+            ByteBuffer buffer = ByteBuffer.wrap(raw);
+            int[] position = {0};
+            for (int i = 0; i < rows; i++) {
+                int length = (int) readVarLong(buffer, position);
+                values[i] = new String(raw, position[0], length, StandardCharsets.UTF_8);
+                position[0] += length;
+            }
+            return values;
+        }
+    }
+}
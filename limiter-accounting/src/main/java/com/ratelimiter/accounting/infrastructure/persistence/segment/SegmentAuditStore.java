@@ -0,0 +1,490 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import com.ratelimiter.accounting.application.AuditSink;
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 内嵌的列存审计存储（app.accounting.sink=segment），用于没有 OLAP 数据库的部署
+ *
+ * 记录按 timestamp 的 UTC 日期分区（data-dir/yyyy-MM-dd/），每次 write 把批次写成一个不可变的段文件
+ * （格式见 {@link Segment}），后台线程把同一分区的小段合并成大段，并删除超过保留天数的分区。
+ *
+ * 查询按 分区 → 段 min/max 时间 → 段内租户索引 → 时间列二分 逐级裁剪，只解码命中的行范围。
+ * 幂等：requestId 在所属分区内唯一（重投的事件 timestamp 不变，总落在同一分区），
+ * 写入时批内去重并按分区内各段的 requestId 索引跳过已有记录
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.accounting.sink", havingValue = "segment")
+public class SegmentAuditStore implements AuditSink {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final Comparator<QuotaAuditEntity> TIME_ORDER = Comparator
+            .comparingLong(QuotaAuditEntity::getTimestamp)
+            .thenComparing(QuotaAuditEntity::getRequestId);
+
+    private final Path directory;
+    private final int maxSegmentRows;
+    private final int compactionMinSegments;
+    private final long compactionIntervalMillis;
+    private final int retentionDays;
+    private final boolean fsync;
+
+    // key 为 epochDay
+    private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Counter compactionCounter;
+    private ScheduledExecutorService maintenanceExecutor;
+
+    public SegmentAuditStore(MeterRegistry meterRegistry,
+                             @Value("${app.accounting.segment.data-dir:data/audit-segments}") String dataDir,
+                             @Value("${app.accounting.segment.max-segment-rows:2000000}") int maxSegmentRows,
+                             @Value("${app.accounting.segment.compaction-min-segments:8}") int compactionMinSegments,
+                             @Value("${app.accounting.segment.compaction-interval-ms:60000}") long compactionIntervalMillis,
+                             @Value("${app.accounting.segment.retention-days:30}") int retentionDays,
+                             @Value("${app.accounting.segment.fsync:true}") boolean fsync) {
+        this.directory = Paths.get(dataDir);
+        this.maxSegmentRows = maxSegmentRows;
+        this.compactionMinSegments = Math.max(2, compactionMinSegments);
+        this.compactionIntervalMillis = compactionIntervalMillis;
+        this.retentionDays = retentionDays;
+        this.fsync = fsync;
+
+        this.compactionCounter = meterRegistry.counter("audit_segment_compactions_total");
+        meterRegistry.gauge("audit_segment_count", this, SegmentAuditStore::segmentCount);
+        meterRegistry.gauge("audit_segment_rows", this, SegmentAuditStore::rowCount);
+        meterRegistry.gauge("audit_segment_disk_bytes", this, SegmentAuditStore::diskBytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        open();
+        if (compactionIntervalMillis > 0) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "audit-segment-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintenanceExecutor.scheduleWithFixedDelay(this::maintain,
+                    compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        log.info("Segment audit store: dir={}, partitions={}, segments={}, rows={}, size={}KB",
+                directory.toAbsolutePath(), partitions.size(), segmentCount(), rowCount(), diskBytes() / 1024);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdown();
+            try {
+                maintenanceExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 加载已有分区：删除写了一半的临时文件，清理已被合并段取代、但崩溃前没来得及删除的旧段
+     */
+    void open() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> days = Files.newDirectoryStream(directory)) {
+                for (Path dayDirectory : days) {
+                    if (!Files.isDirectory(dayDirectory)) {
+                        continue;
+                    }
+                    long day;
+                    try {
+                        day = LocalDate.parse(dayDirectory.getFileName().toString()).toEpochDay();
+                    } catch (DateTimeParseException e) {
+                        log.warn("Ignoring unexpected directory in audit segment store: {}", dayDirectory);
+                        continue;
+                    }
+                    Partition partition = new Partition(day, dayDirectory);
+                    partition.segments = List.copyOf(load(dayDirectory));
+                    partitions.put(day, partition);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open audit segment store " + directory, e);
+        }
+    }
+
+    private List<Segment> load(Path dayDirectory) throws IOException {
+        Map<String, Segment> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dayDirectory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(Segment.TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(Segment.FILE_SUFFIX)) {
+                    try {
+                        segments.put(name, Segment.open(file));
+                    } catch (IOException e) {
+                        log.error("Corrupted audit segment {}, moved aside", file, e);
+                        Files.move(file, file.resolveSibling(name + ".corrupt"));
+                    }
+                }
+            }
+        }
+        for (Segment segment : List.copyOf(segments.values())) {
+            for (String source : segment.sources()) {
+                Segment superseded = segments.remove(source);
+                if (superseded != null) {
+                    log.info("Removing audit segment {} superseded by {}", superseded.path(), segment.name());
+                    Files.deleteIfExists(superseded.path());
+                }
+            }
+        }
+        return new ArrayList<>(segments.values());
+    }
+
+    @Override
+    public int write(List<QuotaAuditEntity> records) {
+        Map<Long, List<QuotaAuditEntity>> byDay = new TreeMap<>();
+        for (QuotaAuditEntity record : records) {
+            validate(record);
+            byDay.computeIfAbsent(Math.floorDiv(record.getTimestamp(), DAY_MILLIS), day -> new ArrayList<>())
+                    .add(record);
+        }
+
+        int written = 0;
+        for (Map.Entry<Long, List<QuotaAuditEntity>> entry : byDay.entrySet()) {
+            written += append(entry.getKey(), entry.getValue());
+        }
+        return written;
+    }
+
+    private int append(long day, List<QuotaAuditEntity> records) {
+        while (true) {
+            Partition partition = partitions.computeIfAbsent(day,
+                    key -> new Partition(key, directory.resolve(LocalDate.ofEpochDay(key).toString())));
+            partition.lock.lock();
+            try {
+                if (partition.dropped) {
+                    continue;
+                }
+                Map<String, QuotaAuditEntity> fresh = new LinkedHashMap<>();
+                for (QuotaAuditEntity record : records) {
+                    fresh.putIfAbsent(record.getRequestId(), record);
+                }
+                Set<String> existing = new HashSet<>();
+                for (Segment segment : partition.segments) {
+                    segment.findExisting(fresh.keySet(), existing);
+                }
+                fresh.keySet().removeAll(existing);
+                if (fresh.isEmpty()) {
+                    return 0;
+                }
+
+                List<QuotaAuditEntity> rows = new ArrayList<>(fresh.values());
+                rows.sort(SegmentWriter.ROW_ORDER);
+                partition.add(writeSegment(partition, rows, List.of()));
+                return rows.size();
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException(
+                        "Failed to write audit segment in " + partition.directory, e);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+    }
+
+    private Segment writeSegment(Partition partition, List<QuotaAuditEntity> rows, List<String> sources)
+            throws IOException {
+        Files.createDirectories(partition.directory);
+        long now = System.currentTimeMillis();
+        Path path;
+        do {
+            path = partition.directory.resolve(
+                    String.format("%013d-%06d%s", now, sequence.incrementAndGet() % 1_000_000, Segment.FILE_SUFFIX));
+        } while (Files.exists(path));
+        SegmentWriter.write(path, rows, sources, now, fsync);
+        return Segment.open(path);
+    }
+
+    private static void validate(QuotaAuditEntity record) {
+        required(record.getRequestId(), "request_id", record);
+        required(record.getTenantId(), "tenant_id", record);
+        required(record.getResourceKey(), "resource_key", record);
+        required(record.getTokens(), "tokens", record);
+        required(record.getAllowed(), "allowed", record);
+        required(record.getTimestamp(), "timestamp", record);
+    }
+
+    private static void required(Object value, String column, QuotaAuditEntity record) {
+        if (value == null) {
+            throw new DataIntegrityViolationException(
+                    "Column " + column + " cannot be null, requestId=" + record.getRequestId());
+        }
+    }
+
+    @Override
+    public Set<String> findExistingRequestIds(Collection<String> requestIds) {
+        Set<String> found = new HashSet<>();
+        Set<String> remaining = new LinkedHashSet<>(requestIds);
+        // 重投通常发生在最近的分区，从新到旧查找，全部找到即停止
+        for (Partition partition : partitions.descendingMap().values()) {
+            for (Segment segment : partition.segments) {
+                segment.findExisting(remaining, found);
+            }
+            remaining.removeAll(found);
+            if (remaining.isEmpty()) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 租户在 [fromMillis, toMillis) 内的审计记录，按时间升序，最多 limit 条
+     */
+    public List<QuotaAuditEntity> scan(String tenantId, long fromMillis, long toMillis, int limit) {
+        List<QuotaAuditEntity> rows = new ArrayList<>();
+        if (fromMillis >= toMillis || limit <= 0) {
+            return rows;
+        }
+        for (Partition partition : partitionsBetween(fromMillis, toMillis)) {
+            for (Segment segment : partition.segments) {
+                if (segment.maxTimestamp() >= fromMillis && segment.minTimestamp() < toMillis) {
+                    segment.scan(tenantId, fromMillis, toMillis, limit, rows);
+                }
+            }
+            // 分区按时间先后互不重叠：已有 limit 条时，后面分区的记录都排在它们之后
+            if (rows.size() >= limit) {
+                break;
+            }
+        }
+        rows.sort(TIME_ORDER);
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    /**
+     * 租户在 [fromMillis, toMillis) 内按资源汇总的用量
+     *
+     * @return resourceKey → 用量，按 resourceKey 排序
+     */
+    public Map<String, ResourceUsage> aggregate(String tenantId, long fromMillis, long toMillis) {
+        Map<String, ResourceUsage> usage = new TreeMap<>();
+        if (fromMillis >= toMillis) {
+            return usage;
+        }
+        for (Partition partition : partitionsBetween(fromMillis, toMillis)) {
+            for (Segment segment : partition.segments) {
+                if (segment.maxTimestamp() >= fromMillis && segment.minTimestamp() < toMillis) {
+                    segment.aggregate(tenantId, fromMillis, toMillis, usage);
+                }
+            }
+        }
+        return usage;
+    }
+
+    private Collection<Partition> partitionsBetween(long fromMillis, long toMillis) {
+        return partitions.subMap(Math.floorDiv(fromMillis, DAY_MILLIS), true,
+                Math.floorDiv(toMillis - 1, DAY_MILLIS), true).values();
+    }
+
+    void maintain() {
+        try {
+            dropExpiredPartitions(System.currentTimeMillis());
+            compact();
+        } catch (RuntimeException e) {
+            log.error("Audit segment maintenance failed", e);
+        }
+    }
+
+    /**
+     * 合并各分区的小段：当天分区攒够 compaction-min-segments 个才合并，之前的分区不再写入，有 2 个就合并。
+     * 新段先落盘，再在分区锁内替换旧段，最后删除旧段文件（崩溃后由 {@link #open} 按新段的 sources 清理）
+     *
+     * @return 发生合并的分区数
+     */
+    int compact() {
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MILLIS);
+        int merged = 0;
+        for (Partition partition : partitions.values()) {
+            try {
+                if (compact(partition, partition.day < today ? 2 : compactionMinSegments)) {
+                    merged++;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to compact audit segments in {}", partition.directory, e);
+            }
+        }
+        return merged;
+    }
+
+    private boolean compact(Partition partition, int minSegments) throws IOException {
+        List<Segment> candidates = new ArrayList<>(partition.segments);
+        candidates.sort(Comparator.comparingInt(Segment::rowCount));
+        List<Segment> inputs = new ArrayList<>();
+        long rowCount = 0;
+        for (Segment segment : candidates) {
+            if (rowCount + segment.rowCount() > maxSegmentRows) {
+                break;
+            }
+            inputs.add(segment);
+            rowCount += segment.rowCount();
+        }
+        if (inputs.size() < minSegments) {
+            return false;
+        }
+
+        List<QuotaAuditEntity> rows = new ArrayList<>((int) rowCount);
+        List<String> sources = new ArrayList<>();
+        for (Segment input : inputs) {
+            input.readAll(rows);
+            sources.add(input.name());
+            // 输入段自己取代的段如果还没删掉，也记下来，避免重启时复活
+            for (String source : input.sources()) {
+                if (Files.exists(partition.directory.resolve(source))) {
+                    sources.add(source);
+                }
+            }
+        }
+        rows.sort(SegmentWriter.ROW_ORDER);
+        Segment output = writeSegment(partition, rows, sources);
+
+        partition.lock.lock();
+        try {
+            if (partition.dropped) {
+                Files.deleteIfExists(output.path());
+                return false;
+            }
+            partition.replace(inputs, output);
+        } finally {
+            partition.lock.unlock();
+        }
+
+        for (Segment input : inputs) {
+            try {
+                Files.deleteIfExists(input.path());
+            } catch (IOException e) {
+                log.warn("Failed to delete compacted audit segment {}", input.path(), e);
+            }
+        }
+        compactionCounter.increment();
+        log.debug("Compacted {} audit segments ({} rows) into {}", inputs.size(), rowCount, output.name());
+        return true;
+    }
+
+    /**
+     * 删除早于 retention-days 天的分区（按 UTC 日期，含当天共保留 retention-days 天）
+     *
+     * @return 删除的分区数
+     */
+    int dropExpiredPartitions(long nowMillis) {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        long oldestKept = Math.floorDiv(nowMillis, DAY_MILLIS) - retentionDays + 1;
+        int dropped = 0;
+        for (Partition partition : partitions.headMap(oldestKept, false).values()) {
+            partition.lock.lock();
+            try {
+                partition.dropped = true;
+                partitions.remove(partition.day, partition);
+                for (Segment segment : partition.segments) {
+                    Files.deleteIfExists(segment.path());
+                }
+                try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(partition.directory)) {
+                    for (Path leftover : leftovers) {
+                        Files.deleteIfExists(leftover);
+                    }
+                }
+                Files.deleteIfExists(partition.directory);
+                dropped++;
+                log.info("Dropped expired audit partition {}", partition.directory);
+            } catch (IOException e) {
+                log.warn("Failed to delete expired audit partition {}", partition.directory, e);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        return dropped;
+    }
+
+    public int segmentCount() {
+        return partitions.values().stream().mapToInt(partition -> partition.segments.size()).sum();
+    }
+
+    public long rowCount() {
+        return partitions.values().stream()
+                .flatMap(partition -> partition.segments.stream())
+                .mapToLong(Segment::rowCount)
+                .sum();
+    }
+
+    public long diskBytes() {
+        return partitions.values().stream()
+                .flatMap(partition -> partition.segments.stream())
+                .mapToLong(Segment::sizeBytes)
+                .sum();
+    }
+
+    private static final class Partition {
+
+        private final long day;
+        private final Path directory;
+        // 串行化本分区的写入（存在性检查 + 追加）与合并后的替换
+        private final ReentrantLock lock = new ReentrantLock();
+        // 写时复制：查询不加锁，读取当前快照
+        private volatile List<Segment> segments = List.of();
+        private boolean dropped;
+
+        private Partition(long day, Path directory) {
+            this.day = day;
+            this.directory = directory;
+        }
+
+        private void add(Segment segment) {
+            List<Segment> next = new ArrayList<>(segments);
+            next.add(segment);
+            segments = List.copyOf(next);
+        }
+
+        private void replace(List<Segment> inputs, Segment output) {
+            List<Segment> next = new ArrayList<>(segments);
+            next.removeIf(inputs::contains);
+            next.add(output);
+            segments = List.copyOf(next);
+        }
+    }
+}
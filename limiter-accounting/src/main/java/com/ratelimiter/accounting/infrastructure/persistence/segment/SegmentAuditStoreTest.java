@@ -0,0 +1,269 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentAuditStoreTest {
+
+    // 2024-01-01T00:00:00Z
+    private static final long DAY_START = 1_704_067_200_000L;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private SegmentAuditStore store(int compactionMinSegments) {
+        SegmentAuditStore store = new SegmentAuditStore(new SimpleMeterRegistry(), directory.toString(),
+                2_000_000, compactionMinSegments, 0, 0, false);
+        store.init();
+        return store;
+    }
+
+    /**
+     * count 条记录，时间从 startMillis 起每条间隔 stepMillis，租户 / 资源轮转，含 null 列
+     */
+    private static List<QuotaAuditEntity> records(String prefix, int count, long startMillis, long stepMillis,
+                                                  int tenants, int resources) {
+        List<QuotaAuditEntity> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            QuotaAuditEntity entity = new QuotaAuditEntity();
+            entity.setRequestId(prefix + "-" + i);
+            entity.setTenantId("tenant-" + (i % tenants));
+            entity.setResourceKey("/api/resource-" + (i % resources));
+            entity.setTokens(1L + i % 5);
+            entity.setAllowed(i % 10 != 0);
+            entity.setRemaining(i % 10 != 0 ? 1_000L - i % 1_000 : null);
+            entity.setReason(i % 10 != 0 ? null : "quota_exceeded");
+            entity.setPolicyVersion(i % 7 == 0 ? null : "v" + (i % 3));
+            entity.setLatencyMs(i % 3 == 0 ? null : i % 50);
+            entity.setTimestamp(startMillis + i * stepMillis);
+            records.add(entity);
+        }
+        return records;
+    }
+
+    private static List<QuotaAuditEntity> expectedScan(List<QuotaAuditEntity> records, String tenantId,
+                                                       long fromMillis, long toMillis, int limit) {
+        return records.stream()
+                .filter(record -> record.getTenantId().equals(tenantId))
+                .filter(record -> record.getTimestamp() >= fromMillis && record.getTimestamp() < toMillis)
+                .sorted(Comparator.comparingLong(QuotaAuditEntity::getTimestamp)
+                        .thenComparing(QuotaAuditEntity::getRequestId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, ResourceUsage> expectedUsage(List<QuotaAuditEntity> records, String tenantId,
+                                                            long fromMillis, long toMillis) {
+        Map<String, ResourceUsage> usage = new TreeMap<>();
+        for (QuotaAuditEntity record : records) {
+            if (record.getTenantId().equals(tenantId)
+                    && record.getTimestamp() >= fromMillis && record.getTimestamp() < toMillis) {
+                usage.computeIfAbsent(record.getResourceKey(), ResourceUsage::new).add(1,
+                        record.getAllowed() ? 1 : 0, record.getTokens(), record.getAllowed() ? record.getTokens() : 0);
+            }
+        }
+        return usage;
+    }
+
+    // 各列（含 null、多字节字符、跨分区与跨块的时间）写入后可原样读出
+    @Test
+    void shouldRoundTripRecords() {
+        SegmentAuditStore store = store(8);
+        // 3000 条跨越两天，每个租户的行跨多个 1024 行的块
+        List<QuotaAuditEntity> records = records("rt", 3_000, DAY_START + DAY_MILLIS / 2, 30_000, 3, 4);
+        records.get(5).setResourceKey("/api/订单/" + "x".repeat(300));
+        records.get(6).setTokens(Long.MAX_VALUE);
+        records.get(7).setRemaining(-42L);
+
+        assertThat(store.write(records)).isEqualTo(3_000);
+
+        assertThat(directory.resolve("2024-01-01")).exists();
+        assertThat(directory.resolve("2024-01-02")).exists();
+        for (String tenant : List.of("tenant-0", "tenant-1", "tenant-2")) {
+            assertThat(store.scan(tenant, 0, Long.MAX_VALUE, Integer.MAX_VALUE)).usingRecursiveComparison()
+                    .isEqualTo(expectedScan(records, tenant, 0, Long.MAX_VALUE, Integer.MAX_VALUE));
+        }
+    }
+
+    // 按租户 / 时间范围 / limit 裁剪的扫描与按资源汇总，与逐行过滤的结果一致
+    @Test
+    void shouldScanAndAggregateTenantTimeRanges() {
+        SegmentAuditStore store = store(8);
+        List<QuotaAuditEntity> records = records("q", 20_000, DAY_START, 10_000, 7, 5);
+        for (int from = 0; from < records.size(); from += 2_500) {
+            store.write(records.subList(from, from + 2_500));
+        }
+
+        long[][] ranges = {
+                {0, Long.MAX_VALUE},
+                {DAY_START + 12_345, DAY_START + 50_000_000},
+                {DAY_START + DAY_MILLIS - 1, DAY_START + DAY_MILLIS + 1},
+                {DAY_START + 150_000_000, DAY_START + 150_000_001},
+                {DAY_START - DAY_MILLIS, DAY_START},
+        };
+        for (long[] range : ranges) {
+            for (String tenant : List.of("tenant-0", "tenant-3", "tenant-6", "missing")) {
+                for (int limit : new int[]{1, 100, Integer.MAX_VALUE}) {
+                    assertThat(store.scan(tenant, range[0], range[1], limit)).usingRecursiveComparison()
+                            .isEqualTo(expectedScan(records, tenant, range[0], range[1], limit));
+                }
+                assertThat(store.aggregate(tenant, range[0], range[1])).usingRecursiveComparison()
+                        .isEqualTo(expectedUsage(records, tenant, range[0], range[1]));
+            }
+        }
+    }
+
+    // 重投的批次、批内重复都不会产生重复记录
+    @Test
+    void shouldSkipDuplicates() {
+        SegmentAuditStore store = store(8);
+        List<QuotaAuditEntity> batch = records("dup", 1_000, DAY_START, 1_000, 4, 3);
+
+        assertThat(store.write(batch)).isEqualTo(1_000);
+        assertThat(store.write(batch)).isZero();
+
+        List<QuotaAuditEntity> mixed = new ArrayList<>(batch.subList(0, 10));
+        mixed.addAll(records("new", 20, DAY_START, 1_000, 4, 3));
+        mixed.addAll(records("new", 20, DAY_START, 1_000, 4, 3));
+        assertThat(store.write(mixed)).isEqualTo(20);
+
+        assertThat(store.rowCount()).isEqualTo(1_020);
+        assertThat(store.findExistingRequestIds(List.of("dup-0", "dup-999", "new-19", "unknown-1")))
+                .containsExactlyInAnyOrder("dup-0", "dup-999", "new-19");
+    }
+
+    // 合并小段后数据不变；合并后崩溃（旧段未删、临时文件残留）重启时被清理
+    @Test
+    void shouldCompactAndRecoverFromInterruptedCompaction() throws IOException {
+        SegmentAuditStore store = store(4);
+        List<QuotaAuditEntity> records = records("c", 1_000, DAY_START, 1_000, 5, 3);
+        for (int from = 0; from < records.size(); from += 100) {
+            store.write(records.subList(from, from + 100));
+        }
+        assertThat(store.segmentCount()).isEqualTo(10);
+
+        Path partition = directory.resolve("2024-01-01");
+        Map<Path, byte[]> beforeCompaction = new TreeMap<>();
+        try (Stream<Path> files = Files.list(partition)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                beforeCompaction.put(file, Files.readAllBytes(file));
+            }
+        }
+
+        assertThat(store.compact()).isEqualTo(1);
+        assertThat(store.segmentCount()).isEqualTo(1);
+        assertThat(store.rowCount()).isEqualTo(1_000);
+        assertThat(store.scan("tenant-2", 0, Long.MAX_VALUE, Integer.MAX_VALUE)).usingRecursiveComparison()
+                .isEqualTo(expectedScan(records, "tenant-2", 0, Long.MAX_VALUE, Integer.MAX_VALUE));
+        assertThat(store.write(records.subList(0, 100))).isZero();
+
+        for (Map.Entry<Path, byte[]> file : beforeCompaction.entrySet()) {
+            Files.write(file.getKey(), file.getValue());
+        }
+        Files.write(partition.resolve("9999999999999-000001.seg.tmp"), new byte[]{1, 2, 3});
+
+        SegmentAuditStore reopened = store(4);
+        assertThat(reopened.segmentCount()).isEqualTo(1);
+        assertThat(reopened.rowCount()).isEqualTo(1_000);
+        try (Stream<Path> files = Files.list(partition)) {
+            assertThat(files.collect(Collectors.toList())).hasSize(1);
+        }
+    }
+
+    // 超过保留天数的分区整体删除
+    @Test
+    void shouldDropExpiredPartitions() {
+        SegmentAuditStore store = new SegmentAuditStore(new SimpleMeterRegistry(), directory.toString(),
+                2_000_000, 8, 0, 2, false);
+        store.init();
+        store.write(records("old", 10, DAY_START, 1_000, 1, 1));
+        store.write(records("new", 10, DAY_START + 2 * DAY_MILLIS, 1_000, 1, 1));
+
+        assertThat(store.dropExpiredPartitions(DAY_START + 3 * DAY_MILLIS)).isEqualTo(1);
+
+        assertThat(store.rowCount()).isEqualTo(10);
+        assertThat(directory.resolve("2024-01-01")).doesNotExist();
+        assertThat(store.findExistingRequestIds(List.of("old-1", "new-1"))).containsExactly("new-1");
+    }
+
+    // 必填列为空按数据错误抛出（由写入缓冲按记录隔离）
+    @Test
+    void shouldRejectIncompleteRecords() {
+        SegmentAuditStore store = store(8);
+        List<QuotaAuditEntity> batch = records("bad", 3, DAY_START, 1_000, 1, 1);
+        batch.get(1).setTenantId(null);
+
+        assertThatThrownBy(() -> store.write(batch)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(store.rowCount()).isZero();
+    }
+
+    /**
+     * 100 万条（UUID requestId，200 个租户，50 个资源，分布在一天内），输出每行磁盘占用，
+     * 以及单租户时间范围扫描 / 汇总与全量解码的耗时对比
+     */
+    @Test
+    void benchmarkTenantScans() {
+        SegmentAuditStore store = store(8);
+        int rows = 1_000_000;
+        List<QuotaAuditEntity> records = records("bench", rows, DAY_START, DAY_MILLIS / rows, 200, 50);
+        records.forEach(record -> record.setRequestId(UUID.randomUUID().toString()));
+
+        long start = System.nanoTime();
+        for (int from = 0; from < rows; from += 50_000) {
+            store.write(records.subList(from, from + 50_000));
+        }
+        long writeNanos = System.nanoTime() - start;
+        store.compact();
+        assertThat(store.rowCount()).isEqualTo(rows);
+        double bytesPerRow = (double) store.diskBytes() / rows;
+
+        long from = DAY_START + DAY_MILLIS / 4;
+        long to = DAY_START + DAY_MILLIS / 2;
+        List<QuotaAuditEntity> warmup = store.scan("tenant-17", from, to, Integer.MAX_VALUE);
+        store.aggregate("tenant-17", from, to);
+
+        start = System.nanoTime();
+        List<QuotaAuditEntity> scanned = store.scan("tenant-17", from, to, Integer.MAX_VALUE);
+        long scanNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        Map<String, ResourceUsage> usage = store.aggregate("tenant-17", from, to);
+        long aggregateNanos = System.nanoTime() - start;
+        // 对照：不按租户与时间裁剪，解码全部行
+        start = System.nanoTime();
+        long decodedRows = 0;
+        for (int tenant = 0; tenant < 200; tenant++) {
+            decodedRows += store.scan("tenant-" + tenant, 0, Long.MAX_VALUE, Integer.MAX_VALUE).size();
+        }
+        long fullDecodeNanos = System.nanoTime() - start;
+
+        assertThat(scanned).hasSize(warmup.size());
+        assertThat(usage.values().stream().mapToLong(ResourceUsage::getRequestCount).sum())
+                .isEqualTo(scanned.size());
+        assertThat(decodedRows).isEqualTo(rows);
+        assertThat(bytesPerRow).isLessThan(64.0);
+        System.out.printf("rows=%d write: %.0f rows/s | disk: %.1f bytes/row | tenant quarter-day scan: %d rows %.2f ms"
+                        + " | aggregate: %.2f ms | decoding every row: %d rows %.0f ms%n",
+                rows, rows * 1e9 / writeNanos, bytesPerRow, scanned.size(), scanNanos / 1e6,
+                aggregateNanos / 1e6, decodedRows, fullDecodeNanos / 1e6);
+    }
+}
@@ -0,0 +1,118 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 段文件编码缓冲（小端，可扩容，支持回填已预留的位置）
+ */
+final class SegmentOutput {
+
+    private byte[] buffer;
+    private int size;
+
+    SegmentOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[size++] = (byte) value;
+        buffer[size++] = (byte) (value >>> 8);
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(4);
+        putInt(size, value);
+        size += 4;
+    }
+
+    void writeLong(long value) {
+        ensureCapacity(8);
+        putLong(size, value);
+        size += 8;
+    }
+
+    /**
+     * 无符号 LEB128 变长整数
+     */
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * 变长长度 + UTF-8 字节
+     */
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * 预留 length 个字节（填 0），返回起始位置，之后用 putInt / putLong 回填
+     */
+    int reserve(int length) {
+        ensureCapacity(length);
+        int position = size;
+        Arrays.fill(buffer, position, position + length, (byte) 0);
+        size += length;
+        return position;
+    }
+
+    void putInt(int position, int value) {
+        for (int i = 0; i < 4; i++) {
+            buffer[position + i] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    void putLong(int position, long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[position + i] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            long required = (long) size + extra;
+            if (required > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Segment exceeds 2GB");
+            }
+            buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(required, (long) buffer.length * 2)));
+        }
+    }
+}
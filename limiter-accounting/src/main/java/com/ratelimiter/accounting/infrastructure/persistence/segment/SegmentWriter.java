@@ -0,0 +1,315 @@
+package com.ratelimiter.accounting.infrastructure.persistence.segment;
+
+import com.ratelimiter.accounting.infrastructure.persistence.mysql.QuotaAuditEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+import static com.ratelimiter.accounting.infrastructure.persistence.segment.Segment.*;
+
+/**
+ * 把一批记录编码为段文件，格式见 {@link Segment}
+ */
+final class SegmentWriter {
+
+    /**
+     * 段内行序：租户（与租户字典同序）→ 时间
+     */
+    static final Comparator<QuotaAuditEntity> ROW_ORDER = Comparator
+            .comparing(QuotaAuditEntity::getTenantId)
+            .thenComparingLong(QuotaAuditEntity::getTimestamp)
+            .thenComparing(QuotaAuditEntity::getRequestId);
+
+    private SegmentWriter() {
+    }
+
+    /**
+     * 先写临时文件再原子改名，读方与重启后的恢复都看不到写了一半的段
+     *
+     * @param rows 已按 {@link #ROW_ORDER} 排序、requestId 互不相同、必填列非空的记录
+     * @param sources 本段取代的段文件名（合并产生的段），重启时据此清理未删掉的旧段
+     */
+    static void write(Path target, List<QuotaAuditEntity> rows, List<String> sources, long createdMillis,
+                      boolean fsync) throws IOException {
+        SegmentOutput output = encode(rows, sources, createdMillis);
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = output.asByteBuffer();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        if (fsync) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    static SegmentOutput encode(List<QuotaAuditEntity> rows, List<String> sources, long createdMillis) {
+        int rowCount = rows.size();
+        SegmentOutput output = new SegmentOutput(rowCount * 48 + 4096);
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(rowCount);
+        output.writeInt(BLOCK_ROWS);
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (QuotaAuditEntity row : rows) {
+            minTimestamp = Math.min(minTimestamp, row.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, row.getTimestamp());
+        }
+        output.writeLong(minTimestamp);
+        output.writeLong(maxTimestamp);
+        output.writeLong(createdMillis);
+        int fileLengthAt = output.reserve(8);
+        int sectionsAt = output.reserve(SECTION_COUNT * 8);
+
+        output.putLong(sectionsAt + SOURCES * 8, output.size());
+        output.writeInt(sources.size());
+        sources.forEach(output::writeString);
+
+        Dictionary tenants = Dictionary.of(rows, QuotaAuditEntity::getTenantId);
+        Dictionary resources = Dictionary.of(rows, QuotaAuditEntity::getResourceKey);
+        Dictionary reasons = Dictionary.of(rows, QuotaAuditEntity::getReason);
+        Dictionary policies = Dictionary.of(rows, QuotaAuditEntity::getPolicyVersion);
+        output.putLong(sectionsAt + TENANT_DICT * 8, output.size());
+        tenants.writeTo(output);
+        output.putLong(sectionsAt + RESOURCE_DICT * 8, output.size());
+        resources.writeTo(output);
+        output.putLong(sectionsAt + REASON_DICT * 8, output.size());
+        reasons.writeTo(output);
+        output.putLong(sectionsAt + POLICY_DICT * 8, output.size());
+        policies.writeTo(output);
+
+        // 租户列不落盘：行按租户排序，租户索引即可还原
+        output.putLong(sectionsAt + TENANT_INDEX * 8, output.size());
+        int row = 0;
+        for (String tenant : tenants.values) {
+            int start = row;
+            long tenantMin = Long.MAX_VALUE;
+            long tenantMax = Long.MIN_VALUE;
+            while (row < rowCount && rows.get(row).getTenantId().equals(tenant)) {
+                tenantMin = Math.min(tenantMin, rows.get(row).getTimestamp());
+                tenantMax = Math.max(tenantMax, rows.get(row).getTimestamp());
+                row++;
+            }
+            output.writeInt(start);
+            output.writeInt(row);
+            output.writeLong(tenantMin);
+            output.writeLong(tenantMax);
+        }
+        if (row != rowCount) {
+            throw new IllegalArgumentException("Rows are not sorted by tenant");
+        }
+
+        output.putLong(sectionsAt + RESOURCE * 8, output.size());
+        writeCodes(output, rows, resources, QuotaAuditEntity::getResourceKey);
+        output.putLong(sectionsAt + REASON * 8, output.size());
+        writeCodes(output, rows, reasons, QuotaAuditEntity::getReason);
+        output.putLong(sectionsAt + POLICY * 8, output.size());
+        writeCodes(output, rows, policies, QuotaAuditEntity::getPolicyVersion);
+
+        output.putLong(sectionsAt + TIMESTAMP * 8, output.size());
+        writeLongs(output, rows, QuotaAuditEntity::getTimestamp);
+        output.putLong(sectionsAt + TOKENS * 8, output.size());
+        writeLongs(output, rows, QuotaAuditEntity::getTokens);
+        output.putLong(sectionsAt + REMAINING * 8, output.size());
+        writeLongs(output, rows, QuotaAuditEntity::getRemaining);
+        output.putLong(sectionsAt + LATENCY * 8, output.size());
+        writeLongs(output, rows, QuotaAuditEntity::getLatencyMs);
+
+        output.putLong(sectionsAt + ALLOWED * 8, output.size());
+        long[] allowed = new long[(rowCount + 63) / 64];
+        for (int i = 0; i < rowCount; i++) {
+            if (rows.get(i).getAllowed()) {
+                allowed[i >>> 6] |= 1L << i;
+            }
+        }
+        for (long word : allowed) {
+            output.writeLong(word);
+        }
+
+        output.putLong(sectionsAt + REQUEST_ID * 8, output.size());
+        writeRequestIds(output, rows);
+
+        output.putLong(sectionsAt + REQUEST_ID_INDEX * 8, output.size());
+        long[] hashes = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            hashes[i] = requestIdHash(rows.get(i).getRequestId());
+        }
+        int[] order = IntStream.range(0, rowCount).boxed()
+                .sorted(Comparator.comparingLong(i -> hashes[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        for (int i : order) {
+            output.writeLong(hashes[i]);
+        }
+        for (int i : order) {
+            output.writeInt(i);
+        }
+
+        output.putLong(fileLengthAt, output.size());
+        return output;
+    }
+
+    // 字典编码列：编码 0 为 null，字典第 i 项编码为 i + 1，按字典大小选 1 / 2 / 4 字节定长
+    private static void writeCodes(SegmentOutput output, List<QuotaAuditEntity> rows, Dictionary dictionary,
+                                   Function<QuotaAuditEntity, String> column) {
+        int width = codeWidth(dictionary.values.length);
+        output.writeByte(width);
+        for (QuotaAuditEntity row : rows) {
+            int code = dictionary.code(column.apply(row));
+            switch (width) {
+                case 1 -> output.writeByte(code);
+                case 2 -> output.writeShort(code);
+                default -> output.writeInt(code);
+            }
+        }
+    }
+
+    // 数值列：每 BLOCK_ROWS 行一块，块首值定长存放，其余行存与上一行之差（zigzag 变长）；
+    // null 行记为上一行的值（差为 0）并在 null 位图中标记
+    private static void writeLongs(SegmentOutput output, List<QuotaAuditEntity> rows,
+                                   Function<QuotaAuditEntity, ? extends Number> column) {
+        int rowCount = rows.size();
+        long[] nulls = null;
+        for (int i = 0; i < rowCount; i++) {
+            if (column.apply(rows.get(i)) == null) {
+                if (nulls == null) {
+                    nulls = new long[(rowCount + 63) / 64];
+                }
+                nulls[i >>> 6] |= 1L << i;
+            }
+        }
+        output.writeByte(nulls != null ? 1 : 0);
+        if (nulls != null) {
+            for (long word : nulls) {
+                output.writeLong(word);
+            }
+        }
+
+        int blocks = (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        output.writeInt(blocks);
+        int firstValuesAt = output.reserve(blocks * 8);
+        int offsetsAt = output.reserve(blocks * 4);
+        int dataStart = output.size();
+        long previous = 0;
+        for (int i = 0; i < rowCount; i++) {
+            Number number = column.apply(rows.get(i));
+            long value = number != null ? number.longValue() : previous;
+            if (i % BLOCK_ROWS == 0) {
+                int block = i / BLOCK_ROWS;
+                output.putLong(firstValuesAt + block * 8, value);
+                output.putInt(offsetsAt + block * 4, output.size() - dataStart);
+            } else {
+                long delta = value - previous;
+                output.writeVarLong((delta << 1) ^ (delta >> 63));
+            }
+            previous = value;
+        }
+    }
+
+    // requestId 熵高、字典无效，按块 deflate；只在回查与返回整行时解压
+    private static void writeRequestIds(SegmentOutput output, List<QuotaAuditEntity> rows) {
+        int rowCount = rows.size();
+        int blocks = (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        output.writeInt(blocks);
+        int offsetsAt = output.reserve((blocks + 1) * 4);
+        int rawLengthsAt = output.reserve(blocks * 4);
+        int dataStart = output.size();
+
+        SegmentOutput raw = new SegmentOutput(BLOCK_ROWS * 40);
+        byte[] chunk = new byte[16 * 1024];
+        Deflater deflater = new Deflater(REQUEST_ID_COMPRESSION_LEVEL, true);
+        try {
+            for (int block = 0; block < blocks; block++) {
+                raw.reset();
+                for (int i = block * BLOCK_ROWS; i < Math.min(rowCount, (block + 1) * BLOCK_ROWS); i++) {
+                    raw.writeString(rows.get(i).getRequestId());
+                }
+                output.putInt(offsetsAt + block * 4, output.size() - dataStart);
+                output.putInt(rawLengthsAt + block * 4, raw.size());
+
+                deflater.reset();
+                deflater.setInput(raw.array(), 0, raw.size());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.writeBytes(chunk, 0, deflater.deflate(chunk));
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        output.putInt(offsetsAt + blocks * 4, output.size() - dataStart);
+    }
+
+    static int codeWidth(int dictionarySize) {
+        return dictionarySize < 0xFF ? 1 : dictionarySize < 0xFFFF ? 2 : 4;
+    }
+
+    private static void forceDirectory(Path directory) {
+        // 目录 fsync 让改名本身持久化；部分平台（Windows）不支持以只读方式打开目录，忽略
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // 见上
+        }
+    }
+
+    /**
+     * 列字典：去重后按自然序排列的取值（不含 null）
+     */
+    private static final class Dictionary {
+
+        private final String[] values;
+        private final Map<String, Integer> codes;
+
+        private Dictionary(String[] values) {
+            this.values = values;
+            this.codes = new HashMap<>(values.length * 2);
+            for (int i = 0; i < values.length; i++) {
+                codes.put(values[i], i + 1);
+            }
+        }
+
+        static Dictionary of(List<QuotaAuditEntity> rows, Function<QuotaAuditEntity, String> column) {
+            TreeSet<String> distinct = new TreeSet<>();
+            for (QuotaAuditEntity row : rows) {
+                String value = column.apply(row);
+                if (value != null) {
+                    distinct.add(value);
+                }
+            }
+            return new Dictionary(distinct.toArray(new String[0]));
+        }
+
+        int code(String value) {
+            return value == null ? 0 : codes.get(value);
+        }
+
+        void writeTo(SegmentOutput output) {
+            output.writeInt(values.length);
+            for (String value : values) {
+                output.writeString(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+-- ============================================
+-- ClickHouse 配额审计表（app.accounting.sink=clickhouse 时由 AuditWriter 启动时创建）
+-- ${database} 由 AuditWriter 替换为 app.accounting.clickhouse.database
+--
+-- 与 MySQL quota_audit 的差异：
+--   1. 列存 + 稀疏主键索引，写入没有二级索引维护开销
+--   2. ORDER BY (tenant_id, timestamp) 对应最常见的“某租户某时间段”查询，request_id 放在末尾作为去重键
+--   3. 没有唯一约束：ReplacingMergeTree 在后台合并时按排序键去掉 Kafka 重投产生的重复行，
+--      精确计数查询使用 FINAL 或按 request_id 去重
+--   4. request_id 上的 bloom_filter 跳数索引用于按 requestId 回查
+-- ============================================
+
+CREATE DATABASE IF NOT EXISTS ${database};
+
+CREATE TABLE IF NOT EXISTS ${database}.quota_audit
+(
+    request_id     String,
+    tenant_id      LowCardinality(String),
+    resource_key   LowCardinality(String),
+    tokens         Int64,
+    allowed        Bool,
+    remaining      Nullable(Int64),
+    reason         LowCardinality(Nullable(String)),
+    policy_version LowCardinality(Nullable(String)),
+    latency_ms     Nullable(Int32),
+    timestamp      DateTime64(3),
+    created_at     DateTime DEFAULT now(),
+    INDEX idx_request_id request_id TYPE bloom_filter(0.001) GRANULARITY 4
+)
+ENGINE = ReplacingMergeTree
+PARTITION BY toYYYYMM(timestamp)
+ORDER BY (tenant_id, timestamp, request_id);
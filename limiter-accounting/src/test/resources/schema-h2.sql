@@ -0,0 +1,62 @@
+-- 测试用表结构（与 scripts/init_db.sql 中的 quota_audit 保持一致，去掉 H2 不支持的表选项）
+CREATE TABLE IF NOT EXISTS quota_audit (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    request_id VARCHAR(64) NOT NULL,
+    tenant_id VARCHAR(64) NOT NULL,
+    resource_key VARCHAR(128) NOT NULL,
+    tokens BIGINT NOT NULL,
+    allowed BOOLEAN NOT NULL,
+    remaining BIGINT DEFAULT NULL,
+    reason VARCHAR(128) DEFAULT NULL,
+    policy_version VARCHAR(32) DEFAULT NULL,
+    client_ip VARCHAR(64) DEFAULT NULL,
+    user_agent VARCHAR(256) DEFAULT NULL,
+    latency_ms INT DEFAULT NULL,
+    `timestamp` BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_request_id UNIQUE (request_id, `timestamp`)
+);
+
+CREATE INDEX IF NOT EXISTS idx_tenant_timestamp ON quota_audit (tenant_id, `timestamp`);
+
+-- 与 scripts/init_db.sql 中的 quota_audit_request 保持一致
+CREATE TABLE IF NOT EXISTS quota_audit_request (
+    request_id VARCHAR(64) NOT NULL PRIMARY KEY,
+    `timestamp` BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_request_timestamp ON quota_audit_request (`timestamp`);
+
+-- 与 scripts/init_db.sql 中的 quota_usage / quota_usage_offset / quota_usage_applied_rollup 保持一致
+CREATE TABLE IF NOT EXISTS quota_usage (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    tenant_id VARCHAR(64) NOT NULL,
+    resource_key VARCHAR(128) NOT NULL,
+    granularity VARCHAR(8) NOT NULL,
+    bucket_start BIGINT NOT NULL,
+    allowed_count BIGINT NOT NULL DEFAULT 0,
+    denied_count BIGINT NOT NULL DEFAULT 0,
+    tokens_requested BIGINT NOT NULL DEFAULT 0,
+    tokens_consumed BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_tenant_bucket UNIQUE (tenant_id, granularity, bucket_start, resource_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_granularity_bucket ON quota_usage (granularity, bucket_start);
+
+CREATE TABLE IF NOT EXISTS quota_usage_offset (
+    topic VARCHAR(128) NOT NULL,
+    partition_id INT NOT NULL,
+    next_offset BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (topic, partition_id)
+);
+
+CREATE TABLE IF NOT EXISTS quota_usage_applied_rollup (
+    rollup_id VARCHAR(64) NOT NULL PRIMARY KEY,
+    window_start BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_window_start ON quota_usage_applied_rollup (window_start);
@@ -0,0 +1,102 @@
+package com.ratelimiter.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 对比两次运行的 JMH JSON 结果（-rf json），用于比较两个提交
+ *
+ * 用法：java -cp target/benchmarks.jar com.ratelimiter.benchmarks.BenchmarkComparison base.json head.json [阈值%，默认 5]
+ *
+ * 按 基准方法 + 参数 + 线程数 配对；变差超过阈值且两次的误差区间不重叠时记为回退，存在回退时以状态码 1 退出
+ */
+public final class BenchmarkComparison {
+
+    private BenchmarkComparison() {
+    }
+
+    record Score(String mode, double score, double error, String unit) {
+
+        /**
+         * 吞吐越大越好，其余模式（耗时）越小越好
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <base.json> <head.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+        Map<String, Score> base = load(Path.of(args[0]));
+        Map<String, Score> head = load(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %22s %22s %9s%n", "Benchmark", "Base", "Head", "Change");
+        for (Map.Entry<String, Score> entry : new TreeMap<>(head).entrySet()) {
+            Score after = entry.getValue();
+            Score before = base.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %22s %22s %9s%n", entry.getKey(), "-", format(after), "new");
+                continue;
+            }
+            double change = (after.score() - before.score()) / before.score() * 100;
+            double worse = after.higherIsBetter() ? -change : change;
+            boolean significant = Math.abs(after.score() - before.score()) > before.error() + after.error();
+            String verdict = "";
+            if (significant && worse > threshold) {
+                verdict = "  REGRESSION";
+                regressions++;
+            } else if (significant && -worse > threshold) {
+                verdict = "  improved";
+            }
+            System.out.printf("%-70s %22s %22s %+8.1f%%%s%n",
+                    entry.getKey(), format(before), format(after), change, verdict);
+        }
+        for (String missing : base.keySet()) {
+            if (!head.containsKey(missing)) {
+                System.out.printf("%-70s %22s %22s %9s%n", missing, format(base.get(missing)), "-", "removed");
+            }
+        }
+
+        System.out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String format(Score score) {
+        return String.format("%.3f +- %.3f %s", score.score(), score.error(), score.unit());
+    }
+
+    static Map<String, Score> load(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText()
+                    .replace("com.ratelimiter.benchmarks.", ""));
+            JsonNode params = run.path("params");
+            Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> param = fields.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            key.append(" t=").append(run.path("threads").asInt());
+
+            JsonNode metric = run.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble();
+            scores.put(key.toString(), new Score(run.path("mode").asText(), metric.path("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error, metric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,191 @@
+package com.ratelimiter.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventSerializer;
+import com.ratelimiter.common.web.dto.dataPlane.CheckRequest;
+import com.ratelimiter.common.web.dto.dataPlane.CheckResponse;
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.CheckUseCaseService;
+import com.ratelimiter.dataplane.application.OnDemandPolicyLoader;
+import com.ratelimiter.dataplane.application.event.QuotaEventPublisher;
+import com.ratelimiter.dataplane.application.event.QuotaSpillReplayer;
+import com.ratelimiter.dataplane.application.metrics.HotKeyTracker;
+import com.ratelimiter.dataplane.application.metrics.RateLimiterMetricsService;
+import com.ratelimiter.dataplane.application.metrics.StageLatencyRecorder;
+import com.ratelimiter.dataplane.domain.LocalTokenBucketManager;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository;
+import com.ratelimiter.dataplane.infrastructure.spill.SpillJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CheckUseCaseService.checkAndConsume 端到端（策略查找 → 本地桶 → Redis → 事件入队 → 指标）
+ *
+ * Redis 由固定返回允许的桩替代，Kafka 由 MockProducer 替代（事件仍经环形缓冲区与 drainer 线程，
+ * 序列化方式与线上默认相同），测到的是数据平面自身的开销，不含网络往返。
+ * path 选择请求走的分支：local（本地桶放行）、redis（本地桶为空，回退 Redis）、policy_not_found（负缓存命中）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckUseCaseBenchmark {
+
+    private static final int TENANTS = 10_000;
+    private static final String RESOURCE_KEY = "/api/v1/orders";
+
+    @Param({"local", "redis", "policy_not_found"})
+    public String path;
+
+    private MockProducer<String, Object> producer;
+    private QuotaEventPublisher eventPublisher;
+    private OnDemandPolicyLoader policyLoader;
+    private CheckUseCaseService checkUseCase;
+    String[] tenantIds;
+
+    /**
+     * Redis 桩：不访问 Redis，直接放行
+     */
+    static class StubRedisRateLimiterRepository extends RedisRateLimiterRepository {
+
+        private static final RateLimitResult ALLOWED = new RateLimitResult(true, 0L, "");
+
+        StubRedisRateLimiterRepository() {
+            super(null);
+        }
+
+        @Override
+        public RateLimitResult tryConsumeTokens(String tenantId, String resourceKey, long capacity,
+                                                BigDecimal refillRateConfig, long tokensToConsume,
+                                                String requestId, long nowMillis) {
+            return ALLOWED;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(registry, 500, 50);
+
+        tenantIds = new String[TENANTS];
+        List<PolicyDto> policies = new ArrayList<>(TENANTS);
+        for (int i = 0; i < TENANTS; i++) {
+            tenantIds[i] = String.format("tenant_%05d", i);
+            PolicyDto policy = PolicyCacheBenchmark.policy(tenantIds[i], RESOURCE_KEY);
+            if ("local".equals(path)) {
+                // 本地桶足够大，测量期间始终放行
+                policy.setCapacity(1_000_000_000L);
+                policy.setRefillRate(new BigDecimal("1000000000"));
+            } else {
+                // 本地桶始终为空，每次都回退到 Redis
+                policy.setCapacity(0L);
+                policy.setRefillRate(BigDecimal.ZERO);
+            }
+            policies.add(policy);
+        }
+
+        PolicyCache policyCache = new PolicyCache(registry, TENANTS);
+        if ("policy_not_found".equals(path)) {
+            long now = System.currentTimeMillis();
+            for (String tenantId : tenantIds) {
+                policyCache.markAbsent(tenantId, RESOURCE_KEY, TimeUnit.DAYS.toMillis(1), now);
+            }
+        } else {
+            policyCache.updatePolicies(policies);
+        }
+        // 所有 key 都在缓存或负缓存中，不会访问控制平面
+        policyLoader = new OnDemandPolicyLoader(null, policyCache, metricsService, 100, 5000, 1000, 1, 16);
+
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(QuotaConsumedEvent.class, new QuotaEventSerializer());
+        serializers.put(QuotaRollupEvent.class, new JsonSerializer<>());
+        producer = new MockProducer<>(true, new StringSerializer(), new DelegatingByTypeSerializer(serializers));
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        QuotaSpillReplayer spillReplayer = new QuotaSpillReplayer(kafkaTemplate, new ObjectMapper(), registry,
+                "quota-events", "quota-rollups", false, "", 1 << 20, 4, SpillJournal.FsyncPolicy.NONE, 1000,
+                500, 1000, 30000, 10000);
+        eventPublisher = new QuotaEventPublisher(kafkaTemplate, spillReplayer, "quota-events", registry,
+                65536, QuotaEventPublisher.OverflowPolicy.DROP, 5, 512, 200,
+                true, "quota-rollups", "benchmark", 1000, 100_000, 10_000, 200_000);
+        eventPublisher.start();
+
+        checkUseCase = new CheckUseCaseService(new LocalTokenBucketManager(), policyCache, policyLoader,
+                new StubRedisRateLimiterRepository(), eventPublisher, metricsService,
+                new StageLatencyRecorder(60_000),
+                // 热点 key 草图照常更新（计入热路径开销），不启动窗口轮转
+                new HotKeyTracker(kafkaTemplate, true, 1024, 16, 20, 10_000, "quota-hotkeys", "benchmark"));
+    }
+
+    /**
+     * MockProducer 会保留所有已发送记录，每轮迭代后清空，避免堆积影响 GC
+     */
+    @TearDown(Level.Iteration)
+    public void clearSentRecords() {
+        producer.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventPublisher.shutdown();
+        policyLoader.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRequests {
+
+        private SplittableRandom random;
+        private long sequence;
+
+        @Setup
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+
+        CheckRequest next(String[] tenantIds) {
+            CheckRequest request = new CheckRequest();
+            request.setRequestId("bench-" + Thread.currentThread().getId() + "-" + sequence++);
+            request.setTenantId(tenantIds[random.nextInt(tenantIds.length)]);
+            request.setResourceKey(RESOURCE_KEY);
+            request.setTokens(1L);
+            request.setTimestamp(System.currentTimeMillis());
+            return request;
+        }
+    }
+
+    @Benchmark
+    public CheckResponse checkAndConsume(ThreadRequests requests) {
+        return checkUseCase.checkAndConsume(requests.next(tenantIds));
+    }
+}
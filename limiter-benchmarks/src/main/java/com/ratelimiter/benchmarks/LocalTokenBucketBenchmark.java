@@ -0,0 +1,105 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.dataplane.domain.LocalTokenBucketManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LocalTokenBucketManager.tryConsume 的吞吐随线程数的变化
+ *
+ * keys=1 时所有线程争用同一个热点桶，keys=100000 时各线程分散在不同的桶上；
+ * 两者的差距即锁竞争之外、桶本身的开销。线程数固定为 1 / 4 / 16 / 64，命令行 -t 会覆盖
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalTokenBucketBenchmark {
+
+    private static final String RESOURCE_KEY = "/api/v1/orders";
+    // 容量与补充速率足够大，测量期间桶不会耗尽（耗尽后走的是同一段代码，只是返回 false）
+    private static final long CAPACITY = 1_000_000_000L;
+    private static final BigDecimal REFILL_RATE = new BigDecimal("1000000000");
+
+    @Param({"1", "100000"})
+    public int keys;
+
+    LocalTokenBucketManager manager;
+    String[] tenantIds;
+
+    @Setup
+    public void setUp() {
+        manager = new LocalTokenBucketManager();
+        tenantIds = new String[keys];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys; i++) {
+            tenantIds[i] = "tenant_" + i;
+            // 预先建好所有桶，测量的是稳态下的消费，不含首次建桶
+            manager.tryConsume(tenantIds[i], RESOURCE_KEY, CAPACITY, REFILL_RATE, 1L, now);
+        }
+    }
+
+    /**
+     * 每个线程独立的随机 key 序列
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        private SplittableRandom random;
+
+        @Setup
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+
+        String next(LocalTokenBucketBenchmark benchmark) {
+            String[] tenantIds = benchmark.tenantIds;
+            return tenantIds.length == 1 ? tenantIds[0] : tenantIds[random.nextInt(tenantIds.length)];
+        }
+    }
+
+    private boolean consume(ThreadKeys threadKeys) {
+        return manager.tryConsume(threadKeys.next(this), RESOURCE_KEY, CAPACITY, REFILL_RATE, 1L,
+                System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryConsume_t01(ThreadKeys threadKeys) {
+        return consume(threadKeys);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryConsume_t04(ThreadKeys threadKeys) {
+        return consume(threadKeys);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryConsume_t16(ThreadKeys threadKeys) {
+        return consume(threadKeys);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean tryConsume_t64(ThreadKeys threadKeys) {
+        return consume(threadKeys);
+    }
+}
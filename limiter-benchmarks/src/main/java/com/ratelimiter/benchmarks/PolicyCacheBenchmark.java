@@ -0,0 +1,104 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.domain.CompiledPolicy;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PolicyCache.findPolicy 在 1k / 100k / 1M 条策略下的查找耗时（命中与未命中）
+ *
+ * 随机访问全部策略：策略数超过 CPU 缓存后，耗时主要来自拼接 key 与哈希表的缓存缺失
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PolicyCacheBenchmark {
+
+    static final int RESOURCES_PER_TENANT = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    public int policies;
+
+    PolicyCache policyCache;
+    String[] tenantIds;
+    String[] resourceKeys;
+
+    @Setup
+    public void setUp() {
+        policyCache = new PolicyCache(new SimpleMeterRegistry(), 100_000);
+        tenantIds = new String[policies / RESOURCES_PER_TENANT];
+        for (int i = 0; i < tenantIds.length; i++) {
+            tenantIds[i] = String.format("tenant_%07d", i);
+        }
+        resourceKeys = new String[RESOURCES_PER_TENANT];
+        for (int i = 0; i < resourceKeys.length; i++) {
+            resourceKeys[i] = "/api/v1/resource-" + i;
+        }
+
+        List<PolicyDto> snapshot = new ArrayList<>(policies);
+        for (String tenantId : tenantIds) {
+            for (String resourceKey : resourceKeys) {
+                snapshot.add(policy(tenantId, resourceKey));
+            }
+        }
+        policyCache.updatePolicies(snapshot);
+    }
+
+    static PolicyDto policy(String tenantId, String resourceKey) {
+        PolicyDto policy = new PolicyDto();
+        policy.setTenantId(tenantId);
+        policy.setResourceKey(resourceKey);
+        policy.setPolicyType("TOKEN_BUCKET");
+        policy.setCapacity(1000L);
+        policy.setRefillRate(new BigDecimal("10.0000"));
+        policy.setEnabled(true);
+        policy.setVersion("v1");
+        return policy;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+
+        SplittableRandom random;
+
+        @Setup
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+    }
+
+    @Benchmark
+    public CompiledPolicy findPolicyHit(ThreadRandom threadRandom) {
+        return policyCache.findPolicy(tenantIds[threadRandom.random.nextInt(tenantIds.length)],
+                resourceKeys[threadRandom.random.nextInt(RESOURCES_PER_TENANT)]);
+    }
+
+    /**
+     * 租户存在、资源不存在：与命中相同的 key 拼接与哈希，查找落空
+     */
+    @Benchmark
+    public CompiledPolicy findPolicyMiss(ThreadRandom threadRandom) {
+        return policyCache.findPolicy(tenantIds[threadRandom.random.nextInt(tenantIds.length)], "/api/v1/unknown");
+    }
+}
@@ -0,0 +1,52 @@
+package com.ratelimiter.benchmarks;
+
+import com.ratelimiter.common.util.PrecisionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PrecisionUtils 的换算开销（refillRate 在 BigDecimal 与 double 之间转换、补充量计算）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecisionUtilsBenchmark {
+
+    // 非 final：避免被 JIT 当作常量折叠
+    BigDecimal refillRate = new BigDecimal("12.3456");
+    double refillRateDouble = 12.3456;
+    double elapsedSeconds = 0.125;
+
+    @Benchmark
+    public double toDouble() {
+        return PrecisionUtils.toDouble(refillRate);
+    }
+
+    @Benchmark
+    public BigDecimal toBigDecimal() {
+        return PrecisionUtils.toBigDecimal(refillRateDouble);
+    }
+
+    @Benchmark
+    public BigDecimal multiply() {
+        return PrecisionUtils.multiply(refillRate, elapsedSeconds);
+    }
+
+    @Benchmark
+    public double calculateTokenDelta() {
+        return PrecisionUtils.calculateTokenDelta(refillRate, elapsedSeconds);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ratelimiter.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QuotaConsumedEvent 的编解码：二进制编码（QuotaEventCodec，默认）与 JSON（quota-events codec=json）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuotaEventSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    QuotaConsumedEvent event;
+    byte[] binary;
+    byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        // 与 drainer 构建的事件相同：允许的本地路径决策
+        event = QuotaConsumedEvent.create(UUID.randomUUID().toString(), "tenant_001", "/api/v1/orders",
+                1L, true, "", "v1", 998L, "0af7651916cd43dd8448eb211c80319c");
+        event.setProcessPath("local");
+        binary = QuotaEventCodec.encode(event);
+        json = objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return QuotaEventCodec.encode(event);
+    }
+
+    @Benchmark
+    public QuotaConsumedEvent decodeBinary() {
+        return QuotaEventCodec.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public QuotaConsumedEvent decodeJson() throws IOException {
+        return objectMapper.readValue(json, QuotaConsumedEvent.class);
+    }
+}
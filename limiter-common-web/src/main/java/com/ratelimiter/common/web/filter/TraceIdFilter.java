@@ -1,5 +1,6 @@
 package com.ratelimiter.common.web.filter;
 
+import com.ratelimiter.common.util.IdGenerator;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,7 +10,6 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.UUID;
 
 @Component
 public class TraceIdFilter extends OncePerRequestFilter {
@@ -24,9 +24,9 @@ public class TraceIdFilter extends OncePerRequestFilter {
 
         String traceId = request.getHeader(TRACE_ID_HEADER);
 
-        // 如果请求没有指明traceId，则filter自动生成一份UUID作为traceId
+        // 如果请求没有指明traceId，则filter自动生成一份按时间排序的ID作为traceId（不走 SecureRandom）
         if (traceId == null || traceId.isBlank()) {
-            traceId = UUID.randomUUID().toString();
+            traceId = IdGenerator.nextId();
         }
 
         try {
@@ -0,0 +1,97 @@
+package com.ratelimiter.common.util;
+
+import java.net.InetAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 事件 ID / traceId 生成器（k-sortable，见 {@link SortableId}）
+ *
+ * - 每个线程独占一个 20 位槽位和自己的序号，生成时不加锁、不共享可变状态，也不走 SecureRandom
+ * - 同一线程内严格递增（时钟回拨时沿用上一次的毫秒值）；不同线程、节点之间按毫秒大致有序
+ * - 节点号取 -Dratelimiter.node-id 或环境变量 RATE_LIMITER_NODE_ID（0~65535），
+ *   未配置时取主机名哈希
+ */
+public final class IdGenerator {
+
+    public static final String NODE_ID_PROPERTY = "ratelimiter.node-id";
+    public static final String NODE_ID_ENV = "RATE_LIMITER_NODE_ID";
+
+    private static final int LANE_BITS = 20;
+    private static final int SEQUENCE_BITS = 44;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long LANE_MASK = (1L << LANE_BITS) - 1;
+
+    private static final int NODE_ID = resolveNodeId();
+    private static final AtomicInteger LANES = new AtomicInteger();
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(
+            () -> new State(LANES.getAndIncrement() & LANE_MASK));
+
+    private IdGenerator() {
+    }
+
+    /**
+     * 生成 ID 的字符串形式（26 位）
+     */
+    public static String nextId() {
+        return next().toString();
+    }
+
+    public static SortableId next() {
+        return STATE.get().next(System.currentTimeMillis());
+    }
+
+    public static int nodeId() {
+        return NODE_ID;
+    }
+
+    private static final class State {
+
+        private final long lane;
+        private long lastMillis;
+        private long sequence;
+
+        State(long lane) {
+            this.lane = lane;
+        }
+
+        SortableId next(long nowMillis) {
+            if (nowMillis > lastMillis) {
+                lastMillis = nowMillis;
+                // 每个新毫秒从随机位置开始（只用低 43 位，保证同一毫秒内有足够的递增空间）
+                sequence = ThreadLocalRandom.current().nextLong(1L << (SEQUENCE_BITS - 1));
+            } else if (++sequence > SEQUENCE_MASK) {
+                // 序号用尽（或时钟回拨后持续使用同一毫秒），借用下一毫秒
+                lastMillis++;
+                sequence = 0;
+            }
+            long high = (lastMillis << 16) | NODE_ID;
+            long low = (lane << SEQUENCE_BITS) | sequence;
+            return new SortableId(high, low);
+        }
+    }
+
+    private static int resolveNodeId() {
+        String configured = System.getProperty(NODE_ID_PROPERTY, System.getenv(NODE_ID_ENV));
+        if (configured != null && !configured.isBlank()) {
+            try {
+                int nodeId = Integer.parseInt(configured.trim());
+                if (nodeId >= 0 && nodeId <= 0xFFFF) {
+                    return nodeId;
+                }
+            } catch (NumberFormatException ignored) {
+                // 非数字的节点名按哈希处理
+            }
+            return configured.trim().hashCode() & 0xFFFF;
+        }
+        String hostname = System.getenv("HOSTNAME");
+        if (hostname != null && !hostname.isBlank()) {
+            return hostname.hashCode() & 0xFFFF;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode() & 0xFFFF;
+        } catch (Exception e) {
+            return ThreadLocalRandom.current().nextInt(0x10000);
+        }
+    }
+}
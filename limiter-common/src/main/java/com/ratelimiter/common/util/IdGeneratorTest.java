@@ -0,0 +1,64 @@
+package com.ratelimiter.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdGeneratorTest {
+
+    // 字符串 / 二进制形式都能无损还原，字符串字典序与数值序一致
+    @Test
+    void shouldRoundTripStringAndBinaryForms() {
+        SortableId id = IdGenerator.next();
+        String text = id.toString();
+
+        assertThat(text).hasSize(SortableId.STRING_LENGTH);
+        assertThat(SortableId.isCanonical(text)).isTrue();
+        assertThat(SortableId.fromString(text)).isEqualTo(id);
+        assertThat(SortableId.fromBytes(id.toBytes())).isEqualTo(id);
+        assertThat(id.nodeId()).isEqualTo(IdGenerator.nodeId());
+        assertThat(id.timestamp()).isCloseTo(System.currentTimeMillis(), org.assertj.core.data.Offset.offset(1000L));
+
+        SortableId max = new SortableId(-1L, -1L);
+        assertThat(max.toString()).isEqualTo("7ZZZZZZZZZZZZZZZZZZZZZZZZZ");
+        assertThat(SortableId.fromString(max.toString())).isEqualTo(max);
+    }
+
+    // 同一线程内严格递增，字符串顺序与生成顺序一致
+    @Test
+    void shouldBeMonotonicWithinThread() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            ids.add(IdGenerator.nextId());
+        }
+
+        assertThat(ids).isSorted();
+        assertThat(Set.copyOf(ids)).hasSize(ids.size());
+    }
+
+    // 多线程并发生成不重复
+    @Test
+    void shouldBeUniqueAcrossThreads() throws InterruptedException {
+        int threads = 8;
+        int perThread = 50_000;
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(IdGenerator.nextId());
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertThat(ids).hasSize(threads * perThread);
+    }
+}
@@ -0,0 +1,112 @@
+package com.ratelimiter.common.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 128 位按时间排序的 ID
+ *
+ * 位布局：[毫秒时间戳 48][节点 16][线程槽位 20][序号 44]
+ * 字符串形式为 26 位 Crockford Base32（与 ULID 相同的字母表与长度），字典序即时间序；
+ * 二进制形式为 16 字节大端
+ */
+public record SortableId(long high, long low) implements Comparable<SortableId> {
+
+    public static final int STRING_LENGTH = 26;
+    public static final int BYTES = 16;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * 生成时间（毫秒）
+     */
+    public long timestamp() {
+        return high >>> 16;
+    }
+
+    public int nodeId() {
+        return (int) (high & 0xFFFF);
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(high).putLong(low).array();
+    }
+
+    public static SortableId fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != BYTES) {
+            throw new IllegalArgumentException("SortableId requires " + BYTES + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new SortableId(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * 26 位 Base32：第 1 位取最高 3 位（128 = 3 + 25 × 5），之后每位 5 比特
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[STRING_LENGTH];
+        chars[0] = ALPHABET[(int) (high >>> 61) & 0x7];
+        for (int i = 1; i < STRING_LENGTH; i++) {
+            int shift = 125 - i * 5;
+            chars[i] = ALPHABET[bits5(shift)];
+        }
+        return new String(chars);
+    }
+
+    public static SortableId fromString(String value) {
+        if (!isCanonical(value)) {
+            throw new IllegalArgumentException("Not a sortable id: " + value);
+        }
+        long high = 0;
+        long low = DECODE[value.charAt(0)];
+        for (int i = 1; i < STRING_LENGTH; i++) {
+            long v = DECODE[value.charAt(i)];
+            // 128 位整体左移 5 位后并入
+            high = (high << 5) | (low >>> 59);
+            low = (low << 5) | v;
+        }
+        return new SortableId(high, low);
+    }
+
+    /**
+     * 是否为规范形式（大写、26 位、首位不超过 7），规范形式可以无损转换为二进制
+     */
+    public static boolean isCanonical(String value) {
+        if (value == null || value.length() != STRING_LENGTH || value.charAt(0) > '7') {
+            return false;
+        }
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            char c = value.charAt(i);
+            if (c >= 128 || DECODE[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int compareTo(SortableId other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        return cmp != 0 ? cmp : Long.compareUnsigned(low, other.low);
+    }
+
+    // 取 128 位整数中 [shift, shift + 5) 的 5 比特
+    private int bits5(int shift) {
+        if (shift >= 64) {
+            return (int) (high >>> (shift - 64)) & 0x1F;
+        }
+        if (shift > 59) {
+            // 跨越 high / low 边界
+            return (int) ((high << (64 - shift)) | (low >>> shift)) & 0x1F;
+        }
+        return (int) (low >>> shift) & 0x1F;
+    }
+}
@@ -18,7 +18,9 @@ public enum ErrorCode {
 
     // 审计/幂等相关
     ORIGINAL_REQUEST_NOT_FOUND("ORIGINAL_REQUEST_NOT_FOUND", "Original request not found"),
-    DUPLICATE_REQUEST("DUPLICATE_REQUEST", "Duplicate request");
+    DUPLICATE_REQUEST("DUPLICATE_REQUEST", "Duplicate request"),
+    AUDIT_RECORD_NOT_FOUND("AUDIT_RECORD_NOT_FOUND", "Audit record not found"),
+    AUDIT_EXPORT_BUSY("AUDIT_EXPORT_BUSY", "Too many concurrent audit exports");
 
     private final String code;
     private final String defaultMessage;
@@ -0,0 +1,39 @@
+package com.ratelimiter.common.web.domain.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 热点 key 报告
+ * Data Plane 每个窗口输出一次本节点请求量最大的 (tenant, resource)，由 Space-Saving 草图统计，内存固定
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class HotKeysEvent {
+
+    private String nodeId;            // 产生报告的 Data Plane 节点
+    private Long windowStart;         // 窗口起始时间戳（毫秒）
+    private Long windowMs;            // 窗口实际长度（毫秒）
+    private Long totalChecks;         // 窗口内本节点的检查总数
+    private List<HotKey> hotKeys;     // 按请求数降序
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class HotKey {
+        private String tenantId;
+        private String resourceKey;
+        private Long count;           // 估计请求数（不低于真实值）
+        private Long error;           // 估计误差上限：真实请求数 >= count - error
+        private Long denied;          // 进入草图后被拒绝的请求数
+        private Double ratePerSecond; // count / 窗口秒数
+        private Double denialRatio;   // denied / (count - error)
+    }
+}
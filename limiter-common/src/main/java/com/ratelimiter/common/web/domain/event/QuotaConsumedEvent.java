@@ -1,5 +1,6 @@
 package com.ratelimiter.common.web.domain.event;
 
+import com.ratelimiter.common.util.IdGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,7 +8,6 @@ import lombok.NoArgsConstructor;
 
 import java.time. Instant;
 import java.util.Map;
-import java.util. UUID;
 
 @Data
 @Builder
@@ -46,7 +46,7 @@ public class QuotaConsumedEvent {
                                             Long remainingTokens,
                                             String traceId) {
         return QuotaConsumedEvent.builder()
-                .eventId(UUID.randomUUID().toString())
+                .eventId(IdGenerator.nextId())
                 .requestId(requestId)
                 .tenantId(tenantId)
                 .resourceKey(resourceKey)
@@ -0,0 +1,34 @@
+package com.ratelimiter.common.web.domain.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 允许决策的汇总事件
+ * Data Plane 把同一时间窗口内 (tenant, resource, policyVersion, processPath) 相同的允许决策折叠成一条，
+ * 拒绝和显式要求审计的请求仍然逐条发送 QuotaConsumedEvent
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuotaRollupEvent {
+
+    private String rollupId;          // 汇总事件唯一ID（消费端幂等）
+    private String nodeId;            // 产生汇总的 Data Plane 节点
+    private String tenantId;          // 租户ID
+    private String resourceKey;       // 资源键
+    private String policyVersion;     // 策略版本
+    private String processPath;       // 处理路径：local/redis
+
+    private Long windowStart;         // 窗口起始时间戳（毫秒）
+    private Integer windowMs;         // 窗口长度（毫秒）
+
+    private Long requestCount;        // 窗口内允许的请求数
+    private Long tokensRequested;     // 请求的token总数
+    private Long tokensConsumed;      // 实际消费的token总数
+    private Long firstTimestamp;      // 窗口内第一条决策的时间戳
+    private Long lastTimestamp;       // 窗口内最后一条决策的时间戳
+}
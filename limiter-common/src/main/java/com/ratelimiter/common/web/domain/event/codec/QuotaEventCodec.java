@@ -0,0 +1,379 @@
+package com.ratelimiter.common.web.domain.event.codec;
+
+import com.ratelimiter.common.util.SortableId;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * QuotaConsumedEvent 的二进制编解码
+ *
+ * 格式：[magic][version][字段掩码 varint][按字段序号依次写出的非 null 字段]
+ * - 整数用 varint（可能为负的字段用 zigzag），字符串为 varint 长度 + UTF-8
+ * - 规范的 SortableId / 小写 UUID 形式的 ID 压缩为 16 字节
+ * - reason / processPath 用字典编码，字典外的值原样写出
+ * - metadata 支持 String/整数/Boolean/浮点，整数统一解码为 Long，其他类型按 toString 保存
+ *
+ * 演进规则：
+ * - 兼容变更只在末尾追加字段并占用下一个掩码位，旧版本读取时忽略不认识的掩码位和尾部字节
+ * - 字典只能在提升 VERSION 时修改；读取方遇到更高的 VERSION 直接拒绝
+ */
+public final class QuotaEventCodec {
+
+    public static final byte MAGIC = (byte) 0xA7;
+    // v2：新增 SortableId 形式的 ID 编码
+    public static final byte VERSION = 2;
+
+    // 字段序号（即掩码位），只能追加
+    private static final int F_EVENT_ID = 0;
+    private static final int F_REQUEST_ID = 1;
+    private static final int F_TENANT_ID = 2;
+    private static final int F_RESOURCE_KEY = 3;
+    private static final int F_TOKENS_REQUESTED = 4;
+    private static final int F_TOKENS_CONSUMED = 5;
+    private static final int F_ALLOWED = 6;
+    private static final int F_REASON = 7;
+    private static final int F_POLICY_VERSION = 8;
+    private static final int F_REMAINING_TOKENS = 9;
+    private static final int F_TIMESTAMP = 10;
+    private static final int F_TRACE_ID = 11;
+    private static final int F_METADATA = 12;
+    private static final int F_PROCESS_TIME_MS = 13;
+    private static final int F_PROCESS_PATH = 14;
+
+    // 字典：下标 + 1 为编码，0 表示字典外的字面值
+    private static final String[] REASONS = {"", "quota_exceeded", "policy_not_found", "internal_error"};
+    private static final String[] PROCESS_PATHS = {"local", "redis", "policy_not_found", "error", "unknown"};
+
+    // ID 编码
+    private static final byte ID_STRING = 0;
+    private static final byte ID_UUID = 1;
+    private static final byte ID_SORTABLE = 2;
+
+    // metadata 值类型
+    private static final byte V_NULL = 0;
+    private static final byte V_STRING = 1;
+    private static final byte V_LONG = 2;
+    private static final byte V_TRUE = 3;
+    private static final byte V_FALSE = 4;
+    private static final byte V_DOUBLE = 5;
+
+    private QuotaEventCodec() {
+    }
+
+    /**
+     * 判断数据是否为本编解码格式（用于与旧的 JSON 消息区分）
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= 2 && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(QuotaConsumedEvent event) {
+        Writer out = new Writer(128);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarLong(fieldMask(event));
+
+        if (event.getEventId() != null) out.writeId(event.getEventId());
+        if (event.getRequestId() != null) out.writeId(event.getRequestId());
+        if (event.getTenantId() != null) out.writeString(event.getTenantId());
+        if (event.getResourceKey() != null) out.writeString(event.getResourceKey());
+        if (event.getTokensRequested() != null) out.writeZigZag(event.getTokensRequested());
+        if (event.getTokensConsumed() != null) out.writeZigZag(event.getTokensConsumed());
+        if (event.getAllowed() != null) out.writeByte(event.getAllowed() ? 1 : 0);
+        if (event.getReason() != null) out.writeDictionary(event.getReason(), REASONS);
+        if (event.getPolicyVersion() != null) out.writeString(event.getPolicyVersion());
+        if (event.getRemainingTokens() != null) out.writeZigZag(event.getRemainingTokens());
+        if (event.getTimestamp() != null) out.writeZigZag(event.getTimestamp());
+        if (event.getTraceId() != null) out.writeId(event.getTraceId());
+        if (event.getMetadata() != null) out.writeMetadata(event.getMetadata());
+        if (event.getProcessTimeMs() != null) out.writeZigZag(event.getProcessTimeMs());
+        if (event.getProcessPath() != null) out.writeDictionary(event.getProcessPath(), PROCESS_PATHS);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码（不使用反射，直接调用 setter）
+     *
+     * @throws IllegalArgumentException 数据不是本格式、版本过高或被截断
+     */
+    public static QuotaConsumedEvent decode(byte[] data) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("Not a quota event binary payload");
+        }
+        if (data[1] > VERSION || data[1] < 1) {
+            throw new IllegalArgumentException("Unsupported quota event codec version: " + data[1]);
+        }
+
+        Reader in = new Reader(data, 2);
+        try {
+            long mask = in.readVarLong();
+            QuotaConsumedEvent event = new QuotaConsumedEvent();
+            if (has(mask, F_EVENT_ID)) event.setEventId(in.readId());
+            if (has(mask, F_REQUEST_ID)) event.setRequestId(in.readId());
+            if (has(mask, F_TENANT_ID)) event.setTenantId(in.readString());
+            if (has(mask, F_RESOURCE_KEY)) event.setResourceKey(in.readString());
+            if (has(mask, F_TOKENS_REQUESTED)) event.setTokensRequested(in.readZigZag());
+            if (has(mask, F_TOKENS_CONSUMED)) event.setTokensConsumed(in.readZigZag());
+            if (has(mask, F_ALLOWED)) event.setAllowed(in.readByte() != 0);
+            if (has(mask, F_REASON)) event.setReason(in.readDictionary(REASONS));
+            if (has(mask, F_POLICY_VERSION)) event.setPolicyVersion(in.readString());
+            if (has(mask, F_REMAINING_TOKENS)) event.setRemainingTokens(in.readZigZag());
+            if (has(mask, F_TIMESTAMP)) event.setTimestamp(in.readZigZag());
+            if (has(mask, F_TRACE_ID)) event.setTraceId(in.readId());
+            if (has(mask, F_METADATA)) event.setMetadata(in.readMetadata());
+            if (has(mask, F_PROCESS_TIME_MS)) event.setProcessTimeMs(in.readZigZag());
+            if (has(mask, F_PROCESS_PATH)) event.setProcessPath(in.readDictionary(PROCESS_PATHS));
+            // 更高掩码位为新版本追加的字段，忽略
+            return event;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated quota event binary payload", e);
+        }
+    }
+
+    private static long fieldMask(QuotaConsumedEvent event) {
+        long mask = 0;
+        if (event.getEventId() != null) mask |= 1L << F_EVENT_ID;
+        if (event.getRequestId() != null) mask |= 1L << F_REQUEST_ID;
+        if (event.getTenantId() != null) mask |= 1L << F_TENANT_ID;
+        if (event.getResourceKey() != null) mask |= 1L << F_RESOURCE_KEY;
+        if (event.getTokensRequested() != null) mask |= 1L << F_TOKENS_REQUESTED;
+        if (event.getTokensConsumed() != null) mask |= 1L << F_TOKENS_CONSUMED;
+        if (event.getAllowed() != null) mask |= 1L << F_ALLOWED;
+        if (event.getReason() != null) mask |= 1L << F_REASON;
+        if (event.getPolicyVersion() != null) mask |= 1L << F_POLICY_VERSION;
+        if (event.getRemainingTokens() != null) mask |= 1L << F_REMAINING_TOKENS;
+        if (event.getTimestamp() != null) mask |= 1L << F_TIMESTAMP;
+        if (event.getTraceId() != null) mask |= 1L << F_TRACE_ID;
+        if (event.getMetadata() != null) mask |= 1L << F_METADATA;
+        if (event.getProcessTimeMs() != null) mask |= 1L << F_PROCESS_TIME_MS;
+        if (event.getProcessPath() != null) mask |= 1L << F_PROCESS_PATH;
+        return mask;
+    }
+
+    private static boolean has(long mask, int field) {
+        return (mask & (1L << field)) != 0;
+    }
+
+    /**
+     * 规范的小写 UUID 字符串（压缩后能原样还原）
+     */
+    private static boolean isCanonicalUuid(String s) {
+        if (s.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Writer {
+
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeLongFixed(long value) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buf[pos++] = (byte) (value >>> i);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeId(String value) {
+            if (SortableId.isCanonical(value)) {
+                SortableId id = SortableId.fromString(value);
+                writeByte(ID_SORTABLE);
+                writeLongFixed(id.high());
+                writeLongFixed(id.low());
+            } else if (isCanonicalUuid(value)) {
+                UUID uuid = UUID.fromString(value);
+                writeByte(ID_UUID);
+                writeLongFixed(uuid.getMostSignificantBits());
+                writeLongFixed(uuid.getLeastSignificantBits());
+            } else {
+                writeByte(ID_STRING);
+                writeString(value);
+            }
+        }
+
+        void writeDictionary(String value, String[] dictionary) {
+            for (int i = 0; i < dictionary.length; i++) {
+                if (dictionary[i].equals(value)) {
+                    writeByte(i + 1);
+                    return;
+                }
+            }
+            writeByte(0);
+            writeString(value);
+        }
+
+        void writeMetadata(Map<String, Object> metadata) {
+            writeVarLong(metadata.size());
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                writeString(String.valueOf(entry.getKey()));
+                Object value = entry.getValue();
+                if (value == null) {
+                    writeByte(V_NULL);
+                } else if (value instanceof Boolean b) {
+                    writeByte(b ? V_TRUE : V_FALSE);
+                } else if (value instanceof Long || value instanceof Integer
+                        || value instanceof Short || value instanceof Byte) {
+                    writeByte(V_LONG);
+                    writeZigZag(((Number) value).longValue());
+                } else if (value instanceof Double || value instanceof Float) {
+                    writeByte(V_DOUBLE);
+                    writeLongFixed(Double.doubleToLongBits(((Number) value).doubleValue()));
+                } else {
+                    // 其他类型按字符串保存
+                    writeByte(V_STRING);
+                    writeString(value.toString());
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in quota event binary payload");
+        }
+
+        long readZigZag() {
+            long raw = readVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readLongFixed() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || pos + length > buf.length) {
+                throw new IllegalArgumentException("Truncated quota event binary payload");
+            }
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        String readId() {
+            byte kind = readByte();
+            return switch (kind) {
+                case ID_STRING -> readString();
+                case ID_UUID -> new UUID(readLongFixed(), readLongFixed()).toString();
+                case ID_SORTABLE -> new SortableId(readLongFixed(), readLongFixed()).toString();
+                default -> throw new IllegalArgumentException("Unknown id kind in quota event binary payload: " + kind);
+            };
+        }
+
+        String readDictionary(String[] dictionary) {
+            int code = readByte() & 0xFF;
+            if (code == 0) {
+                return readString();
+            }
+            if (code > dictionary.length) {
+                throw new IllegalArgumentException("Unknown dictionary code in quota event binary payload: " + code);
+            }
+            return dictionary[code - 1];
+        }
+
+        Map<String, Object> readMetadata() {
+            int size = (int) readVarLong();
+            Map<String, Object> metadata = new LinkedHashMap<>(Math.max(4, size * 2));
+            for (int i = 0; i < size; i++) {
+                String key = readString();
+                byte type = readByte();
+                Object value = switch (type) {
+                    case V_NULL -> null;
+                    case V_STRING -> readString();
+                    case V_LONG -> readZigZag();
+                    case V_TRUE -> Boolean.TRUE;
+                    case V_FALSE -> Boolean.FALSE;
+                    case V_DOUBLE -> Double.longBitsToDouble(readLongFixed());
+                    default -> throw new IllegalArgumentException(
+                            "Unknown metadata value type in quota event binary payload: " + type);
+                };
+                metadata.put(key, value);
+            }
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ratelimiter.common.web.domain.event.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuotaEventCodecTest {
+
+    private static QuotaConsumedEvent sampleEvent() {
+        QuotaConsumedEvent event = QuotaConsumedEvent.create(UUID.randomUUID().toString(), "tenant_001",
+                "/api/v1/orders", 2L, true, "", "v1", 98L, "trace-1");
+        event.setProcessPath("local");
+        return event;
+    }
+
+    // 全部字段编码后原样还原
+    @Test
+    void shouldRoundTripAllFields() {
+        QuotaConsumedEvent event = sampleEvent();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("audit", true);
+        metadata.put("region", "cn-east");
+        metadata.put("retries", 3L);
+        metadata.put("weight", 0.5);
+        metadata.put("missing", null);
+        event.setMetadata(metadata);
+        event.setProcessTimeMs(3L);
+        event.setRemainingTokens(-1L);
+
+        assertThat(QuotaEventCodec.decode(QuotaEventCodec.encode(event))).isEqualTo(event);
+    }
+
+    // null 字段不占空间，字典外的取值原样写出
+    @Test
+    void shouldHandleNullsAndValuesOutsideDictionary() {
+        QuotaConsumedEvent event = new QuotaConsumedEvent();
+        event.setRequestId("not-a-uuid");
+        event.setReason("blacklisted");
+        event.setProcessPath("edge");
+
+        QuotaConsumedEvent decoded = QuotaEventCodec.decode(QuotaEventCodec.encode(event));
+
+        assertThat(decoded).isEqualTo(event);
+        assertThat(QuotaEventCodec.encode(new QuotaConsumedEvent())).hasSize(3);
+    }
+
+    // 新版本在末尾追加的字段被旧版本忽略
+    @Test
+    void shouldIgnoreFieldsAppendedByNewerWriters() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(QuotaEventCodec.MAGIC);
+        out.write(QuotaEventCodec.VERSION);
+        // 掩码：tenantId（第 2 位）+ 未知的第 20 位
+        long mask = (1L << 2) | (1L << 20);
+        while ((mask & ~0x7FL) != 0) {
+            out.write((int) ((mask & 0x7F) | 0x80));
+            mask >>>= 7;
+        }
+        out.write((int) mask);
+        byte[] tenant = "tenant_001".getBytes(StandardCharsets.UTF_8);
+        out.write(tenant.length);
+        out.writeBytes(tenant);
+        out.writeBytes(new byte[]{42, 42, 42});
+
+        assertThat(QuotaEventCodec.decode(out.toByteArray()).getTenantId()).isEqualTo("tenant_001");
+    }
+
+    @Test
+    void shouldRejectNewerVersionAndTruncatedPayload() {
+        byte[] encoded = QuotaEventCodec.encode(sampleEvent());
+
+        byte[] newer = encoded.clone();
+        newer[1] = (byte) (QuotaEventCodec.VERSION + 1);
+        assertThatThrownBy(() -> QuotaEventCodec.decode(newer)).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] truncated = java.util.Arrays.copyOf(encoded, encoded.length / 2);
+        assertThatThrownBy(() -> new QuotaEventDeserializer().deserialize("quota-events", truncated))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    // 切换编码期间残留的 JSON 消息交给 legacy 反序列化器
+    @Test
+    void shouldFallBackToJsonForLegacyMessages() throws Exception {
+        QuotaConsumedEvent event = sampleEvent();
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] json = objectMapper.writeValueAsBytes(event);
+
+        Deserializer<QuotaConsumedEvent> legacy = (topic, data) -> {
+            try {
+                return objectMapper.readValue(data, QuotaConsumedEvent.class);
+            } catch (IOException e) {
+                throw new SerializationException(e);
+            }
+        };
+        try (QuotaEventDeserializer deserializer = new QuotaEventDeserializer(legacy)) {
+            assertThat(deserializer.deserialize("quota-events", json)).isEqualTo(event);
+            byte[] binary = new QuotaEventSerializer().serialize("quota-events", event);
+            assertThat(deserializer.deserialize("quota-events", binary)).isEqualTo(event);
+        }
+    }
+
+    // 单条事件体积与编解码耗时（粗略基准，只断言体积）
+    @Test
+    void shouldBeMuchSmallerThanJson() throws Exception {
+        QuotaConsumedEvent event = sampleEvent();
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] json = objectMapper.writeValueAsBytes(event);
+        byte[] binary = QuotaEventCodec.encode(event);
+
+        int iterations = 200_000;
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += QuotaEventCodec.decode(QuotaEventCodec.encode(event)).getTokensRequested();
+            sink += objectMapper.readValue(objectMapper.writeValueAsBytes(event), QuotaConsumedEvent.class)
+                    .getTokensRequested();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += QuotaEventCodec.encode(event).length;
+        }
+        long encodeNanos = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += QuotaEventCodec.decode(binary).getTokensRequested();
+        }
+        long decodeNanos = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += objectMapper.writeValueAsBytes(event).length;
+        }
+        long jsonEncodeNanos = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += objectMapper.readValue(json, QuotaConsumedEvent.class).getTokensRequested();
+        }
+        long jsonDecodeNanos = (System.nanoTime() - start) / iterations;
+
+        System.out.printf("Bytes per event: binary=%d, json=%d%n", binary.length, json.length);
+        System.out.printf("Encode ns: binary=%d, json=%d; decode ns: binary=%d, json=%d (sink=%d)%n",
+                encodeNanos, jsonEncodeNanos, decodeNanos, jsonDecodeNanos, sink);
+
+        assertThat(binary.length * 3).isLessThan(json.length);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ratelimiter.common.web.domain.event.codec;
+
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+
+/**
+ * QuotaConsumedEvent 的 Kafka 二进制反序列化器（见 {@link QuotaEventCodec}）
+ *
+ * 可选的 legacyDelegate 用于切换编码期间 topic 中残留的 JSON 消息：
+ * 不是二进制格式的数据交给它处理
+ */
+public class QuotaEventDeserializer implements Deserializer<QuotaConsumedEvent> {
+
+    private final Deserializer<? extends QuotaConsumedEvent> legacyDelegate;
+
+    public QuotaEventDeserializer() {
+        this(null);
+    }
+
+    public QuotaEventDeserializer(Deserializer<? extends QuotaConsumedEvent> legacyDelegate) {
+        this.legacyDelegate = legacyDelegate;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        if (legacyDelegate != null) {
+            legacyDelegate.configure(configs, isKey);
+        }
+    }
+
+    @Override
+    public QuotaConsumedEvent deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public QuotaConsumedEvent deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!QuotaEventCodec.isEncoded(data)) {
+            if (legacyDelegate == null) {
+                throw new SerializationException("Not a quota event binary payload, topic: " + topic);
+            }
+            return headers == null
+                    ? legacyDelegate.deserialize(topic, data)
+                    : legacyDelegate.deserialize(topic, headers, data);
+        }
+        try {
+            return QuotaEventCodec.decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Failed to decode quota event, topic: " + topic, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (legacyDelegate != null) {
+            legacyDelegate.close();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.ratelimiter.common.web.domain.event.codec;
+
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * QuotaConsumedEvent 的 Kafka 二进制序列化器（见 {@link QuotaEventCodec}）
+ */
+public class QuotaEventSerializer implements Serializer<QuotaConsumedEvent> {
+
+    @Override
+    public byte[] serialize(String topic, QuotaConsumedEvent event) {
+        return event == null ? null : QuotaEventCodec.encode(event);
+    }
+}
@@ -0,0 +1,19 @@
+package com.ratelimiter.common.web.dto.accounting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AuditPageResponse {
+
+    private List<AuditRecordResponse> content;
+
+    private Integer size;
+
+    private String nextCursor;        // 下一页游标，null 表示已到末尾
+}
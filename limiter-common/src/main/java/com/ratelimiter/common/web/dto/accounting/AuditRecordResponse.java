@@ -0,0 +1,35 @@
+package com.ratelimiter.common.web.dto.accounting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AuditRecordResponse {
+
+    private String requestId;
+
+    private String tenantId;
+
+    private String resourceKey;
+
+    private Long tokens;
+
+    private Boolean allowed;
+
+    private Long remaining;
+
+    private String reason;
+
+    private String policyVersion;
+
+    private String clientIp;
+
+    private String userAgent;
+
+    private Integer latencyMs;
+
+    private Long timestamp;
+}
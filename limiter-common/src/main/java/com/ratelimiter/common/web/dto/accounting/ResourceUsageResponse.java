@@ -0,0 +1,21 @@
+package com.ratelimiter.common.web.dto.accounting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResourceUsageResponse {
+
+    private String resourceKey;
+
+    private Long allowedCount;
+
+    private Long deniedCount;
+
+    private Long tokensRequested;
+
+    private Long tokensConsumed;      // 计费口径
+}
@@ -0,0 +1,25 @@
+package com.ratelimiter.common.web.dto.accounting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UsageBucketResponse {
+
+    private String resourceKey;
+
+    private String granularity;       // MINUTE/HOUR/DAY
+
+    private Long bucketStart;         // 桶起始时间戳（毫秒，UTC 对齐）
+
+    private Long allowedCount;
+
+    private Long deniedCount;
+
+    private Long tokensRequested;
+
+    private Long tokensConsumed;
+}
@@ -0,0 +1,21 @@
+package com.ratelimiter.common.web.dto.accounting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UsageSummaryResponse {
+
+    private String tenantId;
+
+    private Long from;                // 实际统计区间（按分钟向外取整），毫秒
+
+    private Long to;
+
+    private List<ResourceUsageResponse> resources;
+}
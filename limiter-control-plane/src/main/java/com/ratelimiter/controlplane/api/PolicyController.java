@@ -36,6 +36,17 @@ public class PolicyController {
         return ApiResponse.ok(getPolicyResponse);
     }
 
+    /**
+     * 按租户 + 资源查询单条策略（供 Data Plane 缓存未命中时按需拉取）
+     * 不存在时返回 POLICY_NOT_FOUND
+     */
+    @GetMapping("/lookup")
+    public ApiResponse<GetPolicyResponse> getPolicyByTenantAndResource(@RequestParam String tenantId,
+                                                                       @RequestParam String resourceKey) {
+        GetPolicyResponse policy = policyService.getPolicyByTenantAndResource(tenantId, resourceKey);
+        return ApiResponse.ok(policy);
+    }
+
     /**
      * 查询指定租户的所有启用策略
      */
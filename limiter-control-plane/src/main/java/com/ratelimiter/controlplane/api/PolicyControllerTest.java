@@ -82,4 +82,33 @@ class PolicyControllerTest {
                 .andExpect(jsonPath("$.error.code").value("POLICY_ALREADY_EXISTS"))
                 .andExpect(jsonPath("$.error.details.tenantId").value("tenant_001"));
     }
+
+    @Test
+    void lookupPolicy_shouldReturnPolicyOrNotFound() throws Exception {
+        CreatePolicyRequest req = buildCreateRequest("tenant_lookup", "/api/v1/orders");
+
+        mockMvc.perform(post("/api/v1/policies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isOk());
+
+        // 已存在：返回单条策略
+        mockMvc.perform(get("/api/v1/policies/lookup")
+                        .param("tenantId", "tenant_lookup")
+                        .param("resourceKey", "/api/v1/orders"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data.tenantId").value("tenant_lookup"))
+                .andExpect(jsonPath("$.data.resourceKey").value("/api/v1/orders"));
+
+        // 不存在：POLICY_NOT_FOUND（Data Plane 据此写入负缓存）
+        mockMvc.perform(get("/api/v1/policies/lookup")
+                        .param("tenantId", "tenant_lookup")
+                        .param("resourceKey", "/api/v1/unknown"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.error.code").value("POLICY_NOT_FOUND"));
+    }
 }
\ No newline at end of file
@@ -132,6 +132,19 @@ public class PolicyService extends ServiceImpl<PolicyMapper, PolicyEntity> {
                 existing.getUpdatedAt());
     }
 
+    /**
+     * 按租户 + 资源查询单条策略（Data Plane 缓存未命中时按需拉取）
+     */
+    public GetPolicyResponse getPolicyByTenantAndResource(String tenantId, String resourceKey) {
+        PolicyEntity existing = getByTenantAndResource(tenantId, resourceKey);
+        if (existing == null) {
+            throw new BusinessException(ErrorCode.POLICY_NOT_FOUND,
+                    "Policy doesn't exist",
+                    Map.of("tenantId", tenantId, "resourceKey", resourceKey));
+        }
+        return toGetPolicyResponse(existing);
+    }
+
     /**
      * 删除策略（带业务检验）
      */
@@ -1,15 +1,18 @@
 package com.ratelimiter.dataplane.application;
 
-import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
 import com.ratelimiter.common.web.dto.dataPlane.CheckRequest;
 import com.ratelimiter.common.web.dto.dataPlane.CheckResponse;
 import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
 import com.ratelimiter.dataplane.application.event.QuotaEventPublisher;
+import com.ratelimiter.dataplane.application.metrics.HotKeyTracker;
+import com.ratelimiter.dataplane.application.metrics.PolicyMeters;
 import com.ratelimiter.dataplane.application.metrics.RateLimiterMetricsService;
+import com.ratelimiter.dataplane.application.metrics.StageLatencyRecorder;
+import com.ratelimiter.dataplane.application.metrics.jfr.CheckEvent;
+import com.ratelimiter.dataplane.domain.CompiledPolicy;
 import com.ratelimiter.dataplane.domain.LocalTokenBucketManager;
 import com.ratelimiter.dataplane.domain.PolicyCache;
 import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository;
-import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -24,51 +27,80 @@ public class CheckUseCaseService implements CheckUseCase {
     private final RedisRateLimiterRepository redisRepository;
     private final QuotaEventPublisher eventPublisher; // 新增
     private final RateLimiterMetricsService metricsService; // 新增
+    private final OnDemandPolicyLoader policyLoader;
+    private final StageLatencyRecorder latencyRecorder;
+    private final HotKeyTracker hotKeyTracker;
 
     public CheckUseCaseService(LocalTokenBucketManager localBucketManager,
                                PolicyCache policyCache,
+                               OnDemandPolicyLoader policyLoader,
                                RedisRateLimiterRepository redisRepository,
                                QuotaEventPublisher eventPublisher,
-                               RateLimiterMetricsService metricsService) {
+                               RateLimiterMetricsService metricsService,
+                               StageLatencyRecorder latencyRecorder,
+                               HotKeyTracker hotKeyTracker) {
         this.localBucketManager = localBucketManager;
         this.policyCache = policyCache;
+        this.policyLoader = policyLoader;
         this.redisRepository = redisRepository;
         this.eventPublisher = eventPublisher;
         this.metricsService = metricsService;
+        this.latencyRecorder = latencyRecorder;
+        this.hotKeyTracker = hotKeyTracker;
     }
 
     @Override
     public CheckResponse checkAndConsume(CheckRequest request) {
         // 开始计时
-        Timer.Sample sample = metricsService.startRateLimitCheck();
+        long startNanos = metricsService.startRateLimitCheck();
+        CheckEvent checkEvent = new CheckEvent();
+        checkEvent.begin();
 
         long now = Instant.now().toEpochMilli();
         String processPath = "unknown";
         String traceId = org.slf4j.MDC.get("traceId");
 
+        // 分阶段耗时（纳秒），未经过的阶段保持 SKIPPED
+        long policyLookupNanos = StageLatencyRecorder.SKIPPED;
+        long localBucketNanos = StageLatencyRecorder.SKIPPED;
+        long redisNanos = StageLatencyRecorder.SKIPPED;
+        long publishNanos = StageLatencyRecorder.SKIPPED;
+
         try {
             // 1. 查策略
-            PolicyDto policy = policyCache.findPolicy(request.getTenantId(), request.getResourceKey());
+            CompiledPolicy compiled = policyCache.findPolicy(request.getTenantId(), request.getResourceKey());
+            if (compiled == null) {
+                // 缓存未命中：按需拉取（single-flight + 负缓存），不必等下一次全量同步
+                compiled = policyLoader.resolve(request.getTenantId(), request.getResourceKey());
+            }
+            policyLookupNanos = System.nanoTime() - startNanos;
 
-            if (policy == null) {
+            if (compiled == null) {
                 processPath = "policy_not_found";
                 metricsService.recordPolicyNotFound(request.getTenantId(), request.getResourceKey());
 
                 CheckResponse response = buildDeniedResponse(request, "policy_not_found", 0L, null, now);
-                publishEventWithMetrics(request, response, null, traceId, processPath);
+                publishNanos = publishEventWithMetrics(request, response, null, traceId, processPath);
 
                 // 记录指标
-                metricsService.finishRateLimitCheck(sample, false, "policy_not_found", processPath,
+                metricsService.finishRateLimitCheck(startNanos, false, "policy_not_found", processPath,
                         request. getTenantId(), request.getResourceKey());
+                latencyRecorder.recordCheck(processPath, startNanos, policyLookupNanos, localBucketNanos,
+                        redisNanos, publishNanos);
+                hotKeyTracker.record(request.getTenantId(), request.getResourceKey(), response.isAllowed());
+                commitCheckEvent(checkEvent, request, response, processPath);
                 return response;
             }
 
-            // 记录策略命中
-            metricsService.recordPolicyHit(request.getTenantId(), request.getResourceKey());
+            // 记录策略命中（指标句柄随策略缓存，热路径不再按标签查找 Meter）
+            PolicyDto policy = compiled.getPolicy();
+            PolicyMeters meters = metricsService.metersFor(compiled);
+            metricsService.recordPolicyHit(meters);
 
             long tokensToConsume = request.getTokens() == null ? 1L : request.getTokens();
 
             // 2. 本地 token bucket (fast path)
+            long localStartNanos = System.nanoTime();
             boolean localAllowed = localBucketManager. tryConsume(
                     request.getTenantId(),
                     request.getResourceKey(),
@@ -82,17 +114,24 @@ public class CheckUseCaseService implements CheckUseCase {
                 processPath = "local";
                 long remaining = localBucketManager. estimateRemaining(
                         request.getTenantId(), request.getResourceKey());
+                localBucketNanos = System.nanoTime() - localStartNanos;
                 CheckResponse response = buildAllowedResponse(request, remaining, policy.getVersion(), now);
-                publishEventWithMetrics(request, response, policy, traceId, processPath);
+                publishNanos = publishEventWithMetrics(request, response, meters, traceId, processPath);
 
                 // 记录指标
-                metricsService. finishRateLimitCheck(sample, true, "", processPath,
-                        request.getTenantId(), request.getResourceKey());
+                metricsService. finishRateLimitCheck(startNanos, meters, true, "", processPath);
+                latencyRecorder.recordCheck(processPath, startNanos, policyLookupNanos, localBucketNanos,
+                        redisNanos, publishNanos);
+                hotKeyTracker.record(request.getTenantId(), request.getResourceKey(), response.isAllowed());
+                commitCheckEvent(checkEvent, request, response, processPath);
                 return response;
             }
 
+            localBucketNanos = System.nanoTime() - localStartNanos;
+
             // 3. Redis fallback (slow path)
             processPath = "redis";
+            long redisStartNanos = System.nanoTime();
             RedisRateLimiterRepository.RateLimitResult redisResult = redisRepository.tryConsumeTokens(
                     request.getTenantId(),
                     request. getResourceKey(),
@@ -102,6 +141,7 @@ public class CheckUseCaseService implements CheckUseCase {
                     request.getRequestId(),
                     now
             );
+            redisNanos = System.nanoTime() - redisStartNanos;
 
             CheckResponse response;
             if (redisResult.allowed()) {
@@ -110,11 +150,15 @@ public class CheckUseCaseService implements CheckUseCase {
                 response = buildDeniedResponse(request, redisResult.reason(), redisResult.remaining(), policy.getVersion(), now);
             }
 
-            publishEventWithMetrics(request, response, policy, traceId, processPath);
+            publishNanos = publishEventWithMetrics(request, response, meters, traceId, processPath);
 
             // 记录指标
-            metricsService.finishRateLimitCheck(sample, redisResult.allowed(), redisResult.reason(), processPath,
-                    request.getTenantId(), request.getResourceKey());
+            metricsService.finishRateLimitCheck(startNanos, meters, redisResult.allowed(), redisResult.reason(),
+                    processPath);
+            latencyRecorder.recordCheck(processPath, startNanos, policyLookupNanos, localBucketNanos,
+                    redisNanos, publishNanos);
+            hotKeyTracker.record(request.getTenantId(), request.getResourceKey(), response.isAllowed());
+            commitCheckEvent(checkEvent, request, response, processPath);
             return response;
 
         } catch (Exception e) {
@@ -123,47 +167,94 @@ public class CheckUseCaseService implements CheckUseCase {
                     request. getRequestId(), request.getTenantId(), e);
 
             CheckResponse response = buildDeniedResponse(request, "internal_error", 0L, null, now);
-            publishEventWithMetrics(request, response, null, traceId, processPath);
+            publishNanos = publishEventWithMetrics(request, response, null, traceId, processPath);
 
             // 记录错误指标
-            metricsService. finishRateLimitCheck(sample, false, "internal_error", processPath,
+            metricsService. finishRateLimitCheck(startNanos, false, "internal_error", processPath,
                     request.getTenantId(), request.getResourceKey());
+            latencyRecorder.recordCheck(processPath, startNanos, policyLookupNanos, localBucketNanos,
+                    redisNanos, publishNanos);
+            hotKeyTracker.record(request.getTenantId(), request.getResourceKey(), response.isAllowed());
+            commitCheckEvent(checkEvent, request, response, processPath);
             return response;
         }
     }
 
+    /**
+     * 慢检查提交 JFR 事件（超过阈值才赋值字段并提交）
+     */
+    private void commitCheckEvent(CheckEvent event, CheckRequest request, CheckResponse response,
+                                  String processPath) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.tenantId = request.getTenantId();
+            event.resourceKey = request.getResourceKey();
+            event.policyVersion = response.getPolicyVersion();
+            event.processPath = processPath;
+            event.tokens = request.getTokens() == null ? 1L : request.getTokens();
+            event.allowed = response.isAllowed();
+            event.reason = response.getReason();
+            event.remaining = response.getRemaining();
+            event.commit();
+        }
+    }
+
     /**
      * 发布事件并记录相关指标
+     *
+     * @return 发布耗时（纳秒）
      */
-    private void publishEventWithMetrics(CheckRequest request,
+    private long publishEventWithMetrics(CheckRequest request,
                                          CheckResponse response,
-                                         PolicyDto policy,
+                                         PolicyMeters meters,
                                          String traceId,
                                          String processPath) {
+        long publishStartNanos = System.nanoTime();
         try {
-            QuotaConsumedEvent event = QuotaConsumedEvent.create(
-                    request. getRequestId(),
+            // 只把字段写入环形缓冲区，事件由 drainer 线程构建并发送
+            boolean enqueued = eventPublisher.publish(
+                    request.getRequestId(),
                     request.getTenantId(),
                     request.getResourceKey(),
                     request.getTokens() == null ? 1L : request.getTokens(),
                     response.isAllowed(),
                     response.getReason(),
-                    response. getPolicyVersion(),
+                    response.getPolicyVersion(),
                     response.getRemaining(),
-                    traceId
+                    response.getTimestamp(),
+                    traceId,
+                    processPath,
+                    isAuditRequested(request)
             );
-
-            event.setProcessPath(processPath);
-            eventPublisher.publishQuotaEvent(event);
+            if (!enqueued) {
+                metricsService.recordEventPublishFailed(request.getTenantId(), request.getResourceKey(), "buffer_full");
+                return System.nanoTime() - publishStartNanos;
+            }
 
             // 记录事件发布成功
-            metricsService. recordEventPublished(request.getTenantId(), request.getResourceKey());
+            if (meters != null) {
+                metricsService.recordEventPublished(meters);
+            } else {
+                metricsService.recordEventPublished(request.getTenantId(), request.getResourceKey());
+            }
 
         } catch (Exception e) {
             log.warn("Failed to publish quota event.  RequestId: {}", request.getRequestId(), e);
             // 记录事件发布失败
             metricsService.recordEventPublishFailed(request. getTenantId(), request.getResourceKey(), e.getClass().getSimpleName());
         }
+        return System.nanoTime() - publishStartNanos;
+    }
+
+    /**
+     * 请求显式要求逐条审计（metadata.audit=true），该请求的事件不参与汇总
+     */
+    private boolean isAuditRequested(CheckRequest request) {
+        if (request.getMetadata() == null) {
+            return false;
+        }
+        Object audit = request.getMetadata().get("audit");
+        return audit != null && Boolean.parseBoolean(audit.toString());
     }
 
     // 新增：构建允许的响应
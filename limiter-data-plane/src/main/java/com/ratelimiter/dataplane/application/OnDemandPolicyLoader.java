@@ -0,0 +1,166 @@
+package com.ratelimiter.dataplane.application;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.metrics.RateLimiterMetricsService;
+import com.ratelimiter.dataplane.domain.CompiledPolicy;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import com.ratelimiter.dataplane.infrastructure.integration.ControlPlaneClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 策略缓存未命中时的按需加载
+ *
+ * 1. single-flight：同一 key 同时只有一个拉取任务，并发调用方共享同一个 Future
+ * 2. 负缓存：Control Plane 确认不存在的 key 在短 TTL 内直接拒绝，不再打到 Control Plane
+ * 3. 有界线程池：拉取队列满时直接放弃，未知 key 洪峰不会拖垮 Control Plane
+ */
+@Slf4j
+@Service
+public class OnDemandPolicyLoader {
+
+    private final ControlPlaneClient controlPlaneClient;
+    private final PolicyCache policyCache;
+    private final RateLimiterMetricsService metricsService;
+
+    private final long waitMillis;
+    private final long negativeTtlMillis;
+    private final long errorBackoffMillis;
+
+    // key: tenantId + "|" + resourceKey
+    private final Map<String, CompletableFuture<CompiledPolicy>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor fetchExecutor;
+
+    public OnDemandPolicyLoader(ControlPlaneClient controlPlaneClient,
+                                PolicyCache policyCache,
+                                RateLimiterMetricsService metricsService,
+                                @Value("${app.policy.on-demand.wait-ms:100}") long waitMillis,
+                                @Value("${app.policy.on-demand.negative-ttl-ms:5000}") long negativeTtlMillis,
+                                @Value("${app.policy.on-demand.error-backoff-ms:1000}") long errorBackoffMillis,
+                                @Value("${app.policy.on-demand.fetch-threads:2}") int fetchThreads,
+                                @Value("${app.policy.on-demand.fetch-queue-capacity:256}") int fetchQueueCapacity) {
+        this.controlPlaneClient = controlPlaneClient;
+        this.policyCache = policyCache;
+        this.metricsService = metricsService;
+        this.waitMillis = waitMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.errorBackoffMillis = errorBackoffMillis;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.fetchExecutor = new ThreadPoolExecutor(
+                fetchThreads, fetchThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fetchQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "policy-fetch-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 缓存未命中时调用：触发（或加入）异步拉取，并最多等待 waitMillis
+     *
+     * @return 拉取到的策略；负缓存命中、超时、拉取失败或确认不存在时返回 null
+     */
+    public CompiledPolicy resolve(String tenantId, String resourceKey) {
+        long now = System.currentTimeMillis();
+        if (policyCache.isKnownAbsent(tenantId, resourceKey, now)) {
+            metricsService.recordPolicyNegativeCacheHit();
+            return null;
+        }
+
+        CompletableFuture<CompiledPolicy> future = loadAsync(tenantId, resourceKey);
+        if (waitMillis <= 0) {
+            return future.getNow(null);
+        }
+
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 拉取仍在进行，结果会写入缓存，本次请求按未找到处理
+            log.debug("On-demand policy fetch still running after {}ms: tenant={}, resource={}",
+                    waitMillis, tenantId, resourceKey);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 异步拉取单条策略，同一 key 的并发调用共享同一个 Future
+     */
+    public CompletableFuture<CompiledPolicy> loadAsync(String tenantId, String resourceKey) {
+        String key = tenantId + "|" + resourceKey;
+
+        CompletableFuture<CompiledPolicy> existing = inFlight.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<CompiledPolicy> created = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            fetchExecutor.execute(() -> fetch(key, tenantId, resourceKey, created));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            metricsService.recordPolicyFetch("rejected");
+            created.complete(null);
+        }
+        return created;
+    }
+
+    private void fetch(String key, String tenantId, String resourceKey, CompletableFuture<CompiledPolicy> future) {
+        try {
+            PolicyDto policy = controlPlaneClient.fetchPolicy(tenantId, resourceKey);
+
+            if (policy != null && Boolean.TRUE.equals(policy.getEnabled())) {
+                CompiledPolicy compiled = policyCache.putPolicy(policy);
+                metricsService.recordPolicyFetch("found");
+                log.info("Loaded policy on demand: tenant={}, resource={}, version={}",
+                        tenantId, resourceKey, policy.getVersion());
+                future.complete(compiled);
+            } else {
+                // 不存在或已禁用，写入负缓存
+                policyCache.markAbsent(tenantId, resourceKey, negativeTtlMillis, System.currentTimeMillis());
+                metricsService.recordPolicyFetch("absent");
+                future.complete(null);
+            }
+        } catch (Exception e) {
+            // 拉取失败不代表策略不存在，只做短暂退避，避免失败期间每个请求都重试
+            policyCache.markAbsent(tenantId, resourceKey, errorBackoffMillis, System.currentTimeMillis());
+            metricsService.recordPolicyFetch("error");
+            log.warn("On-demand policy fetch failed: tenant={}, resource={}", tenantId, resourceKey, e);
+            future.completeExceptionally(e);
+        } finally {
+            // 缓存写入之后再移除，后续调用方要么命中缓存，要么命中负缓存
+            inFlight.remove(key, future);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+}
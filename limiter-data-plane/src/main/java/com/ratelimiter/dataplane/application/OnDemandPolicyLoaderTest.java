@@ -0,0 +1,104 @@
+package com.ratelimiter.dataplane.application;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.metrics.RateLimiterMetricsService;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import com.ratelimiter.dataplane.infrastructure.integration.ControlPlaneClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OnDemandPolicyLoaderTest {
+
+    /**
+     * 计数的 Control Plane 替身：knownTenant 返回策略，其他返回"不存在"
+     */
+    static class CountingControlPlaneClient extends ControlPlaneClient {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        private final String knownTenant;
+
+        CountingControlPlaneClient(String knownTenant) {
+            super(null, "http://unused");
+            this.knownTenant = knownTenant;
+        }
+
+        @Override
+        public PolicyDto fetchPolicy(String tenantId, String resourceKey) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!knownTenant.equals(tenantId)) {
+                return null;
+            }
+            PolicyDto dto = new PolicyDto();
+            dto.setTenantId(tenantId);
+            dto.setResourceKey(resourceKey);
+            dto.setCapacity(100L);
+            dto.setRefillRate(BigDecimal.TEN);
+            dto.setEnabled(true);
+            dto.setVersion("v1");
+            return dto;
+        }
+    }
+
+    private OnDemandPolicyLoader newLoader(ControlPlaneClient client, PolicyCache cache) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new OnDemandPolicyLoader(client, cache, new RateLimiterMetricsService(registry, 100, 50),
+                1000, 5000, 1000, 2, 16);
+    }
+
+    // 并发未命中只触发一次拉取，结果写入缓存
+    @Test
+    void shouldShareSingleFetchAcrossConcurrentMisses() throws InterruptedException {
+        CountingControlPlaneClient client = new CountingControlPlaneClient("tenant_new");
+        PolicyCache cache = new PolicyCache(new SimpleMeterRegistry(), 1000);
+        OnDemandPolicyLoader loader = newLoader(client, cache);
+
+        int threadCount = 50;
+        CountDownLatch done = new CountDownLatch(threadCount);
+        AtomicInteger resolved = new AtomicInteger();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(() -> {
+                if (loader.resolve("tenant_new", "/api/v1/orders") != null) {
+                    resolved.incrementAndGet();
+                }
+                done.countDown();
+            }).start();
+        }
+
+        Thread.sleep(100);
+        client.release.countDown();
+        done.await();
+
+        assertThat(client.calls.get()).isEqualTo(1);
+        assertThat(resolved.get()).isEqualTo(threadCount);
+        assertThat(cache.findPolicy("tenant_new", "/api/v1/orders")).isNotNull();
+        loader.shutdown();
+    }
+
+    // 确认不存在的 key 进入负缓存，后续请求不再访问 Control Plane
+    @Test
+    void shouldNegativeCacheAbsentPolicy() {
+        CountingControlPlaneClient client = new CountingControlPlaneClient("tenant_new");
+        client.release.countDown();
+        PolicyCache cache = new PolicyCache(new SimpleMeterRegistry(), 1000);
+        OnDemandPolicyLoader loader = newLoader(client, cache);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(loader.resolve("unknown_tenant", "/api/unknown")).isNull();
+        }
+
+        assertThat(client.calls.get()).isEqualTo(1);
+        assertThat(cache.isKnownAbsent("unknown_tenant", "/api/unknown", System.currentTimeMillis())).isTrue();
+        loader.shutdown();
+    }
+}
@@ -44,7 +44,8 @@ public class PolicySyncService implements CommandLineRunner {
 
             log.debug("Policy sync completed, cached {} policies", policies.size());
         } catch (Exception e) {
-            log.error("Policy sync failed", e);
+            // 拉取失败时保留上一次的缓存快照，不能用空列表把策略清掉
+            log.error("Policy sync failed, keeping {} cached policies", policyCache.getCachedPolicyCount(), e);
         }
     }
 }
\ No newline at end of file
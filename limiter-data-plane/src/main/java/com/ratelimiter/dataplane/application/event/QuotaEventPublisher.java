@@ -1,66 +1,364 @@
 package com. ratelimiter. dataplane.application.event;
 
 import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.dataplane.application.metrics.jfr.EventPublishBackpressureEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j. Slf4j;
+import org.apache.kafka.common.errors.RetriableException;
 import org.springframework.beans.factory. annotation.Value;
 import org. springframework.kafka.core.KafkaTemplate;
-import org. springframework.kafka.support.SendResult;
 import org. springframework.stereotype.Service;
 
-import java.util. concurrent.CompletableFuture;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * 配额事件发布
+ *
+ * 请求线程只把字段写入预分配的环形缓冲区（不构建事件、不调用 KafkaTemplate），
+ * 由单个 drainer 线程批量取出、构建事件并交给生产者（linger + 压缩在 Kafka 侧攒批），
+ * 检查延迟与 Kafka 的元数据等待、缓冲区阻塞隔离开。
+ *
+ * 开启汇总后，普通的允许决策在 drainer 线程内按窗口折叠成 QuotaRollupEvent 发往 rollup topic，
+ * 拒绝和显式要求审计（metadata.audit=true）的请求仍逐条发送；
+ * 汇总前按 requestId 去重，复用 requestId 的客户端重试只计一次（见 {@link QuotaRollupAggregator}）
+ *
+ * 生产者拒绝的事件写入本地溢出日志，由 {@link QuotaSpillReplayer} 在 broker 恢复后按顺序回放
+ */
 @Slf4j
 @Service
 public class QuotaEventPublisher {
 
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+        // 直接丢弃，请求线程不等待
+        DROP,
+        // 等待 drainer 腾出空间，超时后丢弃
+        WAIT
+    }
+
+    private static final long WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long ROLLUP_FLUSH_CHECK_MS = 100;
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final QuotaSpillReplayer spillReplayer;
     private final String topicName;
+    private final QuotaEventRingBuffer ringBuffer;
+    private final OverflowPolicy overflowPolicy;
+    private final long waitTimeoutNanos;
+    private final int drainBatchSize;
+    private final long idleParkNanos;
+
+    // 只由 drainer 线程访问；未开启汇总时为 null
+    private final QuotaRollupAggregator rollupAggregator;
+    private final String rollupTopicName;
+    private long nextRollupFlushCheck;
+
+    private final Counter enqueuedCounter;
+    private final Counter droppedCounter;
+    private final Counter sentCounter;
+    private final Counter sendFailedCounter;
+    private final Counter rolledUpCounter;
+    private final Counter rollupDuplicateCounter;
+    private final Counter rollupSentCounter;
+    private final Counter spilledCounter;
+
+    private volatile boolean running;
+    private Thread drainerThread;
 
     public QuotaEventPublisher(KafkaTemplate<String, Object> kafkaTemplate,
-                               @Value("${app.kafka.topic.quota-events: quota-events}") String topicName) {
+                               QuotaSpillReplayer spillReplayer,
+                               @Value("${app.kafka.topic.quota-events: quota-events}") String topicName,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.kafka.publisher.buffer-capacity:65536}") int bufferCapacity,
+                               @Value("${app.kafka.publisher.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+                               @Value("${app.kafka.publisher.wait-timeout-ms:5}") long waitTimeoutMillis,
+                               @Value("${app.kafka.publisher.drain-batch-size:512}") int drainBatchSize,
+                               @Value("${app.kafka.publisher.idle-park-micros:200}") long idleParkMicros,
+                               @Value("${app.kafka.rollup.enabled:true}") boolean rollupEnabled,
+                               @Value("${app.kafka.topic.quota-rollups:quota-rollups}") String rollupTopicName,
+                               @Value("${app.node-id:${HOSTNAME:data-plane}}") String nodeId,
+                               @Value("${app.kafka.rollup.window-ms:1000}") int rollupWindowMs,
+                               @Value("${app.kafka.rollup.max-keys:100000}") int rollupMaxKeys,
+                               @Value("${app.kafka.rollup.dedupe-window-ms:10000}") long rollupDedupeWindowMs,
+                               @Value("${app.kafka.rollup.dedupe-max-ids:200000}") int rollupDedupeMaxIds) {
         this.kafkaTemplate = kafkaTemplate;
+        this.spillReplayer = spillReplayer;
         this.topicName = topicName;
+        this.ringBuffer = new QuotaEventRingBuffer(bufferCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+        this.drainBatchSize = drainBatchSize;
+        this.idleParkNanos = TimeUnit.MICROSECONDS.toNanos(idleParkMicros);
+        this.rollupAggregator = rollupEnabled
+                ? new QuotaRollupAggregator(nodeId, rollupWindowMs, rollupMaxKeys, rollupDedupeWindowMs,
+                        rollupDedupeMaxIds)
+                : null;
+        this.rollupTopicName = rollupTopicName;
+
+        meterRegistry.gauge("quota_event_buffer_depth", ringBuffer, QuotaEventRingBuffer::size);
+        meterRegistry.gauge("quota_event_buffer_capacity", ringBuffer, QuotaEventRingBuffer::capacity);
+        this.enqueuedCounter = meterRegistry.counter("quota_event_buffer_enqueued_total");
+        this.droppedCounter = meterRegistry.counter("quota_event_buffer_dropped_total",
+                "policy", overflowPolicy.name());
+        this.sentCounter = meterRegistry.counter("quota_event_sent_total");
+        this.sendFailedCounter = meterRegistry.counter("quota_event_send_failed_total");
+        this.rolledUpCounter = meterRegistry.counter("quota_event_rolled_up_total");
+        this.rollupDuplicateCounter = meterRegistry.counter("quota_event_rollup_duplicate_total");
+        this.rollupSentCounter = meterRegistry.counter("quota_rollup_sent_total");
+        this.spilledCounter = meterRegistry.counter("quota_event_spilled_total");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        drainerThread = new Thread(this::drainLoop, "quota-event-drainer");
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+        log.info("Quota event publisher started: topic={}, capacity={}, overflowPolicy={}, rollup={}",
+                topicName, ringBuffer.capacity(), overflowPolicy, rollupAggregator != null);
     }
 
     /**
-     * 异步发送配额消费事件
+     * 热路径：把事件字段写入环形缓冲区
+     *
+     * @param audit 请求要求逐条审计（不参与汇总）
+     * @return 是否成功入队；缓冲区满（DROP）或等待超时（WAIT）时返回 false
      */
-    public void publishQuotaEvent(QuotaConsumedEvent event) {
-        try {
-            // 使用 tenantId 作为 partition key，保证同一租户的事件有序
-            String partitionKey = event.getTenantId();
+    public boolean publish(String requestId,
+                           String tenantId,
+                           String resourceKey,
+                           long tokensRequested,
+                           boolean allowed,
+                           String reason,
+                           String policyVersion,
+                           long remainingTokens,
+                           long timestamp,
+                           String traceId,
+                           String processPath,
+                           boolean audit) {
+        long pos = ringBuffer.tryClaim();
+        if (pos < 0) {
+            pos = claimOnOverflow(tenantId, requestId);
+            if (pos < 0) {
+                droppedCounter.increment();
+                return false;
+            }
+        }
+
+        ringBuffer.slot(pos).set(requestId, tenantId, resourceKey, tokensRequested, allowed, reason,
+                policyVersion, remainingTokens, timestamp, traceId, processPath, audit);
+        ringBuffer.publish(pos);
+        enqueuedCounter.increment();
+        return true;
+    }
 
-            log.info("=== Sending Kafka event:  eventId={}, requestId={}, topic={} ===",
-                    event.getEventId(), event.getRequestId(), topicName);
+    /**
+     * 缓冲区满：DROP 直接放弃；WAIT 在超时内自旋等待 drainer 腾出空间
+     */
+    private long claimOnOverflow(String tenantId, String requestId) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            return -1L;
+        }
+
+        EventPublishBackpressureEvent backpressureEvent = new EventPublishBackpressureEvent();
+        backpressureEvent.begin();
+        long deadline = System.nanoTime() + waitTimeoutNanos;
+        long pos = -1L;
+        while (running && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(WAIT_PARK_NANOS);
+            pos = ringBuffer.tryClaim();
+            if (pos >= 0) {
+                break;
+            }
+        }
+        backpressureEvent.end();
+        if (backpressureEvent.shouldCommit()) {
+            backpressureEvent.topic = topicName;
+            backpressureEvent.tenantId = tenantId;
+            backpressureEvent.requestId = requestId;
+            backpressureEvent.commit();
+        }
+        return pos;
+    }
 
-            CompletableFuture<SendResult<String, Object>> future =
-                    kafkaTemplate.send(topicName, partitionKey, event);
+    private void drainLoop() {
+        while (true) {
+            int drained = drainBatch();
+            flushRollups(System.currentTimeMillis(), false);
+            if (drained == 0) {
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(idleParkNanos);
+            }
+        }
+        flushRollups(System.currentTimeMillis(), true);
+    }
 
-            // 异步处理结果
-            future.whenComplete((result, throwable) -> {
-                if (throwable != null) {
-                    log.error("Failed to send quota event.  EventId: {}, RequestId: {}, TenantId: {}",
-                            event.getEventId(), event.getRequestId(), event.getTenantId(), throwable);
+    /**
+     * drainer 线程：取出一批事件并交给生产者
+     */
+    int drainBatch() {
+        int drained = 0;
+        QuotaEventSlot slot;
+        while (drained < drainBatchSize && (slot = ringBuffer.poll()) != null) {
+            if (rollupAggregator != null && slot.allowed && !slot.audit) {
+                boolean added = rollupAggregator.add(slot.requestId, slot.tenantId, slot.resourceKey,
+                        slot.policyVersion, slot.processPath, slot.tokensRequested, slot.timestamp);
+                ringBuffer.release();
+                if (added) {
+                    rolledUpCounter.increment();
                 } else {
-                    log.debug("Successfully sent quota event. EventId: {}, RequestId: {}, Partition: {}, Offset: {}",
-                            event.getEventId(), event.getRequestId(),
-                            result.getRecordMetadata().partition(),
-                            result.getRecordMetadata().offset());
+                    rollupDuplicateCounter.increment();
                 }
-            });
+            } else {
+                QuotaConsumedEvent event = slot.toEvent();
+                ringBuffer.release();
+                send(event);
+            }
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * drainer 线程：输出已关闭窗口的汇总（force 时输出全部）
+     */
+    void flushRollups(long nowMillis, boolean force) {
+        if (rollupAggregator == null) {
+            return;
+        }
+        if (!force && nowMillis < nextRollupFlushCheck) {
+            return;
+        }
+        nextRollupFlushCheck = nowMillis + ROLLUP_FLUSH_CHECK_MS;
+
+        List<QuotaRollupEvent> rollups = force ? rollupAggregator.flushAll() : rollupAggregator.flushDue(nowMillis);
+        for (QuotaRollupEvent rollup : rollups) {
+            sendRollup(rollup);
+        }
+    }
+
+    private void sendRollup(QuotaRollupEvent rollup) {
+        // 溢出日志有积压时直接追加，保持回放顺序
+        if (spillReplayer.hasBacklog()) {
+            spillRollup(rollup, null);
+            return;
+        }
+        try {
+            kafkaTemplate.send(rollupTopicName, rollup.getTenantId(), rollup)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            spillRollup(rollup, throwable);
+                        } else {
+                            rollupSentCounter.increment();
+                        }
+                    });
+        } catch (Exception e) {
+            spillRollup(rollup, e);
+        }
+    }
 
+    private void spillRollup(QuotaRollupEvent rollup, Throwable cause) {
+        if (isRetriable(cause) && spillReplayer.spill(rollup)) {
+            spilledCounter.increment();
+            return;
+        }
+        sendFailedCounter.increment();
+        log.error("Failed to send quota rollup and spill journal rejected it.  RollupId: {}, TenantId: {}, Requests: {}",
+                rollup.getRollupId(), rollup.getTenantId(), rollup.getRequestCount(), cause);
+    }
+
+    private void send(QuotaConsumedEvent event) {
+        // 溢出日志有积压时直接追加，保持回放顺序
+        if (spillReplayer.hasBacklog()) {
+            spill(event, null);
+            return;
+        }
+        EventPublishBackpressureEvent backpressureEvent = new EventPublishBackpressureEvent();
+        backpressureEvent.begin();
+        try {
+            // 使用 tenantId 作为 partition key，保证同一租户的事件有序
+            kafkaTemplate.send(topicName, event.getTenantId(), event)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            // 生产者 I/O 线程回调：写入溢出日志，不丢事件
+                            spill(event, throwable);
+                        } else {
+                            sentCounter.increment();
+                        }
+                    });
         } catch (Exception e) {
-            log.error("Error publishing quota event.  EventId: {}, RequestId: {}",
-                    event. getEventId(), event.getRequestId(), e);
+            // send() 同步抛出：max.block.ms 内拿不到元数据或缓冲区空间
+            spill(event, e);
+        } finally {
+            backpressureEvent.end();
+            if (backpressureEvent.shouldCommit()) {
+                backpressureEvent.topic = topicName;
+                backpressureEvent.tenantId = event.getTenantId();
+                backpressureEvent.requestId = event.getRequestId();
+                backpressureEvent.commit();
+            }
+        }
+    }
+
+    private void spill(QuotaConsumedEvent event, Throwable cause) {
+        if (isRetriable(cause) && spillReplayer.spill(event)) {
+            spilledCounter.increment();
+            return;
+        }
+        sendFailedCounter.increment();
+        log.error("Failed to send quota event and spill journal rejected it.  EventId: {}, RequestId: {}, TenantId: {}",
+                event.getEventId(), event.getRequestId(), event.getTenantId(), cause);
+    }
+
+    /**
+     * 只溢出 broker 不可用类的错误（超时、无 leader、网络异常等）；
+     * 序列化失败、消息过大等重放也不会成功的错误直接计入失败
+     */
+    private static boolean isRetriable(Throwable cause) {
+        if (cause == null) {
+            return true;
         }
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getBufferedCount() {
+        return ringBuffer.size();
     }
 
     /**
-     * 批量发送事件（如果需要）
+     * 停止接收新事件，drainer 发送完缓冲区中剩余事件后退出
      */
-    public void publishQuotaEvents(java.util.List<QuotaConsumedEvent> events) {
-        for (QuotaConsumedEvent event :  events) {
-            publishQuotaEvent(event);
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (drainerThread == null) {
+            return;
+        }
+        LockSupport.unpark(drainerThread);
+        try {
+            drainerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        kafkaTemplate.flush();
+        int remaining = ringBuffer.size();
+        if (remaining > 0) {
+            log.warn("Quota event publisher stopped with {} buffered events not sent", remaining);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package com.ratelimiter.dataplane.application.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.dataplane.infrastructure.spill.SpillJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaEventPublisherTest {
+
+    @TempDir
+    Path spillDir;
+
+    /**
+     * KafkaTemplate 每次发送后都会 close 取到的 producer（真实工厂返回的是可共享的包装，close 为空操作），
+     * MockProducerFactory 直接返回 MockProducer；多次发送共用同一个 producer，所以 close 不真正关闭
+     */
+    private static MockProducer<String, Object> producer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+    }
+
+    private static KafkaTemplate<String, Object> template(MockProducer<String, Object> producer) {
+        return new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+    }
+
+    private static QuotaSpillReplayer newReplayer(KafkaTemplate<String, Object> kafkaTemplate,
+                                                  SimpleMeterRegistry registry,
+                                                  Path spillDir) {
+        return new QuotaSpillReplayer(kafkaTemplate, new ObjectMapper(), registry, "quota-events", "quota-rollups",
+                spillDir != null, String.valueOf(spillDir), 1 << 20, 4, SpillJournal.FsyncPolicy.NONE, 1000,
+                500, 10, 100, 1000);
+    }
+
+    private static QuotaEventPublisher newPublisher(MockProducer<String, Object> producer,
+                                                    SimpleMeterRegistry registry,
+                                                    int capacity,
+                                                    QuotaEventPublisher.OverflowPolicy overflowPolicy,
+                                                    boolean rollupEnabled) {
+        KafkaTemplate<String, Object> kafkaTemplate = template(producer);
+        return newPublisher(kafkaTemplate, newReplayer(kafkaTemplate, registry, null), registry, capacity,
+                overflowPolicy, rollupEnabled);
+    }
+
+    private static QuotaEventPublisher newPublisher(KafkaTemplate<String, Object> kafkaTemplate,
+                                                    QuotaSpillReplayer spillReplayer,
+                                                    SimpleMeterRegistry registry,
+                                                    int capacity,
+                                                    QuotaEventPublisher.OverflowPolicy overflowPolicy,
+                                                    boolean rollupEnabled) {
+        return new QuotaEventPublisher(kafkaTemplate, spillReplayer, "quota-events", registry,
+                capacity, overflowPolicy, 5, 64, 100,
+                rollupEnabled, "quota-rollups", "node-1", 1000, 10_000, 10_000, 10_000);
+    }
+
+    private static boolean publish(QuotaEventPublisher publisher, String requestId) {
+        return publisher.publish(requestId, "tenant_001", "/api/v1/orders", 2L, true, "", "v1",
+                98L, 1700000000000L, "trace-1", "local", false);
+    }
+
+    // drainer 线程构建事件并发送，关闭时发送完缓冲区中的剩余事件
+    @Test
+    void shouldDrainBufferedEventsToKafka() throws InterruptedException {
+        MockProducer<String, Object> producer = producer(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuotaEventPublisher publisher = newPublisher(producer, registry, 1024,
+                QuotaEventPublisher.OverflowPolicy.WAIT, false);
+        publisher.start();
+
+        int threads = 4;
+        int perThread = 2_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int threadId = t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    publish(publisher, threadId + "-" + i);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        publisher.shutdown();
+
+        List<ProducerRecord<String, Object>> history = producer.history();
+        double dropped = registry.get("quota_event_buffer_dropped_total").counter().count();
+        assertThat(history.size() + (long) dropped).isEqualTo((long) threads * perThread);
+
+        QuotaConsumedEvent event = (QuotaConsumedEvent) history.get(0).value();
+        assertThat(history.get(0).key()).isEqualTo("tenant_001");
+        assertThat(event.getEventId()).isNotBlank();
+        assertThat(event.getTokensConsumed()).isEqualTo(2L);
+        assertThat(event.getRemainingTokens()).isEqualTo(98L);
+        assertThat(event.getTimestamp()).isEqualTo(1700000000000L);
+        assertThat(event.getProcessPath()).isEqualTo("local");
+    }
+
+    // DROP 策略：缓冲区满时立即返回 false 并计数
+    @Test
+    void shouldDropWhenBufferIsFull() {
+        MockProducer<String, Object> producer = producer(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // 不启动 drainer，缓冲区只进不出
+        QuotaEventPublisher publisher = newPublisher(producer, registry, 4,
+                QuotaEventPublisher.OverflowPolicy.DROP, false);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(publish(publisher, "req-" + i)).isTrue();
+        }
+        assertThat(publish(publisher, "req-overflow")).isFalse();
+
+        assertThat(publisher.getBufferedCount()).isEqualTo(4);
+        assertThat(registry.get("quota_event_buffer_dropped_total").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("quota_event_buffer_depth").gauge().value()).isEqualTo(4.0);
+
+        assertThat(publisher.drainBatch()).isEqualTo(4);
+        assertThat(producer.history()).hasSize(4);
+    }
+
+    // 允许决策折叠为汇总事件，拒绝和要求审计的请求逐条发送
+    @Test
+    void shouldRollUpAllowedDecisionsAndSendDenialsIndividually() {
+        MockProducer<String, Object> producer = producer(true);
+        QuotaEventPublisher publisher = newPublisher(producer, new SimpleMeterRegistry(), 1024,
+                QuotaEventPublisher.OverflowPolicy.DROP, true);
+
+        long second = 1700000000000L;
+        for (int i = 0; i < 100; i++) {
+            publisher.publish("allowed-" + i, "tenant_001", "/api/v1/orders", 2L, true, "", "v1",
+                    98L, second + i, null, "local", false);
+        }
+        // 复用 requestId 的重试不重复计入汇总
+        publisher.publish("allowed-7", "tenant_001", "/api/v1/orders", 2L, true, "", "v1",
+                96L, second + 150, null, "local", false);
+        publisher.publish("denied-1", "tenant_001", "/api/v1/orders", 2L, false, "quota_exceeded", "v1",
+                0L, second + 200, null, "redis", false);
+        publisher.publish("audited-1", "tenant_001", "/api/v1/orders", 2L, true, "", "v1",
+                96L, second + 300, null, "local", true);
+
+        publisher.drainBatch();
+        publisher.drainBatch();
+        // 窗口尚未关闭，汇总不输出
+        publisher.flushRollups(second + 999, false);
+        assertThat(producer.history()).extracting(ProducerRecord::topic)
+                .containsExactly("quota-events", "quota-events");
+
+        publisher.flushRollups(second + 2_000, false);
+        List<ProducerRecord<String, Object>> rollups = producer.history().stream()
+                .filter(record -> record.topic().equals("quota-rollups"))
+                .toList();
+        assertThat(rollups).hasSize(1);
+        QuotaRollupEvent rollup = (QuotaRollupEvent) rollups.get(0).value();
+        assertThat(rollup.getRequestCount()).isEqualTo(100L);
+        assertThat(rollup.getTokensConsumed()).isEqualTo(200L);
+        assertThat(rollup.getWindowStart()).isEqualTo(second);
+        assertThat(rollup.getNodeId()).isEqualTo("node-1");
+    }
+
+    // broker 不可用时事件写入溢出日志；积压期间的新事件也进日志，恢复后按顺序回放
+    @Test
+    void shouldSpillWhenBrokerUnavailableAndReplayInOrder() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MockProducer<String, Object> failing = producer(false);
+        MockProducer<String, Object> recovered = producer(true);
+        QuotaSpillReplayer replayer = newReplayer(template(recovered), registry, spillDir);
+        QuotaEventPublisher publisher = newPublisher(template(failing), replayer, registry, 1024,
+                QuotaEventPublisher.OverflowPolicy.DROP, false);
+
+        publish(publisher, "req-1");
+        publish(publisher, "req-2");
+        publisher.drainBatch();
+        assertThat(failing.errorNext(new TimeoutException("broker down"))).isTrue();
+        assertThat(failing.errorNext(new TimeoutException("broker down"))).isTrue();
+        assertThat(replayer.hasBacklog()).isTrue();
+
+        // 有积压时不再尝试 Kafka
+        publish(publisher, "req-3");
+        publisher.drainBatch();
+        assertThat(failing.history()).hasSize(2);
+        assertThat(registry.get("quota_event_spilled_total").counter().count()).isEqualTo(3.0);
+
+        assertThat(replayer.replayBatch()).isTrue();
+        assertThat(replayer.hasBacklog()).isFalse();
+        assertThat(recovered.history())
+                .extracting(record -> ((QuotaConsumedEvent) record.value()).getRequestId())
+                .containsExactly("req-1", "req-2", "req-3");
+        replayer.shutdown();
+    }
+}
@@ -0,0 +1,108 @@
+package com.ratelimiter.dataplane.application.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界、预分配的多生产者单消费者环形缓冲区
+ *
+ * 每个槽位带一个序号：生产者 CAS 推进 tail 认领槽位，写完字段后把序号置为 pos + 1 发布；
+ * 消费者看到序号等于 head + 1 才读取，读完把序号置为 head + capacity 交还给生产者。
+ * 缓冲区满时 tryClaim 返回 -1，由调用方决定丢弃还是等待
+ */
+final class QuotaEventRingBuffer {
+
+    private final QuotaEventSlot[] slots;
+    private final AtomicLongArray sequences;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    // 只由消费者线程写入，其他线程只读（深度指标）
+    private final AtomicLong head = new AtomicLong();
+
+    QuotaEventRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 2");
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new QuotaEventSlot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new QuotaEventSlot();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 认领一个槽位
+     *
+     * @return 槽位序号；缓冲区已满时返回 -1
+     */
+    long tryClaim() {
+        long pos = tail.get();
+        while (true) {
+            long sequence = sequences.get(index(pos));
+            long diff = sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return -1L;
+            } else {
+                // 其他生产者已经认领了这个位置
+                pos = tail.get();
+            }
+        }
+    }
+
+    QuotaEventSlot slot(long pos) {
+        return slots[index(pos)];
+    }
+
+    /**
+     * 字段写完后发布槽位，对消费者可见
+     */
+    void publish(long pos) {
+        sequences.lazySet(index(pos), pos + 1);
+    }
+
+    /**
+     * 消费者读取下一个已发布的槽位，没有则返回 null；读完必须调用 release()
+     */
+    QuotaEventSlot poll() {
+        long pos = head.get();
+        int index = index(pos);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        return slots[index];
+    }
+
+    /**
+     * 归还 poll() 返回的槽位
+     */
+    void release() {
+        long pos = head.get();
+        int index = index(pos);
+        slots[index].clear();
+        sequences.lazySet(index, pos + capacity);
+        head.lazySet(pos + 1);
+    }
+
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private int index(long pos) {
+        return (int) (pos & mask);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ratelimiter.dataplane.application.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaEventRingBufferTest {
+
+    // 容量向上取整为 2 的幂，写满后 tryClaim 返回 -1，消费后可以继续写入
+    @Test
+    void shouldRejectWhenFullAndRecycleSlots() {
+        QuotaEventRingBuffer buffer = new QuotaEventRingBuffer(3);
+        assertThat(buffer.capacity()).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++) {
+            long pos = buffer.tryClaim();
+            assertThat(pos).isEqualTo(i);
+            buffer.slot(pos).set("req-" + i, "tenant_001", "/api", 1, true, "", "v1", 0, 0, null, "local", false);
+            buffer.publish(pos);
+        }
+        assertThat(buffer.tryClaim()).isEqualTo(-1L);
+        assertThat(buffer.size()).isEqualTo(4);
+
+        QuotaEventSlot slot = buffer.poll();
+        assertThat(slot.requestId).isEqualTo("req-0");
+        buffer.release();
+        assertThat(slot.requestId).isNull();
+
+        assertThat(buffer.tryClaim()).isEqualTo(4L);
+    }
+
+    // 已认领但尚未发布的槽位对消费者不可见
+    @Test
+    void shouldNotExposeUnpublishedSlot() {
+        QuotaEventRingBuffer buffer = new QuotaEventRingBuffer(4);
+        long pos = buffer.tryClaim();
+        assertThat(buffer.poll()).isNull();
+
+        buffer.slot(pos).set("req-0", "tenant_001", "/api", 1, true, "", "v1", 0, 0, null, "local", false);
+        buffer.publish(pos);
+        assertThat(buffer.poll()).isNotNull();
+    }
+
+    // 多生产者并发写入，单消费者按序读出且不丢不重
+    @Test
+    void shouldDeliverEveryEventOnceWithConcurrentProducers() throws InterruptedException {
+        QuotaEventRingBuffer buffer = new QuotaEventRingBuffer(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            int producerId = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long pos;
+                    while ((pos = buffer.tryClaim()) < 0) {
+                        Thread.onSpinWait();
+                    }
+                    buffer.slot(pos).set(producerId + "-" + i, "tenant_" + producerId, "/api", i, true,
+                            "", "v1", 0, 0, null, "local", false);
+                    buffer.publish(pos);
+                }
+                done.countDown();
+            }).start();
+        }
+
+        Set<String> seen = new HashSet<>();
+        long[] lastTokens = new long[producers];
+        java.util.Arrays.fill(lastTokens, -1);
+        int total = producers * perProducer;
+        while (seen.size() < total) {
+            QuotaEventSlot slot = buffer.poll();
+            if (slot == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertThat(seen.add(slot.requestId)).isTrue();
+            // 同一生产者的事件保持写入顺序
+            int producerId = Integer.parseInt(slot.tenantId.substring("tenant_".length()));
+            assertThat(slot.tokensRequested).isGreaterThan(lastTokens[producerId]);
+            lastTokens[producerId] = slot.tokensRequested;
+            buffer.release();
+        }
+        done.await();
+
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.size()).isZero();
+    }
+}
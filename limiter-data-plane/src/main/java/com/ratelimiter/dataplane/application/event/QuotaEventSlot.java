@@ -0,0 +1,75 @@
+package com.ratelimiter.dataplane.application.event;
+
+import com.ratelimiter.common.util.IdGenerator;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+
+/**
+ * 环形缓冲区中的预分配槽位
+ * 请求线程只写入字段（不分配对象），由 drainer 线程构建 QuotaConsumedEvent
+ */
+final class QuotaEventSlot {
+
+    String requestId;
+    String tenantId;
+    String resourceKey;
+    long tokensRequested;
+    boolean allowed;
+    String reason;
+    String policyVersion;
+    long remainingTokens;
+    long timestamp;
+    String traceId;
+    String processPath;
+    boolean audit;
+
+    void set(String requestId, String tenantId, String resourceKey, long tokensRequested, boolean allowed,
+             String reason, String policyVersion, long remainingTokens, long timestamp, String traceId,
+             String processPath, boolean audit) {
+        this.requestId = requestId;
+        this.tenantId = tenantId;
+        this.resourceKey = resourceKey;
+        this.tokensRequested = tokensRequested;
+        this.allowed = allowed;
+        this.reason = reason;
+        this.policyVersion = policyVersion;
+        this.remainingTokens = remainingTokens;
+        this.timestamp = timestamp;
+        this.traceId = traceId;
+        this.processPath = processPath;
+        this.audit = audit;
+    }
+
+    /**
+     * 在 drainer 线程构建事件（eventId 也在这里生成，不占用请求线程）
+     */
+    QuotaConsumedEvent toEvent() {
+        return QuotaConsumedEvent.builder()
+                .eventId(IdGenerator.nextId())
+                .requestId(requestId)
+                .tenantId(tenantId)
+                .resourceKey(resourceKey)
+                .tokensRequested(tokensRequested)
+                .tokensConsumed(allowed ? tokensRequested : 0L)
+                .allowed(allowed)
+                .reason(reason)
+                .policyVersion(policyVersion)
+                .remainingTokens(remainingTokens)
+                .timestamp(timestamp)
+                .traceId(traceId)
+                .processPath(processPath)
+                .build();
+    }
+
+    /**
+     * 释放引用，避免槽位长期持有已发送请求的字符串
+     */
+    void clear() {
+        requestId = null;
+        tenantId = null;
+        resourceKey = null;
+        reason = null;
+        policyVersion = null;
+        traceId = null;
+        processPath = null;
+    }
+}
@@ -0,0 +1,151 @@
+package com.ratelimiter.dataplane.application.event;
+
+import com.ratelimiter.common.util.IdGenerator;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 允许决策的按窗口汇总
+ *
+ * 只由 drainer 线程访问（单写者），不做任何同步。
+ * 窗口结束后再等一个窗口长度才输出，容纳缓冲区里稍晚到达的同窗口事件
+ *
+ * 汇总不携带 requestId，Accounting 无法再按 requestId 去重，
+ * 因此客户端复用 requestId 的重试在这里按两代 requestId 集合去重：
+ * 同一节点在 dedupeWindowMs 内（至少一代、至多两代）重复出现的 requestId 不再计入汇总。
+ * 单代集合达到 dedupeMaxIds 时提前轮转，内存有界，代价是过载时去重窗口变短
+ */
+final class QuotaRollupAggregator {
+
+    private record RollupKey(long windowStart, String tenantId, String resourceKey, String policyVersion,
+                             String processPath) {
+    }
+
+    private static final class RollupBucket {
+        long requestCount;
+        long tokensRequested;
+        long tokensConsumed;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+    }
+
+    private final String nodeId;
+    private final int windowMs;
+    private final int maxKeys;
+    private final Map<RollupKey, RollupBucket> buckets = new HashMap<>();
+
+    private final long dedupeWindowMs;
+    private final int dedupeMaxIds;
+    private Set<String> currentRequestIds = new HashSet<>();
+    private Set<String> previousRequestIds = new HashSet<>();
+    private long generationStart = Long.MIN_VALUE;
+
+    QuotaRollupAggregator(String nodeId, int windowMs, int maxKeys, long dedupeWindowMs, int dedupeMaxIds) {
+        this.nodeId = nodeId;
+        this.windowMs = windowMs;
+        this.maxKeys = maxKeys;
+        this.dedupeWindowMs = dedupeWindowMs;
+        this.dedupeMaxIds = dedupeMaxIds;
+    }
+
+    /**
+     * 折叠一条允许决策
+     *
+     * @return false 表示 requestId 在去重窗口内已计入过（客户端重试），本条被忽略
+     */
+    boolean add(String requestId, String tenantId, String resourceKey, String policyVersion, String processPath,
+                long tokensRequested, long timestamp) {
+        if (isDuplicate(requestId, timestamp)) {
+            return false;
+        }
+        long windowStart = timestamp - Math.floorMod(timestamp, windowMs);
+        RollupBucket bucket = buckets.computeIfAbsent(
+                new RollupKey(windowStart, tenantId, resourceKey, policyVersion, processPath),
+                key -> new RollupBucket());
+        bucket.requestCount++;
+        bucket.tokensRequested += tokensRequested;
+        bucket.tokensConsumed += tokensRequested;
+        bucket.firstTimestamp = Math.min(bucket.firstTimestamp, timestamp);
+        bucket.lastTimestamp = Math.max(bucket.lastTimestamp, timestamp);
+        return true;
+    }
+
+    private boolean isDuplicate(String requestId, long timestamp) {
+        if (requestId == null || dedupeWindowMs <= 0) {
+            return false;
+        }
+        if (generationStart == Long.MIN_VALUE) {
+            generationStart = timestamp;
+        } else if (timestamp - generationStart >= dedupeWindowMs || currentRequestIds.size() >= dedupeMaxIds) {
+            // 轮转：上一代丢弃，当前代降为上一代
+            Set<String> recycled = previousRequestIds;
+            recycled.clear();
+            previousRequestIds = currentRequestIds;
+            currentRequestIds = recycled;
+            generationStart = timestamp;
+        }
+        if (previousRequestIds.contains(requestId)) {
+            return true;
+        }
+        return !currentRequestIds.add(requestId);
+    }
+
+    /**
+     * 取出已经关闭的窗口；key 数超过上限时全部取出，保证内存有界
+     */
+    List<QuotaRollupEvent> flushDue(long nowMillis) {
+        if (buckets.isEmpty()) {
+            return List.of();
+        }
+        if (buckets.size() >= maxKeys) {
+            return flushAll();
+        }
+        long closedBefore = nowMillis - Math.floorMod(nowMillis, windowMs) - windowMs;
+        return flush(closedBefore);
+    }
+
+    List<QuotaRollupEvent> flushAll() {
+        return flush(Long.MAX_VALUE);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private List<QuotaRollupEvent> flush(long closedBefore) {
+        List<QuotaRollupEvent> rollups = new ArrayList<>();
+        Iterator<Map.Entry<RollupKey, RollupBucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RollupKey, RollupBucket> entry = iterator.next();
+            RollupKey key = entry.getKey();
+            if (key.windowStart() >= closedBefore) {
+                continue;
+            }
+            RollupBucket bucket = entry.getValue();
+            rollups.add(QuotaRollupEvent.builder()
+                    .rollupId(IdGenerator.nextId())
+                    .nodeId(nodeId)
+                    .tenantId(key.tenantId())
+                    .resourceKey(key.resourceKey())
+                    .policyVersion(key.policyVersion())
+                    .processPath(key.processPath())
+                    .windowStart(key.windowStart())
+                    .windowMs(windowMs)
+                    .requestCount(bucket.requestCount)
+                    .tokensRequested(bucket.tokensRequested)
+                    .tokensConsumed(bucket.tokensConsumed)
+                    .firstTimestamp(bucket.firstTimestamp)
+                    .lastTimestamp(bucket.lastTimestamp)
+                    .build());
+            iterator.remove();
+        }
+        return rollups;
+    }
+}
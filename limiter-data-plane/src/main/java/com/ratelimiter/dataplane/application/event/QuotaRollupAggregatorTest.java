@@ -0,0 +1,87 @@
+package com.ratelimiter.dataplane.application.event;
+
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaRollupAggregatorTest {
+
+    // 同一窗口、同一维度的允许决策折叠成一条汇总
+    @Test
+    void shouldFoldSameWindowIntoOneRollup() {
+        QuotaRollupAggregator aggregator = new QuotaRollupAggregator("node-1", 1000, 100, 10_000, 1000);
+        aggregator.add("req-1", "tenant_001", "/api/v1/orders", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-2", "tenant_001", "/api/v1/orders", "v1", "local", 3L, 10_900L);
+        aggregator.add("req-3", "tenant_001", "/api/v1/orders", "v1", "redis", 2L, 10_500L);
+
+        List<QuotaRollupEvent> rollups = aggregator.flushAll();
+
+        assertThat(rollups).hasSize(2);
+        QuotaRollupEvent local = rollups.stream()
+                .filter(r -> r.getProcessPath().equals("local"))
+                .findFirst()
+                .orElseThrow();
+        assertThat(local.getWindowStart()).isEqualTo(10_000L);
+        assertThat(local.getRequestCount()).isEqualTo(2L);
+        assertThat(local.getTokensConsumed()).isEqualTo(4L);
+        assertThat(local.getFirstTimestamp()).isEqualTo(10_100L);
+        assertThat(local.getLastTimestamp()).isEqualTo(10_900L);
+        assertThat(aggregator.size()).isZero();
+    }
+
+    // 窗口结束后再等一个窗口长度才输出
+    @Test
+    void shouldKeepWindowOpenForOneExtraWindow() {
+        QuotaRollupAggregator aggregator = new QuotaRollupAggregator("node-1", 1000, 100, 10_000, 1000);
+        aggregator.add("req-1", "tenant_001", "/api/v1/orders", "v1", "local", 1L, 10_100L);
+
+        assertThat(aggregator.flushDue(11_500L)).isEmpty();
+        assertThat(aggregator.flushDue(12_000L)).hasSize(1);
+    }
+
+    // key 数达到上限时全部输出，内存有界
+    @Test
+    void shouldFlushEverythingWhenKeyBudgetExceeded() {
+        QuotaRollupAggregator aggregator = new QuotaRollupAggregator("node-1", 1000, 2, 10_000, 1000);
+        aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-2", "tenant_002", "/a", "v1", "local", 1L, 10_100L);
+
+        assertThat(aggregator.flushDue(10_200L)).hasSize(2);
+    }
+
+    // 去重窗口内复用 requestId 的重试只计一次；窗口过后同一 requestId 重新计入
+    @Test
+    void shouldIgnoreRetriedRequestIdWithinDedupeWindow() {
+        QuotaRollupAggregator aggregator = new QuotaRollupAggregator("node-1", 1000, 100, 10_000, 1000);
+        assertThat(aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 2L, 10_100L)).isTrue();
+        assertThat(aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 2L, 10_400L)).isFalse();
+        // 轮转一次后仍在上一代里
+        assertThat(aggregator.add("req-2", "tenant_001", "/a", "v1", "local", 2L, 20_200L)).isTrue();
+        assertThat(aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 2L, 20_300L)).isFalse();
+        // 再轮转一次，req-1 已过期
+        assertThat(aggregator.add("req-3", "tenant_001", "/a", "v1", "local", 2L, 30_300L)).isTrue();
+        assertThat(aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 2L, 30_400L)).isTrue();
+
+        List<QuotaRollupEvent> rollups = aggregator.flushAll();
+        assertThat(rollups).extracting(QuotaRollupEvent::getRequestCount).containsExactlyInAnyOrder(1L, 1L, 2L);
+        assertThat(rollups.stream().mapToLong(QuotaRollupEvent::getTokensConsumed).sum()).isEqualTo(8L);
+    }
+
+    // 单代集合达到上限时提前轮转，内存有界
+    @Test
+    void shouldRotateEarlyWhenDedupeSetIsFull() {
+        QuotaRollupAggregator aggregator = new QuotaRollupAggregator("node-1", 1000, 100, 10_000, 2);
+        aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-2", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-3", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-4", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+        aggregator.add("req-5", "tenant_001", "/a", "v1", "local", 1L, 10_100L);
+
+        // req-1、req-2 所在的一代已被挤出
+        assertThat(aggregator.add("req-1", "tenant_001", "/a", "v1", "local", 1L, 10_200L)).isTrue();
+        assertThat(aggregator.add("req-5", "tenant_001", "/a", "v1", "local", 1L, 10_200L)).isFalse();
+    }
+}
@@ -0,0 +1,243 @@
+package com.ratelimiter.dataplane.application.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventCodec;
+import com.ratelimiter.dataplane.infrastructure.spill.SpillJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Kafka 不可用时的本地溢出与回放
+ *
+ * 生产者拒绝的事件（send 同步抛出或回调失败）写入 {@link SpillJournal}；
+ * 日志有积压期间，drainer 新产生的事件也直接写入日志，保证回放顺序与产生顺序一致。
+ * 回放线程按顺序分批重发，整批确认成功后才推进回放位置，失败时指数退避重试
+ * （重复投递由 Accounting 按 requestId / rollupId 幂等去重）
+ */
+@Slf4j
+@Component
+public class QuotaSpillReplayer {
+
+    static final byte TYPE_QUOTA_EVENT = 1;
+    static final byte TYPE_ROLLUP = 2;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final String topicName;
+    private final String rollupTopicName;
+    private final SpillJournal journal;
+    private final int batchSize;
+    private final long idleParkNanos;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long sendTimeoutMillis;
+    private final long fsyncIntervalMillis;
+
+    private final Counter spilledCounter;
+    private final Counter spillDroppedCounter;
+    private final Counter replayedCounter;
+    private final Counter replayFailedCounter;
+    private final Counter corruptCounter;
+
+    private volatile boolean running;
+    private Thread replayThread;
+
+    public QuotaSpillReplayer(KafkaTemplate<String, Object> kafkaTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.kafka.topic.quota-events:quota-events}") String topicName,
+                              @Value("${app.kafka.topic.quota-rollups:quota-rollups}") String rollupTopicName,
+                              @Value("${app.kafka.spill.enabled:true}") boolean enabled,
+                              @Value("${app.kafka.spill.dir:./data/spill}") String directory,
+                              @Value("${app.kafka.spill.segment-bytes:67108864}") int segmentBytes,
+                              @Value("${app.kafka.spill.max-segments:16}") int maxSegments,
+                              @Value("${app.kafka.spill.fsync-policy:INTERVAL}") SpillJournal.FsyncPolicy fsyncPolicy,
+                              @Value("${app.kafka.spill.fsync-interval-ms:1000}") long fsyncIntervalMillis,
+                              @Value("${app.kafka.spill.replay-batch-size:500}") int batchSize,
+                              @Value("${app.kafka.spill.replay-backoff-ms:1000}") long initialBackoffMillis,
+                              @Value("${app.kafka.spill.replay-max-backoff-ms:30000}") long maxBackoffMillis,
+                              @Value("${app.kafka.spill.replay-send-timeout-ms:10000}") long sendTimeoutMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.topicName = topicName;
+        this.rollupTopicName = rollupTopicName;
+        this.journal = enabled ? new SpillJournal(Path.of(directory), segmentBytes, maxSegments, fsyncPolicy) : null;
+        this.batchSize = batchSize;
+        this.idleParkNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+
+        this.spilledCounter = meterRegistry.counter("quota_spill_written_total");
+        this.spillDroppedCounter = meterRegistry.counter("quota_spill_dropped_total");
+        this.replayedCounter = meterRegistry.counter("quota_spill_replayed_total");
+        this.replayFailedCounter = meterRegistry.counter("quota_spill_replay_failed_total");
+        this.corruptCounter = meterRegistry.counter("quota_spill_corrupt_total");
+        if (journal != null) {
+            meterRegistry.gauge("quota_spill_pending_records", journal, SpillJournal::pendingRecords);
+            meterRegistry.gauge("quota_spill_pending_bytes", journal, SpillJournal::pendingBytes);
+            meterRegistry.gauge("quota_spill_segments", journal, SpillJournal::segmentCount);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (journal == null) {
+            log.info("Quota spill journal disabled");
+            return;
+        }
+        running = true;
+        replayThread = new Thread(this::replayLoop, "quota-spill-replayer");
+        replayThread.setDaemon(true);
+        replayThread.start();
+        log.info("Quota spill replayer started: pendingRecords={}, fsyncPolicy={}",
+                journal.pendingRecords(), journal.fsyncPolicy());
+    }
+
+    /**
+     * 日志中是否还有未回放的事件（有积压时新事件也写入日志，保持顺序）
+     */
+    public boolean hasBacklog() {
+        return journal != null && journal.hasBacklog();
+    }
+
+    /**
+     * 写入溢出日志
+     *
+     * @return 未开启或日志已满时返回 false（事件丢失）
+     */
+    public boolean spill(QuotaConsumedEvent event) {
+        return append(TYPE_QUOTA_EVENT, QuotaEventCodec.encode(event));
+    }
+
+    public boolean spill(QuotaRollupEvent rollup) {
+        try {
+            return append(TYPE_ROLLUP, objectMapper.writeValueAsBytes(rollup));
+        } catch (Exception e) {
+            log.error("Failed to encode quota rollup for spill.  RollupId: {}", rollup.getRollupId(), e);
+            spillDroppedCounter.increment();
+            return false;
+        }
+    }
+
+    private boolean append(byte type, byte[] payload) {
+        if (journal != null && journal.append(type, payload)) {
+            spilledCounter.increment();
+            return true;
+        }
+        spillDroppedCounter.increment();
+        return false;
+    }
+
+    private void replayLoop() {
+        long backoffMillis = initialBackoffMillis;
+        long nextForce = System.currentTimeMillis() + fsyncIntervalMillis;
+        while (running) {
+            long now = System.currentTimeMillis();
+            if (journal.fsyncPolicy() == SpillJournal.FsyncPolicy.INTERVAL && now >= nextForce) {
+                journal.force();
+                nextForce = now + fsyncIntervalMillis;
+            }
+
+            if (!journal.hasBacklog()) {
+                LockSupport.parkNanos(idleParkNanos);
+                continue;
+            }
+
+            if (replayBatch()) {
+                backoffMillis = initialBackoffMillis;
+            } else {
+                replayFailedCounter.increment();
+                log.warn("Quota spill replay failed, retrying in {} ms.  Pending: {}",
+                        backoffMillis, journal.pendingRecords());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * 回放一批：全部发送成功才提交回放位置
+     */
+    boolean replayBatch() {
+        SpillJournal.ReadBatch batch = journal.read(batchSize);
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(batch.entries().size());
+        try {
+            for (SpillJournal.Entry entry : batch.entries()) {
+                CompletableFuture<?> future = resend(entry);
+                if (future != null) {
+                    futures.add(future);
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.debug("Quota spill replay batch not acknowledged", e);
+            return false;
+        }
+
+        journal.commit(batch);
+        replayedCounter.increment(batch.entries().size());
+        return true;
+    }
+
+    private CompletableFuture<?> resend(SpillJournal.Entry entry) {
+        try {
+            if (entry.type() == TYPE_QUOTA_EVENT) {
+                QuotaConsumedEvent event = QuotaEventCodec.decode(entry.payload());
+                return kafkaTemplate.send(topicName, event.getTenantId(), event);
+            }
+            if (entry.type() == TYPE_ROLLUP) {
+                QuotaRollupEvent rollup = objectMapper.readValue(entry.payload(), QuotaRollupEvent.class);
+                return kafkaTemplate.send(rollupTopicName, rollup.getTenantId(), rollup);
+            }
+        } catch (IllegalArgumentException | java.io.IOException e) {
+            log.error("Skipping undecodable spill record, type={}", entry.type(), e);
+        }
+        // 无法解码的记录跳过，不阻塞后续回放
+        corruptCounter.increment();
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (replayThread != null) {
+            LockSupport.unpark(replayThread);
+            try {
+                replayThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            journal.close();
+            if (journal.pendingRecords() > 0) {
+                log.info("Quota spill journal closed with {} events pending replay", journal.pendingRecords());
+            }
+        }
+    }
+}
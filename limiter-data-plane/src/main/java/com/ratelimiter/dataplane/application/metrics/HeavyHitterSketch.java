@@ -0,0 +1,237 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 热点 key 的 Space-Saving 草图（Metwally et al.）：固定 capacity 个计数器，内存与 key 的基数无关
+ *
+ * 未跟踪的 key 到来且计数器已满时，替换计数最小的一个，新 key 继承其计数 +1 并把旧计数记为误差，
+ * 因此估计值不低于真实值，且真实值 >= count - error；在所属条带中频率超过 条带总数 / 条带计数器数 的 key 一定在草图中。
+ *
+ * 按 key 的哈希分成若干条带，各条带独立加锁，同一个 key 总落在同一条带；
+ * 命中已跟踪的 key 时只做一次哈希查找和堆调整；替换时复用计数器，计数器填满后不再分配对象
+ */
+public class HeavyHitterSketch {
+
+    public record HotKey(String tenantId, String resourceKey, long count, long error, long denied) {
+
+        /**
+         * 进入草图后被拒绝的比例（分母是进入草图后的真实请求数下界）
+         */
+        public double denialRatio() {
+            long observed = count - error;
+            return observed <= 0 ? 0.0 : (double) denied / observed;
+        }
+    }
+
+    /**
+     * 某一时刻的快照：条带内全部计数器按计数降序取前 topK
+     */
+    public record Snapshot(long totalChecks, List<HotKey> hotKeys) {
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param capacity 计数器总数，均分到各条带
+     * @param stripes  条带数，向上取整为 2 的幂
+     */
+    public HeavyHitterSketch(int capacity, int stripes) {
+        if (capacity <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("capacity and stripes must be positive");
+        }
+        int stripeCount = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        int perStripe = Math.max(1, (capacity + stripeCount - 1) / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(perStripe);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public void record(String tenantId, String resourceKey, boolean denied) {
+        int hash = Objects.hashCode(tenantId) * 31 + Objects.hashCode(resourceKey);
+        hash ^= hash >>> 16;
+        stripes[hash & stripeMask].record(tenantId, resourceKey, hash, denied);
+    }
+
+    /**
+     * 当前计数的快照，不清空
+     */
+    public Snapshot top(int topK) {
+        return snapshot(topK, false);
+    }
+
+    /**
+     * 取出快照并清空全部计数器（窗口轮转）
+     */
+    public Snapshot drain(int topK) {
+        return snapshot(topK, true);
+    }
+
+    public int capacity() {
+        return stripes.length * stripes[0].heap.length;
+    }
+
+    private Snapshot snapshot(int topK, boolean clear) {
+        long total = 0;
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            total += stripe.collect(hotKeys, clear);
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::count).reversed());
+        return new Snapshot(total, hotKeys.size() > topK ? List.copyOf(hotKeys.subList(0, topK)) : hotKeys);
+    }
+
+    /**
+     * 一个条带：计数器按计数组成最小堆（堆顶即替换对象），另有 key -> 计数器的索引
+     */
+    private static final class Stripe {
+
+        private final Counter[] heap;
+        private final Map<Key, Counter> index;
+        // 查找用的可变 key，只在持锁时使用，命中时不分配对象
+        private final Key probe = new Key();
+        private int size;
+        private long total;
+
+        Stripe(int capacity) {
+            this.heap = new Counter[capacity];
+            this.index = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void record(String tenantId, String resourceKey, int hash, boolean denied) {
+            total++;
+            probe.set(tenantId, resourceKey, hash);
+            Counter counter = index.get(probe);
+            if (counter != null) {
+                counter.count++;
+                if (denied) {
+                    counter.denied++;
+                }
+                siftDown(counter.heapIndex);
+                return;
+            }
+
+            if (size < heap.length) {
+                counter = new Counter();
+                counter.key.set(tenantId, resourceKey, hash);
+                counter.count = 1;
+                counter.denied = denied ? 1 : 0;
+                counter.heapIndex = size;
+                heap[size++] = counter;
+                siftUp(counter.heapIndex);
+            } else {
+                // 替换计数最小的 key：继承其计数，旧计数即新 key 的误差上限；移出索引后复用其 key 对象
+                counter = heap[0];
+                index.remove(counter.key);
+                counter.key.set(tenantId, resourceKey, hash);
+                counter.error = counter.count;
+                counter.count++;
+                counter.denied = denied ? 1 : 0;
+                siftDown(0);
+            }
+            index.put(counter.key, counter);
+        }
+
+        synchronized long collect(List<HotKey> out, boolean clear) {
+            for (int i = 0; i < size; i++) {
+                Counter counter = heap[i];
+                out.add(new HotKey(counter.key.tenantId, counter.key.resourceKey,
+                        counter.count, counter.error, counter.denied));
+            }
+            long collected = total;
+            if (clear) {
+                for (int i = 0; i < size; i++) {
+                    heap[i] = null;
+                }
+                index.clear();
+                size = 0;
+                total = 0;
+            }
+            return collected;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].count <= heap[i].count) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && heap[left].count < heap[smallest].count) {
+                    smallest = left;
+                }
+                if (right < size && heap[right].count < heap[smallest].count) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Counter counter = heap[a];
+            heap[a] = heap[b];
+            heap[b] = counter;
+            heap[a].heapIndex = a;
+            heap[b].heapIndex = b;
+        }
+    }
+
+    private static final class Counter {
+        final Key key = new Key();
+        long count;
+        long error;
+        long denied;
+        int heapIndex;
+    }
+
+    private static final class Key {
+        String tenantId;
+        String resourceKey;
+        int hash;
+
+        void set(String tenantId, String resourceKey, int hash) {
+            this.tenantId = tenantId;
+            this.resourceKey = resourceKey;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return hash == other.hash
+                    && Objects.equals(tenantId, other.tenantId)
+                    && Objects.equals(resourceKey, other.resourceKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHitterSketchTest {
+
+    // key 数不超过计数器数时计数精确
+    @Test
+    void shouldCountExactlyWhenKeysFit() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(64, 4);
+        for (int i = 0; i < 30; i++) {
+            sketch.record("tenant_a", "/orders", false);
+        }
+        for (int i = 0; i < 10; i++) {
+            sketch.record("tenant_b", "/orders", i % 2 == 0);
+        }
+        sketch.record("tenant_c", "/users", true);
+
+        HeavyHitterSketch.Snapshot snapshot = sketch.top(2);
+
+        assertThat(snapshot.totalChecks()).isEqualTo(41);
+        assertThat(snapshot.hotKeys()).containsExactly(
+                new HeavyHitterSketch.HotKey("tenant_a", "/orders", 30, 0, 0),
+                new HeavyHitterSketch.HotKey("tenant_b", "/orders", 10, 0, 5));
+        assertThat(snapshot.hotKeys().get(1).denialRatio()).isEqualTo(0.5);
+    }
+
+    // 大量长尾 key 淹没计数器时，头部 key 仍被找出，且 count - error <= 真实值 <= count
+    @Test
+    void shouldFindHeavyHittersAmongLongTail() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(256, 8);
+        Map<String, Integer> truth = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            String tenantId;
+            int r = random.nextInt(100);
+            if (r < 20) {
+                tenantId = "hot_1";
+            } else if (r < 30) {
+                tenantId = "hot_2";
+            } else if (r < 35) {
+                tenantId = "hot_3";
+            } else {
+                tenantId = "tail_" + random.nextInt(50_000);
+            }
+            sketch.record(tenantId, "/api", tenantId.equals("hot_1"));
+            truth.merge(tenantId, 1, Integer::sum);
+        }
+
+        List<HeavyHitterSketch.HotKey> top = sketch.top(3).hotKeys();
+
+        assertThat(top).extracting(HeavyHitterSketch.HotKey::tenantId).containsExactly("hot_1", "hot_2", "hot_3");
+        for (HeavyHitterSketch.HotKey hotKey : top) {
+            int actual = truth.get(hotKey.tenantId());
+            assertThat(hotKey.count()).isGreaterThanOrEqualTo(actual);
+            assertThat(hotKey.count() - hotKey.error()).isLessThanOrEqualTo(actual);
+        }
+        assertThat(top.get(0).denialRatio()).isEqualTo(1.0);
+        assertThat(top.get(1).denialRatio()).isZero();
+        assertThat(sketch.capacity()).isEqualTo(256);
+    }
+
+    // drain 返回当前窗口并清空，top 不清空
+    @Test
+    void drainShouldResetWindow() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(16, 1);
+        sketch.record("tenant_a", "/orders", false);
+        sketch.record("tenant_a", "/orders", false);
+
+        assertThat(sketch.top(10).totalChecks()).isEqualTo(2);
+        assertThat(sketch.drain(10).hotKeys()).hasSize(1);
+
+        HeavyHitterSketch.Snapshot next = sketch.top(10);
+        assertThat(next.totalChecks()).isZero();
+        assertThat(next.hotKeys()).isEmpty();
+    }
+}
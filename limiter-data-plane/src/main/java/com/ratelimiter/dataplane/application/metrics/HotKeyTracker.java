@@ -0,0 +1,155 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import com.ratelimiter.common.web.domain.event.HotKeysEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本节点的热点 key 跟踪
+ *
+ * 每次检查更新 {@link HeavyHitterSketch}；每个窗口结束时取出前 topK 个 key（请求速率、拒绝比例），
+ * 保存为最近一个窗口的报告并发送到 quota-hotkeys topic，然后清空草图开始下一个窗口。
+ * 不依赖按租户打标签的 Prometheus 指标，长尾租户再多内存也固定
+ */
+@Slf4j
+@Component
+public class HotKeyTracker {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final HeavyHitterSketch sketch;
+    private final int topK;
+    private final long windowMillis;
+    private final String topicName;
+    private final String nodeId;
+
+    private volatile long windowStart = System.currentTimeMillis();
+    private volatile HotKeysEvent lastWindow;
+    private ScheduledExecutorService scheduler;
+
+    public HotKeyTracker(KafkaTemplate<String, Object> kafkaTemplate,
+                         @Value("${app.metrics.hot-keys.enabled:true}") boolean enabled,
+                         @Value("${app.metrics.hot-keys.capacity:1024}") int capacity,
+                         @Value("${app.metrics.hot-keys.stripes:16}") int stripes,
+                         @Value("${app.metrics.hot-keys.top-k:20}") int topK,
+                         @Value("${app.metrics.hot-keys.window-ms:10000}") long windowMillis,
+                         @Value("${app.kafka.topic.quota-hotkeys:quota-hotkeys}") String topicName,
+                         @Value("${app.node-id:${HOSTNAME:data-plane}}") String nodeId) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.sketch = enabled ? new HeavyHitterSketch(capacity, stripes) : null;
+        this.topK = topK;
+        this.windowMillis = windowMillis;
+        this.topicName = topicName;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * 热路径：每次检查调用一次，拒绝（含 policy_not_found）计入拒绝比例
+     */
+    public void record(String tenantId, String resourceKey, boolean allowed) {
+        if (sketch != null) {
+            sketch.record(tenantId, resourceKey, !allowed);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (sketch == null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-keys-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::rotate, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        log.info("Hot key tracker started: capacity={}, topK={}, windowMs={}, topic={}",
+                sketch.capacity(), topK, windowMillis, topicName);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 结束当前窗口：保存并发送报告，清空草图
+     */
+    void rotate() {
+        try {
+            long now = System.currentTimeMillis();
+            HotKeysEvent report = toEvent(sketch.drain(topK), windowStart, now);
+            windowStart = now;
+            lastWindow = report;
+
+            if (log.isDebugEnabled() && !report.getHotKeys().isEmpty()) {
+                HotKeysEvent.HotKey hottest = report.getHotKeys().get(0);
+                log.debug("Hot keys ({} checks in {}ms), hottest {}|{}: {}/s, denial {}",
+                        report.getTotalChecks(), report.getWindowMs(), hottest.getTenantId(),
+                        hottest.getResourceKey(), String.format("%.1f", hottest.getRatePerSecond()),
+                        String.format("%.2f", hottest.getDenialRatio()));
+            }
+            if (report.getTotalChecks() > 0) {
+                kafkaTemplate.send(topicName, nodeId, report)
+                        .whenComplete((result, throwable) -> {
+                            if (throwable != null) {
+                                // 报告每个窗口都会重新生成，发送失败不重试
+                                log.warn("Failed to publish hot keys report: {}", throwable.getMessage());
+                            }
+                        });
+            }
+        } catch (Exception e) {
+            log.warn("Hot key window rotation failed", e);
+        }
+    }
+
+    /**
+     * /actuator/ratelimiter-hotkeys 的内容：最近一个完整窗口，以及当前窗口到目前为止的统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", sketch != null);
+        if (sketch == null) {
+            return snapshot;
+        }
+        snapshot.put("nodeId", nodeId);
+        snapshot.put("capacity", sketch.capacity());
+        snapshot.put("lastWindow", lastWindow);
+        snapshot.put("currentWindow", toEvent(sketch.top(topK), windowStart, System.currentTimeMillis()));
+        return snapshot;
+    }
+
+    private HotKeysEvent toEvent(HeavyHitterSketch.Snapshot snapshot, long start, long end) {
+        long elapsedMillis = Math.max(1, end - start);
+        List<HotKeysEvent.HotKey> hotKeys = snapshot.hotKeys().stream()
+                .map(hotKey -> HotKeysEvent.HotKey.builder()
+                        .tenantId(hotKey.tenantId())
+                        .resourceKey(hotKey.resourceKey())
+                        .count(hotKey.count())
+                        .error(hotKey.error())
+                        .denied(hotKey.denied())
+                        .ratePerSecond(hotKey.count() * 1000.0 / elapsedMillis)
+                        .denialRatio(hotKey.denialRatio())
+                        .build())
+                .toList();
+        return HotKeysEvent.builder()
+                .nodeId(nodeId)
+                .windowStart(start)
+                .windowMs(elapsedMillis)
+                .totalChecks(snapshot.totalChecks())
+                .hotKeys(hotKeys)
+                .build();
+    }
+}
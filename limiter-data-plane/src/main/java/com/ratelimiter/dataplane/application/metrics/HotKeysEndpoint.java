@@ -0,0 +1,27 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/ratelimiter-hotkeys
+ * GET 返回本节点最近一个窗口和当前窗口请求量最大的 key（速率、拒绝比例、估计误差）
+ */
+@Component
+@Endpoint(id = "ratelimiter-hotkeys")
+public class HotKeysEndpoint {
+
+    private final HotKeyTracker hotKeyTracker;
+
+    public HotKeysEndpoint(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        return hotKeyTracker.snapshot();
+    }
+}
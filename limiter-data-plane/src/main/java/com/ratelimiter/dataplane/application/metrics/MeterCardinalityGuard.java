@@ -0,0 +1,114 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 指标标签基数预算
+ * 前 maxTenants 个出现的租户保留自己的 tenant_id 标签，其余长尾租户折叠到 "other"；
+ * 每个已接纳租户的前 maxResourcesPerTenant 个资源保留 resource_key 标签，其余资源折叠到 "other"，
+ * 序列数上限为 maxTenants × maxResourcesPerTenant（加上折叠序列），避免 tenant_id × resource_key 无界增长
+ */
+public class MeterCardinalityGuard {
+
+    public static final String OTHER = "other";
+
+    private final int maxResourcesPerTenant;
+    private final Budget tenants;
+    private final Map<String, Budget> resourcesByTenant = new ConcurrentHashMap<>();
+
+    public MeterCardinalityGuard(int maxTenants, int maxResourcesPerTenant) {
+        this.maxResourcesPerTenant = maxResourcesPerTenant;
+        this.tenants = new Budget(maxTenants);
+    }
+
+    /**
+     * 预算内则接纳该租户并返回其 tenant_id，预算用完后返回 "other"
+     */
+    public String admitTenant(String tenantId) {
+        if (tenantId == null || !tenants.admit(tenantId)) {
+            return OTHER;
+        }
+        return tenantId;
+    }
+
+    /**
+     * 只读查询：已接纳的租户返回 tenant_id，否则返回 "other"
+     * 用于 policy_not_found 等路径，未知 key 不应占用预算
+     */
+    public String tenantLabelIfAdmitted(String tenantId) {
+        return tenantId != null && tenants.contains(tenantId) ? tenantId : OTHER;
+    }
+
+    /**
+     * 在租户的资源预算内接纳该资源并返回其 resource_key，预算用完后返回 "other"
+     * 折叠后的租户不再保留 resource_key，避免长尾租户的资源继续放大基数
+     */
+    public String admitResource(String tenantLabel, String resourceKey) {
+        if (OTHER.equals(tenantLabel) || resourceKey == null) {
+            return OTHER;
+        }
+        Budget resources = resourcesByTenant.computeIfAbsent(tenantLabel, tenant -> new Budget(maxResourcesPerTenant));
+        return resources.admit(resourceKey) ? resourceKey : OTHER;
+    }
+
+    /**
+     * 只读查询：租户已接纳的资源返回 resource_key，否则返回 "other"
+     */
+    public String resourceLabel(String tenantLabel, String resourceKey) {
+        if (OTHER.equals(tenantLabel) || resourceKey == null) {
+            return OTHER;
+        }
+        Budget resources = resourcesByTenant.get(tenantLabel);
+        return resources != null && resources.contains(resourceKey) ? resourceKey : OTHER;
+    }
+
+    public int getAdmittedTenantCount() {
+        return tenants.size();
+    }
+
+    /**
+     * 先到先得的名额：接纳满 max 个 key 后不再接纳新 key
+     */
+    private static final class Budget {
+
+        private final int max;
+        private final Set<String> admitted = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger count = new AtomicInteger();
+
+        Budget(int max) {
+            this.max = max;
+        }
+
+        boolean contains(String key) {
+            return admitted.contains(key);
+        }
+
+        boolean admit(String key) {
+            if (admitted.contains(key)) {
+                return true;
+            }
+
+            while (true) {
+                int current = count.get();
+                if (current >= max) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    break;
+                }
+            }
+            if (!admitted.add(key)) {
+                // 并发接纳了同一个 key，归还名额
+                count.decrementAndGet();
+            }
+            return true;
+        }
+
+        int size() {
+            return count.get();
+        }
+    }
+}
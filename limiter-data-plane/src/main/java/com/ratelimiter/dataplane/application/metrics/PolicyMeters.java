@@ -0,0 +1,35 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 单条策略的预注册指标句柄
+ * 每个策略句柄只解析一次，热路径上只做 increment/record，不再构造 Tags 和查找 MeterRegistry
+ */
+@Getter
+@AllArgsConstructor
+public class PolicyMeters {
+
+    private final String tenantLabel;
+    private final String resourceLabel;
+
+    // rate_limit_check_duration_seconds{process_path, allowed}
+    private final Timer localAllowedTimer;
+    private final Timer redisAllowedTimer;
+    private final Timer redisDeniedTimer;
+
+    // rate_limit_allowed_total{process_path}
+    private final Counter localAllowed;
+    private final Counter redisAllowed;
+
+    // rate_limit_denied_total{reason="quota_exceeded", process_path="redis"}，其他拒绝原因走慢路径
+    private final Counter redisQuotaExceeded;
+
+    private final Counter localPath;
+    private final Counter redisPath;
+    private final Counter policyHit;
+    private final Counter eventPublished;
+}
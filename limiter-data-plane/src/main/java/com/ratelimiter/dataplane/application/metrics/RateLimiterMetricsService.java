@@ -1,9 +1,12 @@
 package com.ratelimiter.dataplane.application.metrics;
 
+import com.ratelimiter.dataplane.domain.CompiledPolicy;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.TimeUnit;
@@ -13,101 +16,190 @@ import java.util.concurrent.TimeUnit;
 public class RateLimiterMetricsService {
 
     private final MeterRegistry meterRegistry;
+    private final MeterCardinalityGuard cardinalityGuard;
 
-    // 不再需要预先定义Counter成员变量
+    // 不带标签的全局指标，启动时注册一次
+    private final Counter checkTotal;
 
-    public RateLimiterMetricsService(MeterRegistry meterRegistry) {
+    public RateLimiterMetricsService(MeterRegistry meterRegistry,
+                                     @Value("${app.metrics.max-tenant-series:500}") int maxTenantSeries,
+                                     @Value("${app.metrics.max-resources-per-tenant:50}") int maxResourcesPerTenant) {
         this.meterRegistry = meterRegistry;
+        this.cardinalityGuard = new MeterCardinalityGuard(maxTenantSeries, maxResourcesPerTenant);
+        this.checkTotal = meterRegistry.counter("rate_limit_check_total");
+        meterRegistry.gauge("rate_limit_metrics_tenant_series", cardinalityGuard,
+                MeterCardinalityGuard::getAdmittedTenantCount);
     }
 
     /**
-     * 记录限流检查指标
+     * 开始限流检查：计数并返回起始时间（纳秒），不再分配 Timer.Sample
      */
-    public Timer.Sample startRateLimitCheck() {
-        // 使用meterRegistry直接记录指标
-        meterRegistry.counter("rate_limit_check_total").increment();
-        return Timer.start(meterRegistry);
+    public long startRateLimitCheck() {
+        checkTotal.increment();
+        return System.nanoTime();
     }
 
     /**
-     * 完成限流检查并记录结果
+     * 获取策略的预注册指标句柄（每个策略句柄只解析一次）
      */
-    public void finishRateLimitCheck(Timer.Sample sample, boolean allowed, String reason, String processPath,
+    public PolicyMeters metersFor(CompiledPolicy policy) {
+        PolicyMeters meters = policy.getMeters();
+        if (meters == null) {
+            String tenantLabel = cardinalityGuard.admitTenant(policy.getTenantId());
+            String resourceLabel = cardinalityGuard.admitResource(tenantLabel, policy.getResourceKey());
+            meters = registerMeters(tenantLabel, resourceLabel);
+            policy.setMeters(meters);
+        }
+        return meters;
+    }
+
+    private PolicyMeters registerMeters(String tenantLabel, String resourceLabel) {
+        Tags base = Tags.of("tenant_id", tenantLabel, "resource_key", resourceLabel);
+        return new PolicyMeters(
+                tenantLabel,
+                resourceLabel,
+                checkTimer(base, "local", true),
+                checkTimer(base, "redis", true),
+                checkTimer(base, "redis", false),
+                meterRegistry.counter("rate_limit_allowed_total", base.and("process_path", "local")),
+                meterRegistry.counter("rate_limit_allowed_total", base.and("process_path", "redis")),
+                meterRegistry.counter("rate_limit_denied_total",
+                        base.and("reason", "quota_exceeded", "process_path", "redis")),
+                meterRegistry.counter("rate_limit_local_path_total", base),
+                meterRegistry.counter("rate_limit_redis_path_total", base),
+                meterRegistry.counter("rate_limit_policy_hit_total", base),
+                meterRegistry.counter("quota_event_published_total", base)
+        );
+    }
+
+    private Timer checkTimer(Tags base, String processPath, boolean allowed) {
+        return Timer.builder("rate_limit_check_duration_seconds")
+                .tags(base.and("process_path", processPath, "allowed", String.valueOf(allowed)))
+                .register(meterRegistry);
+    }
+
+    /**
+     * 完成限流检查并记录结果（命中策略的热路径，只做 increment/record）
+     */
+    public void finishRateLimitCheck(long startNanos, PolicyMeters meters, boolean allowed, String reason,
+                                     String processPath) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        if ("local".equals(processPath)) {
+            meters.getLocalAllowedTimer().record(elapsedNanos, TimeUnit.NANOSECONDS);
+            meters.getLocalAllowed().increment();
+            meters.getLocalPath().increment();
+            return;
+        }
+
+        meters.getRedisPath().increment();
+        if (allowed) {
+            meters.getRedisAllowedTimer().record(elapsedNanos, TimeUnit.NANOSECONDS);
+            meters.getRedisAllowed().increment();
+        } else {
+            meters.getRedisDeniedTimer().record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if ("quota_exceeded".equals(reason)) {
+                meters.getRedisQuotaExceeded().increment();
+            } else {
+                deniedCounter(meters.getTenantLabel(), meters.getResourceLabel(), reason, processPath).increment();
+            }
+        }
+    }
+
+    /**
+     * 完成限流检查并记录结果（无策略句柄的慢路径：policy_not_found / internal_error）
+     * 未知租户 / 资源不占用标签预算，统一折叠到 "other"
+     */
+    public void finishRateLimitCheck(long startNanos, boolean allowed, String reason, String processPath,
                                      String tenantId, String resourceKey) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        String tenantLabel = cardinalityGuard.tenantLabelIfAdmitted(tenantId);
+        String resourceLabel = cardinalityGuard.resourceLabel(tenantLabel, resourceKey);
+
         // 记录总耗时
-        sample.stop(Timer.builder("rate_limit_check_duration_seconds")
+        Timer.builder("rate_limit_check_duration_seconds")
                 .tags(Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey,
+                        "tenant_id", tenantLabel,
+                        "resource_key", resourceLabel,
                         "process_path", processPath,
                         "allowed", String.valueOf(allowed)
                 ))
-                .register(meterRegistry));
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
 
         // 记录结果
         if (allowed) {
             meterRegistry.counter("rate_limit_allowed_total",
                     Tags.of(
-                            "tenant_id", tenantId,
-                            "resource_key", resourceKey,
+                            "tenant_id", tenantLabel,
+                            "resource_key", resourceLabel,
                             "process_path", processPath
                     )).increment();
         } else {
-            meterRegistry.counter("rate_limit_denied_total",
-                    Tags.of(
-                            "tenant_id", tenantId,
-                            "resource_key", resourceKey,
-                            "reason", reason,
-                            "process_path", processPath
-                    )).increment();
+            deniedCounter(tenantLabel, resourceLabel, reason, processPath).increment();
         }
+    }
 
-        // 记录处理路径
-        if ("local".equals(processPath)) {
-            meterRegistry.counter("rate_limit_local_path_total",
-                    Tags.of(
-                            "tenant_id", tenantId,
-                            "resource_key", resourceKey
-                    )).increment();
-        } else if ("redis".equals(processPath)) {
-            meterRegistry.counter("rate_limit_redis_path_total",
-                    Tags.of(
-                            "tenant_id", tenantId,
-                            "resource_key", resourceKey
-                    )).increment();
-        }
+    private Counter deniedCounter(String tenantLabel, String resourceLabel, String reason, String processPath) {
+        return meterRegistry.counter("rate_limit_denied_total",
+                Tags.of(
+                        "tenant_id", tenantLabel,
+                        "resource_key", resourceLabel,
+                        "reason", reason == null ? "" : reason,
+                        "process_path", processPath
+                ));
     }
 
     /**
      * 记录策略缓存命中
      */
-    public void recordPolicyHit(String tenantId, String resourceKey) {
-        meterRegistry.counter("rate_limit_policy_hit_total",
-                Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey
-                )).increment();
+    public void recordPolicyHit(PolicyMeters meters) {
+        meters.getPolicyHit().increment();
     }
 
     /**
      * 记录策略未找到
      */
     public void recordPolicyNotFound(String tenantId, String resourceKey) {
+        String tenantLabel = cardinalityGuard.tenantLabelIfAdmitted(tenantId);
         meterRegistry.counter("rate_limit_policy_not_found_total",
                 Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey
+                        "tenant_id", tenantLabel,
+                        "resource_key", cardinalityGuard.resourceLabel(tenantLabel, resourceKey)
                 )).increment();
     }
 
+    /**
+     * 记录按需拉取策略的结果：found/absent/error/rejected
+     * 不带 tenant 标签，避免未知 key 洪峰制造无界时间序列
+     */
+    public void recordPolicyFetch(String result) {
+        meterRegistry.counter("rate_limit_policy_fetch_total", Tags.of("result", result)).increment();
+    }
+
+    /**
+     * 记录负缓存命中（已确认不存在的策略被直接拒绝）
+     */
+    public void recordPolicyNegativeCacheHit() {
+        meterRegistry.counter("rate_limit_policy_negative_hit_total").increment();
+    }
+
     /**
      * 记录事件发布成功
      */
+    public void recordEventPublished(PolicyMeters meters) {
+        meters.getEventPublished().increment();
+    }
+
+    /**
+     * 记录事件发布成功（无策略句柄）
+     */
     public void recordEventPublished(String tenantId, String resourceKey) {
+        String tenantLabel = cardinalityGuard.tenantLabelIfAdmitted(tenantId);
         meterRegistry.counter("quota_event_published_total",
                 Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey
+                        "tenant_id", tenantLabel,
+                        "resource_key", cardinalityGuard.resourceLabel(tenantLabel, resourceKey)
                 )).increment();
     }
 
@@ -115,10 +207,11 @@ public class RateLimiterMetricsService {
      * 记录事件发布失败
      */
     public void recordEventPublishFailed(String tenantId, String resourceKey, String errorType) {
+        String tenantLabel = cardinalityGuard.tenantLabelIfAdmitted(tenantId);
         meterRegistry.counter("quota_event_publish_failed_total",
                 Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey,
+                        "tenant_id", tenantLabel,
+                        "resource_key", cardinalityGuard.resourceLabel(tenantLabel, resourceKey),
                         "error_type", errorType
                 )).increment();
     }
@@ -137,11 +230,12 @@ public class RateLimiterMetricsService {
      * 记录限流延迟（替代原来的Timer用法）
      */
     public void recordRateLimitLatency(long durationMs, String tenantId, String resourceKey, String processPath) {
+        String tenantLabel = cardinalityGuard.tenantLabelIfAdmitted(tenantId);
         meterRegistry.timer("rate_limit_latency_ms",
                 Tags.of(
-                        "tenant_id", tenantId,
-                        "resource_key", resourceKey,
+                        "tenant_id", tenantLabel,
+                        "resource_key", cardinalityGuard.resourceLabel(tenantLabel, resourceKey),
                         "process_path", processPath
                 )).record(durationMs, TimeUnit.MILLISECONDS);
     }
-}
\ No newline at end of file
+}
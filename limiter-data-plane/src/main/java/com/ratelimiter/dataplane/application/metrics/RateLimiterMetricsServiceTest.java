@@ -0,0 +1,163 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.domain.CompiledPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterMetricsServiceTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static CompiledPolicy compiledPolicy(String tenantId, String resourceKey) {
+        PolicyDto dto = new PolicyDto();
+        dto.setTenantId(tenantId);
+        dto.setResourceKey(resourceKey);
+        dto.setCapacity(1000L);
+        dto.setRefillRate(BigDecimal.TEN);
+        dto.setEnabled(true);
+        dto.setVersion("v1");
+        return new CompiledPolicy(dto);
+    }
+
+    /**
+     * 改造前的写法：Timer.Sample + 每次按标签查找 Meter，作为分配量的对照组
+     */
+    private static void legacyCheck(MeterRegistry registry, String tenantId, String resourceKey) {
+        registry.counter("rate_limit_check_total").increment();
+        Timer.Sample sample = Timer.start(registry);
+        registry.counter("rate_limit_policy_hit_total",
+                Tags.of("tenant_id", tenantId, "resource_key", resourceKey)).increment();
+        sample.stop(Timer.builder("rate_limit_check_duration_seconds")
+                .tags(Tags.of(
+                        "tenant_id", tenantId,
+                        "resource_key", resourceKey,
+                        "process_path", "local",
+                        "allowed", "true"
+                ))
+                .register(registry));
+        registry.counter("rate_limit_allowed_total",
+                Tags.of("tenant_id", tenantId, "resource_key", resourceKey, "process_path", "local")).increment();
+        registry.counter("rate_limit_local_path_total",
+                Tags.of("tenant_id", tenantId, "resource_key", resourceKey)).increment();
+        registry.counter("quota_event_published_total",
+                Tags.of("tenant_id", tenantId, "resource_key", resourceKey)).increment();
+    }
+
+    private static void handleCheck(RateLimiterMetricsService metricsService, CompiledPolicy policy) {
+        long startNanos = metricsService.startRateLimitCheck();
+        PolicyMeters meters = metricsService.metersFor(policy);
+        metricsService.recordPolicyHit(meters);
+        metricsService.finishRateLimitCheck(startNanos, meters, true, "", "local");
+        metricsService.recordEventPublished(meters);
+    }
+
+    private static long allocatedBytes(Runnable body) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        body.run();
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    // 每次检查的分配量：预注册句柄应远低于按标签查找
+    @Test
+    void handlePathShouldAllocateFarLessThanTagLookup() {
+        SimpleMeterRegistry legacyRegistry = new SimpleMeterRegistry();
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(new SimpleMeterRegistry(), 100, 50);
+        CompiledPolicy policy = compiledPolicy("tenant_001", "/api/v1/orders");
+
+        for (int i = 0; i < WARMUP; i++) {
+            legacyCheck(legacyRegistry, "tenant_001", "/api/v1/orders");
+            handleCheck(metricsService, policy);
+        }
+
+        long legacyBytes = allocatedBytes(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                legacyCheck(legacyRegistry, "tenant_001", "/api/v1/orders");
+            }
+        });
+        long handleBytes = allocatedBytes(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                handleCheck(metricsService, policy);
+            }
+        });
+
+        long legacyPerCheck = legacyBytes / ITERATIONS;
+        long handlePerCheck = handleBytes / ITERATIONS;
+        // 按标签查找每次约 1.5KB（Tags 数组、Meter.Id 等）；预算句柄路径热身后应接近零分配
+        assertThat(legacyPerCheck).as("legacy bytes per check").isGreaterThan(256);
+        assertThat(handlePerCheck).as("handle bytes per check").isLessThanOrEqualTo(32);
+        assertThat(handlePerCheck).as("handle vs legacy bytes per check").isLessThan(legacyPerCheck / 4);
+    }
+
+    // 超出预算的租户折叠到 "other"，时间序列数量有界
+    @Test
+    void shouldFoldTenantsBeyondBudget() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(registry, 3, 50);
+
+        for (int i = 0; i < 50; i++) {
+            CompiledPolicy policy = compiledPolicy("tenant_" + i, "/api/resource_" + i);
+            handleCheck(metricsService, policy);
+        }
+        // 未接纳的租户走慢路径也不会新增序列
+        metricsService.recordPolicyNotFound("unknown_tenant", "/api/unknown");
+
+        assertThat(registry.find("rate_limit_policy_hit_total").counters()).hasSize(4);
+        assertThat(registry.get("rate_limit_policy_hit_total")
+                .tags("tenant_id", MeterCardinalityGuard.OTHER, "resource_key", MeterCardinalityGuard.OTHER)
+                .counter().count()).isEqualTo(47.0);
+        assertThat(registry.get("rate_limit_policy_not_found_total")
+                .tags("tenant_id", MeterCardinalityGuard.OTHER)
+                .counter().count()).isEqualTo(1.0);
+    }
+
+    // 已接纳租户超出资源预算的资源折叠到 "other"，慢路径上未接纳的资源不占用预算
+    @Test
+    void shouldFoldResourcesBeyondPerTenantBudget() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(registry, 100, 2);
+
+        for (int i = 0; i < 10; i++) {
+            handleCheck(metricsService, compiledPolicy("tenant_001", "/api/resource_" + i));
+        }
+        handleCheck(metricsService, compiledPolicy("tenant_002", "/api/resource_9"));
+        metricsService.recordPolicyNotFound("tenant_001", "/api/unknown");
+
+        assertThat(registry.find("rate_limit_policy_hit_total").tag("tenant_id", "tenant_001").counters())
+                .hasSize(3);
+        assertThat(registry.get("rate_limit_policy_hit_total")
+                .tags("tenant_id", "tenant_001", "resource_key", MeterCardinalityGuard.OTHER)
+                .counter().count()).isEqualTo(8.0);
+        // 资源预算按租户独立计算
+        assertThat(registry.get("rate_limit_policy_hit_total")
+                .tags("tenant_id", "tenant_002", "resource_key", "/api/resource_9")
+                .counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("rate_limit_policy_not_found_total")
+                .tags("tenant_id", "tenant_001", "resource_key", MeterCardinalityGuard.OTHER)
+                .counter().count()).isEqualTo(1.0);
+    }
+
+    // 策略刷新后沿用已解析的指标句柄
+    @Test
+    void refreshedPolicyShouldReuseMeters() {
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(new SimpleMeterRegistry(), 100, 50);
+        CompiledPolicy first = compiledPolicy("tenant_001", "/api/v1/orders");
+        PolicyMeters meters = metricsService.metersFor(first);
+
+        CompiledPolicy refreshed = new CompiledPolicy(first.getPolicy(), first);
+
+        assertThat(metricsService.metersFor(refreshed)).isSameAs(meters);
+    }
+}
@@ -0,0 +1,35 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/ratelimiter-latency
+ * GET 返回各阶段 p50/p99/p99.9/max，DELETE 重置统计区间
+ */
+@Component
+@Endpoint(id = "ratelimiter-latency")
+public class StageLatencyEndpoint {
+
+    private final StageLatencyRecorder latencyRecorder;
+
+    public StageLatencyEndpoint(StageLatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    @ReadOperation
+    public Map<String, Object> latency() {
+        return latencyRecorder.snapshot();
+    }
+
+    @DeleteOperation
+    public Map<String, Object> reset() {
+        Map<String, Object> lastInterval = latencyRecorder.snapshot();
+        latencyRecorder.reset();
+        return lastInterval;
+    }
+}
@@ -0,0 +1,140 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流检查分阶段延迟记录（纳秒精度）
+ *
+ * 每个 (stage, processPath) 一个 HdrHistogram Recorder：写入端 wait-free，不加锁也不分配；
+ * 读取端把区间直方图累加到 accumulated 中，reset 时清空，用来定位尾延迟来自哪个阶段
+ */
+@Slf4j
+@Component
+public class StageLatencyRecorder {
+
+    public enum Stage {
+        POLICY_LOOKUP,
+        LOCAL_BUCKET,
+        REDIS,
+        EVENT_PUBLISH,
+        TOTAL
+    }
+
+    // 未执行的阶段传入该值，不做记录
+    public static final long SKIPPED = -1L;
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final long highestTrackableNanos;
+    private final Map<Stage, ConcurrentMap<String, StageHistogram>> histograms = new EnumMap<>(Stage.class);
+    private volatile long resetAtMillis = System.currentTimeMillis();
+
+    public StageLatencyRecorder(@Value("${app.metrics.latency.highest-trackable-ms:60000}") long highestTrackableMillis) {
+        this.highestTrackableNanos = TimeUnit.MILLISECONDS.toNanos(highestTrackableMillis);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 记录一次检查的各阶段耗时，未经过的阶段传 SKIPPED
+     */
+    public void recordCheck(String processPath, long startNanos, long policyLookupNanos, long localBucketNanos,
+                            long redisNanos, long eventPublishNanos) {
+        long totalNanos = System.nanoTime() - startNanos;
+        record(Stage.POLICY_LOOKUP, processPath, policyLookupNanos);
+        record(Stage.LOCAL_BUCKET, processPath, localBucketNanos);
+        record(Stage.REDIS, processPath, redisNanos);
+        record(Stage.EVENT_PUBLISH, processPath, eventPublishNanos);
+        record(Stage.TOTAL, processPath, totalNanos);
+    }
+
+    public void record(Stage stage, String processPath, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        StageHistogram histogram = histograms.get(stage).get(processPath);
+        if (histogram == null) {
+            histogram = histograms.get(stage).computeIfAbsent(processPath, path -> new StageHistogram());
+        }
+        // 超出量程的值截断到上限，避免 recordValue 抛异常
+        histogram.recorder.recordValue(Math.min(nanos, highestTrackableNanos));
+    }
+
+    /**
+     * 自上次 reset 以来的分位数快照，单位微秒
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            Map<String, StageSnapshot> byPath = new LinkedHashMap<>();
+            histograms.get(stage).forEach((path, histogram) -> byPath.put(path, histogram.snapshot()));
+            if (!byPath.isEmpty()) {
+                stages.put(stage.name(), byPath);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("unit", "microseconds");
+        result.put("since", resetAtMillis);
+        result.put("stages", stages);
+        return result;
+    }
+
+    /**
+     * 清空所有直方图，开始新的统计区间
+     */
+    public void reset() {
+        for (ConcurrentMap<String, StageHistogram> byPath : histograms.values()) {
+            byPath.values().forEach(StageHistogram::reset);
+        }
+        resetAtMillis = System.currentTimeMillis();
+        log.info("Stage latency histograms reset");
+    }
+
+    public record StageSnapshot(long count, double p50, double p99, double p999, double max, double mean) {
+    }
+
+    private class StageHistogram {
+
+        private final Recorder recorder = new Recorder(1, highestTrackableNanos, SIGNIFICANT_DIGITS);
+
+        // 以下字段只在持有 this 锁的读取端访问
+        private final Histogram accumulated = new Histogram(1, highestTrackableNanos, SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        synchronized StageSnapshot snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            accumulated.add(interval);
+            return new StageSnapshot(
+                    accumulated.getTotalCount(),
+                    toMicros(accumulated.getValueAtPercentile(50.0)),
+                    toMicros(accumulated.getValueAtPercentile(99.0)),
+                    toMicros(accumulated.getValueAtPercentile(99.9)),
+                    toMicros(accumulated.getMaxValue()),
+                    accumulated.getMean() / 1000.0
+            );
+        }
+
+        synchronized void reset() {
+            // 丢弃尚未读取的区间数据
+            interval = recorder.getIntervalHistogram(interval);
+            accumulated.reset();
+        }
+
+        private double toMicros(long nanos) {
+            return nanos / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ratelimiter.dataplane.application.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageLatencyRecorderTest {
+
+    @SuppressWarnings("unchecked")
+    private static StageLatencyRecorder.StageSnapshot stage(Map<String, Object> snapshot, String stage, String path) {
+        Map<String, Object> stages = (Map<String, Object>) snapshot.get("stages");
+        Map<String, StageLatencyRecorder.StageSnapshot> byPath =
+                (Map<String, StageLatencyRecorder.StageSnapshot>) stages.get(stage);
+        return byPath == null ? null : byPath.get(path);
+    }
+
+    // 分位数按阶段、处理路径分别统计，未经过的阶段不记录
+    @Test
+    void shouldTrackPercentilesPerStageAndPath() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder(1000);
+
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(StageLatencyRecorder.Stage.REDIS, "redis", TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        recorder.record(StageLatencyRecorder.Stage.LOCAL_BUCKET, "local", 500);
+        recorder.record(StageLatencyRecorder.Stage.LOCAL_BUCKET, "redis", StageLatencyRecorder.SKIPPED);
+
+        Map<String, Object> snapshot = recorder.snapshot();
+        StageLatencyRecorder.StageSnapshot redis = stage(snapshot, "REDIS", "redis");
+
+        assertThat(redis.count()).isEqualTo(1000);
+        assertThat(redis.p50()).isBetween(495.0, 505.0);
+        assertThat(redis.p99()).isBetween(985.0, 995.0);
+        assertThat(redis.max()).isBetween(999.0, 1001.0);
+        assertThat(stage(snapshot, "LOCAL_BUCKET", "local").count()).isEqualTo(1);
+        assertThat(stage(snapshot, "LOCAL_BUCKET", "redis")).isNull();
+    }
+
+    // 读取累加区间数据，reset 后重新开始统计
+    @Test
+    void shouldAccumulateAcrossReadsAndClearOnReset() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder(1000);
+
+        recorder.record(StageLatencyRecorder.Stage.TOTAL, "local", 1_000);
+        recorder.snapshot();
+        recorder.record(StageLatencyRecorder.Stage.TOTAL, "local", 2_000);
+        assertThat(stage(recorder.snapshot(), "TOTAL", "local").count()).isEqualTo(2);
+
+        recorder.reset();
+        assertThat(stage(recorder.snapshot(), "TOTAL", "local").count()).isZero();
+
+        // 超出量程的值截断而不是抛异常
+        recorder.record(StageLatencyRecorder.Stage.TOTAL, "local", TimeUnit.SECONDS.toNanos(10));
+        assertThat(stage(recorder.snapshot(), "TOTAL", "local").max()).isGreaterThan(999_000.0);
+    }
+
+    // 并发写入不丢数据
+    @Test
+    void shouldNotLoseConcurrentRecords() throws InterruptedException {
+        StageLatencyRecorder recorder = new StageLatencyRecorder(1000);
+        int threadCount = 8;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    recorder.recordCheck("local", System.nanoTime(), 100, 200,
+                            StageLatencyRecorder.SKIPPED, 300);
+                }
+                done.countDown();
+            }).start();
+        }
+        // 写入过程中读取，验证读写不互相阻塞
+        while (done.getCount() > 0) {
+            recorder.snapshot();
+        }
+        done.await();
+
+        assertThat(stage(recorder.snapshot(), "POLICY_LOOKUP", "local").count())
+                .isEqualTo((long) threadCount * perThread);
+        assertThat(stage(recorder.snapshot(), "REDIS", "local")).isNull();
+    }
+}
@@ -0,0 +1,46 @@
+package com.ratelimiter.dataplane.application.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 一次限流检查（checkAndConsume）
+ * 只提交超过阈值的慢检查，字段仅在 shouldCommit() 为 true 时赋值
+ */
+@Name("com.ratelimiter.Check")
+@Label("Rate Limit Check")
+@Category({"Rate Limiter", "Data Plane"})
+@Description("限流检查的处理路径、策略、令牌数和结果")
+@Threshold("10 ms")
+@StackTrace(false)
+public class CheckEvent extends Event {
+
+    @Label("Tenant Id")
+    public String tenantId;
+
+    @Label("Resource Key")
+    public String resourceKey;
+
+    @Label("Policy Version")
+    public String policyVersion;
+
+    @Label("Process Path")
+    public String processPath;
+
+    @Label("Tokens")
+    public long tokens;
+
+    @Label("Allowed")
+    public boolean allowed;
+
+    @Label("Reason")
+    public String reason;
+
+    @Label("Remaining")
+    public long remaining;
+}
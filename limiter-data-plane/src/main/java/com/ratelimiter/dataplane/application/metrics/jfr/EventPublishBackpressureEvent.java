@@ -0,0 +1,30 @@
+package com.ratelimiter.dataplane.application.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 事件发布被阻塞：请求线程等待环形缓冲区空间（WAIT 策略），
+ * 或 drainer 线程阻塞在 KafkaTemplate.send（生产者缓冲区满或等待元数据）
+ */
+@Name("com.ratelimiter.EventPublishBackpressure")
+@Label("Event Publish Backpressure")
+@Category({"Rate Limiter", "Kafka"})
+@Description("发布配额事件时线程被阻塞的时长")
+@Threshold("1 ms")
+public class EventPublishBackpressureEvent extends Event {
+
+    @Label("Topic")
+    public String topic;
+
+    @Label("Tenant Id")
+    public String tenantId;
+
+    @Label("Request Id")
+    public String requestId;
+}
@@ -0,0 +1,79 @@
+package com.ratelimiter.dataplane.application.metrics.jfr;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JfrEventsTest {
+
+    private static PolicyDto policy(String tenantId) {
+        PolicyDto dto = new PolicyDto();
+        dto.setTenantId(tenantId);
+        dto.setResourceKey("/api/v1/orders");
+        dto.setCapacity(100L);
+        dto.setRefillRate(BigDecimal.TEN);
+        dto.setEnabled(true);
+        dto.setVersion("v1");
+        return dto;
+    }
+
+    private static List<RecordedEvent> record(Runnable body) throws Exception {
+        Path file = Files.createTempFile("ratelimiter", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PolicySnapshotSwapEvent.class);
+            // 与 @Threshold 保持一致
+            recording.enable(CheckEvent.class).withThreshold(Duration.ofMillis(10));
+            recording.start();
+            body.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // 策略快照替换时提交事件，记录替换前后的策略数
+    @Test
+    void shouldEmitSnapshotSwapEvent() throws Exception {
+        PolicyCache cache = new PolicyCache(new SimpleMeterRegistry(), 1000);
+        cache.updatePolicies(List.of(policy("tenant_001")));
+
+        List<RecordedEvent> events = record(() ->
+                cache.updatePolicies(List.of(policy("tenant_001"), policy("tenant_002"))));
+
+        RecordedEvent swap = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.ratelimiter.PolicySnapshotSwap"))
+                .findFirst()
+                .orElseThrow();
+        assertThat(swap.getInt("previousCount")).isEqualTo(1);
+        assertThat(swap.getInt("policyCount")).isEqualTo(2);
+    }
+
+    // 低于阈值的检查事件不提交
+    @Test
+    void shouldSkipFastChecksBelowThreshold() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            CheckEvent event = new CheckEvent();
+            event.begin();
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        });
+
+        assertThat(events).noneMatch(e -> e.getEventType().getName().equals("com.ratelimiter.Check"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.ratelimiter.dataplane.application.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 策略缓存全量快照替换（低频，默认全部记录）
+ */
+@Name("com.ratelimiter.PolicySnapshotSwap")
+@Label("Policy Snapshot Swap")
+@Category({"Rate Limiter", "Policy"})
+@Description("全量同步时构建并替换策略快照")
+@StackTrace(false)
+public class PolicySnapshotSwapEvent extends Event {
+
+    @Label("Previous Policy Count")
+    public int previousCount;
+
+    @Label("Policy Count")
+    public int policyCount;
+
+    @Label("Received Policy Count")
+    public int receivedCount;
+}
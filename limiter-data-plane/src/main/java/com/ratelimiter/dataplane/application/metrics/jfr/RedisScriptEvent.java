@@ -0,0 +1,36 @@
+package com.ratelimiter.dataplane.application.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 一次 token bucket Lua 脚本执行（包含网络往返）
+ */
+@Name("com.ratelimiter.RedisScript")
+@Label("Redis Token Bucket Script")
+@Category({"Rate Limiter", "Redis"})
+@Description("Redis token bucket 脚本的执行耗时和结果")
+@Threshold("5 ms")
+@StackTrace(false)
+public class RedisScriptEvent extends Event {
+
+    @Label("Tenant Id")
+    public String tenantId;
+
+    @Label("Resource Key")
+    public String resourceKey;
+
+    @Label("Tokens")
+    public long tokens;
+
+    @Label("Allowed")
+    public boolean allowed;
+
+    @Label("Remaining")
+    public long remaining;
+}
@@ -1,10 +1,25 @@
 package com.ratelimiter.dataplane.config;
 
+import com.ratelimiter.common.web.domain.event.HotKeysEvent;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventSerializer;
 import org.apache.kafka.clients. admin.NewTopic;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org. springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation. Bean;
 import org.springframework.context. annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 public class KafkaConfig {
@@ -12,14 +27,73 @@ public class KafkaConfig {
     @Value("${app.kafka.topic.quota-events:quota-events}")
     private String quotaEventsTopic;
 
+    @Value("${app.kafka.topic.quota-rollups:quota-rollups}")
+    private String quotaRollupsTopic;
+
+    @Value("${app.kafka.topic.quota-hotkeys:quota-hotkeys}")
+    private String quotaHotKeysTopic;
+
+    // 分区数只能增加：KafkaAdmin 启动时发现现有 topic 分区更少会自动扩容
+    @Value("${app.kafka.topic.quota-events-partitions:3}")
+    private int quotaEventsPartitions;
+
+    @Value("${app.kafka.topic.quota-rollups-partitions:3}")
+    private int quotaRollupsPartitions;
+
+    // quota-events 的编码：binary（QuotaEventCodec）/ json（回滚用）
+    @Value("${app.kafka.codec.quota-events:binary}")
+    private String quotaEventsCodec;
+
+    /**
+     * 按事件类型选择序列化器：QuotaConsumedEvent 走二进制编码，其他事件（汇总、热点 key 报告）仍为 JSON
+     */
+    @Bean
+    public ProducerFactory<String, Object> producerFactory(KafkaProperties kafkaProperties) {
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(QuotaConsumedEvent.class,
+                "json".equalsIgnoreCase(quotaEventsCodec) ? new JsonSerializer<>() : new QuotaEventSerializer());
+        serializers.put(QuotaRollupEvent.class, new JsonSerializer<>());
+        serializers.put(HotKeysEvent.class, new JsonSerializer<>());
+
+        return new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(null),
+                new StringSerializer(), new DelegatingByTypeSerializer(serializers));
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
     /**
      * 自动创建 quota-events topic
      */
     @Bean
     public NewTopic quotaEventsTopic() {
         return TopicBuilder.name(quotaEventsTopic)
-                .partitions(3)          // 3个分区，支持并发消费
+                .partitions(quotaEventsPartitions)  // Accounting 按分区并行写入
                 .replicas(1)            // 单机环境用1个副本
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * 允许决策汇总 topic
+     */
+    @Bean
+    public NewTopic quotaRollupsTopic() {
+        return TopicBuilder.name(quotaRollupsTopic)
+                .partitions(quotaRollupsPartitions)
+                .replicas(1)
+                .build();
+    }
+
+    /**
+     * 各节点的热点 key 报告（每个窗口一条，量很小）
+     */
+    @Bean
+    public NewTopic quotaHotKeysTopic() {
+        return TopicBuilder.name(quotaHotKeysTopic)
+                .partitions(1)
+                .replicas(1)
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ratelimiter.dataplane.domain;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.metrics.PolicyMeters;
+import lombok.Getter;
+
+/**
+ * 策略缓存中的句柄
+ * 策略写入缓存时构建一次，热路径只读；指标句柄在首次检查时解析后挂在句柄上
+ */
+@Getter
+public class CompiledPolicy {
+
+    private final PolicyDto policy;
+    private final String cacheKey;
+
+    // 预注册的指标句柄（懒加载），避免每次检查都去 MeterRegistry 查找
+    private volatile PolicyMeters meters;
+
+    public CompiledPolicy(PolicyDto policy) {
+        this(policy, null);
+    }
+
+    /**
+     * @param previous 同一 key 的旧句柄（策略刷新时），沿用其已解析的指标句柄
+     */
+    public CompiledPolicy(PolicyDto policy, CompiledPolicy previous) {
+        this.policy = policy;
+        this.cacheKey = policy.getCacheKey();
+        this.meters = previous != null ? previous.meters : null;
+    }
+
+    public void setMeters(PolicyMeters meters) {
+        this.meters = meters;
+    }
+
+    public String getTenantId() {
+        return policy.getTenantId();
+    }
+
+    public String getResourceKey() {
+        return policy.getResourceKey();
+    }
+
+    public String getVersion() {
+        return policy.getVersion();
+    }
+}
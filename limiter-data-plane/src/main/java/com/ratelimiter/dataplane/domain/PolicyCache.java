@@ -1,8 +1,10 @@
 package com.ratelimiter.dataplane.domain;
 
 import com.ratelimiter.common.web.dto. dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.metrics.jfr.PolicySnapshotSwapEvent;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -13,44 +15,124 @@ import java. util.concurrent.ConcurrentHashMap;
 @Component
 public class PolicyCache {
 
-    private final Map<String, PolicyDto> policies = new ConcurrentHashMap<>();
+    // 全量同步时整体替换快照，避免 clear() 与 put() 之间的短暂空窗导致误判 policy_not_found
+    // 读路径无锁；两个写入方（全量同步 / 按需拉取）在 this 上串行，单条写入不会落进已被替换掉的旧快照
+    private volatile Map<String, CompiledPolicy> policies = new ConcurrentHashMap<>();
+
+    // 负缓存：key -> 过期时间戳（毫秒），记录已确认不存在的策略，挡住未知 key 的洪峰
+    private final Map<String, Long> absentUntil = new ConcurrentHashMap<>();
+    private final int maxNegativeEntries;
+
     private final MeterRegistry meterRegistry;
 
-    public PolicyCache(MeterRegistry meterRegistry) {
+    public PolicyCache(MeterRegistry meterRegistry,
+                       @Value("${app.policy.on-demand.max-negative-entries:100000}") int maxNegativeEntries) {
         this.meterRegistry = meterRegistry;
+        this.maxNegativeEntries = maxNegativeEntries;
         // 注册缓存大小指标
-        meterRegistry.gauge("rate_limit_policy_cache_size", policies, Map:: size);
+        meterRegistry.gauge("rate_limit_policy_cache_size", this, PolicyCache::getCachedPolicyCount);
+        meterRegistry.gauge("rate_limit_policy_negative_cache_size", absentUntil, Map::size);
     }
 
-    public void updatePolicies(List<PolicyDto> newPolicies) {
+    public synchronized void updatePolicies(List<PolicyDto> newPolicies) {
         log.info("Updating policy cache with {} policies", newPolicies. size());
 
-        policies.clear();
+        PolicySnapshotSwapEvent swapEvent = new PolicySnapshotSwapEvent();
+        swapEvent.begin();
+
+        Map<String, CompiledPolicy> current = policies;
+        Map<String, CompiledPolicy> snapshot = new ConcurrentHashMap<>();
 
         for (PolicyDto policy : newPolicies) {
             if (policy.getEnabled() != null && policy.getEnabled()) {
                 String key = policy.getCacheKey();
-                policies.put(key, policy);
+                snapshot.put(key, new CompiledPolicy(policy, current.get(key)));
                 log.debug("Cached policy: tenant={}, resource={}, capacity={}",
                         policy.getTenantId(), policy.getResourceKey(), policy.getCapacity());
             }
         }
 
-        log.info("Policy cache updated successfully, active policies: {}", policies.size());
+        policies = snapshot;
+        // 全量快照里已经出现的 key 不再是"不存在"
+        absentUntil.keySet().removeIf(snapshot::containsKey);
+
+        swapEvent.end();
+        if (swapEvent.shouldCommit()) {
+            swapEvent.previousCount = current.size();
+            swapEvent.policyCount = snapshot.size();
+            swapEvent.receivedCount = newPolicies.size();
+            swapEvent.commit();
+        }
+
+        log.info("Policy cache updated successfully, active policies: {}", snapshot.size());
+    }
+
+    /**
+     * 写入单条策略（按需拉取的结果）
+     * 与 updatePolicies 互斥：要么先于快照构建写入（桶状态随后被新快照继承），要么直接写入新快照
+     *
+     * @return 写入后的句柄；策略未启用时返回 null
+     */
+    public synchronized CompiledPolicy putPolicy(PolicyDto policy) {
+        if (policy.getEnabled() == null || !policy.getEnabled()) {
+            return null;
+        }
+        String key = policy.getCacheKey();
+        Map<String, CompiledPolicy> current = policies;
+        CompiledPolicy compiled = new CompiledPolicy(policy, current.get(key));
+        current.put(key, compiled);
+        absentUntil.remove(key);
+        return compiled;
     }
 
     /**
      * 查找策略
      */
-    public PolicyDto findPolicy(String tenantId, String resourceKey) {
+    public CompiledPolicy findPolicy(String tenantId, String resourceKey) {
         String key = tenantId + "|" + resourceKey;
         return policies.get(key);
     }
 
+    /**
+     * 标记策略在 ttlMillis 内不存在（负缓存）
+     * 负缓存已满且清理过期项后仍满时放弃写入，保证内存有界
+     */
+    public void markAbsent(String tenantId, String resourceKey, long ttlMillis, long nowMillis) {
+        if (absentUntil.size() >= maxNegativeEntries) {
+            purgeExpiredAbsent(nowMillis);
+            if (absentUntil.size() >= maxNegativeEntries) {
+                log.warn("Negative policy cache is full ({} entries), skip caching tenant={}, resource={}",
+                        absentUntil.size(), tenantId, resourceKey);
+                return;
+            }
+        }
+        absentUntil.put(tenantId + "|" + resourceKey, nowMillis + ttlMillis);
+    }
+
+    /**
+     * 是否处于负缓存有效期内
+     */
+    public boolean isKnownAbsent(String tenantId, String resourceKey, long nowMillis) {
+        String key = tenantId + "|" + resourceKey;
+        Long expireAt = absentUntil.get(key);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt <= nowMillis) {
+            absentUntil.remove(key, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    private void purgeExpiredAbsent(long nowMillis) {
+        absentUntil.values().removeIf(expireAt -> expireAt <= nowMillis);
+    }
+
     /**
      * 获取缓存状态
      */
     public int getCachedPolicyCount() {
         return policies.size();
     }
-}
\ No newline at end of file
+}
@@ -3,14 +3,18 @@ package com.ratelimiter.dataplane.infrastructure.integration;
 import com. ratelimiter. common.web.dto.ApiResponse;
 import com.ratelimiter.common.web. dto.controlPlane.GetPolicyResponse;
 import com.ratelimiter.common. web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.common.web.constant.ErrorCode;
 import lombok.extern.slf4j. Slf4j;
 import org.springframework.beans.factory.annotation. Value;
 import org. springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework. http.ResponseEntity;
 import org.springframework.stereotype. Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org. springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
 import java.util. Collections;
 import java. util.List;
 import java.util. stream.Collectors;
@@ -30,33 +34,72 @@ public class ControlPlaneClient {
 
     /**
      * 从 Control Plane 拉取所有启用的策略
+     * 拉取失败时抛出异常，由调用方保留现有缓存（而不是用空列表覆盖）
      */
     public List<PolicyDto> fetchAllEnabledPolicies() {
-        try {
-            String url = controlPlaneBaseUrl + "/api/v1/policies/enabled";
+        String url = controlPlaneBaseUrl + "/api/v1/policies/enabled";
+
+        ResponseEntity<ApiResponse<List<GetPolicyResponse>>> response = restTemplate. exchange(
+                url,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<ApiResponse<List<GetPolicyResponse>>>() {}
+        );
 
-            ResponseEntity<ApiResponse<List<GetPolicyResponse>>> response = restTemplate. exchange(
-                    url,
+        if (response.getBody() != null && response.getBody().isSuccess()) {
+            List<GetPolicyResponse> policies = response. getBody().getData();
+            if (policies == null) {
+                return Collections.emptyList();
+            }
+            return policies. stream()
+                    .map(this:: toPolicyDto)
+                    .collect(Collectors.toList());
+        }
+        throw new IllegalStateException("Failed to fetch policies: " + response.getBody());
+    }
+
+    /**
+     * 按租户 + 资源拉取单条策略（缓存未命中时按需加载）
+     *
+     * @return 策略；Control Plane 明确返回 POLICY_NOT_FOUND 时返回 null
+     * @throws RuntimeException 网络错误或其他失败，调用方不应视为"策略不存在"
+     */
+    public PolicyDto fetchPolicy(String tenantId, String resourceKey) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(controlPlaneBaseUrl + "/api/v1/policies/lookup")
+                .queryParam("tenantId", tenantId)
+                .queryParam("resourceKey", resourceKey)
+                .build()
+                .encode()
+                .toUri();
+
+        try {
+            ResponseEntity<ApiResponse<GetPolicyResponse>> response = restTemplate.exchange(
+                    uri,
                     HttpMethod.GET,
                     null,
-                    new ParameterizedTypeReference<ApiResponse<List<GetPolicyResponse>>>() {}
+                    new ParameterizedTypeReference<ApiResponse<GetPolicyResponse>>() {}
             );
 
-            if (response.getBody() != null && response.getBody().isSuccess()) {
-                List<GetPolicyResponse> policies = response. getBody().getData();
-                return policies. stream()
-                        .map(this:: toPolicyDto)
-                        .collect(Collectors.toList());
-            } else {
-                log.warn("Failed to fetch policies: {}", response.getBody());
-                return Collections. emptyList();
+            ApiResponse<GetPolicyResponse> body = response.getBody();
+            if (body != null && body.isSuccess() && body.getData() != null) {
+                return toPolicyDto(body.getData());
             }
-        } catch (Exception e) {
-            log. error("Error fetching policies from Control Plane", e);
-            return Collections.emptyList();
+            throw new IllegalStateException("Unexpected policy lookup response: " + body);
+        } catch (HttpClientErrorException e) {
+            if (isPolicyNotFound(e)) {
+                return null;
+            }
+            throw e;
         }
     }
 
+    private boolean isPolicyNotFound(HttpClientErrorException e) {
+        ApiResponse<?> body = e.getResponseBodyAs(ApiResponse.class);
+        return body != null
+                && body.getError() != null
+                && ErrorCode.POLICY_NOT_FOUND.getCode().equals(body.getError().getCode());
+    }
+
     /**
      * GetPolicyResponse -> PolicyDto 转换
      */
@@ -1,6 +1,7 @@
 package com.ratelimiter.dataplane.infrastructure. persistence. redis;
 
 import com.ratelimiter.common.util.PrecisionUtils;
+import com.ratelimiter.dataplane.application.metrics.jfr.RedisScriptEvent;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -44,6 +45,9 @@ public class RedisRateLimiterRepository {
                 "300"
         };
 
+        RedisScriptEvent scriptEvent = new RedisScriptEvent();
+        scriptEvent.begin();
+
         List result = redisTemplate.execute(tokenBucketScript, keys, args);
 
         // 解析返回结果
@@ -51,6 +55,16 @@ public class RedisRateLimiterRepository {
         long remaining = ((Number) result.get(1)).longValue();
         String reason = (String) result.get(2);
 
+        scriptEvent.end();
+        if (scriptEvent.shouldCommit()) {
+            scriptEvent.tenantId = tenantId;
+            scriptEvent.resourceKey = resourceKey;
+            scriptEvent.tokens = tokensToConsume;
+            scriptEvent.allowed = allowed == 1;
+            scriptEvent.remaining = remaining;
+            scriptEvent.commit();
+        }
+
         return new RateLimitResult(allowed == 1, remaining, reason);
     }
 
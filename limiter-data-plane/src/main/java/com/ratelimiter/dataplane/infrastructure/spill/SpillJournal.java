@@ -0,0 +1,400 @@
+package com.ratelimiter.dataplane.infrastructure.spill;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 本地磁盘上的有界、追加写溢出日志（内存映射）
+ *
+ * 段文件布局：[magic 4][version 4][已回放位置 8][记录...]
+ * 记录布局：[长度 4][CRC32 4][类型 1][负载]，长度为 0 表示段内数据结束
+ *
+ * - 段写满后轮转，段数达到上限时拒绝写入（调用方计入丢弃）
+ * - 回放按段、按记录顺序读取；提交后把已回放位置写回段头，整段回放完删除文件
+ * - 重启时逐段校验 CRC 恢复写入位置，遇到残缺记录即视为段尾
+ *
+ * 所有方法加锁：写入方是 drainer 线程和 Kafka 回调线程，读取方是回放线程，都不在请求线程上
+ */
+@Slf4j
+public final class SpillJournal implements Closeable {
+
+    /**
+     * 落盘策略
+     */
+    public enum FsyncPolicy {
+        // 只依赖操作系统回写，进程崩溃不丢、机器掉电可能丢
+        NONE,
+        // 段轮转时以及调用方定期调用 force() 时刷盘
+        INTERVAL,
+        // 每条记录写入后刷盘
+        ALWAYS
+    }
+
+    public record Entry(byte type, byte[] payload) {
+    }
+
+    /**
+     * 一次读取的结果，回放成功后交给 {@link #commit(ReadBatch)}
+     */
+    public record ReadBatch(long segmentId, int nextOffset, List<Entry> entries) {
+
+        static final ReadBatch EMPTY = new ReadBatch(-1L, 0, List.of());
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+
+    private static final int MAGIC = 0x51534A31;   // "QSJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int READ_OFFSET_POS = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment active;
+    private long nextSegmentId;
+
+    // 加锁更新、无锁读取（drainer 每次发送前检查是否有积压）
+    private volatile long pendingRecords;
+    private volatile long pendingBytes;
+
+    public SpillJournal(Path directory, int segmentBytes, int maxSegments, FsyncPolicy fsyncPolicy) {
+        if (segmentBytes <= HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small: " + segmentBytes);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be positive: " + maxSegments);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spill journal at " + directory, e);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return 日志已满或记录超过单段容量时返回 false
+     */
+    public synchronized boolean append(byte type, byte[] payload) {
+        int recordBytes = RECORD_HEADER_BYTES + 1 + payload.length;
+        if (recordBytes > segmentBytes - HEADER_BYTES) {
+            return false;
+        }
+        try {
+            if (active == null || active.writePos + recordBytes > active.capacity) {
+                if (segments.size() >= maxSegments) {
+                    return false;
+                }
+                rotate();
+            }
+        } catch (IOException e) {
+            log.error("Failed to rotate spill journal segment in {}", directory, e);
+            return false;
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int pos = active.writePos;
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        buffer.put(pos + RECORD_HEADER_BYTES, type);
+        buffer.put(pos + RECORD_HEADER_BYTES + 1, payload);
+        buffer.putInt(pos + 4, (int) crc.getValue());
+        // 长度最后写入，写到一半的记录在恢复时表现为段尾
+        buffer.putInt(pos, 1 + payload.length);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            buffer.force(pos, recordBytes);
+        }
+
+        active.writePos += recordBytes;
+        pendingRecords++;
+        pendingBytes += recordBytes;
+        return true;
+    }
+
+    /**
+     * 从最早的段读取至多 maxRecords 条未回放的记录（不跨段）
+     */
+    public synchronized ReadBatch read(int maxRecords) {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            if (head.readPos >= head.writePos) {
+                if (head == active) {
+                    return ReadBatch.EMPTY;
+                }
+                // 已封存且回放完毕
+                deleteHead();
+                continue;
+            }
+
+            MappedByteBuffer buffer = head.map();
+            List<Entry> entries = new ArrayList<>(Math.min(maxRecords, 1024));
+            int pos = head.readPos;
+            while (entries.size() < maxRecords && pos < head.writePos) {
+                int length = buffer.getInt(pos);
+                byte type = buffer.get(pos + RECORD_HEADER_BYTES);
+                byte[] payload = new byte[length - 1];
+                buffer.get(pos + RECORD_HEADER_BYTES + 1, payload);
+                entries.add(new Entry(type, payload));
+                pos += RECORD_HEADER_BYTES + length;
+            }
+            return new ReadBatch(head.id, pos, entries);
+        }
+        return ReadBatch.EMPTY;
+    }
+
+    /**
+     * 标记一批记录已回放：推进段头中的已回放位置，整段回放完且已封存时删除
+     */
+    public synchronized void commit(ReadBatch batch) {
+        Segment head = segments.peekFirst();
+        if (batch.isEmpty() || head == null || head.id != batch.segmentId() || batch.nextOffset() <= head.readPos) {
+            return;
+        }
+        pendingRecords -= batch.entries().size();
+        pendingBytes -= batch.nextOffset() - head.readPos;
+        head.readPos = batch.nextOffset();
+        head.map().putLong(READ_OFFSET_POS, head.readPos);
+
+        if (head != active && head.readPos >= head.writePos) {
+            deleteHead();
+        }
+    }
+
+    /**
+     * 刷盘当前写入段（INTERVAL 策略由调用方定期调用）
+     */
+    public synchronized void force() {
+        if (active != null && fsyncPolicy != FsyncPolicy.NONE) {
+            active.buffer.force();
+        }
+        Segment head = segments.peekFirst();
+        if (head != null && head != active && head.buffer != null && fsyncPolicy != FsyncPolicy.NONE) {
+            head.buffer.force(0, HEADER_BYTES);
+        }
+    }
+
+    public boolean hasBacklog() {
+        return pendingRecords > 0;
+    }
+
+    public long pendingRecords() {
+        return pendingRecords;
+    }
+
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public FsyncPolicy fsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    private void rotate() throws IOException {
+        if (active != null) {
+            // 封存：刷盘后释放映射，回放到该段时再重新映射
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                active.buffer.force();
+            }
+            if (active != segments.peekFirst()) {
+                active.unmap();
+            }
+        }
+        Segment segment = Segment.create(directory.resolve(segmentName(nextSegmentId)), nextSegmentId, segmentBytes);
+        nextSegmentId++;
+        segments.addLast(segment);
+        active = segment;
+    }
+
+    private void deleteHead() {
+        Segment head = segments.pollFirst();
+        head.close();
+        try {
+            Files.deleteIfExists(head.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete replayed spill segment {}", head.path, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path file : files) {
+            long id = Long.parseLong(file.getFileName().toString()
+                    .substring(SEGMENT_PREFIX.length(), file.getFileName().toString().length() - SEGMENT_SUFFIX.length()));
+            Segment segment = Segment.open(file, id);
+            if (segment == null) {
+                log.warn("Ignoring unreadable spill segment {}", file);
+                continue;
+            }
+            long records = segment.scan();
+            segments.addLast(segment);
+            pendingRecords += records;
+            pendingBytes += segment.writePos - segment.readPos;
+            nextSegmentId = id + 1;
+        }
+        // 最后一段继续写入；其余段已封存，回放到时再映射
+        active = segments.peekLast();
+        for (Segment segment : segments) {
+            if (segment != active && segment != segments.peekFirst()) {
+                segment.unmap();
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("Recovered spill journal: dir={}, segments={}, pendingRecords={}",
+                    directory, segments.size(), pendingRecords);
+        }
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static final class Segment {
+
+        final long id;
+        final Path path;
+        final int capacity;
+        MappedByteBuffer buffer;
+        int writePos;
+        int readPos;
+
+        private Segment(long id, Path path, int capacity, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, long id, int capacity) throws IOException {
+            Segment segment = new Segment(id, path, capacity, map(path, capacity, true));
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putLong(READ_OFFSET_POS, HEADER_BYTES);
+            segment.writePos = HEADER_BYTES;
+            segment.readPos = HEADER_BYTES;
+            return segment;
+        }
+
+        static Segment open(Path path, long id) throws IOException {
+            long size = Files.size(path);
+            if (size <= HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = map(path, (int) size, false);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            return new Segment(id, path, (int) size, buffer);
+        }
+
+        /**
+         * 校验记录恢复写入位置，返回未回放的记录数
+         */
+        long scan() {
+            long committed = buffer.getLong(READ_OFFSET_POS);
+            int pos = HEADER_BYTES;
+            long unread = 0;
+            CRC32 crc = new CRC32();
+            while (pos + RECORD_HEADER_BYTES < capacity) {
+                int length = buffer.getInt(pos);
+                if (length <= 0 || pos + RECORD_HEADER_BYTES + length > capacity) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.slice(pos + RECORD_HEADER_BYTES, length));
+                if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                    break;
+                }
+                if (pos >= committed) {
+                    unread++;
+                }
+                pos += RECORD_HEADER_BYTES + length;
+            }
+            writePos = pos;
+            readPos = (int) Math.max(HEADER_BYTES, Math.min(committed, pos));
+            return unread;
+        }
+
+        MappedByteBuffer map() {
+            if (buffer == null) {
+                try {
+                    buffer = map(path, capacity, false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to map spill segment " + path, e);
+                }
+            }
+            return buffer;
+        }
+
+        void unmap() {
+            // 映射在 buffer 被回收时释放
+            buffer = null;
+        }
+
+        void close() {
+            buffer = null;
+        }
+
+        private static MappedByteBuffer map(Path path, int capacity, boolean create) throws IOException {
+            StandardOpenOption[] options = create
+                    ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                    : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+            // 映射建立后即可关闭 channel
+            try (FileChannel channel = FileChannel.open(path, options)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+    }
+}
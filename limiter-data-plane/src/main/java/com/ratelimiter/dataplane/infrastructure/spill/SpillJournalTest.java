@@ -0,0 +1,116 @@
+package com.ratelimiter.dataplane.infrastructure.spill;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpillJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> drain(SpillJournal journal, int batchSize) {
+        List<String> values = new ArrayList<>();
+        while (true) {
+            SpillJournal.ReadBatch batch = journal.read(batchSize);
+            if (batch.isEmpty()) {
+                return values;
+            }
+            batch.entries().forEach(entry -> values.add(new String(entry.payload(), StandardCharsets.UTF_8)));
+            journal.commit(batch);
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    // 按写入顺序回放，跨段轮转，回放完的封存段被删除
+    @Test
+    void shouldReplayInOrderAcrossSegments() throws IOException {
+        SpillJournal journal = new SpillJournal(dir, 256, 8, SpillJournal.FsyncPolicy.INTERVAL);
+        for (int i = 0; i < 40; i++) {
+            assertThat(journal.append((byte) 1, bytes("event-" + i))).isTrue();
+        }
+        assertThat(journal.segmentCount()).isGreaterThan(1);
+        assertThat(journal.pendingRecords()).isEqualTo(40);
+
+        List<String> replayed = drain(journal, 7);
+
+        assertThat(replayed).hasSize(40);
+        assertThat(replayed.get(0)).isEqualTo("event-0");
+        assertThat(replayed.get(39)).isEqualTo("event-39");
+        assertThat(journal.hasBacklog()).isFalse();
+        assertThat(journal.pendingBytes()).isZero();
+        // 只保留当前写入段
+        assertThat(segmentFiles()).isEqualTo(1);
+        journal.close();
+    }
+
+    // 段数达到上限后拒绝写入
+    @Test
+    void shouldRejectAppendsWhenFull() {
+        SpillJournal journal = new SpillJournal(dir, 128, 2, SpillJournal.FsyncPolicy.NONE);
+        byte[] payload = bytes("fixed-size-event");
+        int appended = 0;
+        while (journal.append((byte) 1, payload)) {
+            appended++;
+        }
+
+        assertThat(appended).isPositive();
+        assertThat(journal.segmentCount()).isEqualTo(2);
+        assertThat(journal.pendingRecords()).isEqualTo(appended);
+        assertThat(journal.append((byte) 1, payload)).isFalse();
+        // 超过单段容量的记录同样拒绝
+        assertThat(new SpillJournal(dir.resolve("big"), 128, 2, SpillJournal.FsyncPolicy.NONE)
+                .append((byte) 1, new byte[1024])).isFalse();
+        journal.close();
+    }
+
+    // 重启后从段头记录的回放位置继续，残缺的尾部记录被忽略
+    @Test
+    void shouldRecoverReplayPositionAfterRestart() throws IOException {
+        SpillJournal journal = new SpillJournal(dir, 4096, 4, SpillJournal.FsyncPolicy.ALWAYS);
+        for (int i = 0; i < 10; i++) {
+            journal.append((byte) 1, bytes("event-" + i));
+        }
+        SpillJournal.ReadBatch first = journal.read(4);
+        journal.commit(first);
+        journal.close();
+
+        // 模拟写到一半的记录：长度已写入但 CRC 不匹配
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        byte[] content = Files.readAllBytes(segment);
+        int tail = 16 + 10 * (8 + 1 + "event-0".length());
+        content[tail + 3] = 5;
+        Files.write(segment, content);
+
+        SpillJournal recovered = new SpillJournal(dir, 4096, 4, SpillJournal.FsyncPolicy.ALWAYS);
+        assertThat(recovered.pendingRecords()).isEqualTo(6);
+        assertThat(drain(recovered, 100)).containsExactly("event-4", "event-5", "event-6", "event-7",
+                "event-8", "event-9");
+
+        // 恢复后的写入覆盖残缺记录
+        assertThat(recovered.append((byte) 2, bytes("after-restart"))).isTrue();
+        assertThat(drain(recovered, 100)).containsExactly("after-restart");
+        recovered.close();
+    }
+}
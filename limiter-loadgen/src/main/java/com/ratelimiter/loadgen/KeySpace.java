@@ -0,0 +1,68 @@
+package com.ratelimiter.loadgen;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 压测的 租户 × 资源 键空间
+ *
+ * 租户与资源各自按 Zipf 分布独立抽取：少数头部租户承担大部分流量，每个租户内少数资源最热
+ */
+public class KeySpace {
+
+    public record Key(String tenantId, String resourceKey) {
+    }
+
+    private final String[] tenantIds;
+    private final String[] resourceKeys;
+    private final ZipfGenerator tenantDistribution;
+    private final ZipfGenerator resourceDistribution;
+
+    public KeySpace(int tenants, int resources, double exponent) {
+        tenantIds = new String[tenants];
+        for (int i = 0; i < tenants; i++) {
+            tenantIds[i] = String.format("lg_tenant_%05d", i);
+        }
+        resourceKeys = new String[resources];
+        for (int i = 0; i < resources; i++) {
+            resourceKeys[i] = "/api/v1/resource-" + i;
+        }
+        tenantDistribution = new ZipfGenerator(tenants, exponent);
+        resourceDistribution = new ZipfGenerator(resources, exponent);
+    }
+
+    public Key next(SplittableRandom random) {
+        return new Key(tenantIds[tenantDistribution.next(random)], resourceKeys[resourceDistribution.next(random)]);
+    }
+
+    public int size() {
+        return tenantIds.length * resourceKeys.length;
+    }
+
+    /**
+     * 键空间内每个 key 一条令牌桶策略（内嵌模式下代替控制平面）
+     */
+    public List<PolicyDto> policies(long capacity, BigDecimal refillRate) {
+        List<PolicyDto> policies = new ArrayList<>(size());
+        long id = 1;
+        for (String tenantId : tenantIds) {
+            for (String resourceKey : resourceKeys) {
+                PolicyDto policy = new PolicyDto();
+                policy.setId(id++);
+                policy.setTenantId(tenantId);
+                policy.setResourceKey(resourceKey);
+                policy.setPolicyType("TOKEN_BUCKET");
+                policy.setCapacity(capacity);
+                policy.setRefillRate(refillRate);
+                policy.setEnabled(true);
+                policy.setVersion("loadgen");
+                policies.add(policy);
+            }
+        }
+        return policies;
+    }
+}
@@ -0,0 +1,413 @@
+package com.ratelimiter.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.loadgen.standin.EmbeddedDataPlane;
+import com.ratelimiter.loadgen.standin.InMemoryTokenBucketStore;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 数据平面端到端压测：开环、恒定到达率，租户与资源按 Zipf 分布
+ *
+ * 每个请求按计划时间（start + i × 间隔）发出，不等待前一个请求返回；延迟从计划时间算起，
+ * 服务端变慢时积压的等待时间也计入结果，避免闭环压测的协调遗漏（coordinated omission）。
+ * 同时记录从实际发出算起的服务时间，两者的差距即客户端排队。
+ * 在途请求达到 --max-in-flight 时 dispatcher 等待空位再发，不丢弃计划请求，等待时间同样计入延迟。
+ *
+ * 用法：java -jar limiter-loadgen.jar --embedded=true --nodes=2 --rate=20000 --duration=60 --label=head
+ * 未指定 --embedded 时压测 --target 列出的已启动节点（默认 http://localhost:8082）。
+ * 输出目录 --out/--label 下：summary.json、latency.hgrm、service-time.hgrm、latency.hlog、压测前后的 Prometheus 指标与分阶段延迟
+ */
+@Slf4j
+public class LoadGenerator {
+
+    // 直方图量程：1µs ~ 60s
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.SECONDS.toMicros(60);
+    private static final long IN_FLIGHT_WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    record Options(List<String> targets,
+                   boolean embedded,
+                   int nodes,
+                   int basePort,
+                   String redis,
+                   String kafka,
+                   long redisRoundTripMicros,
+                   long idempotencyTtlMillis,
+                   double rate,
+                   int durationSeconds,
+                   int warmupSeconds,
+                   int tenants,
+                   int resources,
+                   double zipfExponent,
+                   long tokens,
+                   long capacity,
+                   BigDecimal refillRate,
+                   int maxInFlight,
+                   int clientThreads,
+                   int dispatchers,
+                   Path out,
+                   String label,
+                   long seed) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("参数格式应为 --key=value: " + arg);
+                }
+                int separator = arg.indexOf('=');
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+            Options options = new Options(
+                    Arrays.asList(values.getOrDefault("target", "http://localhost:8082").split(",")),
+                    Boolean.parseBoolean(values.getOrDefault("embedded", "false")),
+                    Integer.parseInt(values.getOrDefault("nodes", "1")),
+                    Integer.parseInt(values.getOrDefault("port", "18082")),
+                    values.getOrDefault("redis", "memory"),
+                    values.getOrDefault("kafka", "memory"),
+                    Long.parseLong(values.getOrDefault("redis-rtt-micros", "0")),
+                    Long.parseLong(values.getOrDefault("idempotency-ttl-ms", "300000")),
+                    Double.parseDouble(values.getOrDefault("rate", "1000")),
+                    Integer.parseInt(values.getOrDefault("duration", "60")),
+                    Integer.parseInt(values.getOrDefault("warmup", "10")),
+                    Integer.parseInt(values.getOrDefault("tenants", "1000")),
+                    Integer.parseInt(values.getOrDefault("resources", "20")),
+                    Double.parseDouble(values.getOrDefault("zipf", "1.0")),
+                    Long.parseLong(values.getOrDefault("tokens", "1")),
+                    Long.parseLong(values.getOrDefault("capacity", "1000")),
+                    new BigDecimal(values.getOrDefault("refill-rate", "100")),
+                    Integer.parseInt(values.getOrDefault("max-in-flight", "10000")),
+                    Integer.parseInt(values.getOrDefault("client-threads", "8")),
+                    Integer.parseInt(values.getOrDefault("dispatchers", "2")),
+                    Path.of(values.getOrDefault("out", "loadgen-results")),
+                    values.getOrDefault("label", "run"),
+                    Long.parseLong(values.getOrDefault("seed", "42")));
+            values.keySet().removeAll(List.of("target", "embedded", "nodes", "port", "redis", "kafka",
+                    "redis-rtt-micros", "idempotency-ttl-ms", "rate", "duration", "warmup", "tenants", "resources",
+                    "zipf", "tokens", "capacity", "refill-rate", "max-in-flight", "client-threads", "dispatchers",
+                    "out", "label", "seed"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("未知参数: " + values.keySet());
+            }
+            if (options.rate() <= 0 || options.durationSeconds() <= 0 || options.dispatchers() <= 0) {
+                throw new IllegalArgumentException("rate、duration、dispatchers 必须大于 0");
+            }
+            return options;
+        }
+    }
+
+    private final Options options;
+    private final List<String> targets;
+    private final KeySpace keySpace;
+    private final HttpClient client;
+
+    // 从计划时间算起的延迟（µs），只记录正式阶段
+    private final Recorder latencyRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    // 从实际发出算起的服务时间（µs）
+    private final Recorder serviceTimeRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram latency = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram serviceTime = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // 因在途请求达到 max-in-flight 而推迟发出的计划请求（压测机或服务端饱和的信号）
+    private final LongAdder delayedByMaxInFlight = new LongAdder();
+
+    private volatile long measureStartNanos;
+
+    LoadGenerator(Options options, List<String> targets, KeySpace keySpace, HttpClient client) {
+        this.options = options;
+        this.targets = targets;
+        this.keySpace = keySpace;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        KeySpace keySpace = new KeySpace(options.tenants(), options.resources(), options.zipfExponent());
+
+        List<EmbeddedDataPlane> nodes = new ArrayList<>();
+        InMemoryTokenBucketStore store = null;
+        List<String> targets = options.targets();
+        if (options.embedded()) {
+            // 所有内嵌节点共享一个 Redis 替身，与多实例部署共享同一个 Redis 一致
+            store = new InMemoryTokenBucketStore(options.idempotencyTtlMillis(), options.redisRoundTripMicros());
+            List<PolicyDto> policies = keySpace.policies(options.capacity(), options.refillRate());
+            targets = new ArrayList<>();
+            for (int i = 0; i < options.nodes(); i++) {
+                EmbeddedDataPlane node = EmbeddedDataPlane.start(options.basePort() + i, i, store, policies,
+                        options.redis(), options.kafka());
+                nodes.add(node);
+                targets.add(node.baseUrl());
+            }
+            log.info("Started {} embedded data plane node(s): redis={}, kafka={}, policies={}",
+                    nodes.size(), options.redis(), options.kafka(), policies.size());
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(options.clientThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "loadgen-http-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+
+        try {
+            Map<String, Object> summary = new LoadGenerator(options, targets, keySpace, client).run();
+            if (store != null) {
+                Map<String, Object> embedded = new LinkedHashMap<>();
+                embedded.put("nodes", nodes.size());
+                embedded.put("redisOperations", store.operations());
+                embedded.put("redisBuckets", store.bucketCount());
+                embedded.put("kafkaRecords", nodes.stream().mapToLong(EmbeddedDataPlane::sentRecords).sum());
+                embedded.put("kafkaBytes", nodes.stream().mapToLong(EmbeddedDataPlane::sentBytes).sum());
+                summary.put("embedded", embedded);
+            }
+            Path dir = options.out().resolve(options.label());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(dir.resolve("summary.json").toFile(), summary);
+            log.info("Results written to {}", dir.toAbsolutePath());
+        } finally {
+            nodes.forEach(EmbeddedDataPlane::close);
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    Map<String, Object> run() throws IOException, InterruptedException {
+        Path dir = options.out().resolve(options.label());
+        Files.createDirectories(dir);
+        ServerMetrics serverMetrics = new ServerMetrics(client, targets);
+
+        long startNanos = System.nanoTime();
+        measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        // 每个 dispatcher 承担 rate / dispatchers，起始时间错开一个全局间隔，合起来是均匀的到达序列
+        double globalPeriodNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        List<Thread> dispatchers = new ArrayList<>();
+        for (int i = 0; i < options.dispatchers(); i++) {
+            int dispatcherIndex = i;
+            long firstNanos = startNanos + (long) (globalPeriodNanos * i);
+            double periodNanos = globalPeriodNanos * options.dispatchers();
+            Thread thread = new Thread(() -> dispatch(dispatcherIndex, firstNanos, periodNanos, endNanos),
+                    "loadgen-dispatcher-" + i);
+            thread.setDaemon(true);
+            dispatchers.add(thread);
+        }
+
+        PrintStream hlog = new PrintStream(Files.newOutputStream(dir.resolve("latency.hlog")));
+        HistogramLogWriter logWriter = new HistogramLogWriter(hlog);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(System.currentTimeMillis());
+        logWriter.outputLegend();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadgen-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Open-loop load: rate={}/s, warmup={}s, duration={}s, targets={}, keys={} (zipf s={})",
+                options.rate(), options.warmupSeconds(), options.durationSeconds(), targets, keySpace.size(),
+                options.zipfExponent());
+        dispatchers.forEach(Thread::start);
+
+        // 预热结束后抓取压测前的服务端指标（预热阶段的请求不计入差值）
+        sleepUntil(measureStartNanos);
+        Map<String, Double> before = serverMetrics.scrape(dir, "before");
+        serverMetrics.resetStageLatency();
+        reporter.scheduleAtFixedRate(() -> report(logWriter), 1, 1, TimeUnit.SECONDS);
+
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+        // 等待在途请求完成（最多 10s），未完成的计为错误
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        errors.add(inFlight.get());
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        report(logWriter);
+        hlog.close();
+
+        Map<String, Double> after = serverMetrics.scrape(dir, "after");
+        serverMetrics.saveStageLatency(dir);
+
+        try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("latency.hgrm")))) {
+            latency.outputPercentileDistribution(out, 1000.0);
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("service-time.hgrm")))) {
+            serviceTime.outputPercentileDistribution(out, 1000.0);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("label", options.label());
+        summary.put("targets", targets);
+        summary.put("options", Map.of(
+                "rate", options.rate(),
+                "durationSeconds", options.durationSeconds(),
+                "warmupSeconds", options.warmupSeconds(),
+                "tenants", options.tenants(),
+                "resources", options.resources(),
+                "zipfExponent", options.zipfExponent(),
+                "tokens", options.tokens(),
+                "capacity", options.capacity(),
+                "refillRate", options.refillRate()));
+        long completed = allowed.sum() + denied.sum();
+        Map<String, Object> clientStats = new LinkedHashMap<>();
+        clientStats.put("intendedRate", options.rate());
+        clientStats.put("achievedRate", completed / (double) options.durationSeconds());
+        clientStats.put("sent", sent.sum());
+        clientStats.put("completed", completed);
+        clientStats.put("allowed", allowed.sum());
+        clientStats.put("denied", denied.sum());
+        clientStats.put("errors", errors.sum());
+        clientStats.put("delayedByMaxInFlight", delayedByMaxInFlight.sum());
+        clientStats.put("latencyMs", percentiles(latency));
+        clientStats.put("serviceTimeMs", percentiles(serviceTime));
+        summary.put("client", clientStats);
+        summary.put("server", ServerMetrics.delta(before, after));
+
+        log.info("Done: achieved {}/s, latency p50={}ms p99={}ms p99.9={}ms, errors={}, delayed={}, server={}",
+                String.format("%.0f", (double) clientStats.get("achievedRate")),
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, errors.sum(), delayedByMaxInFlight.sum(),
+                summary.get("server"));
+        return summary;
+    }
+
+    /**
+     * 按固定间隔发出请求；落后于计划时（服务端或压测机变慢）立即补发，不跳过也不重新对齐
+     * 在途请求达到上限时等待空位，推迟的时间仍从计划时间算入延迟
+     */
+    private void dispatch(int dispatcherIndex, long firstNanos, double periodNanos, long endNanos) {
+        SplittableRandom random = new SplittableRandom(options.seed() + dispatcherIndex);
+        String requestIdPrefix = "lg-" + options.seed() + "-" + dispatcherIndex + "-";
+        for (long i = 0; ; i++) {
+            long intendedNanos = firstNanos + (long) (periodNanos * i);
+            if (intendedNanos >= endNanos) {
+                return;
+            }
+            sleepUntil(intendedNanos);
+
+            boolean measured = intendedNanos >= measureStartNanos;
+            if (inFlight.get() >= options.maxInFlight()) {
+                if (measured) {
+                    delayedByMaxInFlight.increment();
+                }
+                while (inFlight.get() >= options.maxInFlight()) {
+                    LockSupport.parkNanos(IN_FLIGHT_WAIT_PARK_NANOS);
+                }
+            }
+
+            KeySpace.Key key = keySpace.next(random);
+            String body = "{\"requestId\":\"" + requestIdPrefix + i
+                    + "\",\"tenantId\":\"" + key.tenantId()
+                    + "\",\"resourceKey\":\"" + key.resourceKey()
+                    + "\",\"tokens\":" + options.tokens()
+                    + ",\"timestamp\":" + System.currentTimeMillis() + "}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(targets.get((int) (i % targets.size()))
+                            + "/api/v1/check"))
+                    .timeout(Duration.ofSeconds(5))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+
+            inFlight.incrementAndGet();
+            if (measured) {
+                sent.increment();
+            }
+            long sendNanos = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long now = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (!measured) {
+                    return;
+                }
+                if (error != null || response.statusCode() != 200) {
+                    errors.increment();
+                    return;
+                }
+                if (response.body().contains("\"allowed\":true")) {
+                    allowed.increment();
+                } else {
+                    denied.increment();
+                }
+                latencyRecorder.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, (now - intendedNanos) / 1000));
+                serviceTimeRecorder.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, (now - sendNanos) / 1000));
+            });
+        }
+    }
+
+    /**
+     * 每秒输出一次区间直方图（latency.hlog）并累加到总直方图
+     */
+    private synchronized void report(HistogramLogWriter logWriter) {
+        Histogram interval = latencyRecorder.getIntervalHistogram();
+        latency.add(interval);
+        serviceTime.add(serviceTimeRecorder.getIntervalHistogram());
+        logWriter.outputIntervalHistogram(interval);
+        log.info("{}s: {} rps, latency p50={}ms p99={}ms max={}ms, in-flight={}",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureStartNanos),
+                interval.getTotalCount(),
+                interval.getValueAtPercentile(50) / 1000.0,
+                interval.getValueAtPercentile(99) / 1000.0,
+                interval.getMaxValue() / 1000.0,
+                inFlight.get());
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+        percentiles.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+        percentiles.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+        percentiles.put("p999", histogram.getValueAtPercentile(99.9) / 1000.0);
+        percentiles.put("max", histogram.getMaxValue() / 1000.0);
+        percentiles.put("mean", histogram.getMean() / 1000.0);
+        return percentiles;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ratelimiter.loadgen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测前后抓取各数据平面节点的 Micrometer 指标（/actuator/prometheus），按指标名汇总后求差值
+ *
+ * 同时在压测开始前清空、结束后导出服务端分阶段延迟（/actuator/ratelimiter-latency）
+ */
+public class ServerMetrics {
+
+    /**
+     * summary.json 中报告的服务端计数器
+     */
+    static final List<String> REPORTED_COUNTERS = List.of(
+            "rate_limit_check_total",
+            "rate_limit_local_path_total",
+            "rate_limit_redis_path_total",
+            "rate_limit_allowed_total",
+            "rate_limit_denied_total",
+            "rate_limit_policy_not_found_total",
+            "quota_event_buffer_dropped_total",
+            "quota_event_sent_total",
+            "quota_rollup_sent_total");
+
+    private final HttpClient client;
+    private final List<String> targets;
+
+    public ServerMetrics(HttpClient client, List<String> targets) {
+        this.client = client;
+        this.targets = targets;
+    }
+
+    /**
+     * 抓取全部节点的指标并按指标名求和（忽略标签）；原始文本保存到 outDir/&lt;phase&gt;-node-&lt;i&gt;.prom
+     */
+    public Map<String, Double> scrape(Path outDir, String phase) throws IOException, InterruptedException {
+        Map<String, Double> totals = new HashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            String body = get(targets.get(i) + "/actuator/prometheus");
+            Files.writeString(outDir.resolve(phase + "-node-" + i + ".prom"), body);
+            parsePrometheus(body).forEach((name, value) -> totals.merge(name, value, Double::sum));
+        }
+        return totals;
+    }
+
+    /**
+     * 清空各节点的分阶段延迟直方图，使导出结果只覆盖本次压测
+     */
+    public void resetStageLatency() throws IOException, InterruptedException {
+        for (String target : targets) {
+            send(HttpRequest.newBuilder(URI.create(target + "/actuator/ratelimiter-latency")).DELETE());
+        }
+    }
+
+    public void saveStageLatency(Path outDir) throws IOException, InterruptedException {
+        for (int i = 0; i < targets.size(); i++) {
+            String body = get(targets.get(i) + "/actuator/ratelimiter-latency");
+            Files.writeString(outDir.resolve("stage-latency-node-" + i + ".json"), body);
+        }
+    }
+
+    /**
+     * 两次抓取之间报告计数器的增量，以及本地令牌桶路径占比
+     */
+    public static Map<String, Object> delta(Map<String, Double> before, Map<String, Double> after) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (String name : REPORTED_COUNTERS) {
+            delta.put(name, (long) (after.getOrDefault(name, 0.0) - before.getOrDefault(name, 0.0)));
+        }
+        long local = (long) delta.get("rate_limit_local_path_total");
+        long redis = (long) delta.get("rate_limit_redis_path_total");
+        delta.put("localPathRatio", local + redis == 0 ? 0.0 : (double) local / (local + redis));
+        return delta;
+    }
+
+    /**
+     * 解析 Prometheus 文本格式：同名（不同标签）的样本求和，跳过注释行
+     */
+    static Map<String, Double> parsePrometheus(String body) {
+        Map<String, Double> values = new HashMap<>();
+        for (String line : body.split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int nameEnd = line.indexOf('{');
+            int valueStart;
+            if (nameEnd >= 0) {
+                valueStart = line.lastIndexOf('}') + 1;
+            } else {
+                nameEnd = line.indexOf(' ');
+                valueStart = nameEnd;
+            }
+            if (nameEnd <= 0 || valueStart <= 0) {
+                continue;
+            }
+            String[] rest = line.substring(valueStart).trim().split(" ");
+            try {
+                values.merge(line.substring(0, nameEnd), Double.parseDouble(rest[0]), Double::sum);
+            } catch (NumberFormatException e) {
+                // 无法解析的样本值直接跳过
+            }
+        }
+        return values;
+    }
+
+    private String get(String url) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(url)).GET());
+    }
+
+    private String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(10)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(request.build().uri() + " 返回 " + response.statusCode());
+        }
+        return response.body();
+    }
+}
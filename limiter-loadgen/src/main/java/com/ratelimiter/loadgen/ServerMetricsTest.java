@@ -0,0 +1,50 @@
+package com.ratelimiter.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerMetricsTest {
+
+    // 同名指标的不同标签求和，注释行跳过
+    @Test
+    void shouldSumSeriesAcrossTags() {
+        String body = """
+                # HELP rate_limit_check_total
+                # TYPE rate_limit_check_total counter
+                rate_limit_check_total{tenant_id="t1",service="limiter-data-plane"} 30.0
+                rate_limit_check_total{tenant_id="other",service="limiter-data-plane"} 12.0
+                rate_limit_local_path_total{service="a b"} 40.0
+                quota_event_buffer_depth 3.0
+                """;
+
+        Map<String, Double> values = ServerMetrics.parsePrometheus(body);
+
+        assertThat(values).containsEntry("rate_limit_check_total", 42.0)
+                .containsEntry("rate_limit_local_path_total", 40.0)
+                .containsEntry("quota_event_buffer_depth", 3.0)
+                .hasSize(3);
+    }
+
+    // 差值只覆盖两次抓取之间，本地路径占比按 本地 / (本地 + Redis) 计算
+    @Test
+    void shouldReportDeltaAndLocalPathRatio() {
+        Map<String, Double> before = Map.of(
+                "rate_limit_local_path_total", 100.0,
+                "rate_limit_redis_path_total", 50.0);
+        Map<String, Double> after = Map.of(
+                "rate_limit_local_path_total", 400.0,
+                "rate_limit_redis_path_total", 150.0,
+                "rate_limit_check_total", 400.0);
+
+        Map<String, Object> delta = ServerMetrics.delta(before, after);
+
+        assertThat(delta).containsEntry("rate_limit_local_path_total", 300L)
+                .containsEntry("rate_limit_redis_path_total", 100L)
+                .containsEntry("rate_limit_check_total", 400L)
+                .containsEntry("quota_event_sent_total", 0L)
+                .containsEntry("localPathRatio", 0.75);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ratelimiter.loadgen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Zipf 分布采样：第 k 名（从 0 开始）被抽中的概率正比于 1 / (k + 1)^s
+ *
+ * 预先计算累积分布，采样为一次二分查找；s = 0 时退化为均匀分布，s 越大越集中在头部
+ */
+public class ZipfGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfGenerator(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Zipf size must be positive: " + size);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative: " + exponent);
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        // 消除累加误差，保证 [0, 1) 内的任何取值都能落到某一名
+        cumulative[size - 1] = 1.0;
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    /**
+     * 第 rank 名被抽中的概率
+     */
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    public int next(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // 第 k 名对应区间 [cumulative[k-1], cumulative[k])：恰好等于边界时属于下一名，
+        // 未精确命中时返回 -(插入点) - 1，插入点即第一个大于该值的名次
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
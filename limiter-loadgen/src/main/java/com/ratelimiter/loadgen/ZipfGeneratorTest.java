@@ -0,0 +1,51 @@
+package com.ratelimiter.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ZipfGeneratorTest {
+
+    // 概率正比于 1 / (k + 1)^s，且总和为 1
+    @Test
+    void shouldFollowPowerLaw() {
+        ZipfGenerator zipf = new ZipfGenerator(100, 1.0);
+
+        double total = 0;
+        for (int rank = 0; rank < zipf.size(); rank++) {
+            total += zipf.probability(rank);
+        }
+        assertThat(total).isCloseTo(1.0, within(1e-9));
+        assertThat(zipf.probability(0) / zipf.probability(1)).isCloseTo(2.0, within(1e-9));
+        assertThat(zipf.probability(0) / zipf.probability(9)).isCloseTo(10.0, within(1e-9));
+    }
+
+    // 采样频率与理论概率一致
+    @Test
+    void shouldSampleAccordingToDistribution() {
+        ZipfGenerator zipf = new ZipfGenerator(1000, 1.2);
+        SplittableRandom random = new SplittableRandom(7);
+        int samples = 1_000_000;
+        int[] counts = new int[zipf.size()];
+        for (int i = 0; i < samples; i++) {
+            counts[zipf.next(random)]++;
+        }
+
+        for (int rank : new int[]{0, 1, 10, 100}) {
+            assertThat(counts[rank] / (double) samples).isCloseTo(zipf.probability(rank), within(0.005));
+        }
+    }
+
+    // s = 0 时退化为均匀分布
+    @Test
+    void shouldBeUniformWhenExponentIsZero() {
+        ZipfGenerator zipf = new ZipfGenerator(4, 0);
+
+        for (int rank = 0; rank < 4; rank++) {
+            assertThat(zipf.probability(rank)).isCloseTo(0.25, within(1e-9));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.ratelimiter.loadgen.cluster;
+
+import java.util.Arrays;
+
+/**
+ * 集群模拟器比较的分布式限流方式
+ */
+public enum ClusterMode {
+
+    /**
+     * 线上现状：每个节点的本地桶初始为满容量，耗尽后回退到共享 Redis
+     */
+    LOCAL_REDIS("local-redis"),
+
+    /**
+     * 本地桶关闭，每次检查都走共享 Redis（精确的参照，代价是每次一次往返）
+     */
+    REDIS_ONLY("redis"),
+
+    /**
+     * 只用各节点的本地桶，不做任何协调（本地桶耗尽即拒绝）
+     */
+    LOCAL_ONLY("local"),
+
+    /**
+     * 本地桶的容量与补充速率按节点数均分，耗尽后回退到共享 Redis
+     */
+    LOCAL_SPLIT("local-split");
+
+    private final String id;
+
+    ClusterMode(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static ClusterMode of(String id) {
+        return Arrays.stream(values())
+                .filter(mode -> mode.id.equals(id))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("未知的模式: " + id
+                        + "，可选 local-redis / redis / local / local-split"));
+    }
+}
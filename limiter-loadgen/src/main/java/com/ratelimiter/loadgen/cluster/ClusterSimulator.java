@@ -0,0 +1,392 @@
+package com.ratelimiter.loadgen.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ratelimiter.common.web.dto.dataPlane.CheckRequest;
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.loadgen.KeySpace;
+import com.ratelimiter.loadgen.standin.InMemoryTokenBucketStore;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多节点准入精度模拟：进程内启动 N 个 CheckUseCaseService（各自的本地桶初始为满容量），共享一个 Redis 替身，
+ * 按给定流量驱动，逐秒统计吞吐与"实际放行 vs 策略允许"的偏差
+ *
+ * 策略允许的量由一个参照令牌桶给出：同一请求流（同一时刻、同一 key）送入一个全局精确的令牌桶，
+ * 它放行的请求数即单个理想限流器的结果。实际放行比参照多出的部分即超发，反之为误拒。
+ *
+ * 用法：java -cp limiter-loadgen.jar -Dloader.main=com.ratelimiter.loadgen.cluster.ClusterSimulator \
+ * org.springframework.boot.loader.launch.PropertiesLauncher --nodes=1,2,4,8 --modes=local-redis,redis --rate=20000
+ *
+ * --rate=0 时各驱动线程不限速地调用（测最大吞吐）；--nodes 与 --modes 取所有组合依次运行，每次运行从空状态开始。
+ * 输出目录 --out/--label 下：每次运行的逐秒 CSV（timeline-&lt;mode&gt;-n&lt;N&gt;.csv）与汇总 summary.json
+ */
+@Slf4j
+public class ClusterSimulator {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    record Options(List<Integer> nodeCounts,
+                   List<ClusterMode> modes,
+                   double rate,
+                   Duration duration,
+                   int threads,
+                   int tenants,
+                   int resources,
+                   double zipfExponent,
+                   long tokens,
+                   long capacity,
+                   BigDecimal refillRate,
+                   long redisRoundTripMicros,
+                   long idempotencyTtlMillis,
+                   Path out,
+                   String label,
+                   long seed) {
+
+        static Options parse(String... args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("参数格式应为 --key=value: " + arg);
+                }
+                int separator = arg.indexOf('=');
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+            Options options = new Options(
+                    Arrays.stream(values.getOrDefault("nodes", "1,2,4").split(",")).map(Integer::parseInt).toList(),
+                    Arrays.stream(values.getOrDefault("modes", "local-redis,redis").split(","))
+                            .map(ClusterMode::of).toList(),
+                    Double.parseDouble(values.getOrDefault("rate", "10000")),
+                    Duration.ofMillis((long) (Double.parseDouble(values.getOrDefault("duration", "30")) * 1000)),
+                    Integer.parseInt(values.getOrDefault("threads", "8")),
+                    Integer.parseInt(values.getOrDefault("tenants", "100")),
+                    Integer.parseInt(values.getOrDefault("resources", "10")),
+                    Double.parseDouble(values.getOrDefault("zipf", "1.0")),
+                    Long.parseLong(values.getOrDefault("tokens", "1")),
+                    Long.parseLong(values.getOrDefault("capacity", "100")),
+                    new BigDecimal(values.getOrDefault("refill-rate", "10")),
+                    Long.parseLong(values.getOrDefault("redis-rtt-micros", "0")),
+                    // 每个请求一个 requestId，幂等结果保留时间过长会占满内存
+                    Long.parseLong(values.getOrDefault("idempotency-ttl-ms", "10000")),
+                    Path.of(values.getOrDefault("out", "loadgen-results")),
+                    values.getOrDefault("label", "cluster"),
+                    Long.parseLong(values.getOrDefault("seed", "42")));
+            values.keySet().removeAll(List.of("nodes", "modes", "rate", "duration", "threads", "tenants",
+                    "resources", "zipf", "tokens", "capacity", "refill-rate", "redis-rtt-micros",
+                    "idempotency-ttl-ms", "out", "label", "seed"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("未知参数: " + values.keySet());
+            }
+            if (options.rate() < 0 || options.duration().isZero() || options.threads() <= 0
+                    || options.nodeCounts().stream().anyMatch(n -> n <= 0)) {
+                throw new IllegalArgumentException("rate 不能为负，duration、threads、nodes 必须大于 0");
+            }
+            return options;
+        }
+    }
+
+    /**
+     * 某一秒的统计（计数均为该秒内的增量）
+     *
+     * @param admitted      集群实际放行数
+     * @param idealAdmitted 参照令牌桶放行数
+     * @param overAdmitted  集群放行、参照拒绝的请求数
+     * @param underAdmitted 集群拒绝、参照放行的请求数
+     */
+    record Interval(int second,
+                    long checks,
+                    long admitted,
+                    long idealAdmitted,
+                    long overAdmitted,
+                    long underAdmitted,
+                    long localPath,
+                    long redisPath) {
+    }
+
+    /**
+     * 一次运行（一个模式 × 一个节点数）的结果
+     *
+     * @param overshoot        放行总数相对参照的超出比例（admitted / idealAdmitted - 1）
+     * @param worstKeyRatio    单个 key 的放行量与策略上限（capacity + refillRate × 运行秒数）之比的最大值
+     */
+    record RunResult(String mode,
+                     int nodes,
+                     double seconds,
+                     long checks,
+                     double throughput,
+                     long admitted,
+                     long idealAdmitted,
+                     double overshoot,
+                     long overAdmitted,
+                     long underAdmitted,
+                     double localPathRatio,
+                     String worstKey,
+                     double worstKeyRatio,
+                     double checkP50Micros,
+                     double checkP99Micros,
+                     List<Interval> timeline) {
+    }
+
+    private final Options options;
+    private final KeySpace keySpace;
+    private final List<PolicyDto> policies;
+
+    ClusterSimulator(Options options) {
+        this.options = options;
+        this.keySpace = new KeySpace(options.tenants(), options.resources(), options.zipfExponent());
+        this.policies = keySpace.policies(options.capacity(), options.refillRate());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ClusterSimulator simulator = new ClusterSimulator(options);
+        Path dir = options.out().resolve(options.label());
+        Files.createDirectories(dir);
+
+        List<RunResult> results = new ArrayList<>();
+        for (ClusterMode mode : options.modes()) {
+            for (int nodes : options.nodeCounts()) {
+                RunResult result = simulator.run(mode, nodes);
+                writeTimeline(dir.resolve("timeline-" + mode.id() + "-n" + nodes + ".csv"), result.timeline());
+                results.add(result);
+            }
+        }
+
+        System.out.printf("%-12s %5s %12s %12s %12s %10s %10s %8s %12s%n",
+                "mode", "nodes", "checks/s", "admitted", "ideal", "overshoot", "under", "local%", "worst-key");
+        for (RunResult result : results) {
+            System.out.printf("%-12s %5d %12.0f %12d %12d %+9.1f%% %10d %7.1f%% %11.2fx%n",
+                    result.mode(), result.nodes(), result.throughput(), result.admitted(), result.idealAdmitted(),
+                    result.overshoot() * 100, result.underAdmitted(), result.localPathRatio() * 100,
+                    result.worstKeyRatio());
+        }
+
+        List<Map<String, Object>> summary = new ArrayList<>();
+        for (RunResult result : results) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("mode", result.mode());
+            row.put("nodes", result.nodes());
+            row.put("seconds", result.seconds());
+            row.put("checks", result.checks());
+            row.put("throughput", result.throughput());
+            row.put("admitted", result.admitted());
+            row.put("idealAdmitted", result.idealAdmitted());
+            row.put("overshoot", result.overshoot());
+            row.put("overAdmitted", result.overAdmitted());
+            row.put("underAdmitted", result.underAdmitted());
+            row.put("localPathRatio", result.localPathRatio());
+            row.put("worstKey", result.worstKey());
+            row.put("worstKeyRatio", result.worstKeyRatio());
+            row.put("checkP50Micros", result.checkP50Micros());
+            row.put("checkP99Micros", result.checkP99Micros());
+            summary.add(row);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(dir.resolve("summary.json").toFile(), summary);
+        log.info("Results written to {}", dir.toAbsolutePath());
+    }
+
+    RunResult run(ClusterMode mode, int nodeCount) throws InterruptedException {
+        // 每次运行从空状态开始：新的节点（本地桶满容量）、新的 Redis 替身、新的参照桶
+        InMemoryTokenBucketStore sharedStore =
+                new InMemoryTokenBucketStore(options.idempotencyTtlMillis(), options.redisRoundTripMicros());
+        InMemoryTokenBucketStore reference = new InMemoryTokenBucketStore(options.idempotencyTtlMillis(), 0);
+        List<SimulatedNode> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new SimulatedNode(i, nodeCount, mode, sharedStore, policies));
+        }
+
+        Counters counters = new Counters();
+        Map<String, LongAdder> admittedByKey = new ConcurrentHashMap<>();
+        Recorder checkLatency = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        List<Interval> timeline = new ArrayList<>();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-sim-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] previous = new long[7];
+        Runnable report = () -> {
+            long[] current = counters.snapshot(nodes);
+            long[] delta = new long[current.length];
+            for (int i = 0; i < current.length; i++) {
+                delta[i] = current[i] - previous[i];
+            }
+            System.arraycopy(current, 0, previous, 0, current.length);
+            Interval interval = new Interval(timeline.size() + 1, delta[0], delta[1], delta[2], delta[3],
+                    delta[4], delta[5], delta[6]);
+            timeline.add(interval);
+            log.info("[{} n={}] {}s: {} checks, admitted {} vs ideal {} ({} over, {} under), local {} / redis {}",
+                    mode.id(), nodeCount, interval.second(), interval.checks(), interval.admitted(),
+                    interval.idealAdmitted(), interval.overAdmitted(), interval.underAdmitted(),
+                    interval.localPath(), interval.redisPath());
+        };
+
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + options.duration().toNanos();
+        List<Thread> drivers = new ArrayList<>(options.threads());
+        for (int i = 0; i < options.threads(); i++) {
+            int threadIndex = i;
+            Thread thread = new Thread(() -> drive(threadIndex, startNanos, endNanos, nodes, reference, counters,
+                    admittedByKey, checkLatency), "cluster-sim-driver-" + i);
+            thread.setDaemon(true);
+            drivers.add(thread);
+        }
+        reporter.scheduleAtFixedRate(report, 1, 1, TimeUnit.SECONDS);
+        drivers.forEach(Thread::start);
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        // 不足一秒的尾部区间
+        report.run();
+        nodes.forEach(SimulatedNode::close);
+
+        // 单个 key 的放行量与策略上限（初始满桶 + 运行期间的补充）之比
+        double ceiling = options.capacity() + options.refillRate().doubleValue() * seconds;
+        String worstKey = "";
+        double worstKeyRatio = 0;
+        for (Map.Entry<String, LongAdder> entry : admittedByKey.entrySet()) {
+            double ratio = entry.getValue().sum() * options.tokens() / ceiling;
+            if (ratio > worstKeyRatio) {
+                worstKeyRatio = ratio;
+                worstKey = entry.getKey();
+            }
+        }
+
+        long[] totals = counters.snapshot(nodes);
+        Histogram latency = checkLatency.getIntervalHistogram();
+        long localPath = totals[5];
+        long redisPath = totals[6];
+        return new RunResult(mode.id(), nodeCount, seconds, totals[0], totals[0] / seconds,
+                totals[1], totals[2], totals[2] == 0 ? 0.0 : (double) totals[1] / totals[2] - 1,
+                totals[3], totals[4],
+                localPath + redisPath == 0 ? 0.0 : (double) localPath / (localPath + redisPath),
+                worstKey, worstKeyRatio,
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                timeline);
+    }
+
+    /**
+     * 驱动线程：rate > 0 时按 rate / threads 的恒定间隔发请求（落后时立即补发），rate = 0 时不限速；
+     * 请求按轮询分配到各节点，同一请求同时送入参照桶
+     */
+    private void drive(int threadIndex,
+                       long startNanos,
+                       long endNanos,
+                       List<SimulatedNode> nodes,
+                       InMemoryTokenBucketStore reference,
+                       Counters counters,
+                       Map<String, LongAdder> admittedByKey,
+                       Recorder checkLatency) {
+        SplittableRandom random = new SplittableRandom(options.seed() + threadIndex);
+        double periodNanos = options.rate() == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) * options.threads() / options.rate();
+        long firstNanos = startNanos + (long) (periodNanos / options.threads() * threadIndex);
+        String requestIdPrefix = "sim-" + threadIndex + "-";
+
+        for (long i = 0; ; i++) {
+            if (periodNanos > 0) {
+                long intendedNanos = firstNanos + (long) (periodNanos * i);
+                if (intendedNanos >= endNanos) {
+                    return;
+                }
+                long remaining;
+                while ((remaining = intendedNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            } else if (System.nanoTime() >= endNanos) {
+                return;
+            }
+
+            KeySpace.Key key = keySpace.next(random);
+            CheckRequest request = new CheckRequest();
+            request.setRequestId(requestIdPrefix + i);
+            request.setTenantId(key.tenantId());
+            request.setResourceKey(key.resourceKey());
+            request.setTokens(options.tokens());
+            request.setTimestamp(System.currentTimeMillis());
+
+            boolean ideal = reference.tryConsume(key.tenantId(), key.resourceKey(), options.capacity(),
+                    options.refillRate(), options.tokens(), null, request.getTimestamp()).allowed();
+            SimulatedNode node = nodes.get((int) ((threadIndex + i) % nodes.size()));
+            long checkStartNanos = System.nanoTime();
+            boolean admitted = node.check(request).isAllowed();
+            checkLatency.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS,
+                    (System.nanoTime() - checkStartNanos) / 1000));
+
+            counters.checks.increment();
+            if (admitted) {
+                counters.admitted.increment();
+                admittedByKey.computeIfAbsent(key.tenantId() + "|" + key.resourceKey(), k -> new LongAdder())
+                        .increment();
+            }
+            if (ideal) {
+                counters.idealAdmitted.increment();
+            }
+            if (admitted && !ideal) {
+                counters.overAdmitted.increment();
+            } else if (!admitted && ideal) {
+                counters.underAdmitted.increment();
+            }
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder checks = new LongAdder();
+        final LongAdder admitted = new LongAdder();
+        final LongAdder idealAdmitted = new LongAdder();
+        final LongAdder overAdmitted = new LongAdder();
+        final LongAdder underAdmitted = new LongAdder();
+
+        /**
+         * 累计值：checks, admitted, idealAdmitted, overAdmitted, underAdmitted, localPath, redisPath
+         */
+        long[] snapshot(List<SimulatedNode> nodes) {
+            return new long[]{
+                    checks.sum(),
+                    admitted.sum(),
+                    idealAdmitted.sum(),
+                    overAdmitted.sum(),
+                    underAdmitted.sum(),
+                    nodes.stream().mapToLong(SimulatedNode::localPathCount).sum(),
+                    nodes.stream().mapToLong(SimulatedNode::redisPathCount).sum()
+            };
+        }
+    }
+
+    private static void writeTimeline(Path file, List<Interval> timeline) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("second,checks,admitted,ideal_admitted,over_admitted,under_admitted,local_path,redis_path");
+            for (Interval interval : timeline) {
+                out.printf("%d,%d,%d,%d,%d,%d,%d,%d%n", interval.second(), interval.checks(), interval.admitted(),
+                        interval.idealAdmitted(), interval.overAdmitted(), interval.underAdmitted(),
+                        interval.localPath(), interval.redisPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.ratelimiter.loadgen.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterSimulatorTest {
+
+    // 单个 key、不补充令牌：各模式的放行总数与时序无关，可以精确断言
+    private static ClusterSimulator.RunResult run(ClusterMode mode, int nodes) throws InterruptedException {
+        ClusterSimulator.Options options = ClusterSimulator.Options.parse(
+                "--tenants=1", "--resources=1", "--capacity=100", "--refill-rate=0",
+                "--rate=0", "--duration=0.3", "--threads=4");
+        return new ClusterSimulator(options).run(mode, nodes);
+    }
+
+    // 全部走共享 Redis：与参照令牌桶一致，没有超发
+    @Test
+    void redisOnlyShouldMatchPolicy() throws InterruptedException {
+        ClusterSimulator.RunResult result = run(ClusterMode.REDIS_ONLY, 3);
+
+        assertThat(result.checks()).isGreaterThan(400);
+        assertThat(result.idealAdmitted()).isEqualTo(100);
+        assertThat(result.admitted()).isEqualTo(100);
+        assertThat(result.overAdmitted()).isZero();
+        assertThat(result.localPathRatio()).isZero();
+    }
+
+    // 线上方式：每个节点的本地桶各放行一整桶，再加上共享 Redis 的一整桶
+    @Test
+    void localRedisShouldOvershootByOneBucketPerNode() throws InterruptedException {
+        ClusterSimulator.RunResult result = run(ClusterMode.LOCAL_REDIS, 3);
+
+        assertThat(result.admitted()).isEqualTo(400);
+        assertThat(result.idealAdmitted()).isEqualTo(100);
+        assertThat(result.overshoot()).isEqualTo(3.0);
+        assertThat(result.worstKeyRatio()).isEqualTo(4.0);
+    }
+
+    @Test
+    void localOnlyShouldAdmitOneBucketPerNode() throws InterruptedException {
+        assertThat(run(ClusterMode.LOCAL_ONLY, 3).admitted()).isEqualTo(300);
+    }
+
+    // 本地桶均分后合计一整桶，再加共享 Redis 的一整桶
+    @Test
+    void localSplitShouldCapOvershootAtOneBucket() throws InterruptedException {
+        assertThat(run(ClusterMode.LOCAL_SPLIT, 4).admitted()).isEqualTo(200);
+    }
+}
@@ -0,0 +1,144 @@
+package com.ratelimiter.loadgen.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventSerializer;
+import com.ratelimiter.common.web.dto.dataPlane.CheckRequest;
+import com.ratelimiter.common.web.dto.dataPlane.CheckResponse;
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.application.CheckUseCaseService;
+import com.ratelimiter.dataplane.application.OnDemandPolicyLoader;
+import com.ratelimiter.dataplane.application.event.QuotaEventPublisher;
+import com.ratelimiter.dataplane.application.event.QuotaSpillReplayer;
+import com.ratelimiter.dataplane.application.metrics.HotKeyTracker;
+import com.ratelimiter.dataplane.application.metrics.RateLimiterMetricsService;
+import com.ratelimiter.dataplane.application.metrics.StageLatencyRecorder;
+import com.ratelimiter.dataplane.domain.LocalTokenBucketManager;
+import com.ratelimiter.dataplane.domain.PolicyCache;
+import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository;
+import com.ratelimiter.dataplane.infrastructure.spill.SpillJournal;
+import com.ratelimiter.loadgen.standin.DiscardingKafkaProducer;
+import com.ratelimiter.loadgen.standin.InMemoryRedisRateLimiterRepository;
+import com.ratelimiter.loadgen.standin.InMemoryTokenBucketStore;
+import com.ratelimiter.loadgen.standin.SyntheticControlPlaneClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模拟集群中的一个数据平面节点：按线上方式装配的 CheckUseCaseService，拥有自己的本地桶、策略缓存、指标和事件发布器
+ *
+ * 共享状态只有传入的 Redis 替身；Kafka 由只序列化不发送的替身代替
+ */
+public class SimulatedNode implements AutoCloseable {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OnDemandPolicyLoader policyLoader;
+    private final QuotaEventPublisher eventPublisher;
+    private final CheckUseCaseService checkUseCase;
+
+    public SimulatedNode(int nodeIndex,
+                         int nodeCount,
+                         ClusterMode mode,
+                         InMemoryTokenBucketStore sharedStore,
+                         List<PolicyDto> policies) {
+        RateLimiterMetricsService metricsService = new RateLimiterMetricsService(registry, 500, 50);
+
+        PolicyCache policyCache = new PolicyCache(registry, 100_000);
+        policyCache.updatePolicies(policies);
+        policyLoader = new OnDemandPolicyLoader(new SyntheticControlPlaneClient(policies), policyCache,
+                metricsService, 100, 5000, 1000, 1, 16);
+
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(QuotaConsumedEvent.class, new QuotaEventSerializer());
+        serializers.put(QuotaRollupEvent.class, new JsonSerializer<>());
+        DiscardingKafkaProducer producer = new DiscardingKafkaProducer(new DelegatingByTypeSerializer(serializers));
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        QuotaSpillReplayer spillReplayer = new QuotaSpillReplayer(kafkaTemplate, new ObjectMapper(), registry,
+                "quota-events", "quota-rollups", false, "", 1 << 20, 4, SpillJournal.FsyncPolicy.NONE, 1000,
+                500, 1000, 30000, 10000);
+        eventPublisher = new QuotaEventPublisher(kafkaTemplate, spillReplayer, "quota-events", registry,
+                65536, QuotaEventPublisher.OverflowPolicy.DROP, 5, 512, 200,
+                true, "quota-rollups", "sim-node-" + nodeIndex, 1000, 100_000, 10_000, 200_000);
+        eventPublisher.start();
+
+        checkUseCase = new CheckUseCaseService(localBuckets(mode, nodeCount), policyCache, policyLoader,
+                repository(mode, sharedStore), eventPublisher, metricsService, new StageLatencyRecorder(60_000),
+                // 与线上一样在每次检查时更新草图；不启动窗口轮转，不发送报告
+                new HotKeyTracker(kafkaTemplate, true, 1024, 16, 20, 10_000, "quota-hotkeys",
+                        "sim-node-" + nodeIndex));
+    }
+
+    public CheckResponse check(CheckRequest request) {
+        return checkUseCase.checkAndConsume(request);
+    }
+
+    public long localPathCount() {
+        return count("rate_limit_local_path_total");
+    }
+
+    public long redisPathCount() {
+        return count("rate_limit_redis_path_total");
+    }
+
+    private long count(String name) {
+        return (long) registry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    @Override
+    public void close() {
+        eventPublisher.shutdown();
+        policyLoader.shutdown();
+    }
+
+    private static LocalTokenBucketManager localBuckets(ClusterMode mode, int nodeCount) {
+        return switch (mode) {
+            case REDIS_ONLY -> new LocalTokenBucketManager() {
+                @Override
+                public boolean tryConsume(String tenantId, String resourceKey, long capacity,
+                                          BigDecimal refillRateConfig, long tokensToConsume, long nowMillis) {
+                    return false;
+                }
+            };
+            case LOCAL_SPLIT -> new LocalTokenBucketManager() {
+                private final BigDecimal nodes = BigDecimal.valueOf(nodeCount);
+
+                @Override
+                public boolean tryConsume(String tenantId, String resourceKey, long capacity,
+                                          BigDecimal refillRateConfig, long tokensToConsume, long nowMillis) {
+                    return super.tryConsume(tenantId, resourceKey, capacity / nodeCount,
+                            refillRateConfig.divide(nodes, MathContext.DECIMAL64), tokensToConsume, nowMillis);
+                }
+            };
+            default -> new LocalTokenBucketManager();
+        };
+    }
+
+    private static RedisRateLimiterRepository repository(ClusterMode mode, InMemoryTokenBucketStore sharedStore) {
+        if (mode != ClusterMode.LOCAL_ONLY) {
+            return new InMemoryRedisRateLimiterRepository(sharedStore);
+        }
+        // 不协调：本地桶耗尽即拒绝
+        RedisRateLimiterRepository.RateLimitResult denied =
+                new RedisRateLimiterRepository.RateLimitResult(false, 0L, "quota_exceeded");
+        return new RedisRateLimiterRepository(null) {
+            @Override
+            public RateLimitResult tryConsumeTokens(String tenantId, String resourceKey, long capacity,
+                                                    BigDecimal refillRateConfig, long tokensToConsume,
+                                                    String requestId, long nowMillis) {
+                return denied;
+            }
+        };
+    }
+}
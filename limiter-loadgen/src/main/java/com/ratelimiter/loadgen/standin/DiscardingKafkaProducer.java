@@ -0,0 +1,68 @@
+package com.ratelimiter.loadgen.standin;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kafka 替身：按线上的序列化器序列化后立即确认并丢弃
+ *
+ * MockProducer 会保留全部已发送记录，长时间压测会耗尽内存；这里只计数
+ */
+public class DiscardingKafkaProducer extends MockProducer<String, Object> {
+
+    private final StringSerializer keySerializer = new StringSerializer();
+    private final Serializer<Object> valueSerializer;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public DiscardingKafkaProducer(Serializer<Object> valueSerializer) {
+        super(true, new StringSerializer(), valueSerializer);
+        this.valueSerializer = valueSerializer;
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<String, Object> record, Callback callback) {
+        byte[] key = keySerializer.serialize(record.topic(), record.headers(), record.key());
+        byte[] value = valueSerializer.serialize(record.topic(), record.headers(), record.value());
+        int keySize = key == null ? 0 : key.length;
+        int valueSize = value == null ? 0 : value.length;
+        records.increment();
+        bytes.add(keySize + valueSize);
+
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), records.sum(), 0,
+                System.currentTimeMillis(), keySize, valueSize);
+        if (callback != null) {
+            callback.onCompletion(metadata, null);
+        }
+        return CompletableFuture.completedFuture(metadata);
+    }
+
+    /**
+     * KafkaTemplate 每次发送后会关闭非事务生产者，替身被所有发送共用，忽略关闭
+     */
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void close(Duration timeout) {
+    }
+
+    public long sentRecords() {
+        return records.sum();
+    }
+
+    public long sentBytes() {
+        return bytes.sum();
+    }
+}
@@ -0,0 +1,94 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.common.web.domain.event.HotKeysEvent;
+import com.ratelimiter.common.web.domain.event.QuotaConsumedEvent;
+import com.ratelimiter.common.web.domain.event.QuotaRollupEvent;
+import com.ratelimiter.common.web.domain.event.codec.QuotaEventSerializer;
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.DataPlaneApplication;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在压测进程内启动一个数据平面节点
+ *
+ * 节点使用线上同一套 Spring 装配，仅把 Redis 仓储、Kafka 生产者和控制平面客户端换成替身（见 {@link StandInConfiguration}）。
+ * 多个节点传入同一个 {@link InMemoryTokenBucketStore} 即共享同一个 Redis
+ */
+public class EmbeddedDataPlane implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final DiscardingKafkaProducer producer;
+    private final int port;
+
+    private EmbeddedDataPlane(ConfigurableApplicationContext context, DiscardingKafkaProducer producer, int port) {
+        this.context = context;
+        this.producer = producer;
+        this.port = port;
+    }
+
+    /**
+     * @param redisMode memory：共享的内存替身 / local：本机 Redis
+     * @param kafkaMode memory：序列化后丢弃 / local：本机 Kafka
+     */
+    public static EmbeddedDataPlane start(int port,
+                                          int nodeIndex,
+                                          InMemoryTokenBucketStore store,
+                                          List<PolicyDto> policies,
+                                          String redisMode,
+                                          String kafkaMode) {
+        // 与 KafkaConfig 一致：QuotaConsumedEvent 二进制编码，汇总事件与热点 key 报告 JSON，压测时序列化开销照常计入
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(QuotaConsumedEvent.class, new QuotaEventSerializer());
+        serializers.put(QuotaRollupEvent.class, new JsonSerializer<>());
+        serializers.put(HotKeysEvent.class, new JsonSerializer<>());
+        DiscardingKafkaProducer producer = new DiscardingKafkaProducer(new DelegatingByTypeSerializer(serializers));
+        StandIns standIns = new StandIns(store, producer, policies);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DataPlaneApplication.class,
+                StandInConfiguration.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("loadgenStandIns", standIns))
+                .properties(
+                        "server.port=" + port,
+                        "app.node-id=loadgen-node-" + nodeIndex,
+                        "loadgen.redis=" + redisMode,
+                        "loadgen.kafka=" + kafkaMode,
+                        // 替身模式下没有 broker，溢出日志和建 topic 都不需要
+                        "app.kafka.spill.enabled=" + "local".equals(kafkaMode),
+                        "app.kafka.spill.dir=./data/loadgen-spill/node-" + nodeIndex,
+                        "spring.kafka.admin.auto-create=" + "local".equals(kafkaMode),
+                        "management.health.redis.enabled=" + "local".equals(redisMode),
+                        "logging.level.com.ratelimiter.dataplane=INFO",
+                        "spring.jmx.enabled=false",
+                        "spring.main.banner-mode=off")
+                .run();
+        return new EmbeddedDataPlane(context, producer, port);
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    /**
+     * Kafka 替身收到的记录数（kafka=local 时为 0）
+     */
+    public long sentRecords() {
+        return producer.sentRecords();
+    }
+
+    public long sentBytes() {
+        return producer.sentBytes();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
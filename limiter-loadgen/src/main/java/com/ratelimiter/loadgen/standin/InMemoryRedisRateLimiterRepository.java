@@ -0,0 +1,30 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository;
+
+import java.math.BigDecimal;
+
+/**
+ * 以 {@link InMemoryTokenBucketStore} 代替 Redis 的数据平面仓储（不连接 Redis）
+ */
+public class InMemoryRedisRateLimiterRepository extends RedisRateLimiterRepository {
+
+    private final InMemoryTokenBucketStore store;
+
+    public InMemoryRedisRateLimiterRepository(InMemoryTokenBucketStore store) {
+        super(null);
+        this.store = store;
+    }
+
+    @Override
+    public RateLimitResult tryConsumeTokens(String tenantId,
+                                            String resourceKey,
+                                            long capacity,
+                                            BigDecimal refillRateConfig,
+                                            long tokensToConsume,
+                                            String requestId,
+                                            long nowMillis) {
+        return store.tryConsume(tenantId, resourceKey, capacity, refillRateConfig, tokensToConsume, requestId,
+                nowMillis);
+    }
+}
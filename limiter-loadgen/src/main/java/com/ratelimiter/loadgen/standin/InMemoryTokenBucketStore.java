@@ -0,0 +1,127 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.common.util.PrecisionUtils;
+import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository.RateLimitResult;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Redis 替身：在内存中按 scripts/token-bucket.lua 的语义执行令牌桶扣减
+ *
+ * 同一个桶的扣减串行执行（对应 Lua 脚本的原子性），幂等结果按 requestId 保留 idempotencyTtlMillis。
+ * 多个数据平面实例共享同一个实例即模拟共享的 Redis；roundTripMicros 模拟每次调用的网络往返
+ */
+public class InMemoryTokenBucketStore {
+
+    private static final String QUOTA_EXCEEDED = "quota_exceeded";
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefillTime;
+    }
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final long idempotencyTtlMillis;
+    private final long roundTripNanos;
+    private final LongAdder operations = new LongAdder();
+
+    // 幂等结果分两代保存：每过一个 TTL 整代丢弃，结果保留 TTL ~ 2×TTL，内存按请求速率 × TTL 有界
+    private volatile Map<String, RateLimitResult> currentResults = new ConcurrentHashMap<>();
+    private volatile Map<String, RateLimitResult> previousResults = new ConcurrentHashMap<>();
+    private volatile long rotateAt;
+
+    public InMemoryTokenBucketStore(long idempotencyTtlMillis, long roundTripMicros) {
+        this.idempotencyTtlMillis = idempotencyTtlMillis;
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    public RateLimitResult tryConsume(String tenantId,
+                                      String resourceKey,
+                                      long capacity,
+                                      BigDecimal refillRate,
+                                      long tokensToConsume,
+                                      String requestId,
+                                      long nowMillis) {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+        operations.increment();
+        rotateIfDue(nowMillis);
+
+        // 1. 幂等：已处理过的请求返回上次的结果
+        if (requestId != null) {
+            RateLimitResult previous = currentResults.get(requestId);
+            if (previous == null) {
+                previous = previousResults.get(requestId);
+            }
+            if (previous != null) {
+                return previous;
+            }
+        }
+
+        Bucket bucket = buckets.computeIfAbsent(tenantId + ":" + resourceKey, key -> {
+            // 首次访问给满容量
+            Bucket created = new Bucket();
+            created.tokens = capacity;
+            created.lastRefillTime = nowMillis;
+            return created;
+        });
+
+        RateLimitResult result;
+        synchronized (bucket) {
+            // 2. 按经过的时间补充
+            double elapsedSeconds = (nowMillis - bucket.lastRefillTime) / 1000.0;
+            double tokens = bucket.tokens;
+            if (elapsedSeconds > 0) {
+                tokens = Math.min(capacity, tokens + PrecisionUtils.calculateTokenDelta(refillRate, elapsedSeconds));
+            }
+
+            // 3. 扣减
+            boolean allowed = tokens >= tokensToConsume;
+            if (allowed) {
+                tokens -= tokensToConsume;
+            }
+            bucket.tokens = tokens;
+            bucket.lastRefillTime = nowMillis;
+            // Lua number 转 Redis 整数时截断小数
+            result = new RateLimitResult(allowed, (long) tokens, allowed ? "" : QUOTA_EXCEEDED);
+        }
+
+        if (requestId != null) {
+            currentResults.put(requestId, result);
+        }
+        return result;
+    }
+
+    private void rotateIfDue(long nowMillis) {
+        if (nowMillis < rotateAt) {
+            return;
+        }
+        synchronized (this) {
+            if (nowMillis < rotateAt) {
+                return;
+            }
+            if (rotateAt != 0) {
+                previousResults = currentResults;
+                currentResults = new ConcurrentHashMap<>();
+            }
+            rotateAt = nowMillis + idempotencyTtlMillis;
+        }
+    }
+
+    /**
+     * 累计调用次数（对应 Redis 脚本执行次数）
+     */
+    public long operations() {
+        return operations.sum();
+    }
+
+    public int bucketCount() {
+        return buckets.size();
+    }
+}
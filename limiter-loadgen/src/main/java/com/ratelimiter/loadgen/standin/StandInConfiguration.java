@@ -0,0 +1,40 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.dataplane.infrastructure.integration.ControlPlaneClient;
+import com.ratelimiter.dataplane.infrastructure.persistence.redis.RedisRateLimiterRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+/**
+ * 内嵌数据平面的替身装配：以 @Primary 覆盖数据平面自身的 Redis 仓储、Kafka 生产者工厂与控制平面客户端
+ *
+ * 替身实例（{@link StandIns}）由 {@link EmbeddedDataPlane} 在启动前注册为单例，多个节点共享同一个 Redis 替身；
+ * loadgen.redis / loadgen.kafka 为 local 时不覆盖，连接本机真实的 Redis / Kafka
+ */
+@Configuration
+public class StandInConfiguration {
+
+    @Bean
+    @Primary
+    public ControlPlaneClient syntheticControlPlaneClient(StandIns standIns) {
+        return new SyntheticControlPlaneClient(standIns.policies());
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "loadgen.redis", havingValue = "memory", matchIfMissing = true)
+    public RedisRateLimiterRepository inMemoryRedisRateLimiterRepository(StandIns standIns) {
+        return new InMemoryRedisRateLimiterRepository(standIns.store());
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "loadgen.kafka", havingValue = "memory", matchIfMissing = true)
+    public ProducerFactory<String, Object> discardingProducerFactory(StandIns standIns) {
+        return new MockProducerFactory<>(standIns::producer);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+
+import java.util.List;
+
+/**
+ * 一个内嵌数据平面节点使用的替身
+ *
+ * @param store    Redis 替身，多个节点传入同一个实例
+ * @param producer Kafka 替身，每个节点一个
+ * @param policies 控制平面替身返回的策略
+ */
+public record StandIns(InMemoryTokenBucketStore store, DiscardingKafkaProducer producer, List<PolicyDto> policies) {
+}
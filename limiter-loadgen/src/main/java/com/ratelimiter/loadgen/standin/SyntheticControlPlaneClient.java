@@ -0,0 +1,35 @@
+package com.ratelimiter.loadgen.standin;
+
+import com.ratelimiter.common.web.dto.dataPlane.PolicyDto;
+import com.ratelimiter.dataplane.infrastructure.integration.ControlPlaneClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 控制平面替身：返回压测键空间生成的固定策略集合
+ */
+public class SyntheticControlPlaneClient extends ControlPlaneClient {
+
+    private final List<PolicyDto> policies;
+    private final Map<String, PolicyDto> policiesByKey;
+
+    public SyntheticControlPlaneClient(List<PolicyDto> policies) {
+        super(null, "");
+        this.policies = policies;
+        this.policiesByKey = policies.stream()
+                .collect(Collectors.toMap(PolicyDto::getCacheKey, Function.identity()));
+    }
+
+    @Override
+    public List<PolicyDto> fetchAllEnabledPolicies() {
+        return policies;
+    }
+
+    @Override
+    public PolicyDto fetchPolicy(String tenantId, String resourceKey) {
+        return policiesByKey.get(tenantId + "|" + resourceKey);
+    }
+}
@@ -108,15 +108,16 @@ CREATE TABLE IF NOT EXISTS policy (
 -- 读写特点：高频写入、中频读（报表/对账）
 -- 关键查询：按 (tenant_id, timestamp) 范围查询
 -- 面试要点：
---   1. request_id 唯一索引保证幂等性
+--   1. request_id 幂等：quota_audit_request 认领 requestId，uk_request_id 挡住同一事件的重投
 --   2. 组合索引优化按租户+时间查询
---   3. 生产环境可考虑分区表（按月分区）
+--   3. 按 timestamp RANGE 分区（按天 / 按月），分区由 accounting 服务的 AuditPartitionManager 预建、
+--      到期归档后 DROP PARTITION（app.accounting.partition.*）
 --   4. v2 可迁移到 ClickHouse 做 OLAP
 -- ============================================
 
 CREATE TABLE IF NOT EXISTS quota_audit (
     -- 主键
-                                           id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '审计记录 ID',
+                                           id BIGINT AUTO_INCREMENT COMMENT '审计记录 ID',
 
     -- 请求标识
                                            request_id VARCHAR(64) NOT NULL COMMENT '请求幂等 ID（用于去重与追溯）',
@@ -143,8 +144,11 @@ CREATE TABLE IF NOT EXISTS quota_audit (
     timestamp BIGINT NOT NULL COMMENT '请求时间戳（毫秒，高精度）',
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '入库时间',
 
-    -- 索引
-    UNIQUE KEY uk_request_id (request_id) COMMENT '请求 ID 唯一索引（幂等性保证）',
+    -- 索引（分区表的主键 / 唯一键必须包含分区列 timestamp；
+    -- 重投的记录沿用原事件的 timestamp，(request_id, timestamp) 仍能挡住重复写入；
+    -- 复用 requestId 的客户端重试是新的决策、带新的 timestamp，由写入前在 quota_audit_request 认领 requestId 挡住）
+    PRIMARY KEY (id, timestamp),
+    UNIQUE KEY uk_request_id (request_id, timestamp) COMMENT '同一事件重投去重（requestId 唯一由 quota_audit_request 保证）',
     KEY idx_tenant_timestamp (tenant_id, timestamp) COMMENT '租户+时间组合索引（最常见查询：某租户某时间段的记录）',
     KEY idx_resource (resource_key) COMMENT '按资源统计',
     KEY idx_allowed (allowed) COMMENT '按通过/拒绝统计成功率',
@@ -153,20 +157,166 @@ CREATE TABLE IF NOT EXISTS quota_audit (
     ) ENGINE=InnoDB
     DEFAULT CHARSET=utf8mb4
     COLLATE=utf8mb4_unicode_ci
-    COMMENT='配额消费审计表（高频写入）';
+    COMMENT='配额消费审计表（高频写入）'
+    -- 初始只有 MAXVALUE 分区；服务启动后从 p_max 拆出当前及之后若干周期的分区
+    PARTITION BY RANGE (timestamp) (
+        PARTITION p_max VALUES LESS THAN MAXVALUE
+    );
+
+-- 按租户分表（app.accounting.shard.count = N > 1）：建 N 张与 quota_audit 结构、分区完全相同的表，
+-- 租户按 CRC32(tenant_id) % N 固定落在其中一张；分区维护会逐表进行。以 N = 4 为例：
+/*
+CREATE TABLE IF NOT EXISTS quota_audit_00 LIKE quota_audit;
+CREATE TABLE IF NOT EXISTS quota_audit_01 LIKE quota_audit;
+CREATE TABLE IF NOT EXISTS quota_audit_02 LIKE quota_audit;
+CREATE TABLE IF NOT EXISTS quota_audit_03 LIKE quota_audit;
+*/
 
--- 可选：为 quota_audit 创建分区（按月分区，便于归档与查询性能优化）
--- 注意：创建分区表需要先删除上面的表，或用 ALTER TABLE
--- 示例（生产环境建议）：
+-- 已有的未分区 quota_audit 迁移（重建表，大表请用 pt-online-schema-change / gh-ost 执行同样的 ALTER）：
 /*
-ALTER TABLE quota_audit PARTITION BY RANGE (YEAR(FROM_UNIXTIME(timestamp/1000))) (
-    PARTITION p2024 VALUES LESS THAN (2025),
-    PARTITION p2025 VALUES LESS THAN (2026),
-    PARTITION p_future VALUES LESS THAN MAXVALUE
+ALTER TABLE quota_audit
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, timestamp),
+    DROP INDEX uk_request_id,
+    ADD UNIQUE KEY uk_request_id (request_id, timestamp);
+ALTER TABLE quota_audit PARTITION BY RANGE (timestamp) (
+    PARTITION p_max VALUES LESS THAN MAXVALUE
 );
 */
 
 
+-- ============================================
+-- 4.1 允许决策汇总表 (quota_audit_rollup)
+-- ============================================
+-- 用途：Data Plane 把普通的允许决策按秒折叠为 (tenant, resource, policy_version, process_path) 汇总，
+--       拒绝和显式要求审计的请求仍逐条写入 quota_audit
+-- 读写特点：写入量比 quota_audit 低几个数量级
+-- 计费口径：quota_audit 逐条 tokens（allowed=TRUE） + 本表 tokens_consumed
+-- 重试去重：本表不含 request_id，复用 requestId 的客户端重试由 Data Plane 汇总前按节点去重
+--           （app.kafka.rollup.dedupe-window-ms 内只计一次）；落到其他节点或超出窗口的重试会重复计入
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS quota_audit_rollup (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '汇总记录 ID',
+    rollup_id VARCHAR(64) NOT NULL COMMENT '汇总事件 ID（Kafka 重投幂等）',
+    node_id VARCHAR(64) NOT NULL COMMENT '产生汇总的 Data Plane 节点',
+    tenant_id VARCHAR(64) NOT NULL COMMENT '租户标识',
+    resource_key VARCHAR(128) NOT NULL COMMENT '资源标识',
+    policy_version VARCHAR(32) DEFAULT NULL COMMENT '策略版本号',
+    process_path VARCHAR(32) DEFAULT NULL COMMENT '处理路径：local/redis',
+    window_start BIGINT NOT NULL COMMENT '窗口起始时间戳（毫秒）',
+    window_ms INT NOT NULL COMMENT '窗口长度（毫秒）',
+    request_count BIGINT NOT NULL COMMENT '窗口内允许的请求数',
+    tokens_requested BIGINT NOT NULL COMMENT '请求的 token 总数',
+    tokens_consumed BIGINT NOT NULL COMMENT '消费的 token 总数',
+    first_timestamp BIGINT DEFAULT NULL COMMENT '窗口内第一条决策时间戳',
+    last_timestamp BIGINT DEFAULT NULL COMMENT '窗口内最后一条决策时间戳',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '入库时间',
+
+    UNIQUE KEY uk_rollup_id (rollup_id) COMMENT '汇总 ID 唯一索引（INSERT IGNORE 幂等）',
+    KEY idx_tenant_window (tenant_id, window_start) COMMENT '租户+窗口时间组合索引（计费/报表）'
+
+    ) ENGINE=InnoDB
+    DEFAULT CHARSET=utf8mb4
+    COLLATE=utf8mb4_unicode_ci
+    COMMENT='允许决策汇总表';
+
+
+-- ============================================
+-- 4.2 用量汇总表 (quota_usage)
+-- ============================================
+-- 用途：Accounting 消费 quota-events / quota-rollups 时增量维护的 租户×资源×时间桶 用量，
+--       同一份增量同时累加到 MINUTE / HOUR / DAY 三种粒度（桶按 UTC 对齐）
+-- 读写特点：每批事件合并后批量 upsert（ON DUPLICATE KEY UPDATE 累加），行数只与桶数相关
+-- 查询：报表 / 计费按 (tenant_id, granularity, bucket_start) 范围读取，不再扫描 quota_audit
+-- 保留：分钟桶、小时桶按 app.accounting.usage.*-retention-days 定期清理
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS quota_usage (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '记录 ID',
+    tenant_id VARCHAR(64) NOT NULL COMMENT '租户标识',
+    resource_key VARCHAR(128) NOT NULL COMMENT '资源标识',
+    granularity VARCHAR(8) NOT NULL COMMENT '桶粒度：MINUTE/HOUR/DAY',
+    bucket_start BIGINT NOT NULL COMMENT '桶起始时间戳（毫秒，UTC 对齐）',
+    allowed_count BIGINT NOT NULL DEFAULT 0 COMMENT '允许的请求数',
+    denied_count BIGINT NOT NULL DEFAULT 0 COMMENT '拒绝的请求数',
+    tokens_requested BIGINT NOT NULL DEFAULT 0 COMMENT '全部请求申请的 token 数',
+    tokens_consumed BIGINT NOT NULL DEFAULT 0 COMMENT '允许请求消耗的 token 数（计费口径）',
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最后累加时间',
+
+    UNIQUE KEY uk_tenant_bucket (tenant_id, granularity, bucket_start, resource_key) COMMENT 'upsert 键，同时服务按租户+时间范围查询',
+    KEY idx_granularity_bucket (granularity, bucket_start) COMMENT '按粒度清理过期桶'
+
+    ) ENGINE=InnoDB
+    DEFAULT CHARSET=utf8mb4
+    COLLATE=utf8mb4_unicode_ci
+    COMMENT='用量汇总表（分钟/小时/天）';
+
+-- ============================================
+-- 4.3 用量汇总消费位移表 (quota_usage_offset)
+-- ============================================
+-- 用途：记录每个分区已累加到 quota_usage 的下一条位移，与用量 upsert 在同一事务中更新；
+--       重投 / 再均衡后位移低于水位的记录直接跳过，累加只生效一次
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS quota_usage_offset (
+    topic VARCHAR(128) NOT NULL COMMENT 'Kafka topic',
+    partition_id INT NOT NULL COMMENT '分区号',
+    next_offset BIGINT NOT NULL COMMENT '下一条待累加的位移',
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最后更新时间',
+
+    PRIMARY KEY (topic, partition_id)
+
+    ) ENGINE=InnoDB
+    DEFAULT CHARSET=utf8mb4
+    COLLATE=utf8mb4_unicode_ci
+    COMMENT='用量汇总消费位移表';
+
+-- ============================================
+-- 4.4 已累加汇总事件表 (quota_usage_applied_rollup)
+-- ============================================
+-- 用途：记录已累加到 quota_usage 的 rollup_id，与用量 upsert 在同一事务中写入；
+--       生产端重复（溢出日志回放、生产者重试）的汇总事件位移不同，位移水位挡不住，按 rollup_id 跳过
+-- 保留：按 window_start 清理（app.accounting.usage.rollup-id-retention-days），须长于 Kafka 保留时间
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS quota_usage_applied_rollup (
+    rollup_id VARCHAR(64) NOT NULL COMMENT '汇总事件 ID',
+    window_start BIGINT NOT NULL COMMENT '汇总窗口起点（毫秒）',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '累加时间',
+
+    PRIMARY KEY (rollup_id),
+    KEY idx_window_start (window_start) COMMENT '清理过期记录'
+
+    ) ENGINE=InnoDB
+    DEFAULT CHARSET=utf8mb4
+    COLLATE=utf8mb4_unicode_ci
+    COMMENT='已累加汇总事件表';
+
+
+-- ============================================
+-- 4.5 审计 requestId 认领表 (quota_audit_request)
+-- ============================================
+-- 用途：quota_audit 按 timestamp 分区，唯一键只能是 (request_id, timestamp)；
+--       本表不分区、不分表，写入审计记录前先按 request_id 认领，同一 requestId 只写入第一次决策，
+--       timestamp 相同的（同一事件重投）照常写入、由 quota_audit.uk_request_id 忽略
+-- 保留：按 timestamp 清理（app.accounting.request-claim.retention-days），须长于客户端复用 requestId 重试的时间窗口
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS quota_audit_request (
+    request_id VARCHAR(64) NOT NULL COMMENT '请求幂等 ID',
+    timestamp BIGINT NOT NULL COMMENT '首次写入的事件时间戳（毫秒）',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '认领时间',
+
+    PRIMARY KEY (request_id),
+    KEY idx_timestamp (timestamp) COMMENT '清理过期记录'
+
+    ) ENGINE=InnoDB
+    DEFAULT CHARSET=utf8mb4
+    COLLATE=utf8mb4_unicode_ci
+    COMMENT='审计 requestId 认领表';
+
+
 -- ============================================
 -- 5. 策略变更历史表 (policy_version) - 可选表
 -- ============================================
@@ -281,6 +431,10 @@ TRUNCATE TABLE quota_audit;
 TRUNCATE TABLE policy;
 TRUNCATE TABLE tenant;
 TRUNCATE TABLE policy_version;
+TRUNCATE TABLE quota_usage;
+TRUNCATE TABLE quota_usage_offset;
+TRUNCATE TABLE quota_usage_applied_rollup;
+TRUNCATE TABLE quota_audit_request;
 
 -- 或完全删除数据库
 DROP DATABASE IF EXISTS rate_limiter;